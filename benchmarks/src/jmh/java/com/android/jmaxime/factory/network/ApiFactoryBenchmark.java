@@ -0,0 +1,66 @@
+package com.android.jmaxime.factory.network;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+
+/**
+ * Cost of {@link ApiFactory#create(Class)}: cold builds the client, the Retrofit and the proxy,
+ * warm returns the memoized proxy.
+ */
+@State(Scope.Benchmark)
+public class ApiFactoryBenchmark {
+
+    @ApiKeyService(baseUrlName = "local", apiKeyName = "local", tagApiName = "stores", addCache = true, cacheMaxAge = 60)
+    interface StoresService {
+        @GET("stores")
+        Call<ResponseBody> stores();
+    }
+
+    private BenchmarkServer mServer;
+    private OkHttpConfiguration mConfiguration;
+    private ApiFactory mFactory;
+
+    @Setup
+    public void setUp() throws IOException {
+        mServer = new BenchmarkServer("[]").start();
+        mConfiguration = new OkHttpConfiguration.Builder(new OkHttpBuilder(), GsonConverterFactory.create())
+                .memoryCache(1024 * 1024, "stores")
+                .addApiKey("local", "key")
+                .addUrlConfiguration("local", mServer.url())
+                .build();
+        mFactory = new ApiFactory(mConfiguration);
+        mFactory.create(StoresService.class);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Benchmark
+    public StoresService createCold() {
+        return new ApiFactory(mConfiguration).create(StoresService.class);
+    }
+
+    @Benchmark
+    public StoresService createWarm() {
+        return mFactory.create(StoresService.class);
+    }
+
+    @Benchmark
+    public ResponseBody createColdAndCall() throws IOException {
+        ResponseBody body = new ApiFactory(mConfiguration).create(StoresService.class).stores().execute().body();
+        body.close();
+        return body;
+    }
+}
@@ -0,0 +1,175 @@
+package com.android.jmaxime.factory.network;
+
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.net.ServerSocketFactory;
+
+import okhttp3.Protocol;
+import okhttp3.internal.tls.HeldCertificate;
+import okhttp3.internal.tls.SslClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+/**
+ * In-process server of the benchmarks, answers every request with the same body or by a dispatcher.
+ * Nagle is disabled on the accepted sockets: the headers and the body of the response are written
+ * separately, the delayed ack of the client would add 40 ms to each call.
+ */
+final class BenchmarkServer {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final MockWebServer mServer = new MockWebServer();
+    private final byte[] mBody;
+
+    BenchmarkServer(String body) {
+        mBody = body.getBytes(UTF_8);
+        mServer.setServerSocketFactory(new NoDelayServerSocketFactory());
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse()
+                        .setHeader("Content-Type", "application/json")
+                        .setBody(new Buffer().write(mBody));
+            }
+        });
+    }
+
+    /**
+     * @param dispatcher answers the requests instead of the same body
+     */
+    BenchmarkServer(Dispatcher dispatcher) {
+        mBody = null;
+        mServer.setServerSocketFactory(new NoDelayServerSocketFactory());
+        mServer.setDispatcher(dispatcher);
+    }
+
+    /**
+     * Serves HTTP/2 over TLS, the clients must trust the root of {@link #localhost()}
+     */
+    BenchmarkServer useHttps(SslClient sslClient) {
+        mServer.useHttps(sslClient.socketFactory, false);
+        mServer.setProtocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        return this;
+    }
+
+    BenchmarkServer start() throws IOException {
+        mServer.start();
+        return this;
+    }
+
+    String url() {
+        return mServer.url("/").toString();
+    }
+
+    void shutdown() throws IOException {
+        mServer.shutdown();
+    }
+
+    /**
+     * @return certificate of localhost issued by a root trusted by the client
+     */
+    static SslClient localhost() throws GeneralSecurityException {
+        HeldCertificate root = new HeldCertificate.Builder()
+                .serialNumber("1")
+                .ca(1)
+                .commonName("root")
+                .build();
+        HeldCertificate localhost = new HeldCertificate.Builder()
+                .serialNumber("2")
+                .issuedBy(root)
+                .commonName("localhost")
+                .subjectAlternativeName("localhost")
+                .build();
+        return new SslClient.Builder()
+                .certificateChain(localhost, root)
+                .addTrustedCertificate(root.certificate)
+                .build();
+    }
+
+    /**
+     * @param count number of stores in the payload
+     * @return a json array of stores, about 200 bytes per store
+     */
+    static String stores(int count) {
+        List<Store> stores = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            stores.add(new Store(i));
+        }
+        return new Gson().toJson(stores);
+    }
+
+    /**
+     * Representative payload of the services
+     */
+    static final class Store {
+        long id;
+        String name;
+        String address;
+        double latitude;
+        double longitude;
+        boolean open;
+        List<String> tags;
+
+        Store() {
+        }
+
+        Store(long id) {
+            this.id = id;
+            name = "Store " + id;
+            address = id + " rue de la Republique, 69002 Lyon";
+            latitude = 45.76 + id / 1000d;
+            longitude = 4.83 + id / 1000d;
+            open = id % 2 == 0;
+            tags = Arrays.asList("drive", "parking", "pharmacy");
+        }
+    }
+
+    private static final class NoDelayServerSocketFactory extends ServerSocketFactory {
+
+        @Override
+        public ServerSocket createServerSocket() throws IOException {
+            return new NoDelayServerSocket();
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog, InetAddress address) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static final class NoDelayServerSocket extends ServerSocket {
+
+        NoDelayServerSocket() throws IOException {
+        }
+
+        @Override
+        public Socket accept() throws IOException {
+            Socket socket = super.accept();
+            socket.setTcpNoDelay(true);
+            return socket;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.android.jmaxime.factory.network;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+
+/**
+ * Latency of a response served by the memory cache, by the disk cache and by the network, and of a stale response
+ * served by an offline-first service while it is refreshed in background.
+ */
+@State(Scope.Benchmark)
+public class CacheBenchmark {
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "memory", addCache = true, cacheMaxAge = 3600)
+    interface MemoryService {
+        @GET("stores")
+        Call<ResponseBody> stores();
+    }
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "disk", addCache = true, cacheMaxAge = 3600)
+    interface DiskService {
+        @GET("stores")
+        Call<ResponseBody> stores();
+    }
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "stale", cacheMaxAge = 0, offlineFirst = true)
+    interface OfflineFirstService {
+        @GET("stores")
+        Call<ResponseBody> stores();
+    }
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "network")
+    interface NetworkService {
+        @GET("stores")
+        Call<ResponseBody> stores();
+    }
+
+    private BenchmarkServer mServer;
+    private File mDirectory;
+    private MemoryService mMemory;
+    private DiskService mDisk;
+    private NetworkService mNetwork;
+    private OfflineFirstService mStale;
+
+    @Setup
+    public void setUp() throws IOException {
+        mServer = new BenchmarkServer(BenchmarkServer.stores(50)).start();
+        mDirectory = File.createTempFile("cache", "benchmark");
+        if (!mDirectory.delete() || !mDirectory.mkdir()) {
+            throw new IOException("can not create " + mDirectory);
+        }
+        OkHttpConfiguration configuration = new OkHttpConfiguration.Builder(new OkHttpBuilder(), GsonConverterFactory.create())
+                .cacheDirectory(mDirectory)
+                .memoryCache(1024 * 1024, "memory")
+                .addUrlConfiguration("local", mServer.url())
+                .build();
+        ApiFactory factory = new ApiFactory(configuration);
+        mMemory = factory.create(MemoryService.class);
+        mDisk = factory.create(DiskService.class);
+        mNetwork = factory.create(NetworkService.class);
+        mStale = factory.create(OfflineFirstService.class);
+        memory();
+        disk();
+        stale();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+        delete(mDirectory);
+    }
+
+    @Benchmark
+    public String memory() throws IOException {
+        return mMemory.stores().execute().body().string();
+    }
+
+    @Benchmark
+    public String disk() throws IOException {
+        return mDisk.stores().execute().body().string();
+    }
+
+    @Benchmark
+    public String network() throws IOException {
+        return mNetwork.stores().execute().body().string();
+    }
+
+    @Benchmark
+    public String stale() throws IOException {
+        return mStale.stores().execute().body().string();
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,131 @@
+package com.android.jmaxime.factory.network;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cookie;
+import okhttp3.CookieJar;
+import okhttp3.HttpUrl;
+
+/**
+ * Cookies of a request looked up among 3 cookies per domain ({@code lookup}), and cookie received then saved
+ * ({@code save}), by a jar scanning all its cookies and writing them at each response ("list"), as the
+ * persistent cookie jars commonly used, and by the {@link CookieStore} indexed by domain, writing in background.
+ * <pre>
+ * ./gradlew :benchmarks:jmh -PjmhInclude=CookieBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CookieBenchmark {
+
+    @Param({"list", "store"})
+    public String mJar;
+
+    @Param({"10", "1000"})
+    public int mDomains;
+
+    private File mFile;
+    private CookieJar mCookieJar;
+    private HttpUrl mUrl;
+    private List<Cookie> mReceived;
+
+    @Setup
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("cookies", "benchmark");
+        FileCookiePersistor persistor = new FileCookiePersistor(mFile);
+        mCookieJar = "list".equals(mJar) ? new ListCookieJar(persistor) : new CookieStore(persistor);
+        for (int i = 0; i < mDomains; i++) {
+            HttpUrl url = HttpUrl.parse("https://api.shop" + i + ".example.com/v1/stores");
+            mCookieJar.saveFromResponse(url, Arrays.asList(
+                    Cookie.parse(url, "session=" + i + "; Path=/"),
+                    Cookie.parse(url, "token=" + i + "; Max-Age=3600; Path=/v1"),
+                    Cookie.parse(url, "locale=fr; Max-Age=3600; Domain=shop" + i + ".example.com")));
+        }
+        mUrl = HttpUrl.parse("https://api.shop" + mDomains / 2 + ".example.com/v1/stores");
+        mReceived = Collections.singletonList(Cookie.parse(mUrl, "token=rotated; Max-Age=3600; Path=/v1"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        mFile.delete();
+        new File(mFile.getPath() + ".tmp").delete();
+    }
+
+    @Benchmark
+    public List<Cookie> lookup() {
+        return mCookieJar.loadForRequest(mUrl);
+    }
+
+    @Benchmark
+    public CookieJar save() {
+        mCookieJar.saveFromResponse(mUrl, mReceived);
+        return mCookieJar;
+    }
+
+    /**
+     * All the cookies in one list, written on the calling thread at each change
+     */
+    private static final class ListCookieJar implements CookieJar {
+        private final List<Cookie> mCookies = new ArrayList<>();
+        private final CookieStore.Persistor mPersistor;
+
+        ListCookieJar(CookieStore.Persistor persistor) {
+            mPersistor = persistor;
+        }
+
+        @Override
+        public synchronized void saveFromResponse(HttpUrl url, List<Cookie> cookies) {
+            for (Cookie cookie : cookies) {
+                for (Iterator<Cookie> iterator = mCookies.iterator(); iterator.hasNext(); ) {
+                    Cookie saved = iterator.next();
+                    if (saved.name().equals(cookie.name()) && saved.domain().equals(cookie.domain())
+                            && saved.path().equals(cookie.path()) && saved.hostOnly() == cookie.hostOnly()) {
+                        iterator.remove();
+                    }
+                }
+                mCookies.add(cookie);
+            }
+            try {
+                List<Cookie> persistent = new ArrayList<>();
+                for (Cookie cookie : mCookies) {
+                    if (cookie.persistent()) {
+                        persistent.add(cookie);
+                    }
+                }
+                mPersistor.save(persistent);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public synchronized List<Cookie> loadForRequest(HttpUrl url) {
+            long now = System.currentTimeMillis();
+            List<Cookie> cookies = new ArrayList<>();
+            for (Iterator<Cookie> iterator = mCookies.iterator(); iterator.hasNext(); ) {
+                Cookie cookie = iterator.next();
+                if (cookie.expiresAt() <= now) {
+                    iterator.remove();
+                } else if (cookie.matches(url)) {
+                    cookies.add(cookie);
+                }
+            }
+            return cookies;
+        }
+    }
+}
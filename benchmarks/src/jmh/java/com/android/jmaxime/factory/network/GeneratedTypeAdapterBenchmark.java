@@ -0,0 +1,127 @@
+package com.android.jmaxime.factory.network;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import retrofit2.Converter;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+/**
+ * Parsing of a json array of stores by the converter of a tag registered with a Gson: reflective adapters of
+ * {@link GsonConverterFactory} against the adapters generated by the factory-compiler processor, registered in the Gson.
+ * <ul>
+ * <li>{@code firstCall*}: a new JVM per measure with a Gson already created, creation of the converter
+ * and parsing of one store, class loading included (single shot, 20 forks)</li>
+ * <li>{@code steadyState*}: parsing of 1 and 1000 stores (about 200 bytes and 200 KB) with a warm converter</li>
+ * </ul>
+ * <pre>
+ * ./gradlew :benchmarks:jmh -PjmhInclude=GeneratedTypeAdapterBenchmark
+ * </pre>
+ */
+public class GeneratedTypeAdapterBenchmark {
+    private static final MediaType JSON = MediaType.parse("application/json");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Type STORES = new TypeToken<List<BenchmarkServer.Store>>() {}.getType();
+    /**
+     * Literal: serializing it with Gson would load the reflective adapters before the first call
+     */
+    private static final byte[] ONE_STORE = ("[{\"id\":1,\"name\":\"Store 1\",\"address\":\"1 rue de la Republique, 69002 Lyon\","
+            + "\"latitude\":45.761,\"longitude\":4.831,\"open\":false,\"tags\":[\"drive\",\"parking\",\"pharmacy\"]}]").getBytes(UTF_8);
+
+    /**
+     * Gson of the application, created before the first call
+     */
+    @State(Scope.Benchmark)
+    public static class FirstCall {
+        private Gson mGson;
+        private Gson mGeneratedGson;
+
+        @Setup
+        public void setUp() {
+            mGson = new Gson();
+            mGeneratedGson = generatedGson();
+        }
+    }
+
+    /**
+     * Warm converters, only created by the steady state benchmarks
+     */
+    @State(Scope.Benchmark)
+    public static class Converters {
+        @Param({"1", "1000"})
+        public int mStores;
+
+        private byte[] mBody;
+        private Converter<ResponseBody, ?> mReflective;
+        private Converter<ResponseBody, ?> mGenerated;
+
+        @Setup
+        public void setUp() {
+            mBody = BenchmarkServer.stores(mStores).getBytes(UTF_8);
+            mReflective = GsonConverterFactory.create(new Gson()).responseBodyConverter(STORES, new Annotation[0], null);
+            mGenerated = GsonConverterFactory.create(generatedGson()).responseBodyConverter(STORES, new Annotation[0], null);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(20)
+    public Object firstCallReflective(FirstCall firstCall) throws IOException {
+        return GsonConverterFactory.create(firstCall.mGson).responseBodyConverter(STORES, new Annotation[0], null)
+                .convert(ResponseBody.create(JSON, ONE_STORE));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(20)
+    public Object firstCallGenerated(FirstCall firstCall) throws IOException {
+        return GsonConverterFactory.create(firstCall.mGeneratedGson).responseBodyConverter(STORES, new Annotation[0], null)
+                .convert(ResponseBody.create(JSON, ONE_STORE));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Object steadyStateReflective(Converters converters) throws IOException {
+        return converters.mReflective.convert(ResponseBody.create(JSON, converters.mBody));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Object steadyStateGenerated(Converters converters) throws IOException {
+        return converters.mGenerated.convert(ResponseBody.create(JSON, converters.mBody));
+    }
+
+    private static Gson generatedGson() {
+        return new GsonBuilder().registerTypeAdapterFactory(GeneratedTypeAdapters.factory()).create();
+    }
+}
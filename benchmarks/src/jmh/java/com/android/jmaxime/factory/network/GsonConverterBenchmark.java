@@ -0,0 +1,53 @@
+package com.android.jmaxime.factory.network;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.List;
+
+import retrofit2.Call;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+
+/**
+ * Throughput of the Gson converter for payloads of 1, 50 and 1000 stores (about 200 bytes, 10 KB and 200 KB).
+ */
+@State(Scope.Benchmark)
+public class GsonConverterBenchmark {
+
+    @ApiKeyService(baseUrlName = "local")
+    interface StoresService {
+        @GET("stores")
+        Call<List<BenchmarkServer.Store>> stores();
+    }
+
+    @Param({"1", "50", "1000"})
+    public int mStores;
+
+    private BenchmarkServer mServer;
+    private StoresService mService;
+
+    @Setup
+    public void setUp() throws IOException {
+        mServer = new BenchmarkServer(BenchmarkServer.stores(mStores)).start();
+        OkHttpConfiguration configuration = new OkHttpConfiguration.Builder(new OkHttpBuilder(), GsonConverterFactory.create())
+                .addUrlConfiguration("local", mServer.url())
+                .build();
+        mService = new ApiFactory(configuration).create(StoresService.class);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Benchmark
+    public List<BenchmarkServer.Store> stores() throws IOException {
+        return mService.stores().execute().body();
+    }
+}
@@ -0,0 +1,102 @@
+package com.android.jmaxime.factory.network;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Api key, User-Agent and Accept-Language headers added by one interceptor each, rebuilding the request every time
+ * ("interceptors"), or by the compiled {@link HeaderPolicy} ("policy"), compared to no header ("none").
+ * The request is sent without headers ("bare") or with all of them already ("preset"), the chain ends with an
+ * interceptor answering at once: time per call and bytes allocated per call ({@code gc.alloc.rate.norm}).
+ * <pre>
+ * ./gradlew :benchmarks:jmh -PjmhInclude=HeaderBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HeaderBenchmark {
+    private static final ResponseBody EMPTY = ResponseBody.create(MediaType.parse("text/plain"), "");
+    private static final HeaderPolicy.Provider LANGUAGE = new HeaderPolicy.Provider() {
+        @Override
+        public String value(Request request) {
+            return "fr-FR";
+        }
+    };
+
+    @Param({"none", "interceptors", "policy"})
+    public String mHeaders;
+
+    @Param({"bare", "preset"})
+    public String mRequest;
+
+    private OkHttpClient mClient;
+    private Request mCall;
+
+    @Setup
+    public void setUp() {
+        OkHttpClient.Builder builder = new OkHttpClient.Builder();
+        if ("interceptors".equals(mHeaders)) {
+            builder.addInterceptor(header("X-Api-Key", null, "key"));
+            builder.addInterceptor(header("User-Agent", null, "stores-android/1.2"));
+            builder.addInterceptor(header("Accept-Language", LANGUAGE, null));
+        } else if ("policy".equals(mHeaders)) {
+            builder.addInterceptor(HeaderInterceptor.of(new HeaderPolicy.Builder()
+                    .header("User-Agent", "stores-android/1.2")
+                    .header("Accept-Language", LANGUAGE)
+                    .build(), null, "key", null, null));
+        }
+        builder.addInterceptor(new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) {
+                return new Response.Builder()
+                        .request(chain.request())
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(200)
+                        .message("OK")
+                        .body(EMPTY)
+                        .build();
+            }
+        });
+        mClient = builder.build();
+        Request.Builder call = new Request.Builder().url("https://stores.example.com/stores");
+        if ("preset".equals(mRequest)) {
+            call.header("X-Api-Key", "key").header("User-Agent", "stores-android/1.2").header("Accept-Language", "fr-FR");
+        }
+        mCall = call.build();
+    }
+
+    @Benchmark
+    public int call() throws IOException {
+        return mClient.newCall(mCall).execute().code();
+    }
+
+    /**
+     * Interceptor of one header, as written before the header policy
+     */
+    private static Interceptor header(final String name, final HeaderPolicy.Provider provider, final String value) {
+        return new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                Request request = chain.request();
+                return chain.proceed(request.newBuilder()
+                        .header(name, provider == null ? value : provider.value(request))
+                        .build());
+            }
+        };
+    }
+}
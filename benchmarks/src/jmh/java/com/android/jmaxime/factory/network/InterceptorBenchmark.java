@@ -0,0 +1,63 @@
+package com.android.jmaxime.factory.network;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.logging.HttpLoggingInterceptor;
+
+/**
+ * Cost of each interceptor of the library on a call, compared to the call without interceptor ("none").
+ */
+@State(Scope.Benchmark)
+public class InterceptorBenchmark {
+
+    @Param({"none", "apiKey", "cacheRewrite", "logging"})
+    public String mInterceptor;
+
+    private BenchmarkServer mServer;
+    private OkHttpClient mClient;
+    private Request mRequest;
+
+    @Setup
+    public void setUp() throws IOException {
+        mServer = new BenchmarkServer(BenchmarkServer.stores(10)).start();
+        OkHttpBuilder builder = new OkHttpBuilder();
+        if ("apiKey".equals(mInterceptor)) {
+            builder.apiKey("key");
+        } else if ("cacheRewrite".equals(mInterceptor)) {
+            builder.addNetworkInterceptor(CachePolicyInterceptor.network(CacheRule.LEGACY));
+        } else if ("logging".equals(mInterceptor)) {
+            builder.addInterceptor(new HttpLoggingInterceptor(new HttpLoggingInterceptor.Logger() {
+                @Override
+                public void log(String message) {
+                }
+            }).setLevel(HttpLoggingInterceptor.Level.BASIC));
+        }
+        mClient = builder.build();
+        mRequest = new Request.Builder().url(mServer.url() + "stores").build();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Benchmark
+    public String call() throws IOException {
+        Response response = mClient.newCall(mRequest).execute();
+        try {
+            return response.body().string();
+        } finally {
+            response.close();
+        }
+    }
+}
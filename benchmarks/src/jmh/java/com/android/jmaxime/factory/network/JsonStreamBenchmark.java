@@ -0,0 +1,189 @@
+package com.android.jmaxime.factory.network;
+
+import com.google.gson.Gson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.Okio;
+import okio.Source;
+import okio.Timeout;
+import retrofit2.Call;
+import retrofit2.adapter.rxjava.RxJavaCallAdapterFactory;
+import retrofit2.http.GET;
+import retrofit2.http.Streaming;
+import rx.Observable;
+import rx.Subscriber;
+
+/**
+ * Peak heap and time to read a json array of 100 MB of stores (about 500 000 items): materialized in a list by
+ * the Gson converter, read item by item with a {@link JsonStream}, and emitted one at a time by an {@link Observable}.
+ * The body is generated by an interceptor while it is read, it never sits in memory: the peak heap
+ * ({@link PeakHeapCounters}) only holds what the converter keeps.
+ * <pre>
+ * ./gradlew :benchmarks:jmh -PjmhInclude=JsonStreamBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class JsonStreamBenchmark {
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "catalogue")
+    interface CatalogueService {
+        @GET("stores")
+        Call<List<BenchmarkServer.Store>> list();
+
+        @GET("stores")
+        Call<JsonStream<BenchmarkServer.Store>> stream();
+
+        @Streaming
+        @GET("stores")
+        Observable<BenchmarkServer.Store> observe();
+    }
+
+    @Param({"100"})
+    public int mMegabytes;
+
+    private CatalogueService mService;
+
+    @Setup
+    public void setUp() {
+        final long size = mMegabytes * 1024L * 1024L;
+        OkHttpBuilder client = new OkHttpBuilder();
+        client.addInterceptor(new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) {
+                return new Response.Builder()
+                        .request(chain.request())
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(200)
+                        .message("OK")
+                        .body(ResponseBody.create(JSON, -1, Okio.buffer(new StoresSource(size))))
+                        .build();
+            }
+        });
+        OkHttpConfiguration configuration = new OkHttpConfiguration.Builder(client, JsonStreamConverterFactory.create())
+                .addUrlConfiguration("local", "http://localhost/")
+                .registerCallAdapter(JsonStreamCallAdapterFactory.create(RxJavaCallAdapterFactory.create()), "catalogue")
+                .build();
+        mService = new ApiFactory(configuration).create(CatalogueService.class);
+    }
+
+    @Benchmark
+    public int list(PeakHeapCounters counters) throws IOException {
+        List<BenchmarkServer.Store> stores = mService.list().execute().body();
+        counters.record();
+        return stores.size();
+    }
+
+    @Benchmark
+    public void stream(PeakHeapCounters counters, Blackhole blackhole) throws IOException {
+        JsonStream<BenchmarkServer.Store> stores = mService.stream().execute().body();
+        try {
+            while (stores.hasNext()) {
+                blackhole.consume(stores.next());
+            }
+        } finally {
+            stores.close();
+        }
+        counters.record();
+    }
+
+    @Benchmark
+    public void observable(PeakHeapCounters counters, final Blackhole blackhole) {
+        mService.observe().subscribe(new Subscriber<BenchmarkServer.Store>() {
+            @Override
+            public void onStart() {
+                request(1);
+            }
+
+            @Override
+            public void onNext(BenchmarkServer.Store store) {
+                blackhole.consume(store);
+                request(1);
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        counters.record();
+    }
+
+    /**
+     * Json array of stores generated while it is read, until the given size
+     */
+    private static final class StoresSource implements Source {
+        private static final Charset UTF_8 = Charset.forName("UTF-8");
+        private final Gson mGson = new Gson();
+        private final Buffer mPending = new Buffer();
+        private final long mSize;
+        private long mWritten;
+        private long mNextId;
+        private boolean mEnded;
+
+        StoresSource(long size) {
+            mSize = size;
+            mPending.writeUtf8("[");
+        }
+
+        @Override
+        public long read(Buffer sink, long byteCount) {
+            while (mPending.size() < byteCount && !mEnded) {
+                if (mWritten + mPending.size() >= mSize) {
+                    mPending.writeUtf8("]");
+                    mEnded = true;
+                } else {
+                    mPending.writeString((mNextId == 0 ? "" : ",") + mGson.toJson(new BenchmarkServer.Store(mNextId++)), UTF_8);
+                }
+            }
+            if (mPending.size() == 0) {
+                return -1;
+            }
+            long read = Math.min(byteCount, mPending.size());
+            sink.write(mPending, read);
+            mWritten += read;
+            return read;
+        }
+
+        @Override
+        public Timeout timeout() {
+            return Timeout.NONE;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.android.jmaxime.factory.network;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.logging.HttpLoggingInterceptor;
+
+/**
+ * Upload and download of json arrays of 10 or 1000 stores (about 1.6 KB or 170 KB each way) without logging ("none"),
+ * logged by {@link HttpLoggingInterceptor} at {@link HttpLoggingInterceptor.Level#BODY} ("body"), and by the
+ * {@link LoggingPolicy} of the library logging every call ("policy") or one call out of ten ("sampled"), with bodies
+ * up to 8 KB: time per call and bytes allocated per call ({@code gc.alloc.rate.norm}).
+ * <pre>
+ * ./gradlew :benchmarks:jmh -PjmhInclude=LoggingBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+public class LoggingBenchmark {
+    private static final MediaType JSON = MediaType.parse("application/json");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Param({"10", "1000"})
+    public int mStores;
+
+    @Param({"none", "body", "policy", "sampled"})
+    public String mLogging;
+
+    private volatile long mLoggedChars;
+    private BenchmarkServer mServer;
+    private OkHttpClient mClient;
+    private Request mRequest;
+
+    @Setup
+    public void setUp() throws IOException {
+        String stores = BenchmarkServer.stores(mStores);
+        mServer = new BenchmarkServer(stores).start();
+        HttpLoggingInterceptor.Logger logger = new HttpLoggingInterceptor.Logger() {
+            @Override
+            public void log(String message) {
+                mLoggedChars += message.length();
+            }
+        };
+        OkHttpBuilder builder = new OkHttpBuilder();
+        if ("body".equals(mLogging)) {
+            builder.addInterceptor(new HttpLoggingInterceptor(logger).setLevel(HttpLoggingInterceptor.Level.BODY));
+        } else if ("policy".equals(mLogging)) {
+            builder.logging(new LoggingPolicy.Builder().logger(logger).build());
+        } else if ("sampled".equals(mLogging)) {
+            builder.logging(new LoggingPolicy.Builder().sampleRate(0.1).logger(logger).build());
+        }
+        mClient = builder.build();
+        mRequest = new Request.Builder()
+                .url(mServer.url() + "stores")
+                .post(RequestBody.create(JSON, stores.getBytes(UTF_8)))
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Benchmark
+    public String call() throws IOException {
+        Response response = mClient.newCall(mRequest).execute();
+        try {
+            return response.body().string();
+        } finally {
+            response.close();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.android.jmaxime.factory.network;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+/**
+ * Overhead of {@link OkHttpConfiguration.Builder#collectNetworkMetrics()} on a call,
+ * and cost of a record in a {@link LatencyHistogram}.
+ */
+@State(Scope.Benchmark)
+public class NetworkMetricsBenchmark {
+
+    @Param({"false", "true"})
+    public boolean mCollect;
+
+    private BenchmarkServer mServer;
+    private OkHttpClient mClient;
+    private Request mRequest;
+    private final LatencyHistogram mHistogram = new LatencyHistogram();
+    private long mDuration;
+
+    @Setup
+    public void setUp() throws IOException {
+        mServer = new BenchmarkServer(BenchmarkServer.stores(10)).start();
+        OkHttpConfiguration.Builder builder = new OkHttpConfiguration.Builder(new OkHttpBuilder(), GsonConverterFactory.create());
+        if (mCollect) {
+            builder.collectNetworkMetrics();
+        }
+        mClient = builder.build().create("stores", null, -1, false, false);
+        mRequest = new Request.Builder().url(mServer.url() + "stores").build();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Benchmark
+    public String call() throws IOException {
+        Response response = mClient.newCall(mRequest).execute();
+        try {
+            return response.body().string();
+        } finally {
+            response.close();
+        }
+    }
+
+    @Benchmark
+    public void record() {
+        mHistogram.record(mDuration);
+        mDuration = (mDuration + 7919) & 0xFFFFFFF;
+    }
+}
@@ -0,0 +1,45 @@
+package com.android.jmaxime.factory.network;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import okhttp3.OkHttpClient;
+import okhttp3.logging.HttpLoggingInterceptor;
+
+/**
+ * Cost of the derivation of a client from a registered template.
+ */
+@State(Scope.Benchmark)
+public class OkHttpBuilderBenchmark {
+    private OkHttpBuilder mTemplate;
+    private ClientSpec mSpec;
+
+    @Setup
+    public void setUp() {
+        OkHttpBuilder builder = new OkHttpBuilder()
+                .apiKey("key")
+                .loggingLevel(HttpLoggingInterceptor.Level.NONE);
+        mTemplate = builder.template(new OkHttpClient());
+        mSpec = new ClientSpec()
+                .apiKey("service")
+                .timeOut(10)
+                .memoryCache(new MemoryCache(1024 * 1024));
+    }
+
+    @Benchmark
+    public OkHttpClient.Builder originalBuilder() {
+        return mTemplate.originalBuilder();
+    }
+
+    @Benchmark
+    public OkHttpClient build() {
+        return mTemplate.build();
+    }
+
+    @Benchmark
+    public OkHttpClient buildService() {
+        return mTemplate.build(mSpec);
+    }
+}
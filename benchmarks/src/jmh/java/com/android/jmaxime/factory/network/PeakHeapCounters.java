@@ -0,0 +1,55 @@
+package com.android.jmaxime.factory.network;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+ * Peak heap of a call ({@code peakHeapMegabytes}): sum of the peaks of the heap pools, reset after a gc before
+ * each call, for the last call of the iteration. The gc profiler only gives the bytes allocated, not what is kept.
+ * <p>
+ * JMH adds up the EVENTS counters of the measurement iterations, so each iteration reports its share of its peak:
+ * the reported value is the average peak.
+ * </p>
+ */
+@AuxCounters(AuxCounters.Type.EVENTS)
+@State(Scope.Thread)
+public class PeakHeapCounters {
+    public double peakHeapMegabytes;
+    private int mIterations;
+
+    @Setup(Level.Iteration)
+    public void iteration(BenchmarkParams params) {
+        mIterations = params.getMeasurement().getCount();
+    }
+
+    @Setup(Level.Invocation)
+    public void reset() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * To call at the end of the measured call
+     */
+    void record() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        peakHeapMegabytes = peak / (1024d * 1024d) / mIterations;
+    }
+}
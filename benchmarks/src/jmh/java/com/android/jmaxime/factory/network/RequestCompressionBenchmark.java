@@ -0,0 +1,97 @@
+package com.android.jmaxime.factory.network;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.GzipSource;
+import retrofit2.Call;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.Body;
+import retrofit2.http.POST;
+
+/**
+ * Upload of json arrays of 5 to 5000 stores (about 800 bytes to 850 KB) sent as is or compressed with gzip, to a server
+ * decompressing them: time per call, the body being compressed by the calling thread. The bytes on the wire do not
+ * depend on the run, they are printed once at the end of the trial.
+ * <pre>
+ * ./gradlew :benchmarks:jmh -PjmhInclude=RequestCompressionBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+public class RequestCompressionBenchmark {
+    private static final MediaType JSON = MediaType.parse("application/json");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "sync")
+    interface SyncService {
+        @POST("stores")
+        Call<ResponseBody> upload(@Body RequestBody stores);
+    }
+
+    @Param({"5", "50", "500", "5000"})
+    public int mStores;
+
+    @Param({"none", "gzip"})
+    public String mEncoding;
+
+    private volatile long mWireBytes;
+    private BenchmarkServer mServer;
+    private SyncService mService;
+    private byte[] mBody;
+
+    @Setup
+    public void setUp() throws IOException {
+        mBody = BenchmarkServer.stores(mStores).getBytes(UTF_8);
+        mServer = new BenchmarkServer(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                mWireBytes = request.getBodySize();
+                try {
+                    Buffer body = request.getBody();
+                    if ("gzip".equals(request.getHeader("Content-Encoding"))) {
+                        Buffer plain = new Buffer();
+                        GzipSource source = new GzipSource(body);
+                        while (source.read(plain, 8192) != -1) {
+                            plain.clear();
+                        }
+                    }
+                } catch (IOException e) {
+                    return new MockResponse().setResponseCode(400);
+                }
+                return new MockResponse();
+            }
+        }).start();
+        OkHttpConfiguration configuration = new OkHttpConfiguration.Builder(new OkHttpBuilder(), GsonConverterFactory.create())
+                .addUrlConfiguration("local", mServer.url())
+                .compressRequests(mEncoding.equals("gzip") ? 0 : -1, "sync")
+                .build();
+        mService = new ApiFactory(configuration).create(SyncService.class);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        System.out.println(mWireBytes + " bytes on the wire for " + mBody.length + " bytes of json (" + mEncoding + ")");
+        mServer.shutdown();
+    }
+
+    @Benchmark
+    public int upload() throws IOException {
+        retrofit2.Response<ResponseBody> response = mService.upload(RequestBody.create(JSON, mBody)).execute();
+        response.body().close();
+        return response.code();
+    }
+}
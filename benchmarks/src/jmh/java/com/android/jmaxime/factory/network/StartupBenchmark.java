@@ -0,0 +1,79 @@
+package com.android.jmaxime.factory.network;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+
+/**
+ * Injection of 50 services at startup, each one with its own client: {@link ApiFactory#create(Class)}
+ * against {@link ApiFactory#createLazy(Class)}, and lazy when only 5 of them are used by the session.
+ */
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+    private static final int SERVICES = 50;
+    private static final int USED_SERVICES = 5;
+
+    interface StoresService {
+        @GET("stores")
+        Call<ResponseBody> stores();
+    }
+
+    private BenchmarkServer mServer;
+    private OkHttpConfiguration mConfiguration;
+    private String[] mTags;
+
+    @Setup
+    public void setUp() throws IOException {
+        mServer = new BenchmarkServer("[]").start();
+        mConfiguration = new OkHttpConfiguration.Builder(new OkHttpBuilder(), GsonConverterFactory.create())
+                .addUrlConfiguration("local", mServer.url())
+                .build();
+        mTags = new String[SERVICES];
+        for (int i = 0; i < SERVICES; i++) {
+            mTags[i] = "service" + i;
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Benchmark
+    public void eager(Blackhole blackhole) {
+        ApiFactory factory = new ApiFactory(mConfiguration);
+        for (String tag : mTags) {
+            blackhole.consume(factory.create(StoresService.class, "local", null, tag, -1, false, false));
+        }
+    }
+
+    @Benchmark
+    public void lazy(Blackhole blackhole) {
+        ApiFactory factory = new ApiFactory(mConfiguration);
+        for (String tag : mTags) {
+            blackhole.consume(factory.createLazy(StoresService.class, "local", null, tag, -1, false, false));
+        }
+    }
+
+    @Benchmark
+    public void lazyUsingFive(Blackhole blackhole) {
+        ApiFactory factory = new ApiFactory(mConfiguration);
+        for (int i = 0; i < mTags.length; i++) {
+            StoresService service = factory.createLazy(StoresService.class, "local", null, mTags[i], -1, false, false);
+            if (i < USED_SERVICES) {
+                blackhole.consume(service.stores());
+            }
+            blackhole.consume(service);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.android.jmaxime.factory.network;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.ResponseBody;
+import okhttp3.internal.tls.SslClient;
+import retrofit2.Call;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+
+/**
+ * Latency of the first request of a service against a TLS server, each invocation with a new
+ * connection pool: without warm-up (dns, TCP, TLS handshake and client creation on the request)
+ * and after {@link ApiFactory#warmUp(Class[])}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@Warmup(iterations = 10)
+@Measurement(iterations = 50)
+public class WarmUpBenchmark {
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "stores")
+    interface StoresService {
+        @GET("stores")
+        Call<ResponseBody> stores();
+    }
+
+    @Param({"false", "true"})
+    public boolean mWarmUp;
+
+    private BenchmarkServer mServer;
+    private SslClient mSslClient;
+    private OkHttpClient mRoot;
+    private ApiFactory mFactory;
+
+    @Setup(Level.Trial)
+    public void startServer() throws IOException, GeneralSecurityException {
+        mSslClient = BenchmarkServer.localhost();
+        mServer = new BenchmarkServer("[]").useHttps(mSslClient).start();
+    }
+
+    @Setup(Level.Invocation)
+    public void setUp() throws InterruptedException {
+        mRoot = new OkHttpClient.Builder()
+                .sslSocketFactory(mSslClient.socketFactory, mSslClient.trustManager)
+                .build();
+        OkHttpConfiguration configuration = new OkHttpConfiguration.Builder(mRoot, GsonConverterFactory.create())
+                .addUrlConfiguration("local", mServer.url())
+                .build();
+        mFactory = new ApiFactory(configuration);
+        if (mWarmUp && !mFactory.warmUp(StoresService.class).await(5, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("warm-up timed out");
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        mRoot.connectionPool().evictAll();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Benchmark
+    public String firstRequest() throws IOException {
+        return mFactory.create(StoresService.class).stores().execute().body().string();
+    }
+}
@@ -0,0 +1,340 @@
+package com.android.jmaxime.factory.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates, for each package with services annotated by ApiKeyService, an ApiKeyServiceRegistry
+ * giving their metadata without reflection (OkHttpConfiguration.Builder#registerServices).
+ * <p>
+ * Options, comma separated, to check the names at compile time:
+ * <ul>
+ * <li>{@value #OPTION_BASE_URL_NAMES}: base url names of the configuration</li>
+ * <li>{@value #OPTION_API_KEY_NAMES}: api key names of the configuration</li>
+ * </ul>
+ * The option {@value #OPTION_TYPE_ADAPTERS}=true generates the Gson adapters of the models of the services
+ * (ApiKeyServiceTypeAdapters, see {@link ModelAdapters}).
+ * </p>
+ */
+public final class ApiKeyServiceProcessor extends AbstractProcessor {
+    static final String API_KEY_SERVICE = "com.android.jmaxime.factory.network.ApiKeyService";
+    static final String REGISTRY_NAME = "ApiKeyServiceRegistry";
+    static final String OPTION_BASE_URL_NAMES = "apiFactory.baseUrlNames";
+    static final String OPTION_API_KEY_NAMES = "apiFactory.apiKeyNames";
+    static final String OPTION_TYPE_ADAPTERS = "apiFactory.typeAdapters";
+    /**
+     * Attributes of ApiKeyService, in the order of the generated builder calls
+     */
+    private static final List<String> ATTRIBUTES = Arrays.asList("apiKeyName", "apiKeyHeader", "tagApiName", "timeOut", "addCache",
+            "allowCookies", "cacheMaxAge", "staleWhileRevalidate", "staleIfError", "forceNetwork",
+            "offlineFirst", "coalesceRequests", "maxRetries");
+
+    private final Set<String> mGeneratedPackages = new HashSet<>();
+    private final Set<String> mAdapterPackages = new HashSet<>();
+    private ModelAdapters mModels;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        if (Boolean.parseBoolean(processingEnv.getOptions().get(OPTION_TYPE_ADAPTERS))) {
+            mModels = new ModelAdapters(processingEnv);
+        }
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(API_KEY_SERVICE);
+    }
+
+    @Override
+    public Set<String> getSupportedOptions() {
+        return new HashSet<>(Arrays.asList(OPTION_BASE_URL_NAMES, OPTION_API_KEY_NAMES, OPTION_TYPE_ADAPTERS));
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement annotation = processingEnv.getElementUtils().getTypeElement(API_KEY_SERVICE);
+        if (annotation == null || roundEnv.processingOver()) {
+            return false;
+        }
+        Set<String> baseUrlNames = option(OPTION_BASE_URL_NAMES);
+        Set<String> apiKeyNames = option(OPTION_API_KEY_NAMES);
+        Map<String, List<Service>> packages = new TreeMap<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+            if (element.getKind() == ElementKind.PARAMETER) {
+                continue;
+            }
+            Service service = read((TypeElement) element, annotation);
+            if (service == null || !validate(service, baseUrlNames, apiKeyNames)) {
+                continue;
+            }
+            String packageName = processingEnv.getElementUtils().getPackageOf(element).getQualifiedName().toString();
+            List<Service> services = packages.get(packageName);
+            if (services == null) {
+                services = new ArrayList<>();
+                packages.put(packageName, services);
+            }
+            services.add(service);
+            if (mModels != null) {
+                mModels.collect(service.mElement);
+            }
+        }
+        for (Map.Entry<String, List<Service>> entry : packages.entrySet()) {
+            if (!mGeneratedPackages.add(entry.getKey())) {
+                error(entry.getValue().get(0), REGISTRY_NAME + " of " + entry.getKey() + " already generated in a previous round");
+                continue;
+            }
+            write(entry.getKey(), entry.getValue());
+        }
+        if (mModels != null) {
+            for (Map.Entry<String, List<ModelAdapters.Model>> entry : mModels.take().entrySet()) {
+                if (!mAdapterPackages.add(entry.getKey())) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, ModelAdapters.ADAPTERS_NAME + " of "
+                            + entry.getKey() + " already generated in a previous round", entry.getValue().get(0).mElement);
+                    continue;
+                }
+                writeAdapters(entry.getKey(), entry.getValue());
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the service, null if the annotated element can not be a Retrofit service
+     */
+    private Service read(TypeElement element, TypeElement annotation) {
+        if (element.getKind() != ElementKind.INTERFACE) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "@ApiKeyService is only allowed on interfaces", element);
+            return null;
+        }
+        for (Element enclosing = element; enclosing instanceof TypeElement; enclosing = enclosing.getEnclosingElement()) {
+            if (enclosing.getModifiers().contains(Modifier.PRIVATE)) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "@ApiKeyService services must not be private", element);
+                return null;
+            }
+        }
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (mirror.getAnnotationType().asElement().equals(annotation)) {
+                return new Service(element, mirror,
+                        processingEnv.getElementUtils().getElementValuesWithDefaults(mirror));
+            }
+        }
+        return null;
+    }
+
+    private boolean validate(Service service, Set<String> baseUrlNames, Set<String> apiKeyNames) {
+        boolean valid = true;
+        String baseUrlName = (String) service.value("baseUrlName");
+        if (baseUrlNames != null && !baseUrlName.startsWith("http") && !baseUrlNames.contains(baseUrlName)) {
+            error(service, "unknown base url name \"" + baseUrlName + "\", declared in " + OPTION_BASE_URL_NAMES + ": " + baseUrlNames);
+            valid = false;
+        }
+        String apiKeyName = (String) service.value("apiKeyName");
+        if (apiKeyNames != null && !apiKeyName.isEmpty() && !apiKeyNames.contains(apiKeyName)) {
+            error(service, "unknown api key name \"" + apiKeyName + "\", declared in " + OPTION_API_KEY_NAMES + ": " + apiKeyNames);
+            valid = false;
+        }
+        if ((Integer) service.value("timeOut") < -1) {
+            error(service, "timeOut must be -1 (default) or a number of seconds");
+            valid = false;
+        }
+        if ((Integer) service.value("maxRetries") < -1) {
+            error(service, "maxRetries must be -1 (default), 0 or a number of retries");
+            valid = false;
+        }
+        return valid;
+    }
+
+    private void write(String packageName, List<Service> services) {
+        Collections.sort(services, new Comparator<Service>() {
+            @Override
+            public int compare(Service a, Service b) {
+                return a.mName.compareTo(b.mName);
+            }
+        });
+        String name = packageName.isEmpty() ? REGISTRY_NAME : packageName + "." + REGISTRY_NAME;
+        Element[] origins = new Element[services.size()];
+        for (int i = 0; i < origins.length; i++) {
+            origins[i] = services.get(i).mElement;
+        }
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(name, origins);
+            Writer writer = file.openWriter();
+            try {
+                writer.write(source(packageName, services));
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "can not write " + name + ": " + e.getMessage());
+        }
+    }
+
+    private void writeAdapters(String packageName, List<ModelAdapters.Model> models) {
+        String name = packageName.isEmpty() ? ModelAdapters.ADAPTERS_NAME : packageName + "." + ModelAdapters.ADAPTERS_NAME;
+        Element[] origins = new Element[models.size()];
+        for (int i = 0; i < origins.length; i++) {
+            origins[i] = models.get(i).mElement;
+        }
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(name, origins);
+            Writer writer = file.openWriter();
+            try {
+                writer.write(ModelAdapters.source(packageName, models));
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "can not write " + name + ": " + e.getMessage());
+        }
+    }
+
+    static String source(String packageName, List<Service> services) {
+        StringBuilder source = new StringBuilder();
+        source.append("// Generated by ").append(ApiKeyServiceProcessor.class.getSimpleName()).append(", do not edit\n");
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("import com.android.jmaxime.factory.network.ServiceMetadata;\n")
+                .append("import com.android.jmaxime.factory.network.ServiceRegistry;\n\n")
+                .append("import java.util.HashMap;\n")
+                .append("import java.util.Map;\n\n")
+                .append("public final class ").append(REGISTRY_NAME).append(" implements ServiceRegistry {\n")
+                .append("    private static final Map<Class<?>, ServiceMetadata> SERVICES = new HashMap<>(")
+                .append(services.size() * 2).append(");\n\n")
+                .append("    static {\n");
+        for (Service service : services) {
+            source.append("        SERVICES.put(").append(service.mName).append(".class, new ServiceMetadata.Builder(")
+                    .append(literal(service.value("baseUrlName"))).append(")");
+            for (String attribute : ATTRIBUTES) {
+                if (!service.isDefault(attribute)) {
+                    source.append("\n                .").append(attribute).append("(")
+                            .append(literal(service.value(attribute))).append(")");
+                }
+            }
+            source.append("\n                .build());\n");
+        }
+        source.append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public ServiceMetadata get(Class<?> service) {\n")
+                .append("        return SERVICES.get(service);\n")
+                .append("    }\n")
+                .append("}\n");
+        return source.toString();
+    }
+
+    /**
+     * @return the java literal of the value. The other control characters are written as unicode escapes,
+     * but not the line terminators: javac reads their unicode escape as the end of the line
+     */
+    static String literal(Object value) {
+        if (!(value instanceof String)) {
+            return String.valueOf(value);
+        }
+        StringBuilder literal = new StringBuilder("\"");
+        for (char c : ((String) value).toCharArray()) {
+            switch (c) {
+                case '"':
+                    literal.append("\\\"");
+                    break;
+                case '\\':
+                    literal.append("\\\\");
+                    break;
+                case '\n':
+                    literal.append("\\n");
+                    break;
+                case '\r':
+                    literal.append("\\r");
+                    break;
+                case '\t':
+                    literal.append("\\t");
+                    break;
+                default:
+                    if (Character.isISOControl(c) || c == '\u2028' || c == '\u2029') {
+                        literal.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        literal.append(c);
+                    }
+            }
+        }
+        return literal.append('"').toString();
+    }
+
+    private Set<String> option(String name) {
+        String value = processingEnv.getOptions().get(name);
+        if (value == null) {
+            return null;
+        }
+        Set<String> names = new LinkedHashSet<>();
+        for (String item : value.split(",")) {
+            if (!item.trim().isEmpty()) {
+                names.add(item.trim());
+            }
+        }
+        return names;
+    }
+
+    private void error(Service service, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, service.mElement, service.mMirror);
+    }
+
+    /**
+     * Annotated interface with the values of its annotation, defaults included
+     */
+    static final class Service {
+        final TypeElement mElement;
+        final AnnotationMirror mMirror;
+        final String mName;
+        private final Map<String, Object> mValues = new TreeMap<>();
+        private final Set<String> mExplicit = new HashSet<>();
+
+        Service(TypeElement element, AnnotationMirror mirror, Map<? extends ExecutableElement, ? extends AnnotationValue> values) {
+            mElement = element;
+            mMirror = mirror;
+            mName = element.getQualifiedName().toString();
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet()) {
+                mValues.put(entry.getKey().getSimpleName().toString(), entry.getValue().getValue());
+            }
+            for (ExecutableElement attribute : mirror.getElementValues().keySet()) {
+                mExplicit.add(attribute.getSimpleName().toString());
+            }
+        }
+
+        Object value(String attribute) {
+            return mValues.get(attribute);
+        }
+
+        boolean isDefault(String attribute) {
+            return !mExplicit.contains(attribute) || !mValues.containsKey(attribute);
+        }
+    }
+}
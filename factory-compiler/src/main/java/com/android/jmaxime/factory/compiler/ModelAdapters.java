@@ -0,0 +1,441 @@
+package com.android.jmaxime.factory.compiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Models of the services (types of the responses and of the {@code @Body} parameters, then the types of
+ * their fields) and the source of their Gson adapters, one ApiKeyServiceTypeAdapters per package of models.
+ * <p>
+ * A model is a concrete, non generic class with a non private constructor without parameters, whose
+ * serialized fields are neither private nor final; the other classes are left to the reflection of Gson.
+ * </p>
+ */
+final class ModelAdapters {
+    static final String ADAPTERS_NAME = "ApiKeyServiceTypeAdapters";
+    private static final String BODY = "retrofit2.http.Body";
+    private static final String SERIALIZED_NAME = "com.google.gson.annotations.SerializedName";
+    private static final String JSON_ADAPTER = "com.google.gson.annotations.JsonAdapter";
+    /**
+     * Packages of the libraries, their classes are never models
+     */
+    private static final List<String> EXCLUDED_PACKAGES = Arrays.asList("java.", "javax.", "android.", "androidx.",
+            "kotlin.", "okhttp3.", "okio.", "retrofit2.", "rx.", "io.reactivex.", "com.google.gson.");
+    private static final Set<String> EXCLUDED_TYPES = Collections.singleton("com.android.jmaxime.factory.network.JsonStream");
+    private static final Map<String, String> BOXED = new HashMap<>();
+
+    static {
+        BOXED.put("java.lang.Boolean", "Boolean");
+        BOXED.put("java.lang.Integer", "Integer");
+        BOXED.put("java.lang.Long", "Long");
+        BOXED.put("java.lang.Short", "Short");
+        BOXED.put("java.lang.Byte", "Byte");
+        BOXED.put("java.lang.Double", "Double");
+        BOXED.put("java.lang.Float", "Float");
+        BOXED.put("java.lang.Character", "Character");
+        BOXED.put("java.lang.String", "String");
+    }
+
+    private final ProcessingEnvironment mEnv;
+    private final Set<String> mVisited = new HashSet<>();
+    private final Map<String, List<Model>> mPackages = new TreeMap<>();
+
+    ModelAdapters(ProcessingEnvironment env) {
+        mEnv = env;
+    }
+
+    /**
+     * Collects the models of the methods of the service
+     */
+    void collect(TypeElement service) {
+        for (ExecutableElement method : ElementFilter.methodsIn(service.getEnclosedElements())) {
+            collect(method.getReturnType());
+            for (VariableElement parameter : method.getParameters()) {
+                if (annotation(parameter, BODY) != null) {
+                    collect(parameter.asType());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the models collected since the last call, by package
+     */
+    Map<String, List<Model>> take() {
+        Map<String, List<Model>> packages = new TreeMap<>(mPackages);
+        mPackages.clear();
+        return packages;
+    }
+
+    private void collect(TypeMirror type) {
+        switch (type.getKind()) {
+            case DECLARED:
+                for (TypeMirror argument : ((DeclaredType) type).getTypeArguments()) {
+                    collect(argument);
+                }
+                model((TypeElement) ((DeclaredType) type).asElement());
+                break;
+            case ARRAY:
+                collect(((ArrayType) type).getComponentType());
+                break;
+            case WILDCARD:
+                if (((WildcardType) type).getExtendsBound() != null) {
+                    collect(((WildcardType) type).getExtendsBound());
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void model(TypeElement element) {
+        String name = element.getQualifiedName().toString();
+        if (!mVisited.add(name) || element.getKind() != ElementKind.CLASS || EXCLUDED_TYPES.contains(name)) {
+            return;
+        }
+        for (String excluded : EXCLUDED_PACKAGES) {
+            if (name.startsWith(excluded)) {
+                return;
+            }
+        }
+        Model model = read(element);
+        if (model == null) {
+            return;
+        }
+        List<Model> models = mPackages.get(model.mPackage);
+        if (models == null) {
+            models = new ArrayList<>();
+            mPackages.put(model.mPackage, models);
+        }
+        models.add(model);
+        for (Property property : model.mProperties) {
+            collect(property.mField.asType());
+        }
+    }
+
+    /**
+     * @return the model, null (with a note) if its adapter can not be generated
+     */
+    private Model read(TypeElement element) {
+        if (element.getModifiers().contains(Modifier.ABSTRACT)) {
+            return skip(element, "abstract class");
+        }
+        if (!element.getTypeParameters().isEmpty()) {
+            return skip(element, "generic class");
+        }
+        if (annotation(element, JSON_ADAPTER) != null) {
+            return skip(element, "class annotated with @JsonAdapter");
+        }
+        for (Element enclosing = element; enclosing instanceof TypeElement; enclosing = enclosing.getEnclosingElement()) {
+            if (enclosing.getModifiers().contains(Modifier.PRIVATE)) {
+                return skip(element, "private class");
+            }
+            if (enclosing.getEnclosingElement() instanceof TypeElement && !enclosing.getModifiers().contains(Modifier.STATIC)) {
+                return skip(element, "inner class");
+            }
+        }
+        boolean constructor = false;
+        for (ExecutableElement candidate : ElementFilter.constructorsIn(element.getEnclosedElements())) {
+            constructor |= candidate.getParameters().isEmpty() && !candidate.getModifiers().contains(Modifier.PRIVATE);
+        }
+        if (!constructor) {
+            return skip(element, "no constructor without parameters");
+        }
+        String packageName = mEnv.getElementUtils().getPackageOf(element).getQualifiedName().toString();
+        Model model = new Model(element, packageName);
+        Set<String> names = new HashSet<>();
+        for (TypeElement type = element; type != null; type = superclass(type)) {
+            boolean samePackage = mEnv.getElementUtils().getPackageOf(type).getQualifiedName().contentEquals(packageName);
+            for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+                Set<Modifier> modifiers = field.getModifiers();
+                if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) {
+                    continue;
+                }
+                String reason = null;
+                if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL)) {
+                    reason = "private or final field " + field.getSimpleName();
+                } else if (!samePackage && !modifiers.contains(Modifier.PUBLIC)) {
+                    reason = "field " + field.getSimpleName() + " not visible from " + packageName;
+                } else if (annotation(field, JSON_ADAPTER) != null) {
+                    reason = "field " + field.getSimpleName() + " annotated with @JsonAdapter";
+                } else if (hasTypeVariable(field.asType())) {
+                    reason = "field " + field.getSimpleName() + " of a generic type";
+                }
+                if (reason != null) {
+                    return skip(element, reason);
+                }
+                Property property = new Property(field, kind(field.asType()));
+                for (String name : property.mNames) {
+                    if (!names.add(name)) {
+                        return skip(element, "several fields named " + name);
+                    }
+                }
+                model.mProperties.add(property);
+            }
+        }
+        return model;
+    }
+
+    private TypeElement superclass(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        TypeElement element = (TypeElement) ((DeclaredType) superclass).asElement();
+        return element.getQualifiedName().contentEquals("java.lang.Object") ? null : element;
+    }
+
+    private static boolean hasTypeVariable(TypeMirror type) {
+        switch (type.getKind()) {
+            case TYPEVAR:
+                return true;
+            case DECLARED:
+                for (TypeMirror argument : ((DeclaredType) type).getTypeArguments()) {
+                    if (hasTypeVariable(argument)) {
+                        return true;
+                    }
+                }
+                return false;
+            case ARRAY:
+                return hasTypeVariable(((ArrayType) type).getComponentType());
+            case WILDCARD:
+                WildcardType wildcard = (WildcardType) type;
+                return (wildcard.getExtendsBound() != null && hasTypeVariable(wildcard.getExtendsBound()))
+                        || (wildcard.getSuperBound() != null && hasTypeVariable(wildcard.getSuperBound()));
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return the name of a primitive, Boolean, Integer... String, null for the types read by another adapter
+     */
+    private static String kind(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return type.getKind().name().toLowerCase(Locale.US);
+        }
+        if (type.getKind() == TypeKind.DECLARED) {
+            return BOXED.get(((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString());
+        }
+        return null;
+    }
+
+    private Model skip(TypeElement element, String reason) {
+        mEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "no generated type adapter for "
+                + element.getQualifiedName() + ": " + reason + ", read by reflection", element);
+        return null;
+    }
+
+    private static AnnotationMirror annotation(Element element, String name) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(name)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    static String source(String packageName, List<Model> models) {
+        StringBuilder source = new StringBuilder();
+        source.append("// Generated by ").append(ApiKeyServiceProcessor.class.getSimpleName()).append(", do not edit\n");
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("import com.android.jmaxime.factory.network.GeneratedTypeAdapters;\n")
+                .append("import com.google.gson.Gson;\n")
+                .append("import com.google.gson.JsonSyntaxException;\n")
+                .append("import com.google.gson.TypeAdapter;\n")
+                .append("import com.google.gson.TypeAdapterFactory;\n")
+                .append("import com.google.gson.reflect.TypeToken;\n")
+                .append("import com.google.gson.stream.JsonReader;\n")
+                .append("import com.google.gson.stream.JsonWriter;\n\n")
+                .append("import java.io.IOException;\n\n")
+                .append("public final class ").append(ADAPTERS_NAME).append(" implements TypeAdapterFactory {\n\n")
+                .append("    @Override\n")
+                .append("    @SuppressWarnings(\"unchecked\")\n")
+                .append("    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {\n")
+                .append("        Class<? super T> raw = type.getRawType();\n");
+        for (Model model : models) {
+            source.append("        if (raw == ").append(model.mName).append(".class) {\n")
+                    .append("            return (TypeAdapter<T>) (TypeAdapter<?>) new ").append(model.mAdapterName).append("(gson);\n")
+                    .append("        }\n");
+        }
+        source.append("        return null;\n")
+                .append("    }\n");
+        for (Model model : models) {
+            adapter(source, model);
+        }
+        return source.append("}\n").toString();
+    }
+
+    private static void adapter(StringBuilder source, Model model) {
+        Map<String, Integer> adapters = new LinkedHashMap<>();
+        for (Property property : model.mProperties) {
+            if (property.mKind == null && !adapters.containsKey(property.mType)) {
+                adapters.put(property.mType, adapters.size());
+            }
+        }
+        source.append("\n    private static final class ").append(model.mAdapterName)
+                .append(" extends TypeAdapter<").append(model.mName).append("> {\n")
+                .append("        private final Gson mGson;\n");
+        for (Map.Entry<String, Integer> adapter : adapters.entrySet()) {
+            source.append("        private TypeAdapter<").append(adapter.getKey()).append("> mAdapter").append(adapter.getValue()).append(";\n");
+        }
+        source.append("\n        ").append(model.mAdapterName).append("(Gson gson) {\n")
+                .append("            mGson = gson;\n")
+                .append("        }\n\n")
+                .append("        @Override\n")
+                .append("        public void write(JsonWriter out, ").append(model.mName).append(" value) throws IOException {\n")
+                .append("            if (value == null) {\n")
+                .append("                out.nullValue();\n")
+                .append("                return;\n")
+                .append("            }\n")
+                .append("            out.beginObject();\n");
+        for (Property property : model.mProperties) {
+            String name = "out.name(" + ApiKeyServiceProcessor.literal(property.mNames.get(0)) + ")";
+            String field = "value." + property.mField.getSimpleName();
+            source.append("            ");
+            if (property.mKind == null) {
+                source.append(name).append(";\n            adapter").append(adapters.get(property.mType))
+                        .append("().write(out, ").append(field).append(");\n");
+            } else if (property.mKind.equals("float")) {
+                source.append(name).append(".value(Float.valueOf(").append(field).append("));\n");
+            } else if (property.mKind.equals("char")) {
+                source.append(name).append(".value(String.valueOf(").append(field).append("));\n");
+            } else if (property.mKind.equals("Boolean") || property.mKind.equals("Character")) {
+                source.append(name).append(";\n            GeneratedTypeAdapters.write").append(property.mKind)
+                        .append("(out, ").append(field).append(");\n");
+            } else {
+                source.append(name).append(".value(").append(field).append(");\n");
+            }
+        }
+        source.append("            out.endObject();\n")
+                .append("        }\n\n")
+                .append("        @Override\n")
+                .append("        public ").append(model.mName).append(" read(JsonReader in) throws IOException {\n")
+                .append("            if (GeneratedTypeAdapters.isNull(in)) {\n")
+                .append("                return null;\n")
+                .append("            }\n")
+                .append("            ").append(model.mName).append(" value = new ").append(model.mName).append("();\n")
+                .append("            try {\n")
+                .append("                in.beginObject();\n")
+                .append("                while (in.hasNext()) {\n")
+                .append("                    switch (in.nextName()) {\n");
+        for (Property property : model.mProperties) {
+            for (String name : property.mNames) {
+                source.append("                        case ").append(ApiKeyServiceProcessor.literal(name)).append(":\n");
+            }
+            String field = "value." + property.mField.getSimpleName();
+            source.append("                            ");
+            if (property.mKind == null) {
+                source.append(field).append(" = adapter").append(adapters.get(property.mType)).append("().read(in);\n");
+            } else if (property.mKind.equals("String") || BOXED.containsValue(property.mKind)) {
+                source.append(field).append(" = GeneratedTypeAdapters.read").append(property.mKind).append("(in);\n");
+            } else {
+                source.append("if (!GeneratedTypeAdapters.isNull(in)) {\n")
+                        .append("                                ").append(field).append(" = GeneratedTypeAdapters.next")
+                        .append(Character.toUpperCase(property.mKind.charAt(0))).append(property.mKind.substring(1)).append("(in);\n")
+                        .append("                            }\n");
+            }
+            source.append("                            break;\n");
+        }
+        source.append("                        default:\n")
+                .append("                            in.skipValue();\n")
+                .append("                    }\n")
+                .append("                }\n")
+                .append("                in.endObject();\n")
+                .append("            } catch (IllegalStateException e) {\n")
+                .append("                throw new JsonSyntaxException(e);\n")
+                .append("            }\n")
+                .append("            return value;\n")
+                .append("        }\n");
+        for (Map.Entry<String, Integer> adapter : adapters.entrySet()) {
+            String type = "TypeAdapter<" + adapter.getKey() + ">";
+            source.append("\n        private ").append(type).append(" adapter").append(adapter.getValue()).append("() {\n")
+                    .append("            ").append(type).append(" adapter = mAdapter").append(adapter.getValue()).append(";\n")
+                    .append("            if (adapter == null) {\n")
+                    .append("                adapter = GeneratedTypeAdapters.adapter(mGson, new TypeToken<").append(adapter.getKey()).append(">() {});\n")
+                    .append("                mAdapter").append(adapter.getValue()).append(" = adapter;\n")
+                    .append("            }\n")
+                    .append("            return adapter;\n")
+                    .append("        }\n");
+        }
+        source.append("    }\n");
+    }
+
+    /**
+     * Class whose adapter is generated
+     */
+    static final class Model {
+        final TypeElement mElement;
+        final String mPackage;
+        final String mName;
+        final String mAdapterName;
+        final List<Property> mProperties = new ArrayList<>();
+
+        Model(TypeElement element, String packageName) {
+            mElement = element;
+            mPackage = packageName;
+            mName = element.getQualifiedName().toString();
+            String simpleName = packageName.isEmpty() ? mName : mName.substring(packageName.length() + 1);
+            mAdapterName = simpleName.replace('.', '_') + "Adapter";
+        }
+    }
+
+    /**
+     * Serialized field: its json name first, then its alternate names
+     */
+    static final class Property {
+        final VariableElement mField;
+        final String mType;
+        final String mKind;
+        final List<String> mNames = new ArrayList<>();
+
+        Property(VariableElement field, String kind) {
+            mField = field;
+            mType = field.asType().toString();
+            mKind = kind;
+            AnnotationMirror serializedName = annotation(field, SERIALIZED_NAME);
+            if (serializedName == null) {
+                mNames.add(field.getSimpleName().toString());
+                return;
+            }
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : serializedName.getElementValues().entrySet()) {
+                String attribute = entry.getKey().getSimpleName().toString();
+                if (attribute.equals("value")) {
+                    mNames.add(0, (String) entry.getValue().getValue());
+                } else if (attribute.equals("alternate")) {
+                    for (Object alternate : (List<?>) entry.getValue().getValue()) {
+                        mNames.add((String) ((AnnotationValue) alternate).getValue());
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.android.jmaxime.factory.compiler;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Scanner;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ApiKeyServiceProcessorTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String NETWORK = "../factory/src/main/java/com/android/jmaxime/factory/network/";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+    private final DiagnosticCollector<JavaFileObject> mDiagnostics = new DiagnosticCollector<>();
+
+    @Test
+    public void generatesARegistryPerPackage() throws Exception {
+        File stores = source("com/example/stores/StoresService.java", "package com.example.stores;\n"
+                + "@com.android.jmaxime.factory.network.ApiKeyService(baseUrlName = \"proxy_v3\", apiKeyName = \"stores\", apiKeyHeader = \"Authorization\", addCache = true, cacheMaxAge = 60)\n"
+                + "public interface StoresService {\n"
+                + "    @com.android.jmaxime.factory.network.ApiKeyService(baseUrlName = \"https://cube.com/\", timeOut = 10)\n"
+                + "    interface CubeService {}\n"
+                + "}\n");
+        File customer = source("com/example/customer/CustomerService.java", "package com.example.customer;\n"
+                + "@com.android.jmaxime.factory.network.ApiKeyService(baseUrlName = \"proxy_v3\", tagApiName = \"customer\")\n"
+                + "interface CustomerService {}\n");
+
+        assertTrue(compile(Arrays.asList("-A" + ApiKeyServiceProcessor.OPTION_BASE_URL_NAMES + "=proxy_v3, interact",
+                "-A" + ApiKeyServiceProcessor.OPTION_API_KEY_NAMES + "=stores"), stores, customer));
+
+        String registry = generated("com/example/stores/ApiKeyServiceRegistry.java");
+        assertTrue(registry, registry.contains("SERVICES.put(com.example.stores.StoresService.class, new ServiceMetadata.Builder(\"proxy_v3\")\n"
+                + "                .apiKeyName(\"stores\")\n"
+                + "                .apiKeyHeader(\"Authorization\")\n"
+                + "                .addCache(true)\n"
+                + "                .cacheMaxAge(60)\n"
+                + "                .build());"));
+        assertTrue(registry, registry.contains("SERVICES.put(com.example.stores.StoresService.CubeService.class, new ServiceMetadata.Builder(\"https://cube.com/\")\n"
+                + "                .timeOut(10)\n"
+                + "                .build());"));
+        assertTrue(generated("com/example/customer/ApiKeyServiceRegistry.java").contains(".tagApiName(\"customer\")"));
+    }
+
+    @Test
+    public void literalsEscapeTheControlCharacters() {
+        assertEquals("\"a\\\"b\\\\c\\r\\n\\t\\u0000\\u001b\\u007f\\u2028\u00e9\"",
+                ApiKeyServiceProcessor.literal("a\"b\\c\r\n\t\u0000\u001b\u007f\u2028\u00e9"));
+        assertEquals("60", ApiKeyServiceProcessor.literal(60));
+    }
+
+    @Test
+    public void unknownNamesFailTheCompilation() throws Exception {
+        File service = source("com/example/StoresService.java", "package com.example;\n"
+                + "@com.android.jmaxime.factory.network.ApiKeyService(baseUrlName = \"proxy_v4\", apiKeyName = \"store\")\n"
+                + "interface StoresService {}\n");
+
+        assertFalse(compile(Arrays.asList("-A" + ApiKeyServiceProcessor.OPTION_BASE_URL_NAMES + "=proxy_v3",
+                "-A" + ApiKeyServiceProcessor.OPTION_API_KEY_NAMES + "=stores"), service));
+
+        List<String> errors = errors();
+        assertEquals(errors.toString(), 2, errors.size());
+        assertTrue(errors.get(0), errors.get(0).startsWith("unknown base url name \"proxy_v4\""));
+        assertTrue(errors.get(1), errors.get(1).startsWith("unknown api key name \"store\""));
+    }
+
+    @Test
+    public void onlyAccessibleInterfacesAreServices() throws Exception {
+        File service = source("com/example/Services.java", "package com.example;\n"
+                + "class Services {\n"
+                + "    @com.android.jmaxime.factory.network.ApiKeyService(baseUrlName = \"proxy_v3\")\n"
+                + "    private interface HiddenService {}\n"
+                + "    @com.android.jmaxime.factory.network.ApiKeyService(baseUrlName = \"proxy_v3\")\n"
+                + "    static class NotAService {}\n"
+                + "}\n");
+
+        assertFalse(compile(Collections.<String>emptyList(), service));
+
+        assertEquals(Arrays.asList("@ApiKeyService services must not be private", "@ApiKeyService is only allowed on interfaces"), errors());
+    }
+
+    @Test
+    public void generatesTheAdaptersOfTheModels() throws Exception {
+        File body = source("retrofit2/http/Body.java", "package retrofit2.http;\n"
+                + "public @interface Body {}\n");
+        File serializedName = source("com/google/gson/annotations/SerializedName.java", "package com.google.gson.annotations;\n"
+                + "public @interface SerializedName { String value(); String[] alternate() default {}; }\n");
+        File models = source("com/example/model/Store.java", "package com.example.model;\n"
+                + "public class Store {\n"
+                + "    @com.google.gson.annotations.SerializedName(value = \"store_name\", alternate = \"name\") public String name;\n"
+                + "    long id;\n"
+                + "    java.util.List<Address> addresses;\n"
+                + "    transient Object cache;\n"
+                + "    public static class Address { double latitude; Boolean open; }\n"
+                + "    public static class Order { int quantity; }\n"
+                + "    public static class Hidden { private int secret; }\n"
+                + "}\n");
+        File service = source("com/example/StoresService.java", "package com.example;\n"
+                + "import com.example.model.Store;\n"
+                + "@com.android.jmaxime.factory.network.ApiKeyService(baseUrlName = \"proxy_v3\")\n"
+                + "interface StoresService {\n"
+                + "    java.util.List<Store> stores();\n"
+                + "    Store.Hidden hidden();\n"
+                + "    void order(@retrofit2.http.Body Store.Order order);\n"
+                + "}\n");
+
+        boolean compiled = compile(Arrays.asList("-proc:only", "-A" + ApiKeyServiceProcessor.OPTION_TYPE_ADAPTERS + "=true"),
+                stubs(body, serializedName, models, service));
+
+        assertTrue(errors().toString(), compiled);
+
+        String adapters = generated("com/example/model/ApiKeyServiceTypeAdapters.java");
+        assertTrue(adapters, adapters.contains("if (raw == com.example.model.Store.class) {\n"
+                + "            return (TypeAdapter<T>) (TypeAdapter<?>) new StoreAdapter(gson);"));
+        assertTrue(adapters, adapters.contains("new Store_AddressAdapter(gson)"));
+        assertTrue(adapters, adapters.contains("new Store_OrderAdapter(gson)"));
+        assertFalse(adapters, adapters.contains("Hidden"));
+        assertFalse(adapters, adapters.contains("cache"));
+        assertTrue(adapters, adapters.contains("out.name(\"store_name\").value(value.name);"));
+        assertTrue(adapters, adapters.contains("                        case \"store_name\":\n"
+                + "                        case \"name\":\n"
+                + "                            value.name = GeneratedTypeAdapters.readString(in);"));
+        assertTrue(adapters, adapters.contains("value.id = GeneratedTypeAdapters.nextLong(in);"));
+        assertTrue(adapters, adapters.contains("value.open = GeneratedTypeAdapters.readBoolean(in);"));
+        assertTrue(adapters, adapters.contains("value.addresses = adapter0().read(in);"));
+        assertTrue(adapters, adapters.contains("new TypeToken<java.util.List<com.example.model.Store.Address>>() {}"));
+        assertTrue(notes().toString(), notes().contains("no generated type adapter for com.example.model.Store.Hidden: "
+                + "private or final field secret, read by reflection"));
+    }
+
+    private boolean compile(List<String> options, File... sources) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(mDiagnostics, null, UTF_8);
+        List<File> files = new ArrayList<>(Arrays.asList(sources));
+        files.add(new File(NETWORK + "ApiKeyService.java"));
+        files.add(new File(NETWORK + "ServiceMetadata.java"));
+        files.add(new File(NETWORK + "ServiceRegistry.java"));
+        List<String> arguments = new ArrayList<>(options);
+        arguments.addAll(Arrays.asList("-d", mFolder.newFolder("classes").getPath(), "-s", generatedFolder().getPath()));
+        JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, mDiagnostics, arguments, null,
+                fileManager.getJavaFileObjectsFromFiles(files));
+        task.setProcessors(Collections.singletonList(new ApiKeyServiceProcessor()));
+        try {
+            return task.call();
+        } finally {
+            fileManager.close();
+        }
+    }
+
+    private List<String> errors() {
+        List<String> errors = new ArrayList<>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : mDiagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                errors.add(diagnostic.getMessage(null));
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Adds empty types for the imports of the generated adapters, only read by -proc:only
+     */
+    private File[] stubs(File... sources) throws IOException {
+        List<File> files = new ArrayList<>(Arrays.asList(sources));
+        for (String stub : Arrays.asList("com.android.jmaxime.factory.network:class GeneratedTypeAdapters", "com.google.gson:class Gson",
+                "com.google.gson:class JsonSyntaxException", "com.google.gson:class TypeAdapter<T>", "com.google.gson:interface TypeAdapterFactory",
+                "com.google.gson.reflect:class TypeToken<T>", "com.google.gson.stream:class JsonReader", "com.google.gson.stream:class JsonWriter")) {
+            String packageName = stub.substring(0, stub.indexOf(':'));
+            String declaration = stub.substring(stub.indexOf(':') + 1);
+            String name = declaration.substring(declaration.indexOf(' ') + 1).replace("<T>", "");
+            files.add(source(packageName.replace('.', '/') + "/" + name + ".java", "package " + packageName + ";\n"
+                    + "public " + declaration + " {}\n"));
+        }
+        return files.toArray(new File[files.size()]);
+    }
+
+    private List<String> notes() {
+        List<String> notes = new ArrayList<>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : mDiagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.NOTE) {
+                notes.add(diagnostic.getMessage(null));
+            }
+        }
+        return notes;
+    }
+
+    private File source(String path, String content) throws IOException {
+        File file = new File(mFolder.getRoot(), "src/" + path);
+        file.getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), UTF_8);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    private File generatedFolder() {
+        File folder = new File(mFolder.getRoot(), "generated");
+        folder.mkdirs();
+        return folder;
+    }
+
+    private String generated(String path) throws IOException {
+        Scanner scanner = new Scanner(new File(generatedFolder(), path), "UTF-8");
+        try {
+            return scanner.useDelimiter("\\A").next();
+        } finally {
+            scanner.close();
+        }
+    }
+}
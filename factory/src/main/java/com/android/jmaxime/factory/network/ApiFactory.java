@@ -1,46 +1,249 @@
 package com.android.jmaxime.factory.network;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Call;
 import okhttp3.OkHttpClient;
 import retrofit2.CallAdapter;
 import retrofit2.Converter;
 import retrofit2.Retrofit;
 
 /**
+ * The Retrofit instances and the services created are memoized: the same configuration
+ * (base url name, api key name, tag, time out, cache, cookies) always returns the same service.
+ * The base url and the api key are read at each request, a change applied with
+ * {@link OkHttpConfiguration#edit()} is used by the services already created.
+ * Use {@link #clear()} or {@link #evict(Class)} when the other settings change.
+ * <p>
+ * {@link #createLazy(Class)} returns a proxy resolving the configuration and building the client
+ * and the Retrofit instance on the first call of one of its methods, for the services injected
+ * at startup but not always used. After {@link #clear()} or {@link #evict(Class)}, its next call resolves it again.
+ * </p>
+ * <p>
+ * {@link #create(Class, BaseUrlRouter)} selects the base url per request, a single Retrofit instance
+ * serves the service on all the base urls (regions, environments...).
+ * </p>
+ *
  * @see ApiKeyService
  * @see OkHttpConfiguration
  * @see Helper for easily create your Retrofit Service
  */
 public class ApiFactory {
     private final OkHttpConfiguration mConfigurations;
+    private final ConcurrentMap<Class<?>, ServiceMetadata> mMetadata = new ConcurrentHashMap<>();
+    private final ConcurrentMap<ClientKey, Retrofit> mRetrofits = new ConcurrentHashMap<>();
+    /**
+     * One lock per configuration, so a client is built once even when its services are created concurrently
+     */
+    private final ConcurrentMap<ClientKey, Object> mBuildLocks = new ConcurrentHashMap<>();
+    private final ConcurrentMap<ServiceKey, Object> mServices = new ConcurrentHashMap<>();
+    /**
+     * Incremented by {@link #clear()} and {@link #evict(Class)}, the lazy services resolve again when it changes
+     */
+    private final AtomicInteger mGeneration = new AtomicInteger();
 
     public ApiFactory(OkHttpConfiguration configurations) {
         mConfigurations = configurations;
     }
 
     public <T> T create(final Class<T> service) {
-        hasApiKeyServiceAnnotation(service);
-        ApiKeyService apiKeyService = service.getAnnotation(ApiKeyService.class);
-        return new Helper(mConfigurations, apiKeyService.baseUrlName())
-                .setApiKeyService(apiKeyService)
-                .create(service);
+        ServiceMetadata metadata = getServiceMetadata(service);
+        return create(service, new Helper(mConfigurations, metadata.mBaseUrlName)
+                .setServiceMetadata(metadata));
     }
 
     public <T> T create(final Class<T> service, String baseUrlName) {
-        return new Helper(mConfigurations, baseUrlName).create(service);
+        return create(service, new Helper(mConfigurations, baseUrlName));
+    }
+
+    /**
+     * Same as {@link #create(Class)}, but the base url of each request is selected by the router,
+     * the base url of the annotation is used when the router selects none.
+     * One Retrofit instance and one client serve the service on all the base urls.
+     *
+     * @param router e.g. {@link BaseUrlRouter#header(String)}, {@link BaseUrlRouter#tag()}
+     */
+    public <T> T create(final Class<T> service, BaseUrlRouter router) {
+        ServiceMetadata metadata = getServiceMetadata(service);
+        return create(service, new Helper(mConfigurations, metadata.mBaseUrlName)
+                .setServiceMetadata(metadata)
+                .setRouter(router));
     }
 
     public <T> T create(final Class<T> service, String baseUrlName, String apiKeyName) {
-        return new Helper(mConfigurations, baseUrlName).setApiKeyName(apiKeyName).create(service);
+        return create(service, new Helper(mConfigurations, baseUrlName).setApiKeyName(apiKeyName));
     }
 
     public <T> T create(final Class<T> service, String baseUrlName, String apiKeyName, String tagApiName, int timeOutValue, boolean addCache, boolean allowCookies) {
-        return new Helper(mConfigurations, baseUrlName)
+        return create(service, new Helper(mConfigurations, baseUrlName)
+                .setApiKeyName(apiKeyName)
+                .setTagClientHttp(tagApiName)
+                .setTimeOut(timeOutValue)
+                .setEnableCache(addCache)
+                .setEnableCookies(allowCookies));
+    }
+
+    /**
+     * Same as {@link #create(Class)}, but nothing is resolved nor built before the first call
+     * of a method of the service. The initialization happens once, the following calls go straight
+     * to the service until {@link #clear()} or {@link #evict(Class)}. equals, hashCode and toString do not initialize the service.
+     *
+     * @throws IllegalArgumentException if the service is not annotated by {@link ApiKeyService}
+     */
+    public <T> T createLazy(final Class<T> service) {
+        getServiceMetadata(service);
+        return service.cast(Proxy.newProxyInstance(service.getClassLoader(), new Class<?>[]{service},
+                new LazyService<>(service, null)));
+    }
+
+    public <T> T createLazy(final Class<T> service, String baseUrlName) {
+        return createLazy(service, new Helper(mConfigurations, baseUrlName));
+    }
+
+    public <T> T createLazy(final Class<T> service, String baseUrlName, String apiKeyName) {
+        return createLazy(service, new Helper(mConfigurations, baseUrlName).setApiKeyName(apiKeyName));
+    }
+
+    public <T> T createLazy(final Class<T> service, String baseUrlName, String apiKeyName, String tagApiName, int timeOutValue, boolean addCache, boolean allowCookies) {
+        return createLazy(service, new Helper(mConfigurations, baseUrlName)
                 .setApiKeyName(apiKeyName)
                 .setTagClientHttp(tagApiName)
                 .setTimeOut(timeOutValue)
                 .setEnableCache(addCache)
-                .setEnableCookies(allowCookies)
-                .create(service);
+                .setEnableCookies(allowCookies));
+    }
+
+    /**
+     * Creates in background the given services and opens the connections of their clients,
+     * see {@link WarmUp}. The services created later by {@link #create(Class)} are the warmed ones.
+     *
+     * @param services interfaces annotated by {@link ApiKeyService}
+     */
+    public WarmUp warmUp(Class<?>... services) {
+        return warmUp(null, services);
+    }
+
+    public WarmUp warmUp(WarmUp.Listener listener, Class<?>... services) {
+        List<WarmUp.Target> targets = new ArrayList<>(services.length);
+        for (final Class<?> service : services) {
+            targets.add(new WarmUp.Target(service.getSimpleName()) {
+                private ClientKey mKey;
+                private Helper mHelper;
+
+                @Override
+                String url() {
+                    ServiceMetadata metadata = getServiceMetadata(service);
+                    mHelper = new Helper(mConfigurations, metadata.mBaseUrlName).setServiceMetadata(metadata);
+                    mKey = mHelper.resolve(service);
+                    return mHelper.baseUrl(mKey);
+                }
+
+                @Override
+                OkHttpClient client() {
+                    create(service, mHelper);
+                    return ((ServiceCallFactory) getRetrofit(mKey, mHelper).callFactory()).client();
+                }
+            });
+        }
+        return WarmUp.start(targets, listener);
+    }
+
+    /**
+     * Removes all the memoized services, Retrofit instances and annotations read,
+     * the next calls to create build them again from the configuration.
+     */
+    public void clear() {
+        mMetadata.clear();
+        mServices.clear();
+        mRetrofits.clear();
+        mGeneration.incrementAndGet();
+    }
+
+    /**
+     * Removes the memoized services of the given interface.
+     *
+     * @param service interface of the service
+     */
+    public void evict(Class<?> service) {
+        mMetadata.remove(service);
+        Iterator<ServiceKey> iterator = mServices.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().mService == service) {
+                iterator.remove();
+            }
+        }
+        mGeneration.incrementAndGet();
+    }
+
+    private <T> T create(Class<T> service, Helper helper) {
+        ServiceKey serviceKey = new ServiceKey(helper.resolve(service), service);
+        Object instance = mServices.get(serviceKey);
+        if (instance == null) {
+            instance = getRetrofit(serviceKey.mClientKey, helper).create(service);
+            Object previous = mServices.putIfAbsent(serviceKey, instance);
+            if (previous != null) {
+                instance = previous;
+            }
+        }
+        return service.cast(instance);
+    }
+
+    private <T> T createLazy(Class<T> service, Helper helper) {
+        return service.cast(Proxy.newProxyInstance(service.getClassLoader(), new Class<?>[]{service},
+                new LazyService<>(service, helper)));
+    }
+
+    /**
+     * The client is built under the lock of its configuration: it is created, and notified to the
+     * {@link OkHttpBuilder.OnClientCreatedListener}, once
+     */
+    private Retrofit getRetrofit(ClientKey key, Helper helper) {
+        Retrofit retrofit = mRetrofits.get(key);
+        if (retrofit != null) {
+            return retrofit;
+        }
+        Object lock = mBuildLocks.get(key);
+        if (lock == null) {
+            lock = new Object();
+            Object previous = mBuildLocks.putIfAbsent(key, lock);
+            if (previous != null) {
+                lock = previous;
+            }
+        }
+        synchronized (lock) {
+            retrofit = mRetrofits.get(key);
+            if (retrofit == null) {
+                retrofit = helper.build(key);
+                mRetrofits.put(key, retrofit);
+            }
+        }
+        return retrofit;
+    }
+
+    /**
+     * The registries of the configuration are asked first, the annotation is read by reflection
+     * only for the services they do not know.
+     */
+    private ServiceMetadata getServiceMetadata(Class<?> service) {
+        ServiceMetadata metadata = mMetadata.get(service);
+        if (metadata == null) {
+            metadata = mConfigurations.getServiceMetadata(service);
+            if (metadata == null) {
+                hasApiKeyServiceAnnotation(service);
+                metadata = ServiceMetadata.of(service.getAnnotation(ApiKeyService.class));
+            }
+            mMetadata.put(service, metadata);
+        }
+        return metadata;
     }
 
     private void hasApiKeyServiceAnnotation(Class<?> service) {
@@ -50,14 +253,204 @@ public class ApiFactory {
         }
     }
 
+    /**
+     * Configuration of a Retrofit instance, the base url and the api key are referenced by name
+     */
+    private static final class ClientKey {
+        private final String mBaseUrlName;
+        private final String mApiKeyName;
+        private final String mApiKeyHeader;
+        private final String mTag;
+        private final int mTimeOut;
+        private final boolean mAddCache;
+        private final boolean mAllowCookies;
+        private final CacheRule mCacheRule;
+        private final boolean mCoalesceRequests;
+        private final int mMaxRetries;
+        private final BaseUrlRouter mRouter;
+        private final int mHashCode;
+
+        ClientKey(String baseUrlName, String apiKeyName, String apiKeyHeader, String tag, int timeOut, boolean addCache, boolean allowCookies, CacheRule cacheRule, boolean coalesceRequests, int maxRetries, BaseUrlRouter router) {
+            mBaseUrlName = baseUrlName;
+            mApiKeyName = apiKeyName;
+            mApiKeyHeader = apiKeyHeader;
+            mTag = tag;
+            mTimeOut = timeOut;
+            mAddCache = addCache;
+            mAllowCookies = allowCookies;
+            mCacheRule = cacheRule;
+            mCoalesceRequests = coalesceRequests;
+            mMaxRetries = maxRetries;
+            mRouter = router;
+            int result = hashCode(mBaseUrlName);
+            result = 31 * result + hashCode(mApiKeyName);
+            result = 31 * result + hashCode(mApiKeyHeader);
+            result = 31 * result + hashCode(mTag);
+            result = 31 * result + mTimeOut;
+            result = 31 * result + (mAddCache ? 1 : 0);
+            result = 31 * result + (mAllowCookies ? 1 : 0);
+            result = 31 * result + mCacheRule.hashCode();
+            result = 31 * result + (mCoalesceRequests ? 1 : 0);
+            result = 31 * result + mMaxRetries;
+            result = 31 * result + (mRouter == null ? 0 : mRouter.hashCode());
+            mHashCode = result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ClientKey)) {
+                return false;
+            }
+            ClientKey key = (ClientKey) o;
+            return mHashCode == key.mHashCode
+                    && mTimeOut == key.mTimeOut
+                    && mAddCache == key.mAddCache
+                    && mAllowCookies == key.mAllowCookies
+                    && mCoalesceRequests == key.mCoalesceRequests
+                    && mMaxRetries == key.mMaxRetries
+                    && mRouter == key.mRouter
+                    && mCacheRule.equals(key.mCacheRule)
+                    && equals(mBaseUrlName, key.mBaseUrlName)
+                    && equals(mApiKeyName, key.mApiKeyName)
+                    && equals(mApiKeyHeader, key.mApiKeyHeader)
+                    && equals(mTag, key.mTag);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+
+        private static int hashCode(String value) {
+            return value == null ? 0 : value.hashCode();
+        }
+
+        private static boolean equals(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    /**
+     * Creates the service on the first call, double checked locking on a volatile field:
+     * once initialized, a call costs two volatile reads and a reflective invocation.
+     * The service is resolved again through the memoized services after {@link #clear()} or {@link #evict(Class)}.
+     */
+    private final class LazyService<T> implements InvocationHandler {
+        private final Class<T> mService;
+        /**
+         * Null for a service configured by its annotation, read again after an eviction
+         */
+        private final Helper mHelper;
+        private volatile Resolved<T> mResolved;
+
+        LazyService(Class<T> service, Helper helper) {
+            mService = service;
+            mHelper = helper;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return invokeObjectMethod(proxy, method, args);
+            }
+            try {
+                return method.invoke(instance(), args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private T instance() {
+            int generation = mGeneration.get();
+            Resolved<T> resolved = mResolved;
+            if (resolved == null || resolved.mGeneration != generation) {
+                synchronized (this) {
+                    resolved = mResolved;
+                    if (resolved == null || resolved.mGeneration != generation) {
+                        resolved = new Resolved<>(create(mService, helper()), generation);
+                        mResolved = resolved;
+                    }
+                }
+            }
+            return resolved.mInstance;
+        }
+
+        private Helper helper() {
+            if (mHelper != null) {
+                return mHelper;
+            }
+            ServiceMetadata metadata = getServiceMetadata(mService);
+            return new Helper(mConfigurations, metadata.mBaseUrlName).setServiceMetadata(metadata);
+        }
+
+        private Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return "Lazy" + mService.getSimpleName() + (mResolved == null ? "{uninitialized}" : "{initialized}");
+            }
+        }
+    }
+
+    /**
+     * Service of a lazy service, with the generation of the factory it was resolved in
+     */
+    private static final class Resolved<T> {
+        private final T mInstance;
+        private final int mGeneration;
+
+        Resolved(T instance, int generation) {
+            mInstance = instance;
+            mGeneration = generation;
+        }
+    }
+
+    private static final class ServiceKey {
+        private final ClientKey mClientKey;
+        private final Class<?> mService;
+
+        ServiceKey(ClientKey clientKey, Class<?> service) {
+            mClientKey = clientKey;
+            mService = service;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ServiceKey)) {
+                return false;
+            }
+            ServiceKey key = (ServiceKey) o;
+            return mService == key.mService && mClientKey.equals(key.mClientKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * mClientKey.hashCode() + mService.hashCode();
+        }
+    }
+
     private final static class Helper {
         private final OkHttpConfiguration mConfigurations;
         private final String mBaseUrl;
         private String mApiKeyName;
+        private String mApiKeyHeader = "";
         private String mTagClientHttp;
         private int mTimeOutValue = -1;
         private boolean mAddCache = false;
         private boolean mAllowCookies = false;
+        private CacheRule mCacheRule = CacheRule.DEFAULT;
+        private boolean mCoalesceRequests = false;
+        private int mMaxRetries = -1;
+        private BaseUrlRouter mRouter;
 
         /**
          * @param baseUrlName key of url or url valid started http...
@@ -67,12 +460,16 @@ public class ApiFactory {
             mBaseUrl = baseUrlName;
         }
 
-        Helper setApiKeyService(ApiKeyService service) {
-            setTagClientHttp(service.tagApiName());
-            setApiKeyName(service.apiKeyName());
-            setTimeOut(service.timeOut());
-            setEnableCache(service.addCache());
-            setEnableCookies(service.allowCookies());
+        Helper setServiceMetadata(ServiceMetadata service) {
+            setTagClientHttp(service.mTagApiName);
+            setApiKeyName(service.mApiKeyName);
+            setApiKeyHeader(service.mApiKeyHeader);
+            setTimeOut(service.mTimeOut);
+            setEnableCache(service.mAddCache || service.mOfflineFirst);
+            setEnableCookies(service.mAllowCookies);
+            setCacheRule(CacheRule.of(service));
+            setCoalesceRequests(service.mCoalesceRequests);
+            setMaxRetries(service.mMaxRetries);
             return this;
         }
 
@@ -85,6 +482,15 @@ public class ApiFactory {
             return this;
         }
 
+        /**
+         * @param apiKeyHeader ex "Authorization", empty to keep the header of the tag
+         * @return helper
+         */
+        Helper setApiKeyHeader(String apiKeyHeader) {
+            mApiKeyHeader = apiKeyHeader == null ? "" : apiKeyHeader;
+            return this;
+        }
+
         /**
          * @param clientHttpName if api key name is empty, this tag serves as a reference to know that it http client refers to
          * @return helper
@@ -109,23 +515,78 @@ public class ApiFactory {
             return this;
         }
 
-        private <T> T create(final Class<T> service) {
-            if (isNullOrEmptyValue(mTagClientHttp)) {
-                mTagClientHttp = isValueNotEmpty(mApiKeyName) ? mApiKeyName : (mBaseUrl.contains("http")) ? service.getSimpleName() : mBaseUrl;
+        Helper setCacheRule(CacheRule cacheRule) {
+            mCacheRule = cacheRule;
+            return this;
+        }
+
+        Helper setCoalesceRequests(boolean coalesceRequests) {
+            mCoalesceRequests = coalesceRequests;
+            return this;
+        }
+
+        /**
+         * @param maxRetries -1 to keep the retry policy of the tag
+         */
+        Helper setMaxRetries(int maxRetries) {
+            mMaxRetries = maxRetries < -1 ? -1 : maxRetries;
+            return this;
+        }
+
+        Helper setRouter(BaseUrlRouter router) {
+            mRouter = router;
+            return this;
+        }
+
+        /**
+         * @return the configuration of the service
+         */
+        private ClientKey resolve(final Class<?> service) {
+            String tag = mTagClientHttp;
+            if (isNullOrEmptyValue(tag)) {
+                tag = isValueNotEmpty(mApiKeyName) ? mApiKeyName : (mBaseUrl.contains("http")) ? service.getSimpleName() : mBaseUrl;
             }
-            String baseUrl = mBaseUrl.startsWith("http") ? mBaseUrl : mConfigurations.getBaseUrl(mBaseUrl);
-            String apiKey = mConfigurations.getApiKey(mApiKeyName);
-            OkHttpClient client = mConfigurations.create(mTagClientHttp, apiKey, mTimeOutValue, mAddCache, mAllowCookies);
-            Converter.Factory converterFactory = mConfigurations.getConverterFactory(mTagClientHttp);
-            CallAdapter.Factory callAdapter = mConfigurations.getCallAdapter(mTagClientHttp);
-            return build(baseUrl, converterFactory, callAdapter, client).create(service);
+            return new ClientKey(mBaseUrl, mApiKeyName, mApiKeyHeader, tag, mTimeOutValue, mAddCache, mAllowCookies, mCacheRule, mCoalesceRequests, mMaxRetries, mRouter);
+        }
+
+        /**
+         * @return the current base url of the service
+         */
+        private String baseUrl(ClientKey key) {
+            return isLiteralUrl(key.mBaseUrlName) ? key.mBaseUrlName : mConfigurations.getBaseUrl(key.mBaseUrlName);
+        }
+
+        private Retrofit build(ClientKey key) {
+            ClientSpec spec = new ClientSpec()
+                    .apiKeyHeader(key.mApiKeyHeader)
+                    .timeOut(key.mTimeOut)
+                    .allowCookies(key.mAllowCookies);
+            if (isValueNotEmpty(key.mApiKeyName)) {
+                spec.apiKeyName(mConfigurations, key.mApiKeyName);
+            }
+            RequestCoalescer coalescer = mConfigurations.getRequestCoalescer(key.mTag, key.mCoalesceRequests);
+            spec.coalescer(coalescer);
+            OkHttpClient client = mConfigurations.create(key.mTag, spec, key.mAddCache);
+            Converter.Factory converterFactory = mConfigurations.getConverterFactory(key.mTag);
+            CallAdapter.Factory callAdapter = mConfigurations.getCallAdapter(key.mTag);
+            String baseUrl = baseUrl(key);
+            DynamicBaseUrl dynamicBaseUrl = isLiteralUrl(key.mBaseUrlName) && key.mRouter == null
+                    ? null : new DynamicBaseUrl(mConfigurations, key.mBaseUrlName, baseUrl, key.mRouter);
+            Call.Factory network = mConfigurations.getNetworkCallFactory(key.mTag, client);
+            return build(baseUrl, converterFactory, callAdapter,
+                    new ServiceCallFactory(client, CallOptions.of(key.mCacheRule, key.mMaxRetries), coalescer, dynamicBaseUrl, network));
+        }
+
+        private boolean isLiteralUrl(String baseUrlName) {
+            return baseUrlName.startsWith("http");
         }
 
-        private Retrofit build(String baseUrl, Converter.Factory converterFactory, CallAdapter.Factory callAdapter, OkHttpClient client) {
+        private Retrofit build(String baseUrl, Converter.Factory converterFactory, CallAdapter.Factory callAdapter, ServiceCallFactory callFactory) {
             Retrofit.Builder builder = new Retrofit.Builder()
                     .baseUrl(baseUrl)
                     .addConverterFactory(converterFactory)
-                    .client(client);
+                    .callFactory(callFactory)
+                    .addCallAdapterFactory(new CallOptionsAdapterFactory(callFactory.options()));
             if (callAdapter != null) {
                 builder.addCallAdapterFactory(callAdapter);
             }
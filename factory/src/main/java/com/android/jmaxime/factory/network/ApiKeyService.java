@@ -20,6 +20,14 @@ public @interface ApiKeyService {
      */
     String apiKeyName() default "";
 
+    /**
+     * Header carrying the api key, e.g. "Authorization", "Ocp-Apim-Subscription-Key".
+     * It is redacted in the logs of the service like the headers of its {@link LoggingPolicy}
+     *
+     * @return "" default value to keep the header of the {@link HeaderPolicy} of the tag, X-Api-Key by default
+     */
+    String apiKeyHeader() default "";
+
     /**
      * e.g. "proxy_v3", "cube", "integ", "stores", "open_voice" ...
      *
@@ -51,9 +59,66 @@ public @interface ApiKeyService {
     boolean addCache() default false;
 
     /**
-     * Cette valeur sera retourner à la Factory HttpClient
+     * The cookies are kept in the {@link CookieStore} of the configuration, shared by the services of all the tags
+     * allowing them, see {@link OkHttpConfiguration.Builder#cookieStore(CookieStore)}
      *
      * @return false default value
      */
     boolean allowCookies() default false;
+
+    /**
+     * Freshness given to the cached responses, only with {@link #addCache()}
+     *
+     * @return seconds, -1 default value to keep the Cache-Control of the server
+     * @see CachePolicy#maxAge() to override it on a method
+     */
+    int cacheMaxAge() default -1;
+
+    /**
+     * A stale response is served at once and refreshed in background during this delay
+     *
+     * @return seconds, -1 default value: disabled
+     * @see CachePolicy#staleWhileRevalidate()
+     */
+    int staleWhileRevalidate() default -1;
+
+    /**
+     * A stale response is served if the network fails during this delay
+     *
+     * @return seconds, -1 default value: disabled
+     * @see CachePolicy#staleIfError()
+     */
+    int staleIfError() default -1;
+
+    /**
+     * @return true to always validate the responses with the server, false default value
+     * @see CachePolicy#forceNetwork()
+     */
+    boolean forceNetwork() default false;
+
+    /**
+     * Offline-first: the cached response is served at once whatever its age, a stale one is refreshed in background
+     * (one refresh per url at a time) and served again if the network fails. The service gets a cache even without
+     * {@link #addCache()}, {@link ResponseSource#of(retrofit2.Response)} tells where a response comes from.
+     *
+     * @return false default value
+     * @see CachePolicy#offlineFirst()
+     */
+    boolean offlineFirst() default false;
+
+    /**
+     * The identical GET requests in flight at the same time share one network call
+     *
+     * @return false default value, the tag can enable it for all its services
+     * @see OkHttpConfiguration.Builder#coalesceRequests(String)
+     */
+    boolean coalesceRequests() default false;
+
+    /**
+     * Retries of the failed calls of the service, only the safe methods are retried
+     *
+     * @return -1 default value to keep the {@link RetryPolicy} of the tag, 0 to disable the retries
+     * @see Retry to override it on a method
+     */
+    int maxRetries() default -1;
 }
@@ -0,0 +1,92 @@
+package com.android.jmaxime.factory.network;
+
+import okhttp3.Request;
+
+/**
+ * Selects the base url of each request of a service created by {@link ApiFactory#create(Class, BaseUrlRouter)}:
+ * the scheme, host, port and path prefix of the request are rewritten, so a single Retrofit instance
+ * and a single client serve the service on all the base urls of the configuration.
+ * <p>
+ * A router is stateless and can be shared by several services, the services with the same settings
+ * and the same router share their Retrofit instance.
+ * </p>
+ */
+public abstract class BaseUrlRouter {
+
+    /**
+     * @param request request of a call, tagged by its {@link CallOptions}
+     * @return name of the base url in the configuration, or a url started by http and ending by /,
+     * null to keep the base url of the service ({@link ApiKeyService#baseUrlName()})
+     */
+    public abstract String route(Request request);
+
+    /**
+     * @return the request sent once routed, e.g. without the headers only used by the router
+     */
+    Request strip(Request request) {
+        return request;
+    }
+
+    /**
+     * The base url name is given by a header of the request, e.g. a {@code @Header("X-Region")}
+     * parameter of the method. The header is not sent.
+     *
+     * @param name name of the header
+     */
+    public static BaseUrlRouter header(final String name) {
+        return new BaseUrlRouter() {
+            @Override
+            public String route(Request request) {
+                return request.header(name);
+            }
+
+            @Override
+            Request strip(Request request) {
+                return request.header(name) == null ? request : request.newBuilder().removeHeader(name).build();
+            }
+        };
+    }
+
+    /**
+     * The base url name is given by the {@link Route} annotation of the method.
+     */
+    public static BaseUrlRouter tag() {
+        return TagRouter.INSTANCE;
+    }
+
+    /**
+     * @param routers asked in order, the first name returned is used
+     */
+    public static BaseUrlRouter first(final BaseUrlRouter... routers) {
+        return new BaseUrlRouter() {
+            @Override
+            public String route(Request request) {
+                for (BaseUrlRouter router : routers) {
+                    String name = router.route(request);
+                    if (name != null) {
+                        return name;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            Request strip(Request request) {
+                for (BaseUrlRouter router : routers) {
+                    request = router.strip(request);
+                }
+                return request;
+            }
+        };
+    }
+
+    private static final class TagRouter extends BaseUrlRouter {
+        static final TagRouter INSTANCE = new TagRouter();
+
+        @Override
+        public String route(Request request) {
+            CallOptions options = CallOptions.of(request);
+            return options == null ? null : options.mRoute;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.android.jmaxime.factory.network;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Sends the calls of this method made within {@link #delayMillis()} in one request to a batch endpoint,
+ * when the call adapter of the tag is a {@link BatchCallAdapterFactory}.
+ * <pre>
+ * &#64;Batch("batch")
+ * &#64;GET("stores/{id}")
+ * Call&lt;Store&gt; store(&#64;Path("id") String id);
+ * </pre>
+ * The batch endpoint receives a json array of the requests and answers a json array of their responses, in the same order:
+ * <pre>
+ * POST batch  [{"method": "GET", "relative_url": "stores/1"}, {"method": "POST", "relative_url": "stores", "body": "{...}"}]
+ * 200         [{"code": 200, "body": {...}}, {"code": 404, "body": "{...}"}]
+ * </pre>
+ * The relative urls are relative to the base url of the service. A body is a json value, or a string holding the body.
+ * The headers of the calls are not sent, the batch request has the headers of the client (e.g. the api key).
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Batch {
+    /**
+     * @return path of the batch endpoint, relative to the base url of the service
+     */
+    String value();
+
+    /**
+     * @return calls in a batch, a full batch is sent at once
+     */
+    int maxSize() default 20;
+
+    /**
+     * @return time waited after the first call of a batch for the next ones
+     */
+    long delayMillis() default 10;
+}
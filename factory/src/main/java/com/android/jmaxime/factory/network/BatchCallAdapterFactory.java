@@ -0,0 +1,119 @@
+package com.android.jmaxime.factory.network;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import okhttp3.HttpUrl;
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.CallAdapter;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+import retrofit2.http.FormUrlEncoded;
+import retrofit2.http.Multipart;
+
+/**
+ * Call adapter batching the calls of the methods annotated with {@link Batch}, the other methods are
+ * adapted by the delegate. Each caller gets its own response, through any delegate ({@link Call}, Observable...).
+ * <pre>
+ * new OkHttpConfiguration.Builder(client, GsonConverterFactory.create())
+ *         .registerCallAdapter(BatchCallAdapterFactory.create(RxJavaCallAdapterFactory.create()), "stores")
+ * </pre>
+ * A batch of one call is sent as the call itself, and so is a call whose body is not json.
+ */
+public final class BatchCallAdapterFactory extends CallAdapter.Factory {
+    private final CallAdapter.Factory mDelegate;
+    /**
+     * Batchers by call factory of the services (one per client of the tag), then by endpoint.
+     * The batchers hold their call factory weakly: the batchers of a client evicted from the
+     * {@link ApiFactory} are released with it.
+     */
+    private final Map<okhttp3.Call.Factory, Map<String, RequestBatcher>> mBatchers = new WeakHashMap<>();
+
+    private BatchCallAdapterFactory(CallAdapter.Factory delegate) {
+        mDelegate = delegate;
+    }
+
+    /**
+     * @return a factory batching the calls returned as {@link Call}
+     */
+    public static BatchCallAdapterFactory create() {
+        return new BatchCallAdapterFactory(null);
+    }
+
+    /**
+     * @param delegate call adapter of the tag, e.g. RxJavaCallAdapterFactory
+     */
+    public static BatchCallAdapterFactory create(CallAdapter.Factory delegate) {
+        return new BatchCallAdapterFactory(delegate);
+    }
+
+    @Override
+    public CallAdapter<?> get(Type returnType, Annotation[] annotations, Retrofit retrofit) {
+        CallAdapter<?> delegate = mDelegate == null ? null : mDelegate.get(returnType, annotations, retrofit);
+        Batch batch = find(annotations);
+        if (batch == null) {
+            return delegate;
+        }
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof FormUrlEncoded || annotation instanceof Multipart) {
+                throw new IllegalArgumentException("@Batch(\"" + batch.value() + "\") requires a json body, not @" + annotation.annotationType().getSimpleName());
+            }
+        }
+        if (delegate == null) {
+            delegate = retrofit.nextCallAdapter(this, returnType, annotations);
+        }
+        Converter<ResponseBody, ?> converter = retrofit.responseBodyConverter(delegate.responseType(), annotations);
+        return wrap(delegate, batcher(retrofit, batch), converter);
+    }
+
+    private synchronized RequestBatcher batcher(Retrofit retrofit, Batch batch) {
+        if (batch.maxSize() < 1 || batch.delayMillis() < 0) {
+            throw new IllegalArgumentException("invalid @Batch(\"" + batch.value() + "\"): maxSize must be > 0 and delayMillis >= 0");
+        }
+        HttpUrl url = retrofit.baseUrl().resolve(batch.value());
+        if (url == null) {
+            throw new IllegalArgumentException("invalid @Batch(\"" + batch.value() + "\") for " + retrofit.baseUrl());
+        }
+        Map<String, RequestBatcher> batchers = mBatchers.get(retrofit.callFactory());
+        if (batchers == null) {
+            batchers = new HashMap<>();
+            mBatchers.put(retrofit.callFactory(), batchers);
+        }
+        String key = url + "|" + batch.maxSize() + "|" + batch.delayMillis();
+        RequestBatcher batcher = batchers.get(key);
+        if (batcher == null) {
+            batcher = new RequestBatcher(retrofit.callFactory(), retrofit.baseUrl(), url, batch.maxSize(), batch.delayMillis());
+            batchers.put(key, batcher);
+        }
+        return batcher;
+    }
+
+    private static Batch find(Annotation[] annotations) {
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof Batch) {
+                return (Batch) annotation;
+            }
+        }
+        return null;
+    }
+
+    private static <T> CallAdapter<T> wrap(final CallAdapter<T> delegate, final RequestBatcher batcher, final Converter<ResponseBody, ?> converter) {
+        return new CallAdapter<T>() {
+            @Override
+            public Type responseType() {
+                return delegate.responseType();
+            }
+
+            @Override
+            public <R> T adapt(Call<R> call) {
+                @SuppressWarnings("unchecked")
+                Converter<ResponseBody, R> responseConverter = (Converter<ResponseBody, R>) converter;
+                return delegate.adapt(batcher.newCall(call, responseConverter));
+            }
+        };
+    }
+}
@@ -0,0 +1,385 @@
+package com.android.jmaxime.factory.network;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Concurrency limits of the calls of a tag, isolated from the other tags: the clients of the tag
+ * get their own {@link Dispatcher} (sharing the threads of the root dispatcher), so a saturated tag
+ * does not hold the slots of the other ones.
+ * <p>
+ * The calls beyond the limits wait in a queue ordered by {@link Priority}, then by arrival.
+ * A freed slot goes to the first queued call whose host is below its limit, and a new call whose host
+ * is below its limit starts at once: the calls of a saturated host never hold the calls of another host.
+ * An asynchronous call waits without holding any thread, a synchronous call blocks its calling thread.
+ * When the queue is full, the call fails at once with an {@link IOException}.
+ * </p>
+ *
+ * @see OkHttpConfiguration.Builder#bulkhead(String, int, int, int)
+ * @see OkHttpConfiguration#getBulkhead(String)
+ */
+public final class Bulkhead {
+    private final String mTagApiName;
+    private final int mMaxCalls;
+    private final int mMaxCallsPerHost;
+    private final int mMaxQueued;
+    private final LatencyHistogram mWaitTime = new LatencyHistogram();
+    private Dispatcher mDispatcher;
+    private int mRunning;
+    private final Map<String, Integer> mRunningPerHost = new HashMap<>();
+    private final List<BulkheadCall> mQueue = new ArrayList<>();
+    private int mMaxQueueDepth;
+    private long mRejected;
+
+    /**
+     * @param maxCalls        calls of the tag running at the same time
+     * @param maxCallsPerHost calls of the tag running at the same time on a host
+     * @param maxQueued       calls of the tag waiting at the same time, the next ones are rejected
+     */
+    Bulkhead(String tagApiName, int maxCalls, int maxCallsPerHost, int maxQueued) {
+        if (maxCalls < 1 || maxCallsPerHost < 1 || maxQueued < 0) {
+            throw new IllegalArgumentException("invalid bulkhead for " + tagApiName + ": maxCalls and maxCallsPerHost must be > 0, maxQueued >= 0");
+        }
+        mTagApiName = tagApiName;
+        mMaxCalls = maxCalls;
+        mMaxCallsPerHost = Math.min(maxCalls, maxCallsPerHost);
+        mMaxQueued = maxQueued;
+    }
+
+    /**
+     * @param root client owning the threads of the dispatcher
+     * @return the dispatcher of the clients of the tag, its limits never hold a call admitted by the bulkhead
+     */
+    synchronized Dispatcher dispatcher(OkHttpClient root) {
+        if (mDispatcher == null) {
+            mDispatcher = new Dispatcher(root.dispatcher().executorService());
+            mDispatcher.setMaxRequests(mMaxCalls);
+            mDispatcher.setMaxRequestsPerHost(mMaxCalls);
+        }
+        return mDispatcher;
+    }
+
+    /**
+     * @return a call factory admitting the calls of the client through this bulkhead
+     */
+    Call.Factory callFactory(final OkHttpClient client) {
+        return new Call.Factory() {
+            @Override
+            public Call newCall(Request request) {
+                return new BulkheadCall(client.newCall(request));
+            }
+        };
+    }
+
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Starts the call if the limits allow it, else queues it by priority.
+     * The calls still queued are held by the limit of their host ({@link #promote(List)} runs whenever a slot
+     * is freed), so a call of another host starting at once never overtakes a call that could run.
+     *
+     * @return true if the call can start now
+     * @throws IOException if the queue is full
+     */
+    private synchronized boolean admit(BulkheadCall call) throws IOException {
+        call.mEnqueuedNanos = System.nanoTime();
+        if (canRun(call.mHost)) {
+            start(call);
+            return true;
+        }
+        if (mQueue.size() >= mMaxQueued) {
+            mRejected++;
+            throw new IOException("too many calls queued for " + mTagApiName + " (" + mMaxQueued + ")");
+        }
+        int index = mQueue.size();
+        while (index > 0 && mQueue.get(index - 1).mPriority.compareTo(call.mPriority) > 0) {
+            index--;
+        }
+        mQueue.add(index, call);
+        mMaxQueueDepth = Math.max(mMaxQueueDepth, mQueue.size());
+        return false;
+    }
+
+    private boolean canRun(String host) {
+        Integer running = mRunningPerHost.get(host);
+        return mRunning < mMaxCalls && (running == null || running < mMaxCallsPerHost);
+    }
+
+    private void start(BulkheadCall call) {
+        mRunning++;
+        Integer running = mRunningPerHost.get(call.mHost);
+        mRunningPerHost.put(call.mHost, running == null ? 1 : running + 1);
+        mWaitTime.record(System.nanoTime() - call.mEnqueuedNanos);
+        call.mStarted = true;
+    }
+
+    /**
+     * Frees the slot of a finished call and starts the next queued calls
+     */
+    private void finished(BulkheadCall call) {
+        List<BulkheadCall> asynchronous = new ArrayList<>();
+        synchronized (this) {
+            mRunning--;
+            int running = mRunningPerHost.get(call.mHost) - 1;
+            if (running == 0) {
+                mRunningPerHost.remove(call.mHost);
+            } else {
+                mRunningPerHost.put(call.mHost, running);
+            }
+            promote(asynchronous);
+        }
+        for (BulkheadCall next : asynchronous) {
+            next.startAsync();
+        }
+    }
+
+    /**
+     * @param asynchronous filled with the asynchronous calls to start outside of the lock
+     */
+    private void promote(List<BulkheadCall> asynchronous) {
+        boolean notify = false;
+        for (int i = 0; i < mQueue.size() && mRunning < mMaxCalls; ) {
+            BulkheadCall call = mQueue.get(i);
+            if (!canRun(call.mHost)) {
+                i++;
+                continue;
+            }
+            mQueue.remove(i);
+            start(call);
+            if (call.mCallback == null) {
+                notify = true;
+            } else {
+                asynchronous.add(call);
+            }
+        }
+        if (notify) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * @return true if the call was still queued
+     */
+    private synchronized boolean dequeue(BulkheadCall call) {
+        return mQueue.remove(call);
+    }
+
+    /**
+     * Blocks the calling thread until the queued call starts
+     */
+    private synchronized void await(BulkheadCall call) throws IOException {
+        while (!call.mStarted) {
+            if (call.mCanceled) {
+                mQueue.remove(call);
+                throw new IOException("Canceled");
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                if (!call.mStarted) {
+                    mQueue.remove(call);
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted while queued in " + mTagApiName);
+                }
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private synchronized void wakeUp() {
+        notifyAll();
+    }
+
+    /**
+     * Queue and limits of a tag at a given time
+     */
+    public static final class Snapshot {
+        private final String mTagApiName;
+        private final int mRunningCalls;
+        private final int mQueuedCalls;
+        private final int mMaxQueueDepth;
+        private final long mRejectedCalls;
+        private final LatencyHistogram.Snapshot mWaitTime;
+
+        Snapshot(Bulkhead bulkhead) {
+            mTagApiName = bulkhead.mTagApiName;
+            mRunningCalls = bulkhead.mRunning;
+            mQueuedCalls = bulkhead.mQueue.size();
+            mMaxQueueDepth = bulkhead.mMaxQueueDepth;
+            mRejectedCalls = bulkhead.mRejected;
+            mWaitTime = bulkhead.mWaitTime.snapshot();
+        }
+
+        public String getTagApiName() {
+            return mTagApiName;
+        }
+
+        public int getRunningCalls() {
+            return mRunningCalls;
+        }
+
+        public int getQueuedCalls() {
+            return mQueuedCalls;
+        }
+
+        /**
+         * @return highest number of calls queued at the same time
+         */
+        public int getMaxQueueDepth() {
+            return mMaxQueueDepth;
+        }
+
+        /**
+         * @return number of calls failed because the queue was full
+         */
+        public long getRejectedCalls() {
+            return mRejectedCalls;
+        }
+
+        /**
+         * @return time spent in the queue by the started calls, 0 for the calls started at once
+         */
+        public LatencyHistogram.Snapshot getWaitTime() {
+            return mWaitTime;
+        }
+
+        @Override
+        public String toString() {
+            return "Bulkhead{" + mTagApiName
+                    + ", running=" + mRunningCalls
+                    + ", queued=" + mQueuedCalls
+                    + ", maxQueueDepth=" + mMaxQueueDepth
+                    + ", rejected=" + mRejectedCalls
+                    + ", wait=" + mWaitTime + '}';
+        }
+    }
+
+    private final class BulkheadCall implements Call {
+        private final Call mCall;
+        private final String mHost;
+        private final Priority.Level mPriority;
+        private long mEnqueuedNanos;
+        private boolean mStarted;
+        private volatile boolean mExecuted;
+        private volatile boolean mCanceled;
+        private volatile Callback mCallback;
+
+        BulkheadCall(Call call) {
+            mCall = call;
+            mHost = call.request().url().host();
+            CallOptions options = CallOptions.of(call.request());
+            mPriority = options == null ? Priority.Level.NORMAL : options.mPriority;
+        }
+
+        @Override
+        public Request request() {
+            return mCall.request();
+        }
+
+        @Override
+        public Response execute() throws IOException {
+            markExecuted();
+            if (!admit(this)) {
+                await(this);
+            }
+            try {
+                return mCall.execute();
+            } finally {
+                finished(this);
+            }
+        }
+
+        @Override
+        public void enqueue(Callback responseCallback) {
+            markExecuted();
+            mCallback = responseCallback;
+            boolean started;
+            try {
+                started = admit(this);
+            } catch (IOException e) {
+                responseCallback.onFailure(this, e);
+                return;
+            }
+            if (started) {
+                startAsync();
+            }
+        }
+
+        /**
+         * Enqueues the call in the dispatcher of the tag, its slot is freed once the callback returns
+         */
+        void startAsync() {
+            final Callback callback = mCallback;
+            mCall.enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    try {
+                        callback.onFailure(BulkheadCall.this, e);
+                    } finally {
+                        finished(BulkheadCall.this);
+                    }
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) throws IOException {
+                    try {
+                        callback.onResponse(BulkheadCall.this, response);
+                    } finally {
+                        finished(BulkheadCall.this);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void cancel() {
+            mCanceled = true;
+            mCall.cancel();
+            if (!dequeue(this)) {
+                return;
+            }
+            Callback callback = mCallback;
+            if (callback == null) {
+                wakeUp();
+            } else {
+                callback.onFailure(this, new IOException("Canceled"));
+            }
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return mExecuted;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return mCanceled;
+        }
+
+        @SuppressWarnings("CloneDoesntCallSuperClone")
+        @Override
+        public Call clone() {
+            return new BulkheadCall(mCall.clone());
+        }
+
+        private synchronized void markExecuted() {
+            if (mExecuted) {
+                throw new IllegalStateException("Already Executed");
+            }
+            mExecuted = true;
+        }
+    }
+}
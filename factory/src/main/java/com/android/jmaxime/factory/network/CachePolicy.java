@@ -0,0 +1,46 @@
+package com.android.jmaxime.factory.network;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Overrides for one method the cache policy of the service
+ * (see {@link ApiKeyService#cacheMaxAge()}, {@link ApiKeyService#staleWhileRevalidate()},
+ * {@link ApiKeyService#staleIfError()}, {@link ApiKeyService#forceNetwork()}, {@link ApiKeyService#offlineFirst()}).
+ * Only used by the services with a cache ({@link ApiKeyService#addCache()}).
+ * <pre>
+ * &#64;CachePolicy(maxAge = 600, staleIfError = 86400)
+ * &#64;GET("stores")
+ * Observable&lt;List&lt;Store&gt;&gt; getStores();
+ * </pre>
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CachePolicy {
+    /**
+     * @return freshness in seconds given to the responses, -1 to keep the Cache-Control of the server
+     */
+    int maxAge() default -1;
+
+    /**
+     * @return seconds during which a stale response is served while it is refreshed in background, -1 disabled
+     */
+    int staleWhileRevalidate() default -1;
+
+    /**
+     * @return seconds during which a stale response is served if the network fails, -1 disabled
+     */
+    int staleIfError() default -1;
+
+    /**
+     * @return true to always validate with the server, the response is still stored for staleIfError
+     */
+    boolean forceNetwork() default false;
+
+    /**
+     * @return true to serve the cached response whatever its age, see {@link ApiKeyService#offlineFirst()}
+     */
+    boolean offlineFirst() default false;
+}
@@ -0,0 +1,160 @@
+package com.android.jmaxime.factory.network;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.CacheControl;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.Buffer;
+import okio.BufferedSource;
+
+/**
+ * Applies the {@link CacheRule} of the calls (see {@link CachePolicy}):
+ * <ul>
+ * <li>Cache-Control of the request (force network, max stale)</li>
+ * <li>stale response served when the network fails (stale-if-error)</li>
+ * <li>refresh in background of a stale response (stale-while-revalidate, offline-first), with a conditional
+ * request and one refresh per url at a time</li>
+ * </ul>
+ * The freshness of the responses is given by the network interceptor {@link #network(CacheRule)}.
+ */
+final class CachePolicyInterceptor implements Interceptor {
+    private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    private static final CacheControl REVALIDATE = new CacheControl.Builder().maxAge(0, TimeUnit.SECONDS).build();
+
+    private final CacheRule mDefaultRule;
+    private final Set<HttpUrl> mRevalidations = Collections.newSetFromMap(new ConcurrentHashMap<HttpUrl, Boolean>());
+    private volatile Call.Factory mClient;
+
+    /**
+     * @param defaultRule rule of the requests not created by a service
+     */
+    CachePolicyInterceptor(CacheRule defaultRule) {
+        mDefaultRule = defaultRule;
+    }
+
+    /**
+     * The freshness of the rule replaces the Cache-Control of the server, except a no-store or private one:
+     * such a response is never made cacheable.
+     *
+     * @param defaultRule rule of the requests not created by a service
+     * @return network interceptor giving the freshness of the rule to the successful responses
+     */
+    static Interceptor network(final CacheRule defaultRule) {
+        return new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                Response response = chain.proceed(chain.request());
+                String cacheControl = rule(chain.request(), defaultRule).mResponseCacheControl;
+                if (cacheControl == null || !(response.isSuccessful() || response.code() == 304)) {
+                    return response;
+                }
+                CacheControl server = response.cacheControl();
+                if (server.noStore() || server.isPrivate()) {
+                    return response;
+                }
+                return response.newBuilder()
+                        .header(HEADER_CACHE_CONTROL, cacheControl)
+                        .removeHeader("Pragma")
+                        .build();
+            }
+        };
+    }
+
+    /**
+     * @param client client of this interceptor, used to refresh the stale responses
+     */
+    void attach(Call.Factory client) {
+        mClient = client;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        CacheRule rule = rule(request, mDefaultRule);
+        if (rule.mRequestCacheControl != null && request.header(HEADER_CACHE_CONTROL) == null) {
+            request = request.newBuilder().header(HEADER_CACHE_CONTROL, rule.mRequestCacheControl).build();
+        }
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException e) {
+            Response stale = staleIfError(chain, request, rule);
+            if (stale == null) {
+                throw e;
+            }
+            return stale;
+        }
+        if (response.code() >= 500) {
+            Response stale = staleIfError(chain, request, rule);
+            if (stale != null) {
+                response.close();
+                return stale;
+            }
+        } else if (rule.isStaleWhileRevalidate() && ResponseSource.of(response) == ResponseSource.STALE_CACHE) {
+            revalidate(request);
+        }
+        return response;
+    }
+
+    private Response staleIfError(Chain chain, Request request, CacheRule rule) throws IOException {
+        if (rule.mStaleIfErrorCacheControl == null || !"GET".equals(request.method())) {
+            return null;
+        }
+        Response stale = chain.proceed(request.newBuilder().cacheControl(rule.mStaleIfErrorCacheControl).build());
+        if (stale.isSuccessful()) {
+            return stale;
+        }
+        stale.close();
+        return null;
+    }
+
+    /**
+     * max-age=0 makes the cache send a conditional request: a 304 only refreshes the headers of the cached response
+     */
+    private void revalidate(Request request) {
+        Call.Factory client = mClient;
+        final HttpUrl url = request.url();
+        if (client == null || !mRevalidations.add(url)) {
+            return;
+        }
+        client.newCall(request.newBuilder().cacheControl(REVALIDATE).build()).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                mRevalidations.remove(url);
+            }
+
+            /**
+             * The body is read to the end, else the cache drops the new response
+             */
+            @Override
+            public void onResponse(Call call, Response response) {
+                try {
+                    BufferedSource source = response.body().source();
+                    Buffer skipped = new Buffer();
+                    while (source.read(skipped, 8192) != -1) {
+                        skipped.clear();
+                    }
+                } catch (IOException e) {
+                    /*the cached response is kept*/
+                } finally {
+                    response.close();
+                    mRevalidations.remove(url);
+                }
+            }
+        });
+    }
+
+    private static CacheRule rule(Request request, CacheRule defaultRule) {
+        CallOptions options = CallOptions.of(request);
+        return options == null ? defaultRule : options.mCacheRule;
+    }
+}
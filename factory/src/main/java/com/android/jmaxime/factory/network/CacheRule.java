@@ -0,0 +1,133 @@
+package com.android.jmaxime.factory.network;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.CacheControl;
+
+/**
+ * Cache policy of a service or a method, compiled once: the header values are precomputed
+ * so the interceptors only copy them on the requests and the responses.
+ *
+ * @see CachePolicy
+ * @see CachePolicyInterceptor
+ */
+final class CacheRule {
+    static final CacheRule DEFAULT = new CacheRule(-1, -1, -1, false, false);
+    /**
+     * Rule of the clients with {@link OkHttpBuilder#useCache(android.content.Context)}
+     */
+    static final CacheRule LEGACY = new CacheRule(30, -1, -1, false, false);
+
+    private final int mMaxAge;
+    private final int mStaleWhileRevalidate;
+    private final int mStaleIfError;
+    private final boolean mForceNetwork;
+    private final boolean mOfflineFirst;
+    /**
+     * Cache-Control of the requests, null to keep the request as is
+     */
+    final String mRequestCacheControl;
+    /**
+     * Cache-Control given to the successful responses, null to keep the header of the server
+     */
+    final String mResponseCacheControl;
+    /**
+     * Cache-Control of the request used to read a stale response after an error, null if disabled
+     */
+    final CacheControl mStaleIfErrorCacheControl;
+
+    /**
+     * @param offlineFirst the cached responses are served whatever their age, see {@link ApiKeyService#offlineFirst()}
+     */
+    CacheRule(int maxAge, int staleWhileRevalidate, int staleIfError, boolean forceNetwork, boolean offlineFirst) {
+        mMaxAge = maxAge;
+        mStaleWhileRevalidate = staleWhileRevalidate;
+        mStaleIfError = staleIfError;
+        mForceNetwork = forceNetwork;
+        mOfflineFirst = offlineFirst;
+        if (forceNetwork) {
+            mRequestCacheControl = CacheControl.FORCE_NETWORK.toString();
+        } else if (offlineFirst) {
+            mRequestCacheControl = new CacheControl.Builder().maxStale(Integer.MAX_VALUE, TimeUnit.SECONDS).build().toString();
+        } else if (staleWhileRevalidate > 0) {
+            mRequestCacheControl = new CacheControl.Builder().maxStale(staleWhileRevalidate, TimeUnit.SECONDS).build().toString();
+        } else {
+            mRequestCacheControl = null;
+        }
+        if (maxAge >= 0) {
+            StringBuilder header = new StringBuilder("max-age=").append(maxAge);
+            if (staleWhileRevalidate > 0) {
+                header.append(", stale-while-revalidate=").append(staleWhileRevalidate);
+            }
+            if (staleIfError > 0) {
+                header.append(", stale-if-error=").append(staleIfError);
+            }
+            mResponseCacheControl = header.toString();
+        } else {
+            mResponseCacheControl = null;
+        }
+        if (offlineFirst) {
+            mStaleIfErrorCacheControl = new CacheControl.Builder().onlyIfCached().maxStale(Integer.MAX_VALUE, TimeUnit.SECONDS).build();
+        } else if (staleIfError > 0) {
+            mStaleIfErrorCacheControl = new CacheControl.Builder().onlyIfCached().maxStale(staleIfError, TimeUnit.SECONDS).build();
+        } else {
+            mStaleIfErrorCacheControl = null;
+        }
+    }
+
+    static CacheRule of(ServiceMetadata service) {
+        return of(service.mCacheMaxAge, service.mStaleWhileRevalidate, service.mStaleIfError, service.mForceNetwork, service.mOfflineFirst);
+    }
+
+    /**
+     * @param policy overrides of a method
+     * @return the rule of the method, the values of the policy left to default are taken from this rule
+     */
+    CacheRule override(CachePolicy policy) {
+        return of(policy.maxAge() != -1 ? policy.maxAge() : mMaxAge,
+                policy.staleWhileRevalidate() != -1 ? policy.staleWhileRevalidate() : mStaleWhileRevalidate,
+                policy.staleIfError() != -1 ? policy.staleIfError() : mStaleIfError,
+                policy.forceNetwork() || mForceNetwork,
+                policy.offlineFirst() || mOfflineFirst);
+    }
+
+    /**
+     * @return true if a stale response served by the cache is refreshed in background
+     */
+    boolean isStaleWhileRevalidate() {
+        return !mForceNetwork && (mOfflineFirst || mStaleWhileRevalidate > 0);
+    }
+
+    private static CacheRule of(int maxAge, int staleWhileRevalidate, int staleIfError, boolean forceNetwork, boolean offlineFirst) {
+        if (maxAge < 0 && staleWhileRevalidate <= 0 && staleIfError <= 0 && !forceNetwork && !offlineFirst) {
+            return DEFAULT;
+        }
+        return new CacheRule(maxAge, staleWhileRevalidate, staleIfError, forceNetwork, offlineFirst);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CacheRule)) {
+            return false;
+        }
+        CacheRule rule = (CacheRule) o;
+        return mMaxAge == rule.mMaxAge
+                && mStaleWhileRevalidate == rule.mStaleWhileRevalidate
+                && mStaleIfError == rule.mStaleIfError
+                && mForceNetwork == rule.mForceNetwork
+                && mOfflineFirst == rule.mOfflineFirst;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mMaxAge;
+        result = 31 * result + mStaleWhileRevalidate;
+        result = 31 * result + mStaleIfError;
+        result = 31 * result + (mForceNetwork ? 1 : 0);
+        result = 31 * result + (mOfflineFirst ? 1 : 0);
+        return result;
+    }
+}
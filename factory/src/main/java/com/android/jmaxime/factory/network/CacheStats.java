@@ -0,0 +1,97 @@
+package com.android.jmaxime.factory.network;
+
+import java.io.IOException;
+
+import okhttp3.Cache;
+
+/**
+ * Snapshot of the counters of the disk cache of a tag
+ *
+ * @see OkHttpConfiguration#getCacheStats(String)
+ */
+public final class CacheStats {
+    private final String mTagApiName;
+    private final int mRequestCount;
+    private final int mNetworkCount;
+    private final int mHitCount;
+    private final long mSize;
+    private final long mMaxSize;
+
+    CacheStats(String tagApiName, Cache cache) {
+        mTagApiName = tagApiName;
+        mRequestCount = cache.requestCount();
+        mNetworkCount = cache.networkCount();
+        mHitCount = cache.hitCount();
+        mMaxSize = cache.maxSize();
+        long size;
+        try {
+            size = cache.size();
+        } catch (IOException e) {
+            size = -1;
+        }
+        mSize = size;
+    }
+
+    public String getTagApiName() {
+        return mTagApiName;
+    }
+
+    /**
+     * @return number of http requests handled by the cache
+     */
+    public int getRequestCount() {
+        return mRequestCount;
+    }
+
+    /**
+     * @return number of requests sent to the network (misses and conditional requests)
+     */
+    public int getNetworkCount() {
+        return mNetworkCount;
+    }
+
+    /**
+     * @return number of responses served by the cache, including conditional hits (304)
+     */
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return number of requests not served by the cache
+     */
+    public int getMissCount() {
+        return Math.max(0, mRequestCount - mHitCount);
+    }
+
+    /**
+     * @return hit count / request count, 0 without request
+     */
+    public double getHitRatio() {
+        return mRequestCount == 0 ? 0 : (double) mHitCount / mRequestCount;
+    }
+
+    /**
+     * @return bytes used on the disk, -1 if unknown
+     */
+    public long getSize() {
+        return mSize;
+    }
+
+    /**
+     * @return budget of the cache in bytes
+     */
+    public long getMaxSize() {
+        return mMaxSize;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{" + mTagApiName
+                + ", requests=" + mRequestCount
+                + ", network=" + mNetworkCount
+                + ", hits=" + mHitCount
+                + ", size=" + mSize + "/" + mMaxSize
+                + '}';
+    }
+}
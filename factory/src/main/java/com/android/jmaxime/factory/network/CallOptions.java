@@ -0,0 +1,159 @@
+package com.android.jmaxime.factory.network;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+
+import okhttp3.Request;
+import retrofit2.http.Streaming;
+
+/**
+ * Options of the calls of a service or of a method, resolved once from the annotations.
+ * They are given to the interceptors by the tag of the request.
+ *
+ * @see ServiceCallFactory
+ * @see CallOptionsAdapterFactory
+ */
+final class CallOptions {
+    static final CallOptions DEFAULT = new CallOptions(CacheRule.DEFAULT, null, Priority.Level.NORMAL, -1, false, true, false);
+
+    final CacheRule mCacheRule;
+    /**
+     * Base url name of the method, null for the base url of the service, see {@link Route}
+     */
+    final String mRoute;
+    /**
+     * Order in the queue of the {@link Bulkhead} of the tag
+     */
+    final Priority.Level mPriority;
+    /**
+     * Retries of the call, -1 for the ones of the {@link RetryPolicy} of the tag
+     */
+    final int mMaxRetries;
+    /**
+     * True if the call can be retried or hedged whatever its http method, see {@link Retry#idempotent()}
+     */
+    final boolean mIdempotent;
+    final boolean mHedge;
+    /**
+     * True if the response is read as a stream ({@link Streaming}, {@link JsonStream}): it is not shared by a {@link RequestCoalescer}
+     */
+    final boolean mStreaming;
+
+    private CallOptions(CacheRule cacheRule, String route, Priority.Level priority, int maxRetries, boolean idempotent, boolean hedge, boolean streaming) {
+        mCacheRule = cacheRule;
+        mRoute = route;
+        mPriority = priority;
+        mMaxRetries = maxRetries;
+        mIdempotent = idempotent;
+        mHedge = hedge;
+        mStreaming = streaming;
+    }
+
+    static CallOptions of(CacheRule cacheRule) {
+        return of(cacheRule, -1);
+    }
+
+    /**
+     * @param maxRetries retries of the service, -1 for the ones of the tag
+     */
+    static CallOptions of(CacheRule cacheRule, int maxRetries) {
+        return of(cacheRule, null, Priority.Level.NORMAL, maxRetries, false, true, false);
+    }
+
+    private static CallOptions of(CacheRule cacheRule, String route, Priority.Level priority, int maxRetries, boolean idempotent, boolean hedge, boolean streaming) {
+        CallOptions options = new CallOptions(cacheRule, route, priority, maxRetries, idempotent, hedge, streaming);
+        return DEFAULT.equals(options) ? DEFAULT : options;
+    }
+
+    /**
+     * @param request request of a call
+     * @return the options of the call, null if the request was not created by a service
+     */
+    static CallOptions of(Request request) {
+        Object tag = request.tag();
+        return tag instanceof CallOptions ? (CallOptions) tag : null;
+    }
+
+    /**
+     * @param returnType  return type of a method of the service
+     * @param annotations annotations of the method
+     * @return the options of the method, this instance if the method overrides nothing
+     */
+    CallOptions forMethod(Type returnType, Annotation[] annotations) {
+        CacheRule cacheRule = mCacheRule;
+        String route = mRoute;
+        Priority.Level priority = mPriority;
+        int maxRetries = mMaxRetries;
+        boolean idempotent = mIdempotent;
+        boolean hedge = mHedge;
+        boolean streaming = mStreaming || isJsonStream(returnType);
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof CachePolicy) {
+                cacheRule = cacheRule.override((CachePolicy) annotation);
+            } else if (annotation instanceof Route) {
+                route = ((Route) annotation).value();
+            } else if (annotation instanceof Priority) {
+                priority = ((Priority) annotation).value();
+            } else if (annotation instanceof Retry) {
+                Retry retry = (Retry) annotation;
+                maxRetries = retry.maxRetries() == -1 ? maxRetries : retry.maxRetries();
+                idempotent = retry.idempotent();
+                hedge = retry.hedge();
+            } else if (annotation instanceof Streaming) {
+                streaming = true;
+            }
+        }
+        CallOptions options = of(cacheRule, route, priority, maxRetries, idempotent, hedge, streaming);
+        return equals(options) ? this : options;
+    }
+
+    /**
+     * @return true for a call of a {@link JsonStream}
+     */
+    private static boolean isJsonStream(Type returnType) {
+        if (!(returnType instanceof ParameterizedType)) {
+            return false;
+        }
+        Type response = ((ParameterizedType) returnType).getActualTypeArguments()[0];
+        if (response instanceof WildcardType) {
+            response = ((WildcardType) response).getUpperBounds()[0];
+        }
+        return response instanceof ParameterizedType && ((ParameterizedType) response).getRawType() == JsonStream.class;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CallOptions)) {
+            return false;
+        }
+        CallOptions options = (CallOptions) o;
+        return mPriority == options.mPriority
+                && mMaxRetries == options.mMaxRetries
+                && mIdempotent == options.mIdempotent
+                && mHedge == options.mHedge
+                && mStreaming == options.mStreaming
+                && mCacheRule.equals(options.mCacheRule)
+                && equals(mRoute, options.mRoute);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mCacheRule.hashCode();
+        result = 31 * result + (mRoute == null ? 0 : mRoute.hashCode());
+        result = 31 * result + mPriority.hashCode();
+        result = 31 * result + mMaxRetries;
+        result = 31 * result + (mIdempotent ? 1 : 0);
+        result = 31 * result + (mHedge ? 1 : 0);
+        result = 31 * result + (mStreaming ? 1 : 0);
+        return result;
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,109 @@
+package com.android.jmaxime.factory.network;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import okhttp3.Request;
+import retrofit2.Call;
+import retrofit2.CallAdapter;
+import retrofit2.Callback;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+
+/**
+ * First call adapter of the services: resolves once per method the {@link CallOptions}
+ * of its annotations (e.g. {@link CachePolicy}), then delegates to the next call adapter.
+ * The methods without specific options are not wrapped.
+ */
+final class CallOptionsAdapterFactory extends CallAdapter.Factory {
+    private final CallOptions mServiceOptions;
+
+    CallOptionsAdapterFactory(CallOptions serviceOptions) {
+        mServiceOptions = serviceOptions;
+    }
+
+    @Override
+    public CallAdapter<?> get(Type returnType, Annotation[] annotations, Retrofit retrofit) {
+        CallOptions options = mServiceOptions.forMethod(returnType, annotations);
+        if (options == mServiceOptions) {
+            return null;
+        }
+        return wrap(retrofit.nextCallAdapter(this, returnType, annotations), options);
+    }
+
+    private static <T> CallAdapter<T> wrap(final CallAdapter<T> delegate, final CallOptions options) {
+        return new CallAdapter<T>() {
+            @Override
+            public Type responseType() {
+                return delegate.responseType();
+            }
+
+            @Override
+            public <R> T adapt(Call<R> call) {
+                return delegate.adapt(new OptionsCall<>(call, options));
+            }
+        };
+    }
+
+    private static final class OptionsCall<T> implements Call<T> {
+        private final Call<T> mDelegate;
+        private final CallOptions mOptions;
+
+        OptionsCall(Call<T> delegate, CallOptions options) {
+            mDelegate = delegate;
+            mOptions = options;
+        }
+
+        @Override
+        public Response<T> execute() throws IOException {
+            CallOptions previous = ServiceCallFactory.enter(mOptions);
+            try {
+                return mDelegate.execute();
+            } finally {
+                ServiceCallFactory.exit(previous);
+            }
+        }
+
+        @Override
+        public void enqueue(Callback<T> callback) {
+            CallOptions previous = ServiceCallFactory.enter(mOptions);
+            try {
+                mDelegate.enqueue(callback);
+            } finally {
+                ServiceCallFactory.exit(previous);
+            }
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return mDelegate.isExecuted();
+        }
+
+        @Override
+        public void cancel() {
+            mDelegate.cancel();
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return mDelegate.isCanceled();
+        }
+
+        @SuppressWarnings("CloneDoesntCallSuperClone")
+        @Override
+        public Call<T> clone() {
+            return new OptionsCall<>(mDelegate.clone(), mOptions);
+        }
+
+        @Override
+        public Request request() {
+            CallOptions previous = ServiceCallFactory.enter(mOptions);
+            try {
+                return mDelegate.request();
+            } finally {
+                ServiceCallFactory.exit(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package com.android.jmaxime.factory.network;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Circuit of a host for the calls of a tag, see {@link CircuitBreakerPolicy}.
+ * <p>
+ * The state is an atomic reference and the sliding window a ring of atomic counters, one per time slice:
+ * a call never takes a lock, a successful call only reads the state and increments a counter.
+ * A state is published with the time it started and its trial permits, so a call seeing a state sees them too.
+ * The rates are computed when a call fails or is slow. The counters of a slice are reset without
+ * synchronization when the ring comes back to it, so the rates are approximate under contention.
+ * </p>
+ *
+ * @see OkHttpConfiguration#getCircuitBreakers(String)
+ */
+public final class CircuitBreaker {
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    public interface Listener {
+        /**
+         * Called on the thread of the call changing the state, it must return quickly
+         */
+        void onStateChanged(CircuitBreaker circuitBreaker, State from, State to);
+    }
+
+    private final String mTagApiName;
+    private final String mHost;
+    private final CircuitBreakerPolicy mPolicy;
+    private final AtomicReference<Phase> mPhase = new AtomicReference<>(new Phase(State.CLOSED, 0));
+    private final long mStartNanos = System.nanoTime();
+    private final long mSliceNanos;
+    private final AtomicLongArray mSlices;
+    private final AtomicLongArray mCalls;
+    private final AtomicLongArray mFailures;
+    private final AtomicLongArray mSlowCalls;
+    private final AtomicLong mNotPermitted = new AtomicLong();
+    private final AtomicLong mOpened = new AtomicLong();
+
+    CircuitBreaker(String tagApiName, String host, CircuitBreakerPolicy policy) {
+        mTagApiName = tagApiName;
+        mHost = host;
+        mPolicy = policy;
+        mSliceNanos = policy.mWindowNanos / policy.mWindowBuckets;
+        mSlices = new AtomicLongArray(policy.mWindowBuckets);
+        mCalls = new AtomicLongArray(policy.mWindowBuckets);
+        mFailures = new AtomicLongArray(policy.mWindowBuckets);
+        mSlowCalls = new AtomicLongArray(policy.mWindowBuckets);
+    }
+
+    public String getTagApiName() {
+        return mTagApiName;
+    }
+
+    public String getHost() {
+        return mHost;
+    }
+
+    public State getState() {
+        return mPhase.get().mState;
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * @return true if the call can go through, false if it must fail at once
+     */
+    boolean tryAcquire() {
+        while (true) {
+            Phase phase = mPhase.get();
+            switch (phase.mState) {
+                case CLOSED:
+                    return true;
+                case OPEN:
+                    if (System.nanoTime() - phase.mSinceNanos < mPolicy.mWaitInOpenNanos) {
+                        mNotPermitted.incrementAndGet();
+                        return false;
+                    }
+                    if (transition(phase, State.HALF_OPEN)) {
+                        return true;
+                    }
+                    break;
+                default:
+                    if (phase.mPermits.getAndDecrement() > 0) {
+                        return true;
+                    }
+                    mNotPermitted.incrementAndGet();
+                    return false;
+            }
+        }
+    }
+
+    /**
+     * Gives back the permit of a call without outcome: canceled, or served by the cache
+     */
+    void release() {
+        Phase phase = mPhase.get();
+        if (phase.mState == State.HALF_OPEN) {
+            phase.mPermits.incrementAndGet();
+        }
+    }
+
+    /**
+     * @param success       false if the call failed
+     * @param durationNanos time until the response of the call
+     */
+    void onResult(boolean success, long durationNanos) {
+        boolean slow = durationNanos >= mPolicy.mSlowCallDurationNanos;
+        Phase phase = mPhase.get();
+        if (phase.mState == State.HALF_OPEN) {
+            if (!success || slow) {
+                transition(phase, State.OPEN);
+            } else if (phase.mSuccesses.incrementAndGet() >= mPolicy.mHalfOpenCalls) {
+                transition(phase, State.CLOSED);
+            }
+            return;
+        }
+        long slice = (System.nanoTime() - mStartNanos) / mSliceNanos;
+        int index = (int) (slice % mSlices.length());
+        long held = mSlices.get(index);
+        if (held < slice && mSlices.compareAndSet(index, held, slice)) {
+            mCalls.set(index, 0);
+            mFailures.set(index, 0);
+            mSlowCalls.set(index, 0);
+        }
+        mCalls.incrementAndGet(index);
+        if (success && !slow) {
+            return;
+        }
+        if (!success) {
+            mFailures.incrementAndGet(index);
+        }
+        if (slow) {
+            mSlowCalls.incrementAndGet(index);
+        }
+        if (phase.mState == State.CLOSED && exceedsThresholds()) {
+            transition(phase, State.OPEN);
+        }
+    }
+
+    private boolean exceedsThresholds() {
+        long[] totals = totals();
+        long calls = totals[0];
+        return calls >= mPolicy.mMinimumCalls
+                && (totals[1] * 100 >= mPolicy.mFailureRateThreshold * calls
+                || totals[2] * 100 >= mPolicy.mSlowCallRateThreshold * calls);
+    }
+
+    /**
+     * @return calls, failures and slow calls of the window
+     */
+    private long[] totals() {
+        long oldest = (System.nanoTime() - mStartNanos) / mSliceNanos - mSlices.length();
+        long[] totals = new long[3];
+        for (int i = 0; i < mSlices.length(); i++) {
+            if (mSlices.get(i) > oldest) {
+                totals[0] += mCalls.get(i);
+                totals[1] += mFailures.get(i);
+                totals[2] += mSlowCalls.get(i);
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * @param from phase seen by the caller, the transition fails if another call changed it meanwhile
+     * @return true if this call made the transition
+     */
+    private boolean transition(Phase from, State to) {
+        Phase next = new Phase(to, to == State.HALF_OPEN ? mPolicy.mHalfOpenCalls - 1 : 0);
+        if (!mPhase.compareAndSet(from, next)) {
+            return false;
+        }
+        if (to == State.OPEN) {
+            mOpened.incrementAndGet();
+        } else if (to == State.CLOSED) {
+            for (int i = 0; i < mSlices.length(); i++) {
+                mCalls.set(i, 0);
+                mFailures.set(i, 0);
+                mSlowCalls.set(i, 0);
+            }
+        }
+        if (mPolicy.mListener != null) {
+            mPolicy.mListener.onStateChanged(this, from.mState, to);
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreaker{" + mTagApiName + ", " + mHost + ", " + getState() + '}';
+    }
+
+    /**
+     * A state with its start time and, when half open, its trial permits and successes
+     */
+    private static final class Phase {
+        private final State mState;
+        private final long mSinceNanos = System.nanoTime();
+        private final AtomicInteger mPermits;
+        private final AtomicInteger mSuccesses = new AtomicInteger();
+
+        Phase(State state, int permits) {
+            mState = state;
+            mPermits = new AtomicInteger(permits);
+        }
+    }
+
+    /**
+     * State and counters of a circuit at a given time
+     */
+    public static final class Snapshot {
+        private final State mState;
+        private final long mCalls;
+        private final long mFailedCalls;
+        private final long mSlowCalls;
+        private final long mNotPermittedCalls;
+        private final long mOpenedCount;
+
+        Snapshot(CircuitBreaker circuitBreaker) {
+            mState = circuitBreaker.getState();
+            long[] totals = circuitBreaker.totals();
+            mCalls = totals[0];
+            mFailedCalls = totals[1];
+            mSlowCalls = totals[2];
+            mNotPermittedCalls = circuitBreaker.mNotPermitted.get();
+            mOpenedCount = circuitBreaker.mOpened.get();
+        }
+
+        public State getState() {
+            return mState;
+        }
+
+        /**
+         * @return calls finished in the sliding window, the window is cleared when the circuit closes
+         */
+        public long getCalls() {
+            return mCalls;
+        }
+
+        public long getFailedCalls() {
+            return mFailedCalls;
+        }
+
+        public long getSlowCalls() {
+            return mSlowCalls;
+        }
+
+        /**
+         * @return percentage of failed calls in the window, 0 without calls
+         */
+        public float getFailureRate() {
+            return mCalls == 0 ? 0 : mFailedCalls * 100f / mCalls;
+        }
+
+        /**
+         * @return percentage of slow calls in the window, 0 without calls
+         */
+        public float getSlowCallRate() {
+            return mCalls == 0 ? 0 : mSlowCalls * 100f / mCalls;
+        }
+
+        /**
+         * @return calls failed at once since the creation of the circuit
+         */
+        public long getNotPermittedCalls() {
+            return mNotPermittedCalls;
+        }
+
+        /**
+         * @return number of times the circuit opened
+         */
+        public long getOpenedCount() {
+            return mOpenedCount;
+        }
+
+        @Override
+        public String toString() {
+            return "CircuitBreaker.Snapshot{" + mState
+                    + ", calls=" + mCalls
+                    + ", failed=" + mFailedCalls
+                    + ", slow=" + mSlowCalls
+                    + ", notPermitted=" + mNotPermittedCalls
+                    + ", opened=" + mOpenedCount + '}';
+        }
+    }
+}
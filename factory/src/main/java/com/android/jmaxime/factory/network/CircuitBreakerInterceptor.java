@@ -0,0 +1,77 @@
+package com.android.jmaxime.factory.network;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Applies the {@link CircuitBreakerPolicy} of a tag, with one {@link CircuitBreaker} per host.
+ * The requests only reading the cache and the responses served by the cache are not counted.
+ * Added after the other interceptors of the clients of the tag, so each retry or hedged request is counted.
+ */
+final class CircuitBreakerInterceptor implements Interceptor {
+    private final String mTagApiName;
+    private final CircuitBreakerPolicy mPolicy;
+    private final ConcurrentMap<String, CircuitBreaker> mCircuits = new ConcurrentHashMap<>();
+
+    CircuitBreakerInterceptor(String tagApiName, CircuitBreakerPolicy policy) {
+        mTagApiName = tagApiName;
+        mPolicy = policy;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (request.cacheControl().onlyIfCached()) {
+            return chain.proceed(request);
+        }
+        CircuitBreaker circuit = circuit(request.url().host());
+        if (!circuit.tryAcquire()) {
+            throw new CircuitBreakerOpenException(mTagApiName, circuit.getHost());
+        }
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException | RuntimeException e) {
+            if (chain.call().isCanceled()) {
+                circuit.release();
+            } else {
+                circuit.onResult(false, System.nanoTime() - start);
+            }
+            throw e;
+        }
+        if (response.networkResponse() == null) {
+            circuit.release();
+        } else {
+            circuit.onResult(response.code() < 500, System.nanoTime() - start);
+        }
+        return response;
+    }
+
+    CircuitBreaker circuit(String host) {
+        CircuitBreaker circuit = mCircuits.get(host);
+        if (circuit == null) {
+            circuit = new CircuitBreaker(mTagApiName, host, mPolicy);
+            CircuitBreaker previous = mCircuits.putIfAbsent(host, circuit);
+            if (previous != null) {
+                circuit = previous;
+            }
+        }
+        return circuit;
+    }
+
+    /**
+     * @return the circuits by host, created by the first call to each host
+     */
+    Map<String, CircuitBreaker> circuits() {
+        return Collections.unmodifiableMap(new HashMap<>(mCircuits));
+    }
+}
@@ -0,0 +1,30 @@
+package com.android.jmaxime.factory.network;
+
+import java.io.IOException;
+
+/**
+ * Failure of a call rejected at once because the circuit of its host is open, the call was not sent.
+ * It is never retried by the {@link RetryPolicy}.
+ *
+ * @see CircuitBreakerPolicy
+ */
+public final class CircuitBreakerOpenException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final String mTagApiName;
+    private final String mHost;
+
+    CircuitBreakerOpenException(String tagApiName, String host) {
+        super("circuit of " + host + " is open for " + tagApiName);
+        mTagApiName = tagApiName;
+        mHost = host;
+    }
+
+    public String getTagApiName() {
+        return mTagApiName;
+    }
+
+    public String getHost() {
+        return mHost;
+    }
+}
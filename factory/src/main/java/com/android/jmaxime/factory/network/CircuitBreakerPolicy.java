@@ -0,0 +1,129 @@
+package com.android.jmaxime.factory.network;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker of the calls of a tag, one circuit per host:
+ * <ul>
+ * <li>closed: the calls go through, their outcomes are kept in a sliding window of
+ * {@link Builder#slidingWindow(long, TimeUnit)}</li>
+ * <li>open: once the window holds at least {@link Builder#minimumCalls(int)} calls and the rate of failures
+ * (an {@link java.io.IOException} or a status >= 500) or of slow calls reaches its threshold, the calls fail at once
+ * with a {@link CircuitBreakerOpenException}, without waiting for the time out</li>
+ * <li>half-open: after {@link Builder#waitInOpenState(long, TimeUnit)}, a few trial calls go through,
+ * the circuit closes if they all succeed, else it opens again</li>
+ * </ul>
+ *
+ * @see OkHttpConfiguration.Builder#circuitBreaker(CircuitBreakerPolicy, String)
+ * @see OkHttpConfiguration#getCircuitBreakers(String)
+ */
+public final class CircuitBreakerPolicy {
+    final int mFailureRateThreshold;
+    final int mSlowCallRateThreshold;
+    final long mSlowCallDurationNanos;
+    final long mWindowNanos;
+    final int mWindowBuckets;
+    final int mMinimumCalls;
+    final long mWaitInOpenNanos;
+    final int mHalfOpenCalls;
+    final CircuitBreaker.Listener mListener;
+
+    private CircuitBreakerPolicy(Builder builder) {
+        mFailureRateThreshold = builder.mFailureRateThreshold;
+        mSlowCallRateThreshold = builder.mSlowCallRateThreshold;
+        mSlowCallDurationNanos = builder.mSlowCallDurationNanos;
+        mWindowNanos = builder.mWindowNanos;
+        mWindowBuckets = builder.mWindowBuckets;
+        mMinimumCalls = builder.mMinimumCalls;
+        mWaitInOpenNanos = builder.mWaitInOpenNanos;
+        mHalfOpenCalls = builder.mHalfOpenCalls;
+        mListener = builder.mListener;
+    }
+
+    public static final class Builder {
+        private int mFailureRateThreshold = 50;
+        private int mSlowCallRateThreshold = 100;
+        private long mSlowCallDurationNanos = TimeUnit.SECONDS.toNanos(10);
+        private long mWindowNanos = TimeUnit.SECONDS.toNanos(10);
+        private int mWindowBuckets = 10;
+        private int mMinimumCalls = 20;
+        private long mWaitInOpenNanos = TimeUnit.SECONDS.toNanos(30);
+        private int mHalfOpenCalls = 5;
+        private CircuitBreaker.Listener mListener;
+
+        /**
+         * @param percent rate of failed calls opening the circuit, 50 by default
+         */
+        public Builder failureRateThreshold(int percent) {
+            mFailureRateThreshold = checkPercent(percent);
+            return this;
+        }
+
+        /**
+         * @param duration a call is slow when its response takes longer, 10 s by default
+         * @param percent  rate of slow calls opening the circuit, 100 by default
+         */
+        public Builder slowCalls(long duration, TimeUnit unit, int percent) {
+            mSlowCallDurationNanos = Math.max(1, unit.toNanos(duration));
+            mSlowCallRateThreshold = checkPercent(percent);
+            return this;
+        }
+
+        /**
+         * @param duration only the calls finished during this duration count, 10 s by default
+         */
+        public Builder slidingWindow(long duration, TimeUnit unit) {
+            mWindowNanos = Math.max(mWindowBuckets, unit.toNanos(duration));
+            return this;
+        }
+
+        /**
+         * @param calls calls in the window before the rates are considered, 20 by default
+         */
+        public Builder minimumCalls(int calls) {
+            if (calls < 1) {
+                throw new IllegalArgumentException("minimumCalls < 1");
+            }
+            mMinimumCalls = calls;
+            return this;
+        }
+
+        /**
+         * @param duration time of the circuit in the open state before the trial calls, 30 s by default
+         */
+        public Builder waitInOpenState(long duration, TimeUnit unit) {
+            mWaitInOpenNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * @param calls trial calls allowed in the half-open state, 5 by default
+         */
+        public Builder halfOpenCalls(int calls) {
+            if (calls < 1) {
+                throw new IllegalArgumentException("halfOpenCalls < 1");
+            }
+            mHalfOpenCalls = calls;
+            return this;
+        }
+
+        /**
+         * @param listener notified of the state changes of the circuits, on the thread of the call changing it
+         */
+        public Builder listener(CircuitBreaker.Listener listener) {
+            mListener = listener;
+            return this;
+        }
+
+        public CircuitBreakerPolicy build() {
+            return new CircuitBreakerPolicy(this);
+        }
+
+        private static int checkPercent(int percent) {
+            if (percent < 1 || percent > 100) {
+                throw new IllegalArgumentException("percent must be in [1, 100]");
+            }
+            return percent;
+        }
+    }
+}
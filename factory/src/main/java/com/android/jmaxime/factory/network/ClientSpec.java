@@ -0,0 +1,161 @@
+package com.android.jmaxime.factory.network;
+
+import okhttp3.Cache;
+import okhttp3.CookieJar;
+import okhttp3.Dispatcher;
+import okhttp3.Interceptor;
+
+/**
+ * Settings of the client of a service, applied on the template of its tag
+ *
+ * @see OkHttpBuilder#build(ClientSpec)
+ * @see OkHttpConfiguration#create(String, String, int, boolean, boolean)
+ */
+final class ClientSpec {
+    String mApiKey;
+    OkHttpConfiguration mApiKeys;
+    String mApiKeyName;
+    String mApiKeyHeader;
+    HeaderPolicy mHeaders;
+    int mTimeOut = -1;
+    boolean mAllowCookies;
+    CookieJar mCookieJar;
+    Cache mCache;
+    boolean mTemplateCache;
+    MemoryCache mMemoryCache;
+    NetworkMetrics mMetrics;
+    Dispatcher mDispatcher;
+    Interceptor mCircuitBreaker;
+    LoggingInterceptor mLogging;
+    long mCompressionMinBytes = -1;
+    RequestCoalescer mCoalescer;
+
+    ClientSpec apiKey(String apiKey) {
+        mApiKey = apiKey;
+        return this;
+    }
+
+    /**
+     * The key is read from the configuration at each request, so it can be rotated
+     *
+     * @param apiKeyName name of the key in the configuration
+     */
+    ClientSpec apiKeyName(OkHttpConfiguration configuration, String apiKeyName) {
+        mApiKeys = configuration;
+        mApiKeyName = apiKeyName;
+        return this;
+    }
+
+    /**
+     * @param apiKeyHeader null or empty to keep the header of the {@link HeaderPolicy} of the tag
+     */
+    ClientSpec apiKeyHeader(String apiKeyHeader) {
+        mApiKeyHeader = apiKeyHeader;
+        return this;
+    }
+
+    /**
+     * @param headers null if the tag has no header policy
+     */
+    ClientSpec headers(HeaderPolicy headers) {
+        mHeaders = headers;
+        return this;
+    }
+
+    /**
+     * @param timeOut -1 to keep the time out of the template
+     */
+    ClientSpec timeOut(int timeOut) {
+        mTimeOut = timeOut;
+        return this;
+    }
+
+    ClientSpec allowCookies(boolean allowCookies) {
+        mAllowCookies = allowCookies;
+        return this;
+    }
+
+    /**
+     * @param cookieJar cookies of the service if it allows them, null to keep the cookie jar of the template
+     */
+    ClientSpec cookieJar(CookieJar cookieJar) {
+        mCookieJar = cookieJar;
+        return this;
+    }
+
+    /**
+     * @param cache null to keep the cache of the template
+     */
+    ClientSpec cache(Cache cache) {
+        mCache = cache;
+        return this;
+    }
+
+    /**
+     * @param templateCache true if the service uses the cache of its template, see {@link OkHttpBuilder#useCache(java.io.File, long, Interceptor)}
+     */
+    ClientSpec templateCache(boolean templateCache) {
+        mTemplateCache = templateCache;
+        return this;
+    }
+
+    ClientSpec memoryCache(MemoryCache memoryCache) {
+        mMemoryCache = memoryCache;
+        return this;
+    }
+
+    /**
+     * @param metrics null if the metrics of the tag are not collected
+     */
+    ClientSpec metrics(NetworkMetrics metrics) {
+        mMetrics = metrics;
+        return this;
+    }
+
+    /**
+     * @param dispatcher null to keep the dispatcher of the root client
+     */
+    ClientSpec dispatcher(Dispatcher dispatcher) {
+        mDispatcher = dispatcher;
+        return this;
+    }
+
+    /**
+     * @param circuitBreaker null if the calls of the tag have no circuit breaker
+     */
+    ClientSpec circuitBreaker(Interceptor circuitBreaker) {
+        mCircuitBreaker = circuitBreaker;
+        return this;
+    }
+
+    /**
+     * @param logging null if the calls of the tag are not logged
+     */
+    ClientSpec logging(LoggingInterceptor logging) {
+        mLogging = logging;
+        return this;
+    }
+
+    /**
+     * @param minBytes size from which the request bodies are compressed, -1 to send them as is
+     */
+    ClientSpec compressRequests(long minBytes) {
+        mCompressionMinBytes = minBytes;
+        return this;
+    }
+
+    /**
+     * @param coalescer null if the requests of the service are not coalesced
+     */
+    ClientSpec coalescer(RequestCoalescer coalescer) {
+        mCoalescer = coalescer;
+        return this;
+    }
+
+    /**
+     * @return true if the service has a cache of its own
+     */
+    boolean hasCache() {
+        return mCache != null || mMemoryCache != null;
+    }
+}
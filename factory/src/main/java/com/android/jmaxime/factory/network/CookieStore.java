@@ -0,0 +1,326 @@
+package com.android.jmaxime.factory.network;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cookie;
+import okhttp3.CookieJar;
+import okhttp3.HttpUrl;
+
+/**
+ * Cookies of the services with {@link ApiKeyService#allowCookies()}, shared by all the tags of a configuration
+ * (see {@link OkHttpConfiguration.Builder#cookieStore(CookieStore)}).
+ * <p>
+ * The cookies are indexed by domain: the cookies of a request are looked up in the domain of its host and in its
+ * parent domains only, then matched on their path. An expired cookie is removed when a lookup meets it.
+ * </p>
+ * <p>
+ * The persistent cookies are read and saved by a {@link Persistor} on a background thread, the changes of
+ * {@value #FLUSH_DELAY_MILLIS} ms being written together. The saved cookies are read from the creation of the store:
+ * the calls never wait for the disk, except the ones made before the end of this read, which wait for it.
+ * </p>
+ */
+public final class CookieStore implements CookieJar {
+    static final long FLUSH_DELAY_MILLIS = 500;
+
+    private final Persistor mPersistor;
+    private final ScheduledThreadPoolExecutor mExecutor;
+    /**
+     * Cookies by domain, then by name, path and host only flag
+     */
+    private final Map<String, Map<String, Cookie>> mDomains = new HashMap<>();
+    /**
+     * Saved cookies being read, null without persistor
+     */
+    private final Future<List<Cookie>> mSaved;
+    private volatile boolean mLoaded;
+    private boolean mDirty;
+    private boolean mFlushScheduled;
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                write();
+            } catch (IOException e) {
+                /*written again with the next change*/
+            }
+        }
+    };
+
+    /**
+     * Cookies kept in memory only
+     */
+    public CookieStore() {
+        this(null);
+    }
+
+    /**
+     * @param persistor saves the persistent cookies, e.g. {@link FileCookiePersistor}; null to keep them in memory only
+     */
+    public CookieStore(Persistor persistor) {
+        mPersistor = persistor;
+        if (persistor == null) {
+            mExecutor = null;
+            mSaved = null;
+            return;
+        }
+        mExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ApiFactory cookies");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mExecutor.setKeepAliveTime(30, TimeUnit.SECONDS);
+        mExecutor.allowCoreThreadTimeOut(true);
+        mSaved = mExecutor.submit(new Callable<List<Cookie>>() {
+            @Override
+            public List<Cookie> call() throws IOException {
+                return mPersistor.load();
+            }
+        });
+    }
+
+    @Override
+    public List<Cookie> loadForRequest(HttpUrl url) {
+        long now = System.currentTimeMillis();
+        List<Cookie> cookies = null;
+        load();
+        synchronized (this) {
+            String domain = url.host();
+            while (true) {
+                Map<String, Cookie> cookiesOfDomain = mDomains.get(domain);
+                if (cookiesOfDomain != null) {
+                    cookies = match(cookiesOfDomain, url, now, cookies);
+                    if (cookiesOfDomain.isEmpty()) {
+                        mDomains.remove(domain);
+                    }
+                }
+                int dot = domain.indexOf('.');
+                if (dot == -1) {
+                    break;
+                }
+                domain = domain.substring(dot + 1);
+            }
+            scheduleFlush();
+        }
+        return cookies == null ? Collections.<Cookie>emptyList() : cookies;
+    }
+
+    /**
+     * A cookie already expired, as sent by a server to delete it, removes the cookie it replaces
+     */
+    @Override
+    public void saveFromResponse(HttpUrl url, List<Cookie> cookies) {
+        long now = System.currentTimeMillis();
+        load();
+        synchronized (this) {
+            for (Cookie cookie : cookies) {
+                Map<String, Cookie> cookiesOfDomain = mDomains.get(cookie.domain());
+                if (cookie.expiresAt() <= now) {
+                    Cookie removed = cookiesOfDomain == null ? null : cookiesOfDomain.remove(key(cookie));
+                    if (removed != null && removed.persistent()) {
+                        mDirty = true;
+                    }
+                    continue;
+                }
+                if (cookiesOfDomain == null) {
+                    cookiesOfDomain = new LinkedHashMap<>();
+                    mDomains.put(cookie.domain(), cookiesOfDomain);
+                }
+                Cookie previous = cookiesOfDomain.put(key(cookie), cookie);
+                if (cookie.persistent() || (previous != null && previous.persistent())) {
+                    mDirty = true;
+                }
+            }
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Removes all the cookies, e.g. when the user logs out
+     */
+    public void clear() {
+        load();
+        synchronized (this) {
+            mDomains.clear();
+            mDirty = true;
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * @return number of cookies held, the expired ones not met by a lookup yet included
+     */
+    public int size() {
+        load();
+        synchronized (this) {
+            int size = 0;
+            for (Map<String, Cookie> cookiesOfDomain : mDomains.values()) {
+                size += cookiesOfDomain.size();
+            }
+            return size;
+        }
+    }
+
+    /**
+     * Writes the pending changes now, e.g. when the application goes in background.
+     * Waits for the write, so it should not be called by the main thread.
+     */
+    public void flush() throws IOException {
+        if (mExecutor == null) {
+            return;
+        }
+        try {
+            mExecutor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    write();
+                    return null;
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while writing the cookies", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    private List<Cookie> match(Map<String, Cookie> cookiesOfDomain, HttpUrl url, long now, List<Cookie> cookies) {
+        for (Iterator<Cookie> iterator = cookiesOfDomain.values().iterator(); iterator.hasNext(); ) {
+            Cookie cookie = iterator.next();
+            if (cookie.expiresAt() <= now) {
+                iterator.remove();
+                mDirty |= cookie.persistent();
+            } else if (cookie.matches(url)) {
+                if (cookies == null) {
+                    cookies = new ArrayList<>();
+                }
+                cookies.add(cookie);
+            }
+        }
+        return cookies;
+    }
+
+    /**
+     * Waits for the saved cookies, read by the background thread since the creation of the store,
+     * then adds them once. Called without the lock: the other calls are not held meanwhile
+     */
+    private void load() {
+        if (mLoaded) {
+            return;
+        }
+        List<Cookie> cookies = Collections.emptyList();
+        if (mSaved != null) {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    cookies = mSaved.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    /*starts without cookie*/
+                    break;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (mLoaded) {
+                return;
+            }
+            mLoaded = true;
+            for (Cookie cookie : cookies) {
+                if (cookie.expiresAt() > now) {
+                    Map<String, Cookie> cookiesOfDomain = mDomains.get(cookie.domain());
+                    if (cookiesOfDomain == null) {
+                        cookiesOfDomain = new LinkedHashMap<>();
+                        mDomains.put(cookie.domain(), cookiesOfDomain);
+                    }
+                    cookiesOfDomain.put(key(cookie), cookie);
+                }
+            }
+        }
+    }
+
+    /**
+     * Called with the lock held, after a change
+     */
+    private void scheduleFlush() {
+        if (mDirty && mExecutor != null && !mFlushScheduled) {
+            mFlushScheduled = true;
+            mExecutor.schedule(mFlush, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Called by the background thread only, so the writes never overlap
+     */
+    private void write() throws IOException {
+        List<Cookie> cookies = new ArrayList<>();
+        synchronized (this) {
+            mFlushScheduled = false;
+            if (!mDirty) {
+                return;
+            }
+            mDirty = false;
+            for (Map<String, Cookie> cookiesOfDomain : mDomains.values()) {
+                for (Cookie cookie : cookiesOfDomain.values()) {
+                    if (cookie.persistent()) {
+                        cookies.add(cookie);
+                    }
+                }
+            }
+        }
+        try {
+            mPersistor.save(cookies);
+        } catch (IOException e) {
+            synchronized (this) {
+                mDirty = true;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * A cookie replaces the one of the same domain with the same name, path and host only flag
+     */
+    private static String key(Cookie cookie) {
+        return cookie.name() + '\n' + cookie.path() + (cookie.hostOnly() ? "\n" : "");
+    }
+
+    /**
+     * Storage of the persistent cookies, called by the background thread of the store
+     *
+     * @see FileCookiePersistor
+     */
+    public interface Persistor {
+        /**
+         * @return the cookies saved, the expired ones are dropped by the store
+         */
+        List<Cookie> load() throws IOException;
+
+        /**
+         * @param cookies all the persistent cookies of the store, replacing the ones saved
+         */
+        void save(List<Cookie> cookies) throws IOException;
+    }
+}
@@ -0,0 +1,64 @@
+package com.android.jmaxime.factory.network;
+
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+
+/**
+ * Base url of a service read at each request from the current configuration: the Retrofit
+ * instance keeps the url it was built with, the requests are moved to the current one when
+ * it changes ({@link OkHttpConfiguration#edit()}), or to the one selected by the
+ * {@link BaseUrlRouter} of the service.
+ */
+final class DynamicBaseUrl {
+    private final OkHttpConfiguration mConfiguration;
+    private final String mName;
+    private final String mInitialUrl;
+    private final BaseUrlRouter mRouter;
+
+    /**
+     * @param name       name of the base url in the configuration, or a url started by http
+     * @param initialUrl base url given to Retrofit
+     * @param router     null if the service always uses its base url
+     */
+    DynamicBaseUrl(OkHttpConfiguration configuration, String name, String initialUrl, BaseUrlRouter router) {
+        mConfiguration = configuration;
+        mName = name;
+        HttpUrl url = HttpUrl.parse(initialUrl);
+        mInitialUrl = url == null ? initialUrl : url.toString();
+        mRouter = router;
+    }
+
+    /**
+     * @return the request on the current base url, the same request if the base url did not change
+     * @throws IllegalArgumentException if the router selects a base url name unknown by the configuration
+     */
+    Request apply(Request request) {
+        String name = null;
+        if (mRouter != null) {
+            name = mRouter.route(request);
+            request = mRouter.strip(request);
+        }
+        String current;
+        if (name == null) {
+            current = baseUrl(mName);
+        } else {
+            current = baseUrl(name);
+            if (current == null) {
+                throw new IllegalArgumentException("no base url named " + name + " in the configuration");
+            }
+        }
+        if (current == null || current.equals(mInitialUrl)) {
+            return request;
+        }
+        String url = request.url().toString();
+        if (!url.startsWith(mInitialUrl)) {
+            return request;
+        }
+        HttpUrl rebased = HttpUrl.parse(current + url.substring(mInitialUrl.length()));
+        return rebased == null ? request : request.newBuilder().url(rebased).build();
+    }
+
+    private String baseUrl(String name) {
+        return name.startsWith("http") ? name : mConfiguration.getBaseUrl(name);
+    }
+}
@@ -0,0 +1,116 @@
+package com.android.jmaxime.factory.network;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import okhttp3.Cookie;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.Okio;
+
+/**
+ * Persistent cookies of a {@link CookieStore} saved in one file, replaced at once by each write.
+ * e.g. on Android: new FileCookiePersistor(new File(context.getFilesDir(), "cookies"))
+ */
+public final class FileCookiePersistor implements CookieStore.Persistor {
+    private static final int VERSION = 1;
+    private static final int SECURE = 1;
+    private static final int HTTP_ONLY = 2;
+    private static final int HOST_ONLY = 4;
+
+    private final File mFile;
+
+    public FileCookiePersistor(File file) {
+        mFile = file;
+    }
+
+    /**
+     * @return the cookies of the file, none if it does not exist or was written by another version
+     */
+    @Override
+    public List<Cookie> load() throws IOException {
+        BufferedSource source;
+        try {
+            source = Okio.buffer(Okio.source(mFile));
+        } catch (FileNotFoundException e) {
+            return Collections.emptyList();
+        }
+        try {
+            if (source.readInt() != VERSION) {
+                return Collections.emptyList();
+            }
+            int count = source.readInt();
+            List<Cookie> cookies = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Cookie.Builder builder = new Cookie.Builder()
+                        .name(readString(source))
+                        .value(readString(source));
+                String domain = readString(source);
+                builder.path(readString(source)).expiresAt(source.readLong());
+                int flags = source.readByte();
+                if ((flags & HOST_ONLY) != 0) {
+                    builder.hostOnlyDomain(domain);
+                } else {
+                    builder.domain(domain);
+                }
+                if ((flags & SECURE) != 0) {
+                    builder.secure();
+                }
+                if ((flags & HTTP_ONLY) != 0) {
+                    builder.httpOnly();
+                }
+                cookies.add(builder.build());
+            }
+            return cookies;
+        } catch (IllegalArgumentException e) {
+            throw new IOException("invalid cookie in " + mFile, e);
+        } finally {
+            source.close();
+        }
+    }
+
+    /**
+     * The cookies are written in a temporary file renamed at the end: a write interrupted keeps the previous file
+     */
+    @Override
+    public void save(List<Cookie> cookies) throws IOException {
+        File directory = mFile.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("can not create " + directory);
+        }
+        File temporary = new File(mFile.getPath() + ".tmp");
+        BufferedSink sink = Okio.buffer(Okio.sink(temporary));
+        try {
+            sink.writeInt(VERSION).writeInt(cookies.size());
+            for (Cookie cookie : cookies) {
+                writeString(sink, cookie.name());
+                writeString(sink, cookie.value());
+                writeString(sink, cookie.domain());
+                writeString(sink, cookie.path());
+                sink.writeLong(cookie.expiresAt());
+                sink.writeByte((cookie.secure() ? SECURE : 0)
+                        | (cookie.httpOnly() ? HTTP_ONLY : 0)
+                        | (cookie.hostOnly() ? HOST_ONLY : 0));
+            }
+        } finally {
+            sink.close();
+        }
+        if (!temporary.renameTo(mFile) && !(mFile.delete() && temporary.renameTo(mFile))) {
+            throw new IOException("can not replace " + mFile);
+        }
+    }
+
+    private static String readString(BufferedSource source) throws IOException {
+        return source.readUtf8(source.readInt());
+    }
+
+    private static void writeString(BufferedSink sink, String value) throws IOException {
+        ByteString bytes = ByteString.encodeUtf8(value);
+        sink.writeInt(bytes.size()).write(bytes);
+    }
+}
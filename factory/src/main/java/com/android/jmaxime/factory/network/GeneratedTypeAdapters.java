@@ -0,0 +1,267 @@
+package com.android.jmaxime.factory.network;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Gson adapters generated at compile time by the factory-compiler annotation processor (option
+ * {@code apiFactory.typeAdapters}) for the models of the services: one ApiKeyServiceTypeAdapters per
+ * package of models, found by name the first time a type of the package is asked.
+ * The lists of generated models are read by an adapter of this factory too.
+ * <p>
+ * The adapters are used by a Gson registering this factory, the converters registered with that Gson included.
+ * Register it first: the adapters registered after it take precedence, so a model keeps its own adapter.
+ * The generated adapters follow the default rules of Gson (name of the field or {@code @SerializedName}),
+ * a Gson with a naming policy or an exclusion strategy needs its own adapters.
+ * </p>
+ * <pre>
+ * new GsonBuilder()
+ *         .registerTypeAdapterFactory(GeneratedTypeAdapters.factory())
+ *         .registerTypeAdapter(Store.class, new StoreAdapter()) // used for Store
+ *         .create();
+ * </pre>
+ */
+public final class GeneratedTypeAdapters implements TypeAdapterFactory {
+    static final String ADAPTERS_NAME = "ApiKeyServiceTypeAdapters";
+    private static final GeneratedTypeAdapters INSTANCE = new GeneratedTypeAdapters();
+    private static final TypeAdapterFactory NONE = new TypeAdapterFactory() {
+        @Override
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            return null;
+        }
+    };
+
+    private final ConcurrentMap<String, TypeAdapterFactory> mPackages = new ConcurrentHashMap<>();
+
+    private GeneratedTypeAdapters() {
+    }
+
+    public static TypeAdapterFactory factory() {
+        return INSTANCE;
+    }
+
+    @Override
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> raw = type.getRawType();
+        if (raw != Object.class && raw.isAssignableFrom(ArrayList.class) && type.getType() instanceof ParameterizedType) {
+            return list(gson, ((ParameterizedType) type.getType()).getActualTypeArguments()[0]);
+        }
+        if (raw.isPrimitive() || raw.isArray() || raw.getName().startsWith("java.")) {
+            return null;
+        }
+        return adapters(raw).create(gson, type);
+    }
+
+    /**
+     * @return the generated adapter of the type, else the adapter of Gson
+     */
+    public static <T> TypeAdapter<T> adapter(Gson gson, TypeToken<T> type) {
+        TypeAdapter<T> adapter = INSTANCE.create(gson, type);
+        return adapter != null ? adapter : gson.getAdapter(type);
+    }
+
+    /**
+     * @return the generated adapters of the package of the class, {@link #NONE} if it has none
+     */
+    private TypeAdapterFactory adapters(Class<?> raw) {
+        String name = raw.getName();
+        String packageName = name.substring(0, Math.max(0, name.lastIndexOf('.')));
+        TypeAdapterFactory adapters = mPackages.get(packageName);
+        if (adapters != null) {
+            return adapters;
+        }
+        try {
+            Class<?> generated = Class.forName(packageName.isEmpty() ? ADAPTERS_NAME : packageName + "." + ADAPTERS_NAME,
+                    true, raw.getClassLoader());
+            adapters = (TypeAdapterFactory) generated.newInstance();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            adapters = NONE;
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new IllegalStateException("can not create the " + ADAPTERS_NAME + " of " + packageName, e);
+        }
+        TypeAdapterFactory previous = mPackages.putIfAbsent(packageName, adapters);
+        return previous != null ? previous : adapters;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> TypeAdapter<T> list(Gson gson, Type element) {
+        if (element instanceof WildcardType) {
+            element = ((WildcardType) element).getUpperBounds()[0];
+        }
+        TypeAdapter<?> adapter = create(gson, TypeToken.get(element));
+        return adapter == null ? null : (TypeAdapter<T>) new ListAdapter<>(adapter);
+    }
+
+    /*
+     * Reading of the fields by the generated adapters, with the conversions of the adapters of Gson
+     */
+
+    public static boolean nextBoolean(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.STRING) {
+            return Boolean.parseBoolean(in.nextString());
+        }
+        return in.nextBoolean();
+    }
+
+    public static int nextInt(JsonReader in) throws IOException {
+        try {
+            return in.nextInt();
+        } catch (NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    public static long nextLong(JsonReader in) throws IOException {
+        try {
+            return in.nextLong();
+        } catch (NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    public static short nextShort(JsonReader in) throws IOException {
+        return (short) nextInt(in);
+    }
+
+    public static byte nextByte(JsonReader in) throws IOException {
+        return (byte) nextInt(in);
+    }
+
+    public static double nextDouble(JsonReader in) throws IOException {
+        return in.nextDouble();
+    }
+
+    public static float nextFloat(JsonReader in) throws IOException {
+        return (float) in.nextDouble();
+    }
+
+    public static char nextChar(JsonReader in) throws IOException {
+        String value = in.nextString();
+        if (value.length() != 1) {
+            throw new JsonSyntaxException("Expecting character, got: " + value);
+        }
+        return value.charAt(0);
+    }
+
+    public static String readString(JsonReader in) throws IOException {
+        switch (in.peek()) {
+            case NULL:
+                in.nextNull();
+                return null;
+            case BOOLEAN:
+                return Boolean.toString(in.nextBoolean());
+            default:
+                return in.nextString();
+        }
+    }
+
+    public static Boolean readBoolean(JsonReader in) throws IOException {
+        return isNull(in) ? null : nextBoolean(in);
+    }
+
+    public static Integer readInteger(JsonReader in) throws IOException {
+        return isNull(in) ? null : nextInt(in);
+    }
+
+    public static Long readLong(JsonReader in) throws IOException {
+        return isNull(in) ? null : nextLong(in);
+    }
+
+    public static Short readShort(JsonReader in) throws IOException {
+        return isNull(in) ? null : nextShort(in);
+    }
+
+    public static Byte readByte(JsonReader in) throws IOException {
+        return isNull(in) ? null : nextByte(in);
+    }
+
+    public static Double readDouble(JsonReader in) throws IOException {
+        return isNull(in) ? null : nextDouble(in);
+    }
+
+    public static Float readFloat(JsonReader in) throws IOException {
+        return isNull(in) ? null : nextFloat(in);
+    }
+
+    public static Character readCharacter(JsonReader in) throws IOException {
+        return isNull(in) ? null : nextChar(in);
+    }
+
+    /**
+     * Consumes the json null
+     *
+     * @return true if the next value is null
+     */
+    public static boolean isNull(JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.NULL) {
+            return false;
+        }
+        in.nextNull();
+        return true;
+    }
+
+    public static void writeBoolean(JsonWriter out, Boolean value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+        } else {
+            out.value(value.booleanValue());
+        }
+    }
+
+    public static void writeCharacter(JsonWriter out, Character value) throws IOException {
+        out.value(value == null ? null : String.valueOf(value.charValue()));
+    }
+
+    /**
+     * Json array of generated models, read in an {@link ArrayList}
+     */
+    private static final class ListAdapter<E> extends TypeAdapter<Collection<E>> {
+        private final TypeAdapter<E> mElement;
+
+        ListAdapter(TypeAdapter<E> element) {
+            mElement = element;
+        }
+
+        @Override
+        public void write(JsonWriter out, Collection<E> value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginArray();
+            for (E element : value) {
+                mElement.write(out, element);
+            }
+            out.endArray();
+        }
+
+        @Override
+        public Collection<E> read(JsonReader in) throws IOException {
+            if (isNull(in)) {
+                return null;
+            }
+            Collection<E> list = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+                list.add(mElement.read(in));
+            }
+            in.endArray();
+            return list;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.android.jmaxime.factory.network;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+/**
+ * Compresses with gzip the request bodies of at least the given size, and the bodies of unknown size.
+ * The body is compressed while it is written to the connection, it is never buffered: the compressed
+ * request is sent without Content-Length (chunked).
+ * The requests with a Content-Encoding are sent as is.
+ */
+final class GzipRequestInterceptor implements Interceptor {
+    private final long mMinBytes;
+
+    /**
+     * @param minBytes size from which the bodies are compressed
+     */
+    GzipRequestInterceptor(long minBytes) {
+        mMinBytes = minBytes;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        RequestBody body = request.body();
+        if (body == null || request.header("Content-Encoding") != null) {
+            return chain.proceed(request);
+        }
+        long length = body.contentLength();
+        if (length != -1 && length < mMinBytes) {
+            return chain.proceed(request);
+        }
+        return chain.proceed(request.newBuilder()
+                .header("Content-Encoding", "gzip")
+                .method(request.method(), gzip(body))
+                .build());
+    }
+
+    private static RequestBody gzip(final RequestBody body) {
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return body.contentType();
+            }
+
+            @Override
+            public long contentLength() {
+                return -1;
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                BufferedSink gzip = Okio.buffer(new GzipSink(sink));
+                body.writeTo(gzip);
+                gzip.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,109 @@
+package com.android.jmaxime.factory.network;
+
+import java.io.IOException;
+
+import okhttp3.Headers;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Compiled {@link HeaderPolicy} of a client and its api key header. The request is rebuilt at most once,
+ * and only if a header is missing or the api key differs: a request without headers receives the prebuilt
+ * fixed headers at once.
+ * The key is either fixed, or read at each request from the current configuration: a key rotated with
+ * {@link OkHttpConfiguration#edit()} is used by the next request of the services already created.
+ */
+final class HeaderInterceptor implements Interceptor {
+    private static final HeaderPolicy.Provider[] NO_PROVIDERS = {};
+
+    private final Headers mHeaders;
+    private final String[] mProviderNames;
+    private final HeaderPolicy.Provider[] mProviders;
+    private final String mApiKeyHeader;
+    private final String mApiKey;
+    private final OkHttpConfiguration mConfiguration;
+    private final String mApiKeyName;
+
+    private HeaderInterceptor(HeaderPolicy policy, String apiKeyHeader, String apiKey, OkHttpConfiguration configuration, String apiKeyName) {
+        mHeaders = policy == null ? Headers.of() : policy.mHeaders;
+        mProviderNames = policy == null ? new String[0] : policy.mProviderNames.toArray(new String[0]);
+        mProviders = policy == null ? NO_PROVIDERS : policy.mProviders.toArray(NO_PROVIDERS);
+        mApiKeyHeader = apiKeyHeader;
+        mApiKey = apiKey;
+        mConfiguration = configuration;
+        mApiKeyName = apiKeyName;
+    }
+
+    /**
+     * @param policy       headers of the tag, may be null
+     * @param apiKeyHeader header of the api key, the one of the policy if null or empty
+     * @param apiKey       fixed key, used without apiKeyName
+     * @param apiKeyName   name of the key in the configuration, may be null
+     * @return null if there is no header to add
+     */
+    static HeaderInterceptor of(HeaderPolicy policy, String apiKeyHeader, String apiKey, OkHttpConfiguration configuration, String apiKeyName) {
+        if (apiKeyHeader == null || apiKeyHeader.isEmpty()) {
+            apiKeyHeader = policy == null ? HeaderPolicy.DEFAULT_API_KEY_HEADER : policy.mApiKeyHeader;
+        }
+        if (apiKeyName != null) {
+            return new HeaderInterceptor(policy, apiKeyHeader, null, configuration, apiKeyName);
+        }
+        if (apiKey != null) {
+            return new HeaderInterceptor(policy, apiKeyHeader, apiKey, null, null);
+        }
+        if (policy == null || (policy.mHeaders.size() == 0 && policy.mProviders.isEmpty())) {
+            return null;
+        }
+        return new HeaderInterceptor(policy, null, null, null, null);
+    }
+
+    /**
+     * @return the header of the api key, null if the interceptor adds no key
+     */
+    String apiKeyHeader() {
+        return mApiKeyHeader;
+    }
+
+    /**
+     * @return the api key added to the next request, null if none
+     */
+    String apiKey() {
+        if (mApiKeyHeader == null) {
+            return null;
+        }
+        return mConfiguration == null ? mApiKey : mConfiguration.getApiKey(mApiKeyName);
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        Request.Builder builder = null;
+        if (request.headers().size() == 0) {
+            if (mHeaders.size() > 0) {
+                builder = request.newBuilder().headers(mHeaders);
+            }
+        } else {
+            for (int i = 0, count = mHeaders.size(); i < count; i++) {
+                if (request.header(mHeaders.name(i)) == null) {
+                    builder = (builder == null ? request.newBuilder() : builder).addHeader(mHeaders.name(i), mHeaders.value(i));
+                }
+            }
+        }
+        for (int i = 0; i < mProviders.length; i++) {
+            if (request.header(mProviderNames[i]) == null) {
+                String value = mProviders[i].value(request);
+                if (value != null) {
+                    builder = (builder == null ? request.newBuilder() : builder).header(mProviderNames[i], value);
+                }
+            }
+        }
+        if (mApiKeyHeader != null) {
+            String apiKey = apiKey();
+            if (apiKey != null && !apiKey.equals(request.header(mApiKeyHeader))) {
+                builder = (builder == null ? request.newBuilder() : builder).header(mApiKeyHeader, apiKey);
+            }
+        }
+        return chain.proceed(builder == null ? request : builder.build());
+    }
+}
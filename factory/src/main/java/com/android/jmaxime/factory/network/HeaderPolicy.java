@@ -0,0 +1,86 @@
+package com.android.jmaxime.factory.network;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import okhttp3.Headers;
+import okhttp3.Request;
+
+/**
+ * Headers added to the requests of a tag: fixed values, values given by a {@link Provider} at each request
+ * (auth token, locale...) and the name of the api key header.
+ * <p>
+ * The policy is compiled once per client into a single interceptor with the fixed headers prebuilt: a request
+ * holding all its headers already is sent as is. The headers set on the request win over the ones of the policy,
+ * except the api key.
+ * </p>
+ *
+ * @see OkHttpConfiguration.Builder#headers(HeaderPolicy, String)
+ */
+public final class HeaderPolicy {
+    static final String DEFAULT_API_KEY_HEADER = "X-Api-Key";
+
+    final Headers mHeaders;
+    final List<String> mProviderNames;
+    final List<Provider> mProviders;
+    final String mApiKeyHeader;
+
+    private HeaderPolicy(Builder builder) {
+        mHeaders = builder.mHeaders.build();
+        mProviderNames = Collections.unmodifiableList(new ArrayList<>(builder.mProviderNames));
+        mProviders = Collections.unmodifiableList(new ArrayList<>(builder.mProviders));
+        mApiKeyHeader = builder.mApiKeyHeader;
+    }
+
+    /**
+     * Value of a header computed at each request without this header
+     */
+    public interface Provider {
+        /**
+         * Called on the thread of the call
+         *
+         * @return the value of the header, null to send the request without it
+         */
+        String value(Request request);
+    }
+
+    public static final class Builder {
+        private final Headers.Builder mHeaders = new Headers.Builder();
+        private final List<String> mProviderNames = new ArrayList<>();
+        private final List<Provider> mProviders = new ArrayList<>();
+        private String mApiKeyHeader = DEFAULT_API_KEY_HEADER;
+
+        /**
+         * @throws IllegalArgumentException if the name or the value is not a valid header
+         */
+        public Builder header(String name, String value) {
+            mHeaders.set(name, value);
+            return this;
+        }
+
+        public Builder header(String name, Provider provider) {
+            if (provider == null) {
+                throw new IllegalArgumentException("provider == null");
+            }
+            new Headers.Builder().add(name, ""); /*validates the name*/
+            mProviderNames.add(name);
+            mProviders.add(provider);
+            return this;
+        }
+
+        /**
+         * @param name header of the api key of the services of the tag, X-Api-Key by default.
+         *             {@link ApiKeyService#apiKeyHeader()} overrides it for a service
+         */
+        public Builder apiKeyHeader(String name) {
+            new Headers.Builder().add(name, ""); /*validates the name*/
+            mApiKeyHeader = name;
+            return this;
+        }
+
+        public HeaderPolicy build() {
+            return new HeaderPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.android.jmaxime.factory.network;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import okhttp3.Cache;
+
+/**
+ * OkHttp does not support several {@link Cache} on the same directory (the journal is corrupted),
+ * all the caches of the process are created here: one instance per directory.
+ */
+final class HttpCaches {
+    private static final ConcurrentMap<String, Cache> CACHES = new ConcurrentHashMap<>();
+
+    private HttpCaches() {
+    }
+
+    /**
+     * @param directory directory of the cache
+     * @param maxSize   used only by the first call for a directory
+     * @return the cache shared by all the clients using this directory
+     */
+    static Cache get(File directory, long maxSize) {
+        String key = directory.getAbsolutePath();
+        Cache cache = CACHES.get(key);
+        while (cache == null || cache.isClosed()) {
+            Cache created = new Cache(directory, maxSize);
+            if (cache == null ? CACHES.putIfAbsent(key, created) == null : CACHES.replace(key, cache, created)) {
+                return created;
+            }
+            cache = CACHES.get(key);
+        }
+        return cache;
+    }
+}
@@ -0,0 +1,84 @@
+package com.android.jmaxime.factory.network;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+import okhttp3.ResponseBody;
+
+/**
+ * Items of a json array read one at a time from the body of a response, the whole array is never in memory.
+ * <pre>
+ * &#64;GET("catalogue")
+ * Call&lt;JsonStream&lt;Product&gt;&gt; catalogue();
+ *
+ * JsonStream&lt;Product&gt; products = service.catalogue().execute().body();
+ * try {
+ *     while (products.hasNext()) {
+ *         index(products.next());
+ *     }
+ * } finally {
+ *     products.close();
+ * }
+ * </pre>
+ * The body is closed once the array is read, or by {@link #close()}. A stream is read by one thread at a time.
+ *
+ * @see JsonStreamConverterFactory
+ * @see JsonStreamCallAdapterFactory
+ */
+public final class JsonStream<T> implements Closeable {
+    private final ResponseBody mBody;
+    private final JsonReader mReader;
+    private final TypeAdapter<T> mAdapter;
+    private boolean mStarted;
+    private volatile boolean mClosed;
+
+    JsonStream(ResponseBody body, JsonReader reader, TypeAdapter<T> adapter) {
+        mBody = body;
+        mReader = reader;
+        mAdapter = adapter;
+    }
+
+    /**
+     * @return true if the array has another item, the body is closed at the end of the array
+     */
+    public boolean hasNext() throws IOException {
+        if (mClosed) {
+            return false;
+        }
+        if (!mStarted) {
+            mStarted = true;
+            mReader.beginArray();
+        }
+        if (mReader.hasNext()) {
+            return true;
+        }
+        mReader.endArray();
+        close();
+        return false;
+    }
+
+    /**
+     * @throws NoSuchElementException at the end of the array
+     */
+    public T next() throws IOException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return mAdapter.read(mReader);
+    }
+
+    /**
+     * Closes the body, the items not read yet are skipped
+     */
+    @Override
+    public void close() {
+        if (!mClosed) {
+            mClosed = true;
+            mBody.close();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.android.jmaxime.factory.network;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.CallAdapter;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.adapter.rxjava.HttpException;
+import retrofit2.http.Streaming;
+import rx.Observable;
+import rx.Observer;
+import rx.exceptions.Exceptions;
+import rx.functions.Action1;
+import rx.functions.Action2;
+import rx.functions.Func0;
+import rx.observables.SyncOnSubscribe;
+
+/**
+ * Call adapter emitting the items of a json array one at a time, for the methods returning an
+ * {@link Observable} annotated with {@link Streaming}. The other methods are adapted by the delegate.
+ * <pre>
+ * &#64;Streaming
+ * &#64;GET("catalogue")
+ * Observable&lt;Product&gt; catalogue();
+ * </pre>
+ * The call is executed on the subscribing thread once the first item is requested, then each item is read
+ * from the body when the subscriber requests it (backpressure). The body is closed at the end of the array,
+ * on error or on unsubscribe.
+ * The converter of the tag must be a {@link JsonStreamConverterFactory}.
+ */
+public final class JsonStreamCallAdapterFactory extends CallAdapter.Factory {
+    private final CallAdapter.Factory mDelegate;
+
+    private JsonStreamCallAdapterFactory(CallAdapter.Factory delegate) {
+        mDelegate = delegate;
+    }
+
+    public static JsonStreamCallAdapterFactory create() {
+        return new JsonStreamCallAdapterFactory(null);
+    }
+
+    /**
+     * @param delegate call adapter of the other methods of the tag, e.g. RxJavaCallAdapterFactory
+     */
+    public static JsonStreamCallAdapterFactory create(CallAdapter.Factory delegate) {
+        return new JsonStreamCallAdapterFactory(delegate);
+    }
+
+    @Override
+    public CallAdapter<?> get(Type returnType, Annotation[] annotations, Retrofit retrofit) {
+        if (getRawType(returnType) == Observable.class && returnType instanceof ParameterizedType && isStreaming(annotations)) {
+            Type item = getParameterUpperBound(0, (ParameterizedType) returnType);
+            if (item != ResponseBody.class) {
+                return new StreamCallAdapter(new JsonStreamType(item));
+            }
+        }
+        return mDelegate == null ? null : mDelegate.get(returnType, annotations, retrofit);
+    }
+
+    private static boolean isStreaming(Annotation[] annotations) {
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof Streaming) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class StreamCallAdapter implements CallAdapter<Observable<?>> {
+        private final Type mResponseType;
+
+        StreamCallAdapter(Type responseType) {
+            mResponseType = responseType;
+        }
+
+        @Override
+        public Type responseType() {
+            return mResponseType;
+        }
+
+        @Override
+        public <R> Observable<?> adapt(final Call<R> call) {
+            @SuppressWarnings("unchecked")
+            final Call<JsonStream<Object>> streamCall = (Call<JsonStream<Object>>) (Call<?>) call;
+            return Observable.create(SyncOnSubscribe.createSingleState(
+                    new Func0<StreamState>() {
+                        @Override
+                        public StreamState call() {
+                            return new StreamState(streamCall.clone());
+                        }
+                    },
+                    new Action2<StreamState, Observer<? super Object>>() {
+                        @Override
+                        public void call(StreamState state, Observer<? super Object> observer) {
+                            state.next(observer);
+                        }
+                    },
+                    new Action1<StreamState>() {
+                        @Override
+                        public void call(StreamState state) {
+                            state.close();
+                        }
+                    }));
+        }
+    }
+
+    /**
+     * Call of a subscriber and its stream, once the response is received
+     */
+    private static final class StreamState {
+        private final Call<JsonStream<Object>> mCall;
+        private volatile JsonStream<Object> mStream;
+
+        StreamState(Call<JsonStream<Object>> call) {
+            mCall = call;
+        }
+
+        /**
+         * Emits the next item, the end of the stream or its failure
+         */
+        void next(Observer<? super Object> observer) {
+            try {
+                JsonStream<Object> stream = mStream;
+                if (stream == null) {
+                    Response<JsonStream<Object>> response = mCall.execute();
+                    if (!response.isSuccessful()) {
+                        observer.onError(new HttpException(response));
+                        return;
+                    }
+                    stream = response.body();
+                    if (stream == null) {
+                        observer.onCompleted();
+                        return;
+                    }
+                    mStream = stream;
+                }
+                if (stream.hasNext()) {
+                    observer.onNext(stream.next());
+                } else {
+                    observer.onCompleted();
+                }
+            } catch (Throwable t) {
+                Exceptions.throwIfFatal(t);
+                close();
+                observer.onError(t);
+            }
+        }
+
+        void close() {
+            mCall.cancel();
+            JsonStream<Object> stream = mStream;
+            if (stream != null) {
+                stream.close();
+            }
+        }
+    }
+
+    /**
+     * JsonStream&lt;item&gt;, the response type given to the converter
+     */
+    private static final class JsonStreamType implements ParameterizedType {
+        private final Type mItem;
+
+        JsonStreamType(Type item) {
+            mItem = item;
+        }
+
+        @Override
+        public Type[] getActualTypeArguments() {
+            return new Type[]{mItem};
+        }
+
+        @Override
+        public Type getRawType() {
+            return JsonStream.class;
+        }
+
+        @Override
+        public Type getOwnerType() {
+            return null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ParameterizedType
+                    && ((ParameterizedType) o).getRawType() == JsonStream.class
+                    && ((ParameterizedType) o).getOwnerType() == null
+                    && Arrays.equals(getActualTypeArguments(), ((ParameterizedType) o).getActualTypeArguments());
+        }
+
+        @Override
+        public int hashCode() {
+            return mItem.hashCode() ^ JsonStream.class.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return JsonStream.class.getName() + "<" + mItem + ">";
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.android.jmaxime.factory.network;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+/**
+ * Gson converter reading the responses of type {@link JsonStream} item by item, the other types
+ * are converted by {@link GsonConverterFactory}. The items are read by the adapters of the Gson,
+ * see {@link GeneratedTypeAdapters} to read them without reflection.
+ * <pre>
+ * new OkHttpConfiguration.Builder(client, GsonConverterFactory.create())
+ *         .registerConverter(JsonStreamConverterFactory.create(gson), "catalogue")
+ * </pre>
+ */
+public final class JsonStreamConverterFactory extends Converter.Factory {
+    private final Gson mGson;
+    private final Converter.Factory mDelegate;
+
+    private JsonStreamConverterFactory(Gson gson) {
+        mGson = gson;
+        mDelegate = GsonConverterFactory.create(gson);
+    }
+
+    public static JsonStreamConverterFactory create() {
+        return create(new Gson());
+    }
+
+    public static JsonStreamConverterFactory create(Gson gson) {
+        if (gson == null) {
+            throw new NullPointerException("gson == null");
+        }
+        return new JsonStreamConverterFactory(gson);
+    }
+
+    @Override
+    public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+        Type item = itemType(type);
+        if (item == null) {
+            return mDelegate.responseBodyConverter(type, annotations, retrofit);
+        }
+        return converter(mGson.getAdapter(TypeToken.get(item)));
+    }
+
+    @Override
+    public Converter<?, RequestBody> requestBodyConverter(Type type, Annotation[] parameterAnnotations, Annotation[] methodAnnotations, Retrofit retrofit) {
+        return mDelegate.requestBodyConverter(type, parameterAnnotations, methodAnnotations, retrofit);
+    }
+
+    private <T> Converter<ResponseBody, JsonStream<T>> converter(final TypeAdapter<T> adapter) {
+        return new Converter<ResponseBody, JsonStream<T>>() {
+            @Override
+            public JsonStream<T> convert(ResponseBody body) throws IOException {
+                return new JsonStream<>(body, mGson.newJsonReader(body.charStream()), adapter);
+            }
+        };
+    }
+
+    /**
+     * @return the type of the items of a {@link JsonStream}, null for another type
+     */
+    private static Type itemType(Type type) {
+        if (!(type instanceof ParameterizedType) || ((ParameterizedType) type).getRawType() != JsonStream.class) {
+            return null;
+        }
+        Type item = ((ParameterizedType) type).getActualTypeArguments()[0];
+        if (item instanceof WildcardType) {
+            return ((WildcardType) item).getUpperBounds()[0];
+        }
+        return item;
+    }
+}
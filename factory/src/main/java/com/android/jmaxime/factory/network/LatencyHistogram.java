@@ -0,0 +1,123 @@
+package com.android.jmaxime.factory.network;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of durations, in microseconds.
+ * Each power of two is split in 4 buckets: the percentiles are estimated within 25%.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKETS = 4;
+    private static final int BUCKETS = 160;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    /**
+     * @param durationNanos duration to record, in nanoseconds
+     */
+    public void record(long durationNanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(durationNanos));
+        mBuckets.incrementAndGet(index(micros));
+        mCount.incrementAndGet();
+        mSum.addAndGet(micros);
+        long max = mMax.get();
+        while (micros > max && !mMax.compareAndSet(max, micros)) {
+            max = mMax.get();
+        }
+    }
+
+    public Snapshot snapshot() {
+        long[] buckets = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = mBuckets.get(i);
+            count += buckets[i];
+        }
+        return new Snapshot(buckets, count, mSum.get(), mMax.get());
+    }
+
+    static int index(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >> (exponent - 2)) & (SUB_BUCKETS - 1);
+        return Math.min(BUCKETS - 1, SUB_BUCKETS * (exponent - 1) + sub);
+    }
+
+    static long lowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + 1;
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - 2);
+    }
+
+    /**
+     * Immutable copy of the histogram
+     */
+    public static final class Snapshot {
+        private final long[] mBuckets;
+        private final long mCount;
+        private final long mSum;
+        private final long mMax;
+
+        Snapshot(long[] buckets, long count, long sum, long max) {
+            mBuckets = buckets;
+            mCount = count;
+            mSum = sum;
+            mMax = max;
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        /**
+         * @return mean in microseconds, 0 if empty
+         */
+        public long getMean() {
+            return mCount == 0 ? 0 : mSum / mCount;
+        }
+
+        /**
+         * @return max in microseconds
+         */
+        public long getMax() {
+            return mMax;
+        }
+
+        /**
+         * @param percentile between 0 and 100, e.g. 99
+         * @return estimated value in microseconds (upper bound of its bucket), 0 if empty
+         */
+        public long getPercentile(double percentile) {
+            if (mCount == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(percentile / 100 * mCount);
+            long seen = 0;
+            for (int i = 0; i < mBuckets.length; i++) {
+                seen += mBuckets[i];
+                if (seen >= Math.max(1, rank)) {
+                    return Math.min(mMax, i + 1 < mBuckets.length ? lowerBound(i + 1) - 1 : mMax);
+                }
+            }
+            return mMax;
+        }
+
+        @Override
+        public String toString() {
+            return "{count=" + mCount
+                    + ", mean=" + getMean()
+                    + "us, p50=" + getPercentile(50)
+                    + "us, p99=" + getPercentile(99)
+                    + "us, max=" + mMax + "us}";
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.android.jmaxime.factory.network;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.logging.HttpLoggingInterceptor;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ByteString;
+import okio.ForwardingSink;
+import okio.Okio;
+
+/**
+ * Logs the sampled calls of a {@link LoggingPolicy}. The calling thread only keeps the parts of the call to log:
+ * the headers, the first bytes of the request body, captured while it is sent, and the first bytes of the
+ * response body, peeked. The lines are formatted and written on the logging thread of the interceptor,
+ * the entries are dropped while its queue is full and their count is logged with the next entry.
+ */
+final class LoggingInterceptor implements Interceptor {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final LoggingPolicy mPolicy;
+    private final ThreadPoolExecutor mExecutor;
+    private final AtomicLong mCalls = new AtomicLong();
+    private final AtomicLong mDropped = new AtomicLong();
+    private volatile long mReportedDrops;
+
+    LoggingInterceptor(LoggingPolicy policy) {
+        mPolicy = policy;
+        mExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(policy.mQueueSize),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "ApiFactory logging");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }, new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable entry, ThreadPoolExecutor executor) {
+                        mDropped.incrementAndGet();
+                    }
+                });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @param header header of the api key of a client, redacted in addition to the headers of the policy
+     * @return an interceptor logging through this one, for the calls of that client
+     */
+    Interceptor redacting(final String header) {
+        if (header == null || mPolicy.mRedactedHeaders.contains(header)) {
+            return this;
+        }
+        return new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                return LoggingInterceptor.this.intercept(chain, header);
+            }
+        };
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        return intercept(chain, null);
+    }
+
+    /**
+     * @param redacted header redacted in addition to the headers of the policy, may be null
+     */
+    private Response intercept(Chain chain, String redacted) throws IOException {
+        Request request = chain.request();
+        if (!sampled()) {
+            return chain.proceed(request);
+        }
+        BodyCapture capture = null;
+        if (request.body() != null && mPolicy.mMaxBodyBytes > 0) {
+            capture = new BodyCapture(request.body(), mPolicy.mMaxBodyBytes);
+            request = request.newBuilder().method(request.method(), capture).build();
+        }
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException e) {
+            mExecutor.execute(new Entry(request, capture, null, null, System.nanoTime() - start, e, redacted));
+            throw e;
+        }
+        long tookNanos = System.nanoTime() - start;
+        mExecutor.execute(new Entry(request, capture, response, peek(response), tookNanos, null, redacted));
+        return response;
+    }
+
+    /**
+     * @return entries dropped since the creation of the interceptor
+     */
+    long droppedEntries() {
+        return mDropped.get();
+    }
+
+    /**
+     * Evenly spread: the call n is logged when n * rate crosses an integer
+     */
+    private boolean sampled() {
+        double rate = mPolicy.mSampleRate;
+        if (rate >= 1) {
+            return true;
+        }
+        long call = mCalls.getAndIncrement();
+        return (long) ((call + 1) * rate) > (long) (call * rate);
+    }
+
+    /**
+     * @return the first bytes of the body, the response keeps all its bytes. Null if the body is not logged
+     */
+    private ByteString peek(Response response) {
+        String encoding = response.header("Content-Encoding");
+        if (mPolicy.mMaxBodyBytes == 0 || response.body() == null
+                || (encoding != null && !encoding.equalsIgnoreCase("identity"))) {
+            return null;
+        }
+        try {
+            return response.peekBody(mPolicy.mMaxBodyBytes).source().readByteString();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Request body keeping the first bytes written to the connection
+     */
+    private static final class BodyCapture extends RequestBody {
+        private final RequestBody mBody;
+        private final long mMaxBytes;
+        private volatile ByteString mBytes;
+        private volatile long mWritten = -1;
+
+        BodyCapture(RequestBody body, long maxBytes) {
+            mBody = body;
+            mMaxBytes = maxBytes;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return mBody.contentType();
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return mBody.contentLength();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            final Buffer captured = new Buffer();
+            final long[] written = {0};
+            BufferedSink capturing = Okio.buffer(new ForwardingSink(sink) {
+                @Override
+                public void write(Buffer source, long byteCount) throws IOException {
+                    long capture = Math.min(byteCount, mMaxBytes - captured.size());
+                    if (capture > 0) {
+                        source.copyTo(captured, 0, capture);
+                    }
+                    written[0] += byteCount;
+                    super.write(source, byteCount);
+                }
+            });
+            try {
+                mBody.writeTo(capturing);
+                capturing.emit();
+            } finally {
+                mBytes = captured.readByteString();
+                mWritten = written[0];
+            }
+        }
+    }
+
+    /**
+     * Call to log, formatted on the logging thread
+     */
+    private final class Entry implements Runnable {
+        private final String mMethod;
+        private final HttpUrl mUrl;
+        private final Headers mRequestHeaders;
+        private final MediaType mRequestType;
+        private final ByteString mRequestBody;
+        private final long mRequestLength;
+        private final String mStatus;
+        private final Headers mResponseHeaders;
+        private final MediaType mResponseType;
+        private final ByteString mResponseBody;
+        private final long mResponseLength;
+        private final long mTookNanos;
+        private final IOException mError;
+        private final String mRedacted;
+
+        Entry(Request request, BodyCapture capture, Response response, ByteString responseBody, long tookNanos, IOException error, String redacted) {
+            mMethod = request.method();
+            mUrl = request.url();
+            mRequestHeaders = request.headers();
+            mRequestType = request.body() == null ? null : request.body().contentType();
+            mRequestBody = capture == null ? null : capture.mBytes;
+            mRequestLength = capture == null ? -1 : capture.mWritten;
+            ResponseBody body = response == null ? null : response.body();
+            mStatus = response == null ? null : response.code() + (response.message().isEmpty() ? "" : ' ' + response.message())
+                    + ' ' + response.request().url();
+            mResponseHeaders = response == null ? null : response.headers();
+            mResponseType = body == null ? null : body.contentType();
+            mResponseBody = responseBody;
+            mResponseLength = body == null ? -1 : body.contentLength();
+            mTookNanos = tookNanos;
+            mError = error;
+            mRedacted = redacted;
+        }
+
+        @Override
+        public void run() {
+            HttpLoggingInterceptor.Logger logger = mPolicy.mLogger;
+            long dropped = mDropped.get();
+            if (dropped > mReportedDrops) {
+                logger.log("--- " + (dropped - mReportedDrops) + " log entries dropped");
+                mReportedDrops = dropped;
+            }
+            logger.log("--> " + mMethod + ' ' + mUrl);
+            logHeaders(logger, mRequestHeaders);
+            logBody(logger, mRequestType, mRequestBody, mRequestLength);
+            logger.log("--> END " + mMethod);
+            long tookMs = TimeUnit.NANOSECONDS.toMillis(mTookNanos);
+            if (mError != null) {
+                logger.log("<-- HTTP FAILED: " + mError + " (" + tookMs + "ms)");
+                return;
+            }
+            logger.log("<-- " + mStatus + " (" + tookMs + "ms)");
+            logHeaders(logger, mResponseHeaders);
+            logBody(logger, mResponseType, mResponseBody, mResponseLength);
+            logger.log("<-- END HTTP");
+        }
+
+        private void logHeaders(HttpLoggingInterceptor.Logger logger, Headers headers) {
+            for (int i = 0, count = headers.size(); i < count; i++) {
+                String name = headers.name(i);
+                boolean redacted = mPolicy.mRedactedHeaders.contains(name) || name.equalsIgnoreCase(mRedacted);
+                logger.log(name + ": " + (redacted ? "██" : headers.value(i)));
+            }
+        }
+
+        /**
+         * @param bytes  first bytes of the body, null if it is not logged
+         * @param length size of the whole body, -1 if unknown
+         */
+        private void logBody(HttpLoggingInterceptor.Logger logger, MediaType type, ByteString bytes, long length) {
+            if (bytes == null) {
+                return;
+            }
+            if (bytes.size() == 0 && length <= 0) {
+                return;
+            }
+            Buffer buffer = new Buffer().write(bytes);
+            if (!isPlaintext(buffer)) {
+                logger.log("(binary " + (length >= 0 ? length : bytes.size() + "+") + "-byte body omitted)");
+                return;
+            }
+            Charset charset = type == null ? UTF_8 : type.charset(UTF_8);
+            logger.log("");
+            logger.log(buffer.readString(charset));
+            if (length > bytes.size() || (length == -1 && bytes.size() == mPolicy.mMaxBodyBytes)) {
+                logger.log("(" + (length >= 0 ? length + "-byte body" : "body") + " truncated to " + bytes.size() + " bytes)");
+            }
+        }
+    }
+
+    /**
+     * @return false if the first code points are control characters, as in {@link HttpLoggingInterceptor}
+     */
+    private static boolean isPlaintext(Buffer buffer) {
+        try {
+            Buffer prefix = new Buffer();
+            buffer.copyTo(prefix, 0, Math.min(buffer.size(), 64));
+            for (int i = 0; i < 16 && !prefix.exhausted(); i++) {
+                int codePoint = prefix.readUtf8CodePoint();
+                if (Character.isISOControl(codePoint) && !Character.isWhitespace(codePoint)) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (EOFException e) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.android.jmaxime.factory.network;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+import okhttp3.logging.HttpLoggingInterceptor;
+
+/**
+ * Logging of the calls of a tag, cheap enough to stay on under load:
+ * <ul>
+ * <li>only a share of the calls is logged ({@link Builder#sampleRate(double)})</li>
+ * <li>the bodies are logged up to {@link Builder#maxBodyBytes(long)}: the request body is captured while it is
+ * sent and the response body is peeked, neither is copied whole</li>
+ * <li>the lines are formatted and written on a background thread, the entries are dropped while its queue
+ * of {@link Builder#queueSize(int)} entries is full</li>
+ * </ul>
+ *
+ * @see OkHttpConfiguration.Builder#logging(LoggingPolicy, String)
+ * @see OkHttpBuilder#logging(LoggingPolicy)
+ */
+public final class LoggingPolicy {
+    final double mSampleRate;
+    final long mMaxBodyBytes;
+    final int mQueueSize;
+    final Set<String> mRedactedHeaders;
+    final HttpLoggingInterceptor.Logger mLogger;
+
+    private LoggingPolicy(Builder builder) {
+        mSampleRate = builder.mSampleRate;
+        mMaxBodyBytes = builder.mMaxBodyBytes;
+        mQueueSize = builder.mQueueSize;
+        Set<String> redactedHeaders = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        redactedHeaders.addAll(builder.mRedactedHeaders);
+        mRedactedHeaders = Collections.unmodifiableSet(redactedHeaders);
+        mLogger = builder.mLogger;
+    }
+
+    public static final class Builder {
+        private double mSampleRate = 1;
+        private long mMaxBodyBytes = 8 * 1024;
+        private int mQueueSize = 256;
+        private final Set<String> mRedactedHeaders = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        private HttpLoggingInterceptor.Logger mLogger = HttpLoggingInterceptor.Logger.DEFAULT;
+
+        public Builder() {
+            mRedactedHeaders.addAll(Arrays.asList("X-Api-Key", "Authorization", "Proxy-Authorization", "Cookie", "Set-Cookie"));
+        }
+
+        /**
+         * @param rate share of the calls logged, in [0, 1], 1 by default. The calls are sampled evenly:
+         *             0.1 logs one call out of ten
+         */
+        public Builder sampleRate(double rate) {
+            if (!(rate >= 0 && rate <= 1)) {
+                throw new IllegalArgumentException("rate must be in [0, 1]");
+            }
+            mSampleRate = rate;
+            return this;
+        }
+
+        /**
+         * @param maxBytes bytes of each body logged, 8 KB by default, 0 to log the headers only
+         */
+        public Builder maxBodyBytes(long maxBytes) {
+            if (maxBytes < 0) {
+                throw new IllegalArgumentException("maxBytes < 0");
+            }
+            mMaxBodyBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * @param size entries waiting for the logging thread, 256 by default
+         */
+        public Builder queueSize(int size) {
+            if (size < 1) {
+                throw new IllegalArgumentException("queueSize < 1");
+            }
+            mQueueSize = size;
+            return this;
+        }
+
+        /**
+         * @param name header logged without its value. X-Api-Key, Authorization, Proxy-Authorization, Cookie and
+         *             Set-Cookie are redacted by default
+         */
+        public Builder redactHeader(String name) {
+            mRedactedHeaders.add(name);
+            return this;
+        }
+
+        /**
+         * @param logger receives the lines on the logging thread, the platform log by default
+         */
+        public Builder logger(HttpLoggingInterceptor.Logger logger) {
+            mLogger = logger;
+            return this;
+        }
+
+        public LoggingPolicy build() {
+            return new LoggingPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.android.jmaxime.factory.network;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+
+/**
+ * In memory LRU cache of the response bodies, bounded in bytes.
+ * Used in front of the disk cache by the services of a tag (see {@link OkHttpConfiguration.Builder#memoryCache(long, String)}),
+ * the entries are keyed by the url and the values of the headers listed by the Vary of the response.
+ */
+public final class MemoryCache {
+    static final String[] NO_NAMES = new String[0];
+
+    private final long mMaxSize;
+    private final long mMaxEntrySize;
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, String[]> mVaryNames = new LinkedHashMap<>();
+    private long mSize;
+    private long mHitCount;
+    private long mMissCount;
+    private long mPutCount;
+    private long mEvictionCount;
+
+    /**
+     * @param maxSize budget in bytes, a response larger than a quarter of the budget is not kept
+     */
+    public MemoryCache(long maxSize) {
+        this(maxSize, maxSize / 4);
+    }
+
+    /**
+     * @param maxSize      budget in bytes
+     * @param maxEntrySize size in bytes of the largest response kept
+     */
+    public MemoryCache(long maxSize, long maxEntrySize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        mMaxSize = maxSize;
+        mMaxEntrySize = Math.min(maxSize, maxEntrySize);
+    }
+
+    /**
+     * @return bytes kept in memory (bodies and headers)
+     */
+    public synchronized long size() {
+        return mSize;
+    }
+
+    public long maxSize() {
+        return mMaxSize;
+    }
+
+    public long maxEntrySize() {
+        return mMaxEntrySize;
+    }
+
+    public synchronized long hitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long missCount() {
+        return mMissCount;
+    }
+
+    public synchronized long putCount() {
+        return mPutCount;
+    }
+
+    public synchronized long evictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * @return hits / (hits + misses), 0 without request
+     */
+    public synchronized double hitRatio() {
+        long requests = mHitCount + mMissCount;
+        return requests == 0 ? 0 : (double) mHitCount / requests;
+    }
+
+    public synchronized void evictAll() {
+        mEntries.clear();
+        mVaryNames.clear();
+        mSize = 0;
+    }
+
+    /**
+     * The lookup is not counted: the caller records a hit or a miss once it knows if the entry is fresh enough
+     *
+     * @return the entry of the request, null if absent
+     */
+    synchronized Entry get(Request request) {
+        String url = request.url().toString();
+        return mEntries.get(key(url, mVaryNames.get(url), request));
+    }
+
+    /**
+     * A response served from memory
+     */
+    synchronized void recordHit() {
+        mHitCount++;
+    }
+
+    /**
+     * A request sent to the next cache or to the network: no entry, or an entry too old
+     */
+    synchronized void recordMiss() {
+        mMissCount++;
+    }
+
+    synchronized void put(Request request, Entry entry) {
+        String url = request.url().toString();
+        String key = key(url, entry.mVaryNames, request);
+        String[] previousVary = entry.mVaryNames.length == 0 ? mVaryNames.remove(url) : mVaryNames.put(url, entry.mVaryNames);
+        if (!sameNames(previousVary == null ? NO_NAMES : previousVary, entry.mVaryNames)) {
+            removeUrl(url);
+        }
+        Entry previous = mEntries.put(key, entry);
+        if (previous != null) {
+            mSize -= previous.mSize;
+        }
+        mSize += entry.mSize;
+        mPutCount++;
+        trimToSize();
+    }
+
+    synchronized void remove(Request request) {
+        String url = request.url().toString();
+        Entry previous = mEntries.remove(key(url, mVaryNames.get(url), request));
+        if (previous != null) {
+            mSize -= previous.mSize;
+        }
+    }
+
+    /**
+     * Removes the entry of the request if it is still the given one
+     */
+    synchronized void remove(Request request, Entry entry) {
+        String url = request.url().toString();
+        String key = key(url, mVaryNames.get(url), request);
+        if (mEntries.get(key) == entry) {
+            mEntries.remove(key);
+            mSize -= entry.mSize;
+        }
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+        while (mSize > mMaxSize && iterator.hasNext()) {
+            mSize -= iterator.next().getValue().mSize;
+            iterator.remove();
+            mEvictionCount++;
+        }
+    }
+
+    private void removeUrl(String url) {
+        Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> entry = iterator.next();
+            if (entry.getKey().equals(url) || entry.getKey().startsWith(url + '\n')) {
+                mSize -= entry.getValue().mSize;
+                iterator.remove();
+            }
+        }
+    }
+
+    private static boolean sameNames(String[] a, String[] b) {
+        if (a.length != b.length) {
+            return false;
+        }
+        for (int i = 0; i < a.length; i++) {
+            if (!a[i].equalsIgnoreCase(b[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String key(String url, String[] varyNames, Request request) {
+        if (varyNames == null || varyNames.length == 0) {
+            return url;
+        }
+        StringBuilder key = new StringBuilder(url);
+        for (String name : varyNames) {
+            key.append('\n').append(request.headers(name));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Response kept in memory
+     */
+    static final class Entry {
+        final Protocol mProtocol;
+        final int mCode;
+        final String mMessage;
+        final Headers mHeaders;
+        final MediaType mContentType;
+        final byte[] mBody;
+        final String[] mVaryNames;
+        final long mSentRequestAtMillis;
+        final long mReceivedResponseAtMillis;
+        /**
+         * date of the response, corrected by its Age header
+         */
+        final long mServedDateMillis;
+        final long mMaxAgeMillis;
+        final boolean mMustRevalidate;
+        final long mSize;
+
+        Entry(Protocol protocol, int code, String message, Headers headers, MediaType contentType, byte[] body, String[] varyNames,
+              long sentRequestAtMillis, long receivedResponseAtMillis, long servedDateMillis, long maxAgeMillis, boolean mustRevalidate) {
+            mProtocol = protocol;
+            mCode = code;
+            mMessage = message;
+            mHeaders = headers;
+            mContentType = contentType;
+            mBody = body;
+            mVaryNames = varyNames;
+            mSentRequestAtMillis = sentRequestAtMillis;
+            mReceivedResponseAtMillis = receivedResponseAtMillis;
+            mServedDateMillis = servedDateMillis;
+            mMaxAgeMillis = maxAgeMillis;
+            mMustRevalidate = mustRevalidate;
+            mSize = body.length + headers.toString().length();
+        }
+    }
+}
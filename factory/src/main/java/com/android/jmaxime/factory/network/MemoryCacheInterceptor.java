@@ -0,0 +1,155 @@
+package com.android.jmaxime.factory.network;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.CacheControl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Serves the GET requests from the {@link MemoryCache} of the tag, before the disk cache.
+ * The freshness follows the Cache-Control of the response (max-age) and of the request
+ * (no-cache, max-age, min-fresh, max-stale), like the disk cache.
+ */
+final class MemoryCacheInterceptor implements Interceptor {
+    private static final String HEADER_WARNING = "Warning";
+    private static final String WARNING_STALE = "110 HttpURLConnection \"Response is stale\"";
+
+    private final MemoryCache mCache;
+
+    MemoryCacheInterceptor(MemoryCache cache) {
+        mCache = cache;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!"GET".equals(request.method())) {
+            return chain.proceed(request);
+        }
+        CacheControl requestCacheControl = request.cacheControl();
+        if (!requestCacheControl.noCache() && !requestCacheControl.noStore()) {
+            MemoryCache.Entry entry = mCache.get(request);
+            Response response = entry == null ? null : serve(request, requestCacheControl, entry);
+            if (response != null) {
+                mCache.recordHit();
+                return response;
+            }
+            mCache.recordMiss();
+            if (entry != null && isExpired(entry)) {
+                mCache.remove(request, entry);
+            }
+        }
+        Response response = chain.proceed(request);
+        if (!requestCacheControl.noStore()) {
+            store(request, response);
+        }
+        return response;
+    }
+
+    /**
+     * @return the response of the entry, null if the entry is too old for the request
+     */
+    private Response serve(Request request, CacheControl requestCacheControl, MemoryCache.Entry entry) {
+        long now = System.currentTimeMillis();
+        long ageMillis = Math.max(0, now - entry.mServedDateMillis);
+        long freshMillis = entry.mMaxAgeMillis;
+        if (requestCacheControl.maxAgeSeconds() != -1) {
+            freshMillis = Math.min(freshMillis, TimeUnit.SECONDS.toMillis(requestCacheControl.maxAgeSeconds()));
+        }
+        long minFreshMillis = requestCacheControl.minFreshSeconds() != -1 ? TimeUnit.SECONDS.toMillis(requestCacheControl.minFreshSeconds()) : 0;
+        long maxStaleMillis = !entry.mMustRevalidate && requestCacheControl.maxStaleSeconds() != -1
+                ? TimeUnit.SECONDS.toMillis(requestCacheControl.maxStaleSeconds()) : 0;
+        if (ageMillis + minFreshMillis >= freshMillis + maxStaleMillis) {
+            return null;
+        }
+        Response.Builder response = new Response.Builder()
+                .request(request)
+                .protocol(entry.mProtocol)
+                .code(entry.mCode)
+                .message(entry.mMessage)
+                .headers(entry.mHeaders)
+                .sentRequestAtMillis(entry.mSentRequestAtMillis)
+                .receivedResponseAtMillis(entry.mReceivedResponseAtMillis);
+        if (ageMillis + minFreshMillis >= freshMillis) {
+            response.addHeader(HEADER_WARNING, WARNING_STALE);
+        }
+        Response cacheResponse = response.build();
+        return response
+                .body(ResponseBody.create(entry.mContentType, entry.mBody))
+                .cacheResponse(cacheResponse)
+                .build();
+    }
+
+    /**
+     * @return true if the entry is older than its max-age, it is served only to the requests accepting stale responses
+     */
+    private static boolean isExpired(MemoryCache.Entry entry) {
+        return System.currentTimeMillis() - entry.mServedDateMillis >= entry.mMaxAgeMillis;
+    }
+
+    private void store(Request request, Response response) throws IOException {
+        if (response.code() != 200) {
+            if (response.code() >= 400 && response.code() < 500) {
+                mCache.remove(request);
+            }
+            return;
+        }
+        CacheControl cacheControl = response.cacheControl();
+        if (cacheControl.noStore() || cacheControl.noCache() || cacheControl.maxAgeSeconds() <= 0) {
+            return;
+        }
+        List<String> varyFields = varyFields(response);
+        if (varyFields.contains("*")) {
+            return;
+        }
+        ResponseBody peek = response.peekBody(mCache.maxEntrySize() + 1);
+        if (peek.contentLength() > mCache.maxEntrySize()) {
+            return;
+        }
+        long received = response.receivedResponseAtMillis() != 0 ? response.receivedResponseAtMillis() : System.currentTimeMillis();
+        long age = parseSeconds(response.header("Age"));
+        mCache.put(request, new MemoryCache.Entry(
+                response.protocol(),
+                response.code(),
+                response.message(),
+                response.headers().newBuilder().removeAll(HEADER_WARNING).build(),
+                response.body().contentType(),
+                peek.bytes(),
+                varyFields.isEmpty() ? MemoryCache.NO_NAMES : varyFields.toArray(new String[varyFields.size()]),
+                response.sentRequestAtMillis(),
+                received,
+                received - TimeUnit.SECONDS.toMillis(age),
+                TimeUnit.SECONDS.toMillis(cacheControl.maxAgeSeconds()),
+                cacheControl.mustRevalidate()));
+    }
+
+    private static List<String> varyFields(Response response) {
+        List<String> fields = new ArrayList<>();
+        for (String vary : response.headers("Vary")) {
+            for (String field : vary.split(",")) {
+                field = field.trim();
+                if (!field.isEmpty()) {
+                    fields.add(field);
+                }
+            }
+        }
+        return fields;
+    }
+
+    private static long parseSeconds(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
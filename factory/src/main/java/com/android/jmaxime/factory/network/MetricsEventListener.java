@@ -0,0 +1,172 @@
+package com.android.jmaxime.factory.network;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Records the timings of one call in the {@link NetworkMetrics} of its tag.
+ * The events of a call are sequential, the start times are plain fields.
+ * Every event is forwarded to the listener of the root client.
+ */
+final class MetricsEventListener extends EventListener {
+    private final NetworkMetrics mMetrics;
+    private final EventListener mDelegate;
+    private long mCallStart;
+    private long mDnsStart;
+    private long mConnectStart;
+    private long mSecureConnectStart;
+    private long mRequestHeadersStart;
+    private long mResponseBodyStart;
+    private boolean mConnecting;
+
+    private MetricsEventListener(NetworkMetrics metrics, EventListener delegate) {
+        mMetrics = metrics;
+        mDelegate = delegate;
+    }
+
+    /**
+     * @param metrics  metrics of the tag
+     * @param delegate factory of the root client, its listeners still receive all the events
+     */
+    static EventListener.Factory factory(final NetworkMetrics metrics, final EventListener.Factory delegate) {
+        return new EventListener.Factory() {
+            @Override
+            public EventListener create(Call call) {
+                return new MetricsEventListener(metrics, delegate.create(call));
+            }
+        };
+    }
+
+    @Override
+    public void callStart(Call call) {
+        mCallStart = System.nanoTime();
+        mDelegate.callStart(call);
+    }
+
+    @Override
+    public void dnsStart(Call call, String domainName) {
+        mDnsStart = System.nanoTime();
+        mDelegate.dnsStart(call, domainName);
+    }
+
+    @Override
+    public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+        mMetrics.mDns.record(System.nanoTime() - mDnsStart);
+        mDelegate.dnsEnd(call, domainName, inetAddressList);
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+        mConnectStart = System.nanoTime();
+        mConnecting = true;
+        mDelegate.connectStart(call, inetSocketAddress, proxy);
+    }
+
+    @Override
+    public void secureConnectStart(Call call) {
+        mSecureConnectStart = System.nanoTime();
+        mDelegate.secureConnectStart(call);
+    }
+
+    @Override
+    public void secureConnectEnd(Call call, Handshake handshake) {
+        mMetrics.mTls.record(System.nanoTime() - mSecureConnectStart);
+        mDelegate.secureConnectEnd(call, handshake);
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+        mMetrics.mConnect.record(System.nanoTime() - mConnectStart);
+        mDelegate.connectEnd(call, inetSocketAddress, proxy, protocol);
+    }
+
+    @Override
+    public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol, IOException ioe) {
+        mMetrics.mConnect.record(System.nanoTime() - mConnectStart);
+        mDelegate.connectFailed(call, inetSocketAddress, proxy, protocol, ioe);
+    }
+
+    @Override
+    public void connectionAcquired(Call call, Connection connection) {
+        if (mConnecting) {
+            mMetrics.mNewConnections.incrementAndGet();
+            mConnecting = false;
+        } else {
+            mMetrics.mReusedConnections.incrementAndGet();
+        }
+        mDelegate.connectionAcquired(call, connection);
+    }
+
+    @Override
+    public void connectionReleased(Call call, Connection connection) {
+        mDelegate.connectionReleased(call, connection);
+    }
+
+    @Override
+    public void requestHeadersStart(Call call) {
+        mRequestHeadersStart = System.nanoTime();
+        mDelegate.requestHeadersStart(call);
+    }
+
+    @Override
+    public void requestHeadersEnd(Call call, Request request) {
+        mDelegate.requestHeadersEnd(call, request);
+    }
+
+    @Override
+    public void requestBodyStart(Call call) {
+        mDelegate.requestBodyStart(call);
+    }
+
+    @Override
+    public void requestBodyEnd(Call call, long byteCount) {
+        mDelegate.requestBodyEnd(call, byteCount);
+    }
+
+    @Override
+    public void responseHeadersStart(Call call) {
+        mMetrics.mTimeToFirstByte.record(System.nanoTime() - mRequestHeadersStart);
+        mDelegate.responseHeadersStart(call);
+    }
+
+    @Override
+    public void responseHeadersEnd(Call call, Response response) {
+        mDelegate.responseHeadersEnd(call, response);
+    }
+
+    @Override
+    public void responseBodyStart(Call call) {
+        mResponseBodyStart = System.nanoTime();
+        mDelegate.responseBodyStart(call);
+    }
+
+    @Override
+    public void responseBodyEnd(Call call, long byteCount) {
+        mMetrics.mBodyRead.record(System.nanoTime() - mResponseBodyStart);
+        mDelegate.responseBodyEnd(call, byteCount);
+    }
+
+    @Override
+    public void callEnd(Call call) {
+        mMetrics.mCall.record(System.nanoTime() - mCallStart);
+        mDelegate.callEnd(call);
+    }
+
+    @Override
+    public void callFailed(Call call, IOException ioe) {
+        mMetrics.mCall.record(System.nanoTime() - mCallStart);
+        mMetrics.mFailedCalls.incrementAndGet();
+        mDelegate.callFailed(call, ioe);
+    }
+}
@@ -0,0 +1,130 @@
+package com.android.jmaxime.factory.network;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Network timings of the calls of a tag, recorded by an {@link okhttp3.EventListener} attached
+ * to every client of the tag. The recording is lock free, read the values with {@link #snapshot()}.
+ *
+ * @see OkHttpConfiguration.Builder#collectNetworkMetrics()
+ * @see OkHttpConfiguration#getNetworkMetrics(String)
+ */
+public final class NetworkMetrics {
+    final LatencyHistogram mDns = new LatencyHistogram();
+    final LatencyHistogram mConnect = new LatencyHistogram();
+    final LatencyHistogram mTls = new LatencyHistogram();
+    final LatencyHistogram mTimeToFirstByte = new LatencyHistogram();
+    final LatencyHistogram mBodyRead = new LatencyHistogram();
+    final LatencyHistogram mCall = new LatencyHistogram();
+    final AtomicLong mReusedConnections = new AtomicLong();
+    final AtomicLong mNewConnections = new AtomicLong();
+    final AtomicLong mFailedCalls = new AtomicLong();
+    private final String mTagApiName;
+
+    NetworkMetrics(String tagApiName) {
+        mTagApiName = tagApiName;
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Values of the metrics of a tag at a given time, durations in microseconds
+     */
+    public static final class Snapshot {
+        private final String mTagApiName;
+        private final LatencyHistogram.Snapshot mDns;
+        private final LatencyHistogram.Snapshot mConnect;
+        private final LatencyHistogram.Snapshot mTls;
+        private final LatencyHistogram.Snapshot mTimeToFirstByte;
+        private final LatencyHistogram.Snapshot mBodyRead;
+        private final LatencyHistogram.Snapshot mCall;
+        private final long mReusedConnections;
+        private final long mNewConnections;
+        private final long mFailedCalls;
+
+        Snapshot(NetworkMetrics metrics) {
+            mTagApiName = metrics.mTagApiName;
+            mDns = metrics.mDns.snapshot();
+            mConnect = metrics.mConnect.snapshot();
+            mTls = metrics.mTls.snapshot();
+            mTimeToFirstByte = metrics.mTimeToFirstByte.snapshot();
+            mBodyRead = metrics.mBodyRead.snapshot();
+            mCall = metrics.mCall.snapshot();
+            mReusedConnections = metrics.mReusedConnections.get();
+            mNewConnections = metrics.mNewConnections.get();
+            mFailedCalls = metrics.mFailedCalls.get();
+        }
+
+        public String getTagApiName() {
+            return mTagApiName;
+        }
+
+        public LatencyHistogram.Snapshot getDns() {
+            return mDns;
+        }
+
+        /**
+         * @return tcp connection, including the TLS handshake
+         */
+        public LatencyHistogram.Snapshot getConnect() {
+            return mConnect;
+        }
+
+        public LatencyHistogram.Snapshot getTls() {
+            return mTls;
+        }
+
+        /**
+         * @return from the start of the request headers to the start of the response headers
+         */
+        public LatencyHistogram.Snapshot getTimeToFirstByte() {
+            return mTimeToFirstByte;
+        }
+
+        public LatencyHistogram.Snapshot getBodyRead() {
+            return mBodyRead;
+        }
+
+        /**
+         * @return whole call, from the start to the end or the failure
+         */
+        public LatencyHistogram.Snapshot getCall() {
+            return mCall;
+        }
+
+        /**
+         * @return number of connections taken from the pool
+         */
+        public long getReusedConnections() {
+            return mReusedConnections;
+        }
+
+        /**
+         * @return number of connections opened
+         */
+        public long getNewConnections() {
+            return mNewConnections;
+        }
+
+        public long getFailedCalls() {
+            return mFailedCalls;
+        }
+
+        @Override
+        public String toString() {
+            return "NetworkMetrics{" + mTagApiName
+                    + ", dns=" + mDns
+                    + ", connect=" + mConnect
+                    + ", tls=" + mTls
+                    + ", ttfb=" + mTimeToFirstByte
+                    + ", body=" + mBodyRead
+                    + ", call=" + mCall
+                    + ", reused=" + mReusedConnections
+                    + ", new=" + mNewConnections
+                    + ", failed=" + mFailedCalls
+                    + '}';
+        }
+    }
+}
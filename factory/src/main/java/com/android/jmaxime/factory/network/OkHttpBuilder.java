@@ -3,10 +3,9 @@ package com.android.jmaxime.factory.network;
 import android.content.Context;
 
 import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Locale;
 import java.util.concurrent.TimeUnit;
 
 import okhttp3.Authenticator;
@@ -14,117 +13,224 @@ import okhttp3.Cache;
 import okhttp3.CookieJar;
 import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
 import okhttp3.logging.HttpLoggingInterceptor;
 
+/**
+ * Template of the http clients of a tag.
+ * <p>
+ * Once registered in an {@link OkHttpConfiguration}, the builder is frozen: each service derives
+ * its own client from the template ({@link #build(ClientSpec)}),
+ * the template itself is never modified, so the interceptor chain of a tag keeps a fixed length
+ * whatever the number of services created.
+ * </p>
+ */
 public final class OkHttpBuilder {
     private static final int DEFAULT_TIMEOUT = 30;
-    private static final int CACHE_SIZE = 2048;
-    private static final int CACHE_DURATION = 30;
-    private static final Interceptor REWRITE_CACHE_CONTROL_INTERCEPTOR = new Interceptor() {
-        @Override
-        public Response intercept(Chain chain) throws IOException {
-            Response originalResponse = chain.proceed(chain.request());
-            String cacheControl = String.format(Locale.getDefault(), "max-age=%d, only-if-cached, max-stale=%d", CACHE_DURATION, 0);
-            return originalResponse.newBuilder()
-                    .header("Cache-Control", cacheControl)
-                    .build();
-        }
-    };
+    private static final long CACHE_SIZE = 4 * 1024 * 1024;
 
+    private final boolean mTemplate;
+    /**
+     * Read and connect time out in seconds, -1 to keep the ones of the root client
+     */
     private int mTimeOut = DEFAULT_TIMEOUT;
+    private OkHttpClient mRootClient;
     private Cache mCache;
     private CookieJar mCookieJar;
     private Authenticator mAuthenticator;
-    private List<Interceptor> mInterceptors = new ArrayList<>();
-    private List<Interceptor> mNetworkInterceptors = new ArrayList<>();
+    private List<Interceptor> mInterceptors = Collections.emptyList();
+    private List<Interceptor> mNetworkInterceptors = Collections.emptyList();
     private OnClientCreatedListener mListener;
 
     public OkHttpBuilder() {
+        mTemplate = false;
     }
 
     public OkHttpBuilder(OkHttpClient client) {
         this(client, null);
     }
 
+    /**
+     * The client given here becomes the root of every derived client: they all share its
+     * connection pool, dispatcher, TLS configuration and time outs, unless {@link #timeOut(int)} is set.
+     *
+     * @param client   root client
+     * @param listener notified for each client created by {@link #build()}
+     */
     public OkHttpBuilder(OkHttpClient client, OnClientCreatedListener listener) {
-        mTimeOut = client.connectTimeoutMillis();
+        mTemplate = false;
+        mRootClient = client;
+        mTimeOut = -1;
         mCache = client.cache();
         mCookieJar = client.cookieJar();
         mAuthenticator = client.authenticator();
-        mInterceptors.addAll(client.interceptors());
-        mNetworkInterceptors.addAll(client.networkInterceptors());
+        mInterceptors = Collections.unmodifiableList(new ArrayList<>(client.interceptors()));
+        mNetworkInterceptors = Collections.unmodifiableList(new ArrayList<>(client.networkInterceptors()));
         mListener = listener;
     }
 
+    /**
+     * Frozen copy of the builder, see {@link #template(OkHttpClient)}
+     */
+    private OkHttpBuilder(OkHttpBuilder builder, OkHttpClient rootClient) {
+        mTemplate = true;
+        mRootClient = rootClient;
+        mTimeOut = builder.mTimeOut;
+        mCache = builder.mCache;
+        mCookieJar = builder.mCookieJar;
+        mAuthenticator = builder.mAuthenticator;
+        mInterceptors = builder.mInterceptors;
+        mNetworkInterceptors = builder.mNetworkInterceptors;
+        mListener = builder.mListener;
+    }
+
     public OkHttpBuilder apiKey(String apiKey) {
-        return apiKey("X-Api-Key", apiKey);
+        return apiKey(HeaderPolicy.DEFAULT_API_KEY_HEADER, apiKey);
     }
 
     public OkHttpBuilder apiKey(final String headerKey, final String apiKey) {
-        mInterceptors.add(new Interceptor() {
-            @Override
-            public Response intercept(Chain chain) throws IOException {
-                Request.Builder request = chain.request().newBuilder();
-                if (apiKey != null) {
-                    request.header(headerKey, apiKey);
-                }
-                return chain.proceed(request.build());
-            }
-        });
+        checkNotTemplate();
+        HeaderInterceptor interceptor = HeaderInterceptor.of(null, headerKey, apiKey, null, null);
+        if (interceptor != null) {
+            mInterceptors = append(mInterceptors, interceptor);
+        }
         return this;
     }
 
     public OkHttpBuilder useCache(Context context) {
-        return useCache(new File(context.getCacheDir().getAbsolutePath(), "HttpCache"), CACHE_SIZE * CACHE_SIZE, REWRITE_CACHE_CONTROL_INTERCEPTOR);
+        return useCache(cacheDirectory(context), CACHE_SIZE, CachePolicyInterceptor.network(CacheRule.LEGACY));
     }
 
     public OkHttpBuilder useCache(File cacheDirectory, int cacheSize, Interceptor cacheInterceptor) {
-        mCache = new Cache(cacheDirectory, cacheSize);
-        mNetworkInterceptors.add(cacheInterceptor);
+        return useCache(cacheDirectory, (long) cacheSize, cacheInterceptor);
+    }
+
+    /**
+     * @param cacheDirectory the cache of a directory is shared by all the clients of the process
+     */
+    public OkHttpBuilder useCache(File cacheDirectory, long cacheSize, Interceptor cacheInterceptor) {
+        checkNotTemplate();
+        mCache = HttpCaches.get(cacheDirectory, cacheSize);
+        mNetworkInterceptors = append(mNetworkInterceptors, cacheInterceptor);
         return this;
     }
 
     public OkHttpBuilder useCookie(CookieJar cookieJar) {
+        checkNotTemplate();
         mCookieJar = cookieJar;
         return this;
     }
 
+    /**
+     * @param isDebug logs all the calls with the default {@link LoggingPolicy}: bodies up to 8 KB, written on a
+     *                background thread. {@link #loggingLevel(HttpLoggingInterceptor.Level)} logs the whole bodies
+     */
     public OkHttpBuilder loggingLevel(boolean isDebug) {
-        return loggingLevel(isDebug ? HttpLoggingInterceptor.Level.BODY : HttpLoggingInterceptor.Level.NONE);
+        checkNotTemplate();
+        return isDebug ? logging(new LoggingPolicy.Builder().build()) : this;
+    }
+
+    /**
+     * @param policy logging of all the clients of this builder, see
+     *               {@link OkHttpConfiguration.Builder#logging(LoggingPolicy, String)} for the logging of a tag
+     */
+    public OkHttpBuilder logging(LoggingPolicy policy) {
+        checkNotTemplate();
+        mInterceptors = append(mInterceptors, new LoggingInterceptor(policy));
+        return this;
     }
 
     public OkHttpBuilder loggingLevel(HttpLoggingInterceptor.Level level) {
-        mInterceptors.add(new HttpLoggingInterceptor().setLevel(level));
+        checkNotTemplate();
+        mInterceptors = append(mInterceptors, new HttpLoggingInterceptor().setLevel(level));
         return this;
     }
 
     public void authenticator(Authenticator authenticator) {
+        checkNotTemplate();
         mAuthenticator = authenticator;
     }
 
     public void addInterceptor(Interceptor interceptor) {
-        mInterceptors.add(interceptor);
+        checkNotTemplate();
+        mInterceptors = append(mInterceptors, interceptor);
     }
 
     public void addNetworkInterceptor(Interceptor interceptor) {
-        mNetworkInterceptors.add(interceptor);
+        checkNotTemplate();
+        mNetworkInterceptors = append(mNetworkInterceptors, interceptor);
     }
 
     public void setOnClientCreatedListener(OnClientCreatedListener listener) {
+        checkNotTemplate();
         mListener = listener;
     }
 
     public OkHttpBuilder timeOut(int timeOut) {
+        checkNotTemplate();
         mTimeOut = timeOut > 0 ? timeOut : DEFAULT_TIMEOUT;
         return this;
     }
 
+    /**
+     * Frozen copy of this builder, deriving its clients from the given root: the connection pool
+     * and the dispatcher of the root are shared. A root client already set keeps its own settings
+     * (ssl, proxy, dns...), only the pool and the dispatcher are replaced.
+     *
+     * @param root client owning the connection pool and the dispatcher to reuse
+     * @return immutable template, all its setters throw {@link UnsupportedOperationException}
+     */
+    OkHttpBuilder template(OkHttpClient root) {
+        OkHttpClient rootClient = mRootClient;
+        if (rootClient == null) {
+            rootClient = root;
+        } else if (rootClient.connectionPool() != root.connectionPool() || rootClient.dispatcher() != root.dispatcher()) {
+            rootClient = rootClient.newBuilder()
+                    .connectionPool(root.connectionPool())
+                    .dispatcher(root.dispatcher())
+                    .build();
+        }
+        return new OkHttpBuilder(this, rootClient);
+    }
+
+    /**
+     * @return the client from which all the clients of this builder are derived
+     */
+    synchronized OkHttpClient rootClient() {
+        if (mRootClient == null) {
+            mRootClient = new OkHttpClient();
+        }
+        return mRootClient;
+    }
+
+    /**
+     * @return interceptors of the template, shared by every derived client
+     */
+    List<Interceptor> interceptors() {
+        return mInterceptors;
+    }
+
+    /**
+     * @return network interceptors of the template, shared by every derived client
+     */
+    List<Interceptor> networkInterceptors() {
+        return mNetworkInterceptors;
+    }
+
+    /**
+     * Derives a builder from the root client ({@link OkHttpClient#newBuilder()}), so the connection pool,
+     * the dispatcher and the TLS session cache are shared by every client created here.
+     * The interceptors of the root are replaced by the ones of this builder.
+     *
+     * @return a new builder, share connections with the root client
+     */
     public OkHttpClient.Builder originalBuilder() {
-        OkHttpClient.Builder httpClient = new OkHttpClient.Builder();
-        httpClient.readTimeout(mTimeOut, TimeUnit.SECONDS);
-        httpClient.connectTimeout(mTimeOut, TimeUnit.SECONDS);
+        OkHttpClient.Builder httpClient = rootClient().newBuilder();
+        httpClient.interceptors().clear();
+        httpClient.networkInterceptors().clear();
+        if (mTimeOut > 0) {
+            httpClient.readTimeout(mTimeOut, TimeUnit.SECONDS);
+            httpClient.connectTimeout(mTimeOut, TimeUnit.SECONDS);
+        }
         if (mCache != null) {
             httpClient.cache(mCache);
         }
@@ -134,12 +240,8 @@ public final class OkHttpBuilder {
         if (mAuthenticator != null) {
             httpClient.authenticator(mAuthenticator);
         }
-        for (Interceptor interceptor : mInterceptors) {
-            httpClient.addInterceptor(interceptor);
-        }
-        for (Interceptor networkInterceptor : mNetworkInterceptors) {
-            httpClient.addNetworkInterceptor(networkInterceptor);
-        }
+        httpClient.interceptors().addAll(mInterceptors);
+        httpClient.networkInterceptors().addAll(mNetworkInterceptors);
         return httpClient;
     }
 
@@ -151,16 +253,128 @@ public final class OkHttpBuilder {
         return client;
     }
 
+    /**
+     * Derives the client of a service, this builder is not modified.
+     *
+     * @param context used to locate the directory of the cache, only if addCache
+     * @see #build(Cache, String, int, boolean)
+     */
     public OkHttpClient build(Context context, String apiKey, int timeOutValue, boolean addCache, boolean allowCookies) {
-        apiKey(apiKey);
-        timeOut(timeOutValue);
-        if (addCache) {
-            useCache(context);
+        return build(addCache ? HttpCaches.get(cacheDirectory(context), CACHE_SIZE) : null, apiKey, timeOutValue, allowCookies);
+    }
+
+    /**
+     * Derives the client of a service, this builder is not modified.
+     *
+     * @param cache        null to keep the cache of the template
+     * @param timeOutValue -1 to keep the time out of the template
+     */
+    public OkHttpClient build(Cache cache, String apiKey, int timeOutValue, boolean allowCookies) {
+        return build(new ClientSpec()
+                .cache(cache)
+                .apiKey(apiKey)
+                .timeOut(timeOutValue)
+                .allowCookies(allowCookies));
+    }
+
+    /**
+     * Derives the client of a service, this builder is not modified.
+     * A service allowing the cookies uses the cookie jar of the spec, the {@link CookieStore} of its configuration.
+     * The chain of the client is the guard of the {@link RequestCoalescer} if any, the chain of the template followed by at most one header interceptor (policy of the tag and api key),
+     * the logging interceptor of the tag, the cache policy interceptors, the memory cache interceptor, the request compression and the circuit breaker interceptor.
+     * The {@link OnClientCreatedListener} is notified of the client.
+     */
+    OkHttpClient build(ClientSpec spec) {
+        final OkHttpClient client = derive(spec);
+        if (mListener != null) {
+            mListener.onClientCreated(client);
+        }
+        return client;
+    }
+
+    private OkHttpClient derive(ClientSpec spec) {
+        OkHttpClient.Builder httpClient = originalBuilder();
+        if (spec.mCoalescer != null) {
+            httpClient.interceptors().add(0, spec.mCoalescer.guard());
+        }
+        if (spec.mMetrics != null) {
+            httpClient.eventListenerFactory(MetricsEventListener.factory(spec.mMetrics, rootClient().eventListenerFactory()));
+        }
+        if (spec.mDispatcher != null) {
+            httpClient.dispatcher(spec.mDispatcher);
+        }
+        if (spec.mTimeOut > 0) {
+            httpClient.readTimeout(spec.mTimeOut, TimeUnit.SECONDS);
+            httpClient.connectTimeout(spec.mTimeOut, TimeUnit.SECONDS);
         }
-        if (allowCookies) {
-            useCookie(mCookieJar);
+        if (spec.mAllowCookies && spec.mCookieJar != null) {
+            httpClient.cookieJar(spec.mCookieJar);
         }
-        return originalBuilder().build();
+        HeaderInterceptor headers = HeaderInterceptor.of(spec.mHeaders, spec.mApiKeyHeader, spec.mApiKey, spec.mApiKeys, spec.mApiKeyName);
+        if (headers != null) {
+            httpClient.addInterceptor(headers);
+        }
+        if (spec.mLogging != null) {
+            httpClient.addInterceptor(spec.mLogging.redacting(headers == null ? null : headers.apiKeyHeader()));
+        }
+        if (!spec.hasCache() && !spec.mTemplateCache) {
+            addCompression(httpClient, spec);
+            addCircuitBreaker(httpClient, spec);
+            return httpClient.build();
+        }
+        CachePolicyInterceptor cachePolicy = new CachePolicyInterceptor(CacheRule.DEFAULT);
+        httpClient.addInterceptor(cachePolicy);
+        if (spec.mMemoryCache != null) {
+            httpClient.addInterceptor(new MemoryCacheInterceptor(spec.mMemoryCache));
+        }
+        addCompression(httpClient, spec);
+        addCircuitBreaker(httpClient, spec);
+        if (spec.mCache != null) {
+            httpClient.cache(spec.mCache);
+        }
+        httpClient.addNetworkInterceptor(CachePolicyInterceptor.network(CacheRule.DEFAULT));
+        OkHttpClient client = httpClient.build();
+        cachePolicy.attach(client);
+        return client;
+    }
+
+    private static void addCompression(OkHttpClient.Builder httpClient, ClientSpec spec) {
+        if (spec.mCompressionMinBytes >= 0) {
+            httpClient.addInterceptor(new GzipRequestInterceptor(spec.mCompressionMinBytes));
+        }
+    }
+
+    /**
+     * The circuit breaker comes last: the responses of the memory cache never reach it
+     */
+    private static void addCircuitBreaker(OkHttpClient.Builder httpClient, ClientSpec spec) {
+        if (spec.mCircuitBreaker != null) {
+            httpClient.addInterceptor(spec.mCircuitBreaker);
+        }
+    }
+
+    /**
+     * @return true if the template has its own cache (see {@link #useCache(File, long, Interceptor)})
+     */
+    boolean hasCache() {
+        return mCache != null;
+    }
+
+    private void checkNotTemplate() {
+        if (mTemplate) {
+            throw new UnsupportedOperationException("this builder is registered in an OkHttpConfiguration and can not be modified");
+        }
+    }
+
+    private static File cacheDirectory(Context context) {
+        return new File(context.getCacheDir().getAbsolutePath(), "HttpCache");
+    }
+
+    private static List<Interceptor> append(List<Interceptor> interceptors, Interceptor interceptor) {
+        List<Interceptor> copy = new ArrayList<>(interceptors.size() + 1);
+        copy.addAll(interceptors);
+        copy.add(interceptor);
+        return Collections.unmodifiableList(copy);
     }
 
     public interface OnClientCreatedListener {
@@ -2,9 +2,22 @@ package com.android.jmaxime.factory.network;
 
 import com.google.gson.Gson;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.Cache;
+import okhttp3.Call;
+import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import retrofit2.CallAdapter;
 import retrofit2.Converter;
@@ -12,29 +25,228 @@ import retrofit2.adapter.rxjava.RxJavaCallAdapterFactory;
 import retrofit2.converter.gson.GsonConverterFactory;
 
 /**
+ * The base urls and the api keys are held in an immutable snapshot, replaced atomically by
+ * {@link #edit()}: the requests read them without lock, and the services already created
+ * use the new values from their next request.
+ * The clients, converters and call adapters are copied from the {@link Builder} and never change.
+ *
  * @see OkHttpConfiguration.Builder
  */
 public final class OkHttpConfiguration {
-    private final Map<String, String> mBaseUrls;
-    private final Map<String, String> mMapApiKey;
+    private final AtomicReference<Snapshot> mSnapshot;
+    private final List<ServiceRegistry> mRegistries;
     private final HttpClientFlyweight mFactory;
 
-    private OkHttpConfiguration(Map<String, String> baseUrls, Map<String, String> mapApiKey, HttpClientFlyweight factory) {
-        mBaseUrls = baseUrls;
-        mMapApiKey = mapApiKey;
+    private OkHttpConfiguration(Snapshot snapshot, List<ServiceRegistry> registries, HttpClientFlyweight factory) {
+        mSnapshot = new AtomicReference<>(snapshot);
+        mRegistries = registries;
         mFactory = factory;
     }
 
     String getBaseUrl(String targetUrl) {
-        return mBaseUrls.get(targetUrl);
+        return mSnapshot.get().mBaseUrls.get(targetUrl);
     }
 
     String getApiKey(String apiName) {
-        return mMapApiKey.get(apiName);
+        return mSnapshot.get().mApiKeys.get(apiName);
+    }
+
+    /**
+     * e.g. configuration.edit().putApiKey("stores", newKey).putBaseUrl("proxy_v3", url).apply();
+     *
+     * @return an editor of the base urls and the api keys, its changes are applied together
+     */
+    public Editor edit() {
+        return new Editor();
+    }
+
+    /**
+     * @return number of updates applied since the creation of the configuration
+     */
+    public long getVersion() {
+        return mSnapshot.get().mVersion;
+    }
+
+    /**
+     * @return the metadata given by the first registry knowing the service, null if none
+     */
+    ServiceMetadata getServiceMetadata(Class<?> service) {
+        for (ServiceRegistry registry : mRegistries) {
+            ServiceMetadata metadata = registry.get(service);
+            if (metadata != null) {
+                return metadata;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param apiName tag of the client
+     * @return the template registered for this tag, or the default one
+     */
+    OkHttpBuilder getClient(String apiName) {
+        return mFactory.getOkHttpClient(apiName);
     }
 
     OkHttpClient create(final String apiName, final String apiKey, final int timeOutValue, final boolean addCache, final boolean allowCookies) {
-        return mFactory.getOkHttpClient(apiName).build(null, apiKey, timeOutValue, addCache, allowCookies);
+        return create(apiName, new ClientSpec()
+                .apiKey(apiKey)
+                .timeOut(timeOutValue)
+                .allowCookies(allowCookies), addCache);
+    }
+
+    /**
+     * @param spec settings of the service, completed with the cache and the metrics of the tag
+     */
+    OkHttpClient create(final String apiName, final ClientSpec spec, final boolean addCache) {
+        OkHttpBuilder client = mFactory.getOkHttpClient(apiName);
+        spec.metrics(mFactory.getNetworkMetrics(apiName));
+        Bulkhead bulkhead = mFactory.mBulkheads.get(apiName);
+        if (bulkhead != null) {
+            spec.dispatcher(bulkhead.dispatcher(client.rootClient()));
+        }
+        spec.circuitBreaker(mFactory.getCircuitBreaker(apiName));
+        spec.compressRequests(mFactory.getCompressionMinBytes(apiName));
+        spec.logging(mFactory.getLogging(apiName));
+        spec.headers(mFactory.getHeaderPolicy(apiName));
+        spec.cookieJar(mFactory.mCookieStore);
+        if (addCache) {
+            spec.cache(mFactory.getCache(apiName)).memoryCache(mFactory.getMemoryCache(apiName));
+            if (!spec.hasCache()) {
+                if (!client.hasCache()) {
+                    throw new IllegalStateException(String.format("%s requires a cache, please use %s#cacheDirectory(File directory)", apiName, Builder.class.getCanonicalName()));
+                }
+                spec.templateCache(true);
+            }
+        }
+        return client.build(spec);
+    }
+
+    /**
+     * @param apiName          tag of the api
+     * @param serviceCoalesces true if the service asks for it ({@link ApiKeyService#coalesceRequests()})
+     * @return the coalescer shared by the services of the tag, null if the requests are not coalesced
+     */
+    RequestCoalescer getRequestCoalescer(String apiName, boolean serviceCoalesces) {
+        return mFactory.getRequestCoalescer(apiName, serviceCoalesces);
+    }
+
+    /**
+     * Each attempt of a call takes a slot of the bulkhead: the retries and the hedged requests are limited too.
+     *
+     * @param client client of a service of the tag
+     * @return the factory of the network calls of the client: retries and hedging, then bulkhead
+     */
+    Call.Factory getNetworkCallFactory(String apiName, OkHttpClient client) {
+        Bulkhead bulkhead = mFactory.mBulkheads.get(apiName);
+        Call.Factory network = bulkhead == null ? client : bulkhead.callFactory(client);
+        return mFactory.getResilience(apiName).callFactory(network);
+    }
+
+    /**
+     * @param tagApiName tag of the api
+     * @return the retries and the hedged requests of the tag, null if no call of this tag yet
+     * @see Builder#retryPolicy(RetryPolicy, String)
+     */
+    public RetryStats getRetryStats(String tagApiName) {
+        Resilience resilience = mFactory.mResiliences.get(tagApiName);
+        return resilience == null ? null : resilience.stats();
+    }
+
+    /**
+     * @param tagApiName tag of the api
+     * @return the circuits of the tag by host, empty if the tag has no circuit breaker or no call yet
+     * @see Builder#circuitBreaker(CircuitBreakerPolicy, String)
+     */
+    public Map<String, CircuitBreaker> getCircuitBreakers(String tagApiName) {
+        CircuitBreakerInterceptor circuitBreaker = mFactory.mCircuitBreakers.get(tagApiName);
+        return circuitBreaker == null ? Collections.<String, CircuitBreaker>emptyMap() : circuitBreaker.circuits();
+    }
+
+    /**
+     * @param tagApiName tag of the api
+     * @return the concurrency limits of the tag (running and queued calls, wait time), null if not registered
+     * @see Builder#bulkhead(String, int, int, int)
+     */
+    public Bulkhead getBulkhead(String tagApiName) {
+        return mFactory.mBulkheads.get(tagApiName);
+    }
+
+    /**
+     * Builds in background the clients of the given base urls and opens their connections,
+     * see {@link WarmUp}. The tag of the clients is the base url name, like the services created
+     * with {@link ApiFactory#create(Class, String)}.
+     *
+     * @param baseUrlNames names of {@link Builder#addUrlConfiguration(String, String)}
+     */
+    public WarmUp warmUp(String... baseUrlNames) {
+        return warmUp(null, baseUrlNames);
+    }
+
+    public WarmUp warmUp(WarmUp.Listener listener, String... baseUrlNames) {
+        List<WarmUp.Target> targets = new ArrayList<>(baseUrlNames.length);
+        for (final String baseUrlName : baseUrlNames) {
+            targets.add(new WarmUp.Target(baseUrlName) {
+                @Override
+                OkHttpClient client() {
+                    return create(baseUrlName, null, -1, false, false);
+                }
+
+                @Override
+                String url() {
+                    return getBaseUrl(baseUrlName);
+                }
+            });
+        }
+        return WarmUp.start(targets, listener);
+    }
+
+    /**
+     * @param tagApiName tag of the api
+     * @return the network timings of the tag, null if not collected or no call yet
+     * @see Builder#collectNetworkMetrics()
+     */
+    public NetworkMetrics.Snapshot getNetworkMetrics(String tagApiName) {
+        NetworkMetrics metrics = mFactory.mMetrics.get(tagApiName);
+        return metrics == null ? null : metrics.snapshot();
+    }
+
+    /**
+     * @return the network timings of all the tags with clients created, by tag
+     */
+    public Map<String, NetworkMetrics.Snapshot> getNetworkMetrics() {
+        Map<String, NetworkMetrics.Snapshot> snapshots = new HashMap<>();
+        for (Map.Entry<String, NetworkMetrics> entry : mFactory.mMetrics.entrySet()) {
+            snapshots.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return snapshots;
+    }
+
+    /**
+     * @param tagApiName tag of the api
+     * @return the memory cache of the tag (hit ratio, evictions, size), null if not registered
+     * @see Builder#memoryCache(long, String)
+     */
+    public MemoryCache getMemoryCache(String tagApiName) {
+        return mFactory.getMemoryCache(tagApiName);
+    }
+
+    /**
+     * @param tagApiName tag of the api
+     * @return the counters of the disk cache of the tag, null if no service of this tag uses the cache
+     * @see Builder#cacheDirectory(File)
+     */
+    public CacheStats getCacheStats(String tagApiName) {
+        Cache cache = mFactory.mCaches.get(tagApiName);
+        return cache == null ? null : new CacheStats(tagApiName, cache);
+    }
+
+    /**
+     * @return the cookies of the services with {@link ApiKeyService#allowCookies()}, shared by all the tags
+     * @see Builder#cookieStore(CookieStore)
+     */
+    public CookieStore getCookieStore() {
+        return mFactory.mCookieStore;
     }
 
     Converter.Factory getConverterFactory(String tagApiName) {
@@ -57,6 +269,7 @@ public final class OkHttpConfiguration {
         private final HttpClientFlyweight mFactory = new HttpClientFlyweight();
         private final Map<String, String> mBaseUrls = new HashMap<>();
         private final Map<String, String> mMapApiKey = new HashMap<>();
+        private final List<ServiceRegistry> mRegistries = new ArrayList<>();
 
         public Builder(OkHttpClient client, Converter.Factory defaultConverter) {
             this(new OkHttpBuilder(client), defaultConverter);
@@ -91,11 +304,208 @@ public final class OkHttpConfiguration {
             return this;
         }
 
+        /**
+         * The services known by the registry are created without reading their annotation by reflection.
+         * e.g. the ApiKeyServiceRegistry generated by the factory-compiler annotation processor
+         *
+         * @param registry metadata of the services, asked in the order of registration
+         */
+        public Builder registerServices(ServiceRegistry registry) {
+            mRegistries.add(registry);
+            return this;
+        }
+
+        /**
+         * Enables the disk cache of the services with {@link ApiKeyService#addCache()}:
+         * each tag has its own sub directory and its own size budget.
+         * e.g. on Android: new File(context.getCacheDir(), "HttpCache")
+         *
+         * @param directory root directory of the caches
+         */
+        public Builder cacheDirectory(File directory) {
+            mFactory.mCacheDirectory = directory;
+            return this;
+        }
+
+        /**
+         * Cookies of the services with {@link ApiKeyService#allowCookies()}, whatever their tag.
+         * e.g. new CookieStore(new FileCookiePersistor(new File(context.getFilesDir(), "cookies")))
+         *
+         * @param cookieStore a store in memory if not set
+         */
+        public Builder cookieStore(CookieStore cookieStore) {
+            mFactory.mCookieStore = cookieStore;
+            return this;
+        }
+
+        /**
+         * @param maxSize default budget in bytes of the cache of a tag (4 MB if not set)
+         */
+        public Builder cacheSize(long maxSize) {
+            mFactory.registerCacheSize(maxSize, HttpClientFlyweight.DEFAULT_KEY);
+            return this;
+        }
+
+        /**
+         * @param maxSize    budget in bytes of the cache of this tag
+         * @param tagApiName name register
+         */
+        public Builder cacheSize(long maxSize, String tagApiName) {
+            mFactory.registerCacheSize(maxSize, tagApiName);
+            return this;
+        }
+
+        /**
+         * Adds an in memory cache in front of the disk cache, for the services of this tag with
+         * {@link ApiKeyService#addCache()}. It follows the same freshness rules than the disk cache.
+         *
+         * @param maxSize    budget in bytes of the bodies kept in memory
+         * @param tagApiName name register, the memory cache of the default key is shared by all the tags without their own
+         */
+        public Builder memoryCache(long maxSize, String tagApiName) {
+            return registerMemoryCache(new MemoryCache(maxSize), tagApiName);
+        }
+
+        public Builder registerMemoryCache(MemoryCache memoryCache, String tagApiName) {
+            mFactory.registerMemoryCache(memoryCache, tagApiName);
+            return this;
+        }
+
+        /**
+         * Attaches an {@link okhttp3.EventListener} to the clients of all the tags, recording the timings
+         * of the calls (dns, connect, tls, time to first byte, body, call) and the reuse of the connections.
+         *
+         * @see OkHttpConfiguration#getNetworkMetrics(String)
+         */
+        public Builder collectNetworkMetrics() {
+            mFactory.mCollectMetrics = true;
+            return this;
+        }
+
+        /**
+         * The identical GET requests of the services of this tag in flight at the same time share one network call
+         *
+         * @param tagApiName name register
+         * @see ApiKeyService#coalesceRequests()
+         */
+        public Builder coalesceRequests(String tagApiName) {
+            mFactory.mCoalescedTags.add(tagApiName);
+            return this;
+        }
+
+        /**
+         * Limits the calls of the services of this tag, without holding the slots of the other tags:
+         * the calls beyond the limits are queued by {@link Priority}.
+         *
+         * @param tagApiName      name register
+         * @param maxCalls        calls running at the same time (64 for the default dispatcher)
+         * @param maxCallsPerHost calls running at the same time on a host (5 for the default dispatcher)
+         * @param maxQueued       calls waiting at the same time, the next ones fail at once
+         * @see Bulkhead
+         */
+        public Builder bulkhead(String tagApiName, int maxCalls, int maxCallsPerHost, int maxQueued) {
+            mFactory.mBulkheads.put(tagApiName, new Bulkhead(tagApiName, maxCalls, maxCallsPerHost, maxQueued));
+            return this;
+        }
+
+        /**
+         * Retries and hedged requests of all the tags without their own policy. None by default,
+         * except for the services with {@link ApiKeyService#maxRetries()} or the methods with {@link Retry}.
+         */
+        public Builder retryPolicy(RetryPolicy policy) {
+            return retryPolicy(policy, HttpClientFlyweight.DEFAULT_KEY);
+        }
+
+        /**
+         * @param policy     retries and hedged requests of the services of this tag
+         * @param tagApiName name register, its budget and its latencies are not shared with the other tags
+         */
+        public Builder retryPolicy(RetryPolicy policy, String tagApiName) {
+            mFactory.mRetryPolicies.put(tagApiName, policy);
+            return this;
+        }
+
+        /**
+         * Circuit breaker of all the tags without their own policy. None by default.
+         */
+        public Builder circuitBreaker(CircuitBreakerPolicy policy) {
+            return circuitBreaker(policy, HttpClientFlyweight.DEFAULT_KEY);
+        }
+
+        /**
+         * @param policy     circuit breaker of the services of this tag, one circuit per host
+         * @param tagApiName name register, its circuits are not shared with the other tags
+         */
+        public Builder circuitBreaker(CircuitBreakerPolicy policy, String tagApiName) {
+            mFactory.mCircuitBreakerPolicies.put(tagApiName, policy);
+            return this;
+        }
+
+        /**
+         * Compression of the request bodies of all the tags without their own setting. None by default.
+         */
+        public Builder compressRequests(long minBytes) {
+            return compressRequests(minBytes, HttpClientFlyweight.DEFAULT_KEY);
+        }
+
+        /**
+         * The request bodies of the tag are compressed with gzip (Content-Encoding: gzip) while they are sent,
+         * the server must accept it.
+         *
+         * @param minBytes   size from which the bodies are compressed, the bodies of unknown size are always compressed.
+         *                   -1 to send the bodies of the tag as is
+         * @param tagApiName name register
+         */
+        public Builder compressRequests(long minBytes, String tagApiName) {
+            mFactory.mCompressionMinBytes.put(tagApiName, minBytes < 0 ? -1 : minBytes);
+            return this;
+        }
+
+        /**
+         * Headers of the requests of all the tags without their own policy. None by default.
+         */
+        public Builder headers(HeaderPolicy policy) {
+            return headers(policy, HttpClientFlyweight.DEFAULT_KEY);
+        }
+
+        /**
+         * @param policy     headers of the requests of the tag and name of its api key header,
+         *                   null to keep only the api key header X-Api-Key whatever the default
+         * @param tagApiName name register
+         */
+        public Builder headers(HeaderPolicy policy, String tagApiName) {
+            mFactory.mHeaderPolicies.put(tagApiName, policy);
+            return this;
+        }
+
+        /**
+         * Logging of the calls of all the tags without their own policy. None by default.
+         */
+        public Builder logging(LoggingPolicy policy) {
+            return logging(policy, HttpClientFlyweight.DEFAULT_KEY);
+        }
+
+        /**
+         * The calls of the tag are logged after the api key is set, the requests answered by the memory cache included.
+         *
+         * @param policy     sampling, size of the bodies and queue of the logging of the tag, null to not log the tag
+         *                   whatever the default
+         * @param tagApiName name register, its logging thread is not shared with the other tags
+         */
+        public Builder logging(LoggingPolicy policy, String tagApiName) {
+            mFactory.mLoggingPolicies.put(tagApiName, policy);
+            return this;
+        }
+
         public Builder registerDefaultCallAdapter(CallAdapter.Factory callAdapter) {
             mFactory.registerDefaultFactories(mFactory.getConverterFactory(HttpClientFlyweight.DEFAULT_KEY), callAdapter);
             return this;
         }
 
+        /**
+         * The models are converted by the adapters of the Gson: register {@link GeneratedTypeAdapters#factory()}
+         * in the Gson to convert them without reflection.
+         */
         public Builder registerConverter(Gson gsonConverter, String tagApiName) {
             mFactory.registerConverter(gsonConverter, tagApiName);
             return this;
@@ -149,17 +559,163 @@ public final class OkHttpConfiguration {
             if (!mFactory.mClients.containsKey(HttpClientFlyweight.DEFAULT_KEY)) {
                 throw new IllegalArgumentException(String.format("default client factory must not be null, please use %s#registerDefault(IOkHttpClient client)", this.getClass().getCanonicalName()));
             }
-            return new OkHttpConfiguration(mBaseUrls, mMapApiKey, mFactory);
+            Map<String, String> baseUrls = new HashMap<>(mBaseUrls.size());
+            for (Map.Entry<String, String> entry : mBaseUrls.entrySet()) {
+                HttpUrl url = entry.getValue() == null ? null : HttpUrl.parse(entry.getValue());
+                baseUrls.put(entry.getKey(), url == null ? entry.getValue() : url.toString());
+            }
+            Snapshot snapshot = new Snapshot(Collections.unmodifiableMap(baseUrls),
+                    Collections.unmodifiableMap(new HashMap<>(mMapApiKey)), 0);
+            return new OkHttpConfiguration(snapshot,
+                    Collections.unmodifiableList(new ArrayList<>(mRegistries)), new HttpClientFlyweight(mFactory));
+        }
+
+    }
+
+    /**
+     * Changes of the base urls and the api keys, applied atomically by {@link #apply()}
+     */
+    public final class Editor {
+        private final Map<String, String> mBaseUrls = new LinkedHashMap<>();
+        private final Map<String, String> mApiKeys = new LinkedHashMap<>();
+
+        private Editor() {
+        }
+
+        /**
+         * @param url absolute url ending with '/'
+         * @throws IllegalArgumentException if the url is not a valid base url
+         */
+        public Editor putBaseUrl(String name, String url) {
+            HttpUrl httpUrl = url == null ? null : HttpUrl.parse(url);
+            if (httpUrl == null || !url.endsWith("/")) {
+                throw new IllegalArgumentException("invalid base url for " + name + ": " + url + ", it must end with '/'");
+            }
+            mBaseUrls.put(name, httpUrl.toString());
+            return this;
+        }
+
+        public Editor removeBaseUrl(String name) {
+            mBaseUrls.put(name, null);
+            return this;
+        }
+
+        public Editor putApiKey(String name, String value) {
+            mApiKeys.put(name, value);
+            return this;
+        }
+
+        public Editor removeApiKey(String name) {
+            mApiKeys.put(name, null);
+            return this;
+        }
+
+        /**
+         * Replaces the snapshot of the configuration, the changes of concurrent editors are never lost
+         *
+         * @return the version of the configuration including these changes
+         */
+        public long apply() {
+            while (true) {
+                Snapshot current = mSnapshot.get();
+                Snapshot next = new Snapshot(merge(current.mBaseUrls, mBaseUrls), merge(current.mApiKeys, mApiKeys), current.mVersion + 1);
+                if (mSnapshot.compareAndSet(current, next)) {
+                    return next.mVersion;
+                }
+            }
         }
 
+        private Map<String, String> merge(Map<String, String> values, Map<String, String> changes) {
+            if (changes.isEmpty()) {
+                return values;
+            }
+            Map<String, String> merged = new HashMap<>(values);
+            for (Map.Entry<String, String> change : changes.entrySet()) {
+                if (change.getValue() == null) {
+                    merged.remove(change.getKey());
+                } else {
+                    merged.put(change.getKey(), change.getValue());
+                }
+            }
+            return Collections.unmodifiableMap(merged);
+        }
+    }
+
+    /**
+     * Immutable base urls and api keys
+     */
+    private static final class Snapshot {
+        private final Map<String, String> mBaseUrls;
+        private final Map<String, String> mApiKeys;
+        private final long mVersion;
+
+        /**
+         * @param baseUrls unmodifiable
+         * @param apiKeys  unmodifiable
+         */
+        Snapshot(Map<String, String> baseUrls, Map<String, String> apiKeys, long version) {
+            mBaseUrls = baseUrls;
+            mApiKeys = apiKeys;
+            mVersion = version;
+        }
     }
 
     private static class HttpClientFlyweight {
         private static final String DEFAULT_KEY = "DEFAULT_KEY";
+        private static final long DEFAULT_CACHE_SIZE = 4 * 1024 * 1024;
+        private File mCacheDirectory;
+        private CookieStore mCookieStore;
+        private Map<String, Long> mCacheSizes = new HashMap<>();
+        private final ConcurrentMap<String, Cache> mCaches = new ConcurrentHashMap<>();
+        private Map<String, MemoryCache> mMemoryCaches = new HashMap<>();
+        private Set<String> mCoalescedTags = new HashSet<>();
+        private final ConcurrentMap<String, RequestCoalescer> mCoalescers = new ConcurrentHashMap<>();
+        private Map<String, Bulkhead> mBulkheads = new HashMap<>();
+        private Map<String, RetryPolicy> mRetryPolicies = new HashMap<>();
+        private final ConcurrentMap<String, Resilience> mResiliences = new ConcurrentHashMap<>();
+        private Map<String, CircuitBreakerPolicy> mCircuitBreakerPolicies = new HashMap<>();
+        private final ConcurrentMap<String, CircuitBreakerInterceptor> mCircuitBreakers = new ConcurrentHashMap<>();
+        private Map<String, Long> mCompressionMinBytes = new HashMap<>();
+        private Map<String, LoggingPolicy> mLoggingPolicies = new HashMap<>();
+        private Map<String, HeaderPolicy> mHeaderPolicies = new HashMap<>();
+        private final ConcurrentMap<String, LoggingInterceptor> mLoggers = new ConcurrentHashMap<>();
+        private boolean mCollectMetrics;
+        private final ConcurrentMap<String, NetworkMetrics> mMetrics = new ConcurrentHashMap<>();
         private Map<String, Converter.Factory> mConverters = new HashMap<>();
         private Map<String, CallAdapter.Factory> mCallAdapters = new HashMap<>();
         private Map<String, OkHttpBuilder> mClients = new HashMap<>();
 
+        HttpClientFlyweight() {
+        }
+
+        /**
+         * Frozen copy of the registrations of a builder, the builder can be modified and built again.
+         * The registered clients become templates, all derived from the root of the default client:
+         * they use the same connection pool and the same dispatcher.
+         */
+        HttpClientFlyweight(HttpClientFlyweight registrations) {
+            mCacheDirectory = registrations.mCacheDirectory;
+            mCookieStore = registrations.mCookieStore == null ? new CookieStore() : registrations.mCookieStore;
+            mCacheSizes = Collections.unmodifiableMap(new HashMap<>(registrations.mCacheSizes));
+            mMemoryCaches = Collections.unmodifiableMap(new HashMap<>(registrations.mMemoryCaches));
+            mCoalescedTags = Collections.unmodifiableSet(new HashSet<>(registrations.mCoalescedTags));
+            mBulkheads = Collections.unmodifiableMap(new HashMap<>(registrations.mBulkheads));
+            mRetryPolicies = Collections.unmodifiableMap(new HashMap<>(registrations.mRetryPolicies));
+            mCircuitBreakerPolicies = Collections.unmodifiableMap(new HashMap<>(registrations.mCircuitBreakerPolicies));
+            mCompressionMinBytes = Collections.unmodifiableMap(new HashMap<>(registrations.mCompressionMinBytes));
+            mLoggingPolicies = Collections.unmodifiableMap(new HashMap<>(registrations.mLoggingPolicies));
+            mHeaderPolicies = Collections.unmodifiableMap(new HashMap<>(registrations.mHeaderPolicies));
+            mCollectMetrics = registrations.mCollectMetrics;
+            mConverters = Collections.unmodifiableMap(new HashMap<>(registrations.mConverters));
+            mCallAdapters = Collections.unmodifiableMap(new HashMap<>(registrations.mCallAdapters));
+            OkHttpClient root = registrations.mClients.get(DEFAULT_KEY).rootClient();
+            Map<String, OkHttpBuilder> clients = new HashMap<>();
+            for (Map.Entry<String, OkHttpBuilder> entry : registrations.mClients.entrySet()) {
+                clients.put(entry.getKey(), entry.getValue().template(root));
+            }
+            mClients = Collections.unmodifiableMap(clients);
+        }
+
         /**
          * if you prefer to register a custom client. It will be priority on a factory with the same #tagApiName
          *
@@ -197,6 +753,14 @@ public final class OkHttpConfiguration {
             mCallAdapters.put(tagApiName, callAdapter);
         }
 
+        void registerCacheSize(long maxSize, String tagApiName) {
+            mCacheSizes.put(tagApiName, maxSize);
+        }
+
+        void registerMemoryCache(MemoryCache memoryCache, String tagApiName) {
+            mMemoryCaches.put(tagApiName, memoryCache);
+        }
+
         void registerCallAdapter(CallAdapter.Factory callAdapter, String tagApiName) {
             mCallAdapters.put(tagApiName, callAdapter);
         }
@@ -222,6 +786,124 @@ public final class OkHttpConfiguration {
             return mClients.get(DEFAULT_KEY);
         }
 
+        /**
+         * @param apiName name of api
+         * @return the cache shared by all the services of this tag, null without cache directory
+         */
+        Cache getCache(String apiName) {
+            if (mCacheDirectory == null) {
+                return null;
+            }
+            Cache cache = mCaches.get(apiName);
+            if (cache == null) {
+                Long maxSize = mCacheSizes.containsKey(apiName) ? mCacheSizes.get(apiName) : mCacheSizes.get(DEFAULT_KEY);
+                File directory = new File(mCacheDirectory, apiName.replaceAll("[^A-Za-z0-9._-]", "_"));
+                cache = HttpCaches.get(directory, maxSize == null ? DEFAULT_CACHE_SIZE : maxSize);
+                mCaches.put(apiName, cache);
+            }
+            return cache;
+        }
+
+        RequestCoalescer getRequestCoalescer(String apiName, boolean serviceCoalesces) {
+            if (!serviceCoalesces && !mCoalescedTags.contains(apiName)) {
+                return null;
+            }
+            RequestCoalescer coalescer = mCoalescers.get(apiName);
+            if (coalescer == null) {
+                coalescer = new RequestCoalescer();
+                RequestCoalescer previous = mCoalescers.putIfAbsent(apiName, coalescer);
+                if (previous != null) {
+                    coalescer = previous;
+                }
+            }
+            return coalescer;
+        }
+
+        NetworkMetrics getNetworkMetrics(String apiName) {
+            if (!mCollectMetrics) {
+                return null;
+            }
+            NetworkMetrics metrics = mMetrics.get(apiName);
+            if (metrics == null) {
+                metrics = new NetworkMetrics(apiName);
+                NetworkMetrics previous = mMetrics.putIfAbsent(apiName, metrics);
+                if (previous != null) {
+                    metrics = previous;
+                }
+            }
+            return metrics;
+        }
+
+        Resilience getResilience(String apiName) {
+            Resilience resilience = mResiliences.get(apiName);
+            if (resilience == null) {
+                RetryPolicy policy = mRetryPolicies.containsKey(apiName) ? mRetryPolicies.get(apiName) : mRetryPolicies.get(DEFAULT_KEY);
+                resilience = new Resilience(apiName, policy == null ? RetryPolicy.NONE : policy);
+                Resilience previous = mResiliences.putIfAbsent(apiName, resilience);
+                if (previous != null) {
+                    resilience = previous;
+                }
+            }
+            return resilience;
+        }
+
+        /**
+         * @return the circuit breaker shared by the clients of the tag, null without policy
+         */
+        CircuitBreakerInterceptor getCircuitBreaker(String apiName) {
+            CircuitBreakerInterceptor circuitBreaker = mCircuitBreakers.get(apiName);
+            if (circuitBreaker == null) {
+                CircuitBreakerPolicy policy = mCircuitBreakerPolicies.containsKey(apiName) ? mCircuitBreakerPolicies.get(apiName) : mCircuitBreakerPolicies.get(DEFAULT_KEY);
+                if (policy == null) {
+                    return null;
+                }
+                circuitBreaker = new CircuitBreakerInterceptor(apiName, policy);
+                CircuitBreakerInterceptor previous = mCircuitBreakers.putIfAbsent(apiName, circuitBreaker);
+                if (previous != null) {
+                    circuitBreaker = previous;
+                }
+            }
+            return circuitBreaker;
+        }
+
+        /**
+         * @return size from which the request bodies of the tag are compressed, -1 if they are sent as is
+         */
+        long getCompressionMinBytes(String apiName) {
+            Long minBytes = mCompressionMinBytes.containsKey(apiName) ? mCompressionMinBytes.get(apiName) : mCompressionMinBytes.get(DEFAULT_KEY);
+            return minBytes == null ? -1 : minBytes;
+        }
+
+        /**
+         * @return the logging interceptor shared by the clients of the tag, null without policy
+         */
+        LoggingInterceptor getLogging(String apiName) {
+            LoggingInterceptor logging = mLoggers.get(apiName);
+            if (logging == null) {
+                LoggingPolicy policy = mLoggingPolicies.containsKey(apiName) ? mLoggingPolicies.get(apiName) : mLoggingPolicies.get(DEFAULT_KEY);
+                if (policy == null) {
+                    return null;
+                }
+                logging = new LoggingInterceptor(policy);
+                LoggingInterceptor previous = mLoggers.putIfAbsent(apiName, logging);
+                if (previous != null) {
+                    logging = previous;
+                }
+            }
+            return logging;
+        }
+
+        HeaderPolicy getHeaderPolicy(String apiName) {
+            return mHeaderPolicies.containsKey(apiName) ? mHeaderPolicies.get(apiName) : mHeaderPolicies.get(DEFAULT_KEY);
+        }
+
+        MemoryCache getMemoryCache(String apiName) {
+            if (mMemoryCaches.containsKey(apiName)) {
+                return mMemoryCaches.get(apiName);
+            }
+            return mMemoryCaches.get(DEFAULT_KEY);
+        }
+
         /**
          * Ex : RxJavaCallAdapterFactory.create()
          *
@@ -0,0 +1,29 @@
+package com.android.jmaxime.factory.network;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Priority of the calls of a method in the queue of the {@link Bulkhead} of its tag:
+ * a queued interactive call starts before the queued background calls.
+ * Without bulkhead the calls are started in order by the dispatcher.
+ * <pre>
+ * &#64;Priority(Priority.Level.BACKGROUND)
+ * &#64;GET("stores")
+ * Call&lt;List&lt;Store&gt;&gt; syncStores();
+ * </pre>
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Priority {
+    Level value();
+
+    /**
+     * In the order of the queue
+     */
+    enum Level {
+        INTERACTIVE, NORMAL, BACKGROUND
+    }
+}
@@ -0,0 +1,431 @@
+package com.android.jmaxime.factory.network;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.lang.ref.WeakReference;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Converter;
+import retrofit2.Response;
+
+/**
+ * Collects the calls sent to a batch endpoint (see {@link Batch}) and sends them in one request once
+ * the batch is full or its delay is over, then gives its own response to each call.
+ * <p>
+ * The delays run on one daemon thread and the batch request is asynchronous:
+ * an asynchronous call never blocks a thread while it waits.
+ * The batch response is read item by item, each call receives its response as soon as it is read.
+ * </p>
+ * <p>
+ * Only the json bodies are batched, written as strings in the batch: a call with another body is sent alone.
+ * </p>
+ */
+final class RequestBatcher {
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final ScheduledThreadPoolExecutor SCHEDULER = newScheduler();
+
+    /**
+     * Held by the retrofit of the services and by the calls, see {@link BatchCallAdapterFactory}
+     */
+    private final WeakReference<okhttp3.Call.Factory> mCallFactory;
+    private final String mBaseUrl;
+    private final HttpUrl mBatchUrl;
+    private final int mMaxSize;
+    private final long mDelayMillis;
+    private List<BatchCall<?>> mPending = new ArrayList<>();
+    private ScheduledFuture<?> mTimer;
+
+    /**
+     * @param callFactory factory of the batch requests and of the calls sent alone
+     * @param baseUrl     base url of the services, the urls of the calls are sent relative to it
+     */
+    RequestBatcher(okhttp3.Call.Factory callFactory, HttpUrl baseUrl, HttpUrl batchUrl, int maxSize, long delayMillis) {
+        mCallFactory = new WeakReference<>(callFactory);
+        mBaseUrl = baseUrl.toString();
+        mBatchUrl = batchUrl;
+        mMaxSize = maxSize;
+        mDelayMillis = delayMillis;
+    }
+
+    /**
+     * @param call      call of a service, sent as is when it is alone in its batch
+     * @param converter converter of the body of its response
+     */
+    <T> Call<T> newCall(Call<T> call, Converter<ResponseBody, T> converter) {
+        return new BatchCall<>(call, converter);
+    }
+
+    private static ScheduledThreadPoolExecutor newScheduler() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ApiFactory batch");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.setKeepAliveTime(30, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private void add(BatchCall<?> call) {
+        if (!isJson(call)) {
+            call.sendAlone();
+            return;
+        }
+        List<BatchCall<?>> full = null;
+        synchronized (this) {
+            mPending.add(call);
+            if (mPending.size() >= mMaxSize) {
+                full = take();
+            } else if (mTimer == null) {
+                mTimer = SCHEDULER.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        flush();
+                    }
+                }, mDelayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+    }
+
+    private void flush() {
+        List<BatchCall<?>> batch;
+        synchronized (this) {
+            mTimer = null;
+            batch = take();
+        }
+        send(batch);
+    }
+
+    private List<BatchCall<?>> take() {
+        if (mTimer != null) {
+            mTimer.cancel(false);
+            mTimer = null;
+        }
+        List<BatchCall<?>> batch = mPending;
+        mPending = new ArrayList<>();
+        return batch;
+    }
+
+    private synchronized void remove(BatchCall<?> call) {
+        mPending.remove(call);
+    }
+
+    private void send(final List<BatchCall<?>> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (batch.size() == 1) {
+            batch.get(0).sendAlone();
+            return;
+        }
+        RequestBody body;
+        okhttp3.Call.Factory callFactory = mCallFactory.get();
+        try {
+            if (callFactory == null) {
+                throw new IOException("the client of " + mBatchUrl + " is released");
+            }
+            body = RequestBody.create(JSON, encode(batch));
+        } catch (IOException e) {
+            fail(batch, e);
+            return;
+        }
+        callFactory.newCall(new Request.Builder().url(mBatchUrl).post(body).build()).enqueue(new okhttp3.Callback() {
+            @Override
+            public void onFailure(okhttp3.Call call, IOException e) {
+                fail(batch, e);
+            }
+
+            @Override
+            public void onResponse(okhttp3.Call call, okhttp3.Response response) {
+                dispatch(batch, response);
+            }
+        });
+    }
+
+    private byte[] encode(List<BatchCall<?>> batch) throws IOException {
+        Buffer buffer = new Buffer();
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(buffer.outputStream(), UTF_8));
+        writer.beginArray();
+        for (BatchCall<?> call : batch) {
+            Request request = call.request();
+            String url = request.url().toString();
+            writer.beginObject()
+                    .name("method").value(request.method())
+                    .name("relative_url").value(url.startsWith(mBaseUrl) ? url.substring(mBaseUrl.length()) : url);
+            if (request.body() != null) {
+                Buffer requestBody = new Buffer();
+                request.body().writeTo(requestBody);
+                writer.name("body").value(requestBody.readString(request.body().contentType().charset(UTF_8)));
+            }
+            writer.endObject();
+        }
+        writer.endArray();
+        writer.close();
+        return buffer.readByteArray();
+    }
+
+    /**
+     * Gives its response to each call of the batch as soon as it is read: a failed batch request fails
+     * every call, a truncated or invalid batch response fails the calls not served yet
+     */
+    private void dispatch(List<BatchCall<?>> batch, okhttp3.Response response) {
+        ResponseBody body = response.body();
+        int count = 0;
+        try {
+            if (!response.isSuccessful()) {
+                throw new IOException("batch request " + mBatchUrl + " failed: " + response.code());
+            }
+            JsonReader reader = new JsonReader(body.charStream());
+            JsonParser parser = new JsonParser();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (count == batch.size()) {
+                    throw new IOException("batch request " + mBatchUrl + ": " + batch.size() + " responses expected, more received");
+                }
+                batch.get(count++).complete(parser.parse(reader));
+            }
+            reader.endArray();
+            if (count != batch.size()) {
+                throw new IOException("batch request " + mBatchUrl + ": " + batch.size() + " responses expected, " + count + " received");
+            }
+        } catch (IOException e) {
+            fail(batch, e);
+        } catch (JsonParseException | IllegalStateException e) {
+            fail(batch, new IOException("invalid batch response of " + mBatchUrl, e));
+        } finally {
+            body.close();
+        }
+    }
+
+    /**
+     * Fails the calls of the batch not finished yet
+     */
+    private static void fail(List<BatchCall<?>> batch, IOException e) {
+        for (BatchCall<?> call : batch) {
+            call.finish(null, e);
+        }
+    }
+
+    /**
+     * @return true for a call without body or with a json body, e.g. application/json or application/vnd.api+json;
+     * false for a call whose request cannot be built, it fails alone
+     */
+    private static boolean isJson(BatchCall<?> call) {
+        RequestBody body;
+        try {
+            body = call.request().body();
+        } catch (RuntimeException e) {
+            return false;
+        }
+        if (body == null) {
+            return true;
+        }
+        MediaType type = body.contentType();
+        return type != null && ("json".equals(type.subtype()) || type.subtype().endsWith("+json"));
+    }
+
+    /**
+     * Call of a service waiting for its batch
+     */
+    private final class BatchCall<T> implements Call<T> {
+        private final Call<T> mCall;
+        private final Converter<ResponseBody, T> mConverter;
+        private final CountDownLatch mDone = new CountDownLatch(1);
+        private final AtomicBoolean mFinished = new AtomicBoolean();
+        private volatile Callback<T> mCallback;
+        private volatile boolean mExecuted;
+        private volatile boolean mCanceled;
+        private Response<T> mResponse;
+        private Throwable mError;
+
+        BatchCall(Call<T> call, Converter<ResponseBody, T> converter) {
+            mCall = call;
+            mConverter = converter;
+        }
+
+        @Override
+        public Response<T> execute() throws IOException {
+            markExecuted();
+            if (mCanceled) {
+                throw new IOException("Canceled");
+            }
+            add(this);
+            try {
+                mDone.await();
+            } catch (InterruptedException e) {
+                cancel();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for the batch " + mBatchUrl);
+            }
+            if (mError instanceof IOException) {
+                throw (IOException) mError;
+            }
+            if (mError instanceof RuntimeException) {
+                throw (RuntimeException) mError;
+            }
+            if (mError != null) {
+                throw new IOException(mError);
+            }
+            return mResponse;
+        }
+
+        @Override
+        public void enqueue(Callback<T> callback) {
+            markExecuted();
+            mCallback = callback;
+            if (mCanceled) {
+                callback.onFailure(this, new IOException("Canceled"));
+                return;
+            }
+            add(this);
+        }
+
+        void sendAlone() {
+            mCall.enqueue(new Callback<T>() {
+                @Override
+                public void onResponse(Call<T> call, Response<T> response) {
+                    finish(response, null);
+                }
+
+                @Override
+                public void onFailure(Call<T> call, Throwable t) {
+                    finish(null, t);
+                }
+            });
+        }
+
+        /**
+         * @param item response of this call in the batch response
+         */
+        void complete(JsonElement item) {
+            int code;
+            String text;
+            try {
+                JsonObject object = item.getAsJsonObject();
+                code = object.get("code").getAsInt();
+                JsonElement body = object.get("body");
+                if (body == null || body.isJsonNull()) {
+                    text = "";
+                } else if (body.isJsonPrimitive() && body.getAsJsonPrimitive().isString()) {
+                    text = body.getAsString();
+                } else {
+                    text = body.toString();
+                }
+            } catch (RuntimeException e) {
+                finish(null, new IOException("invalid item in the batch response of " + mBatchUrl + ": " + item, e));
+                return;
+            }
+            okhttp3.Response raw = new okhttp3.Response.Builder()
+                    .request(request())
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(code)
+                    .message(code >= 200 && code < 300 ? "OK" : "")
+                    .build();
+            ResponseBody body = ResponseBody.create(JSON, text);
+            if (!raw.isSuccessful()) {
+                finish(Response.<T>error(body, raw), null);
+                return;
+            }
+            if (code == 204 || code == 205) {
+                finish(Response.<T>success(null, raw), null);
+                return;
+            }
+            try {
+                finish(Response.success(mConverter.convert(body), raw), null);
+            } catch (IOException | RuntimeException e) {
+                finish(null, e);
+            }
+        }
+
+        /**
+         * Delivers the response or the failure of the call, once
+         */
+        void finish(Response<T> response, Throwable error) {
+            if (!mFinished.compareAndSet(false, true)) {
+                return;
+            }
+            mResponse = response;
+            mError = error;
+            Callback<T> callback = mCallback;
+            if (callback != null) {
+                if (error == null) {
+                    callback.onResponse(this, response);
+                } else {
+                    callback.onFailure(this, error);
+                }
+            }
+            mDone.countDown();
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return mExecuted;
+        }
+
+        /**
+         * A call waiting for its batch fails at once, a call already sent in a batch ignores its response
+         */
+        @Override
+        public void cancel() {
+            mCanceled = true;
+            mCall.cancel();
+            remove(this);
+            finish(null, new IOException("Canceled"));
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return mCanceled;
+        }
+
+        @SuppressWarnings("CloneDoesntCallSuperClone")
+        @Override
+        public Call<T> clone() {
+            return new BatchCall<>(mCall.clone(), mConverter);
+        }
+
+        @Override
+        public Request request() {
+            return mCall.request();
+        }
+
+        private synchronized void markExecuted() {
+            if (mExecuted) {
+                throw new IllegalStateException("Already Executed");
+            }
+            mExecuted = true;
+        }
+    }
+}
@@ -0,0 +1,551 @@
+package com.android.jmaxime.factory.network;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+
+/**
+ * Single flight of the identical GET requests of a tag (same client, same api key, same url, same headers,
+ * same {@link CallOptions}): while a request is in flight, the identical requests wait for its response
+ * instead of opening their own exchange, then each one reads the same body.
+ * <p>
+ * An asynchronous waiter does not hold any thread: its callback is run by the executor of the client.
+ * A synchronous waiter blocks its own calling thread, until the response or its cancellation.
+ * The shared call is canceled when the last of its calls is, whichever leads it.
+ * </p>
+ * <p>
+ * The streamed responses ({@link CallOptions#mStreaming}) are not coalesced. A body longer than
+ * {@link #MAX_SHARED_BYTES} is not read in memory: it goes to the leading call only, and the waiters send
+ * their own request.
+ * </p>
+ *
+ * @see ApiKeyService#coalesceRequests()
+ * @see OkHttpConfiguration.Builder#coalesceRequests(String)
+ */
+final class RequestCoalescer {
+    static final long MAX_SHARED_BYTES = 256 * 1024;
+
+    private final ConcurrentMap<Key, Flight> mFlights = new ConcurrentHashMap<>();
+    /**
+     * Flights by the request sent by their leading call, see {@link #guard()}
+     */
+    private final ConcurrentMap<Request, Flight> mLeading = new ConcurrentHashMap<>();
+    private final AtomicLong mCoalescedCount = new AtomicLong();
+    private final Interceptor mGuard = new Interceptor() {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            try {
+                return chain.proceed(chain.request());
+            } catch (RuntimeException e) {
+                Flight flight = mLeading.get(chain.request());
+                if (flight != null) {
+                    flight.fail(e);
+                }
+                throw e;
+            }
+        }
+    };
+
+    /**
+     * @param client    factory of the network calls, the requests of different clients are never coalesced
+     * @param apiKey    api key added to the request by the client, null if none
+     * @param callbacks runs the callbacks of the asynchronous waiters
+     * @return a call sharing the response of the identical calls in flight, or a plain call if the request can not be shared
+     */
+    Call newCall(Call.Factory client, Request request, String apiKey, Executor callbacks) {
+        CallOptions options = CallOptions.of(request);
+        if (!"GET".equals(request.method()) || (options != null && options.mStreaming)) {
+            return client.newCall(request);
+        }
+        return new CoalescedCall(client, request, apiKey, callbacks);
+    }
+
+    /**
+     * okhttp does not give to the callback of an asynchronous call the runtime exceptions of its chain
+     * (an interceptor, a header provider...): the flight would never complete
+     *
+     * @return first interceptor of the clients coalescing their requests, fails the flight whose chain throws
+     */
+    Interceptor guard() {
+        return mGuard;
+    }
+
+    /**
+     * @return number of calls served by the response of another call
+     */
+    long coalescedCount() {
+        return mCoalescedCount.get();
+    }
+
+    /**
+     * @param call call joining the flight of its request
+     * @return the flight to wait, null if the call leads a new flight
+     */
+    private Flight join(CoalescedCall call) {
+        Key key = new Key(call);
+        while (true) {
+            Flight flight = mFlights.get(key);
+            if (flight == null) {
+                Flight created = new Flight(key, call);
+                if (mFlights.putIfAbsent(key, created) == null) {
+                    mLeading.put(created.mNetworkRequest, created);
+                    call.mFlight = created;
+                    return null;
+                }
+            } else if (flight.add(call)) {
+                mCoalescedCount.incrementAndGet();
+                return flight;
+            }
+        }
+    }
+
+    /**
+     * Identity of the requests sharing a flight: the options of the call (cache rule, retries...) apply to all of them
+     */
+    private static final class Key {
+        private final Call.Factory mClient;
+        private final String mApiKey;
+        private final String mRequest;
+        private final CallOptions mOptions;
+
+        Key(CoalescedCall call) {
+            mClient = call.mClient;
+            mApiKey = call.mApiKey;
+            mRequest = call.mRequest.url().toString() + '\n' + call.mRequest.headers().toString();
+            mOptions = CallOptions.of(call.mRequest);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return mClient == key.mClient
+                    && mRequest.equals(key.mRequest)
+                    && (mApiKey == null ? key.mApiKey == null : mApiKey.equals(key.mApiKey))
+                    && (mOptions == null ? key.mOptions == null : mOptions.equals(key.mOptions));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(mClient);
+            result = 31 * result + (mApiKey == null ? 0 : mApiKey.hashCode());
+            result = 31 * result + mRequest.hashCode();
+            result = 31 * result + (mOptions == null ? 0 : mOptions.hashCode());
+            return result;
+        }
+    }
+
+    /**
+     * Call in flight and the calls waiting for its response
+     */
+    private final class Flight {
+        private final Key mKey;
+        private final CoalescedCall mLeader;
+        /**
+         * Request of the shared call, a copy of the one of the leading call: it identifies the flight in its chain
+         */
+        private final Request mNetworkRequest;
+        private final List<CoalescedCall> mWaiters = new ArrayList<>();
+        /**
+         * Calls not canceled, the leading one included
+         */
+        private int mParticipants = 1;
+        private boolean mDone;
+        private Call mNetworkCall;
+        private Response mResponse;
+        private MediaType mContentType;
+        private Buffer mBody;
+        private IOException mError;
+
+        Flight(Key key, CoalescedCall leader) {
+            mKey = key;
+            mLeader = leader;
+            mNetworkRequest = leader.mRequest.newBuilder().build();
+        }
+
+        synchronized boolean add(CoalescedCall call) {
+            if (mDone || mParticipants == 0) {
+                return false;
+            }
+            call.mFlight = this;
+            mWaiters.add(call);
+            mParticipants++;
+            return true;
+        }
+
+        /**
+         * @param networkCall shared call, canceled at once if every call left the flight already
+         */
+        void start(Call networkCall) {
+            boolean abandoned;
+            synchronized (this) {
+                mNetworkCall = networkCall;
+                abandoned = mParticipants == 0;
+            }
+            if (abandoned) {
+                networkCall.cancel();
+            }
+        }
+
+        /**
+         * Removes a canceled call, wakes it if it waits, and cancels the shared call if it was the last one
+         */
+        void leave(CoalescedCall call) {
+            boolean abandoned;
+            Call networkCall;
+            synchronized (this) {
+                mWaiters.remove(call);
+                mParticipants--;
+                notifyAll();
+                abandoned = mParticipants == 0 && !mDone;
+                networkCall = mNetworkCall;
+            }
+            if (abandoned) {
+                mLeading.remove(mNetworkRequest, this);
+                mFlights.remove(mKey, this);
+                if (networkCall != null) {
+                    networkCall.cancel();
+                }
+            }
+        }
+
+        /**
+         * Completes the flight with the response of the leading call. A body of at most {@link #MAX_SHARED_BYTES}
+         * is read once and shared, a longer one is left to the leading call.
+         *
+         * @return false if the response is not shared: it is still open and belongs to the leading call
+         */
+        boolean share(Response response) {
+            ResponseBody body = response.body();
+            boolean shared = true;
+            try {
+                BufferedSource source = body == null ? null : body.source();
+                if (source != null && (body.contentLength() > MAX_SHARED_BYTES || source.request(MAX_SHARED_BYTES + 1))) {
+                    shared = false;
+                    complete(null, null, null, null);
+                } else {
+                    Buffer bytes = new Buffer();
+                    if (source != null) {
+                        source.readAll(bytes);
+                    }
+                    complete(response.newBuilder().body(null).build(), body == null ? null : body.contentType(), bytes, null);
+                }
+            } catch (IOException e) {
+                complete(null, null, null, e);
+            } finally {
+                if (shared) {
+                    response.close();
+                }
+            }
+            return shared;
+        }
+
+        /**
+         * Completes the flight with the runtime exception of the shared call, an asynchronous leading call fails too
+         */
+        void fail(RuntimeException e) {
+            complete(null, null, null, new IOException(e.toString(), e));
+            mLeader.deliver();
+        }
+
+        /**
+         * @param response response without body, null if it is not shared
+         */
+        void complete(Response response, MediaType contentType, Buffer body, IOException error) {
+            List<CoalescedCall> waiters;
+            mLeading.remove(mNetworkRequest, this);
+            mFlights.remove(mKey, this);
+            synchronized (this) {
+                if (mDone) {
+                    return;
+                }
+                mDone = true;
+                mResponse = response;
+                mContentType = contentType;
+                mBody = body;
+                mError = error;
+                waiters = new ArrayList<>(mWaiters);
+                notifyAll();
+            }
+            for (final CoalescedCall waiter : waiters) {
+                if (waiter.mCallback == null) {
+                    continue;
+                }
+                Runnable delivery = new Runnable() {
+                    @Override
+                    public void run() {
+                        waiter.deliver();
+                    }
+                };
+                try {
+                    waiter.mCallbacks.execute(delivery);
+                } catch (RejectedExecutionException e) {
+                    delivery.run();
+                }
+            }
+        }
+
+        /**
+         * Blocks until the response of the flight or the cancellation of the call
+         */
+        synchronized void await(CoalescedCall call) throws IOException {
+            while (!mDone && !call.isCanceled()) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    call.cancel();
+                    throw new InterruptedIOException("interrupted while waiting for " + call.mRequest.url());
+                }
+            }
+        }
+
+        /**
+         * @return the shared response for the given call, reading the body shared by all of them,
+         * null if the response is not shared
+         */
+        synchronized Response responseFor(Request request) throws IOException {
+            if (mError != null) {
+                throw new IOException("shared call failed: " + mError.getMessage(), mError);
+            }
+            if (mResponse == null) {
+                return null;
+            }
+            return mResponse.newBuilder()
+                    .request(request)
+                    .body(ResponseBody.create(mContentType, mBody.size(), mBody.clone()))
+                    .build();
+        }
+    }
+
+    private final class CoalescedCall implements Call {
+        private final Call.Factory mClient;
+        private final Request mRequest;
+        private final String mApiKey;
+        private final Executor mCallbacks;
+        private final AtomicBoolean mDelivered = new AtomicBoolean();
+        private final AtomicBoolean mCanceled = new AtomicBoolean();
+        private final AtomicBoolean mLeft = new AtomicBoolean();
+        private volatile Flight mFlight;
+        private volatile Callback mCallback;
+        /**
+         * Own call of a waiter whose flight did not share its response
+         */
+        private volatile Call mAlone;
+        private volatile boolean mExecuted;
+
+        CoalescedCall(Call.Factory client, Request request, String apiKey, Executor callbacks) {
+            mClient = client;
+            mRequest = request;
+            mApiKey = apiKey;
+            mCallbacks = callbacks;
+        }
+
+        @Override
+        public Request request() {
+            return mRequest;
+        }
+
+        @Override
+        public Response execute() throws IOException {
+            markExecuted();
+            checkNotCanceled();
+            Flight flight = join(this);
+            leaveIfCanceled();
+            if (flight == null) {
+                flight = mFlight;
+                try {
+                    Call networkCall = mClient.newCall(flight.mNetworkRequest);
+                    flight.start(networkCall);
+                    Response response = networkCall.execute();
+                    if (!flight.share(response)) {
+                        return response.newBuilder().request(mRequest).build();
+                    }
+                } catch (IOException e) {
+                    flight.complete(null, null, null, e);
+                } catch (RuntimeException e) {
+                    flight.fail(e);
+                    throw e;
+                }
+            } else {
+                flight.await(this);
+            }
+            checkNotCanceled();
+            Response response = flight.responseFor(mRequest);
+            return response != null ? response : alone().execute();
+        }
+
+        @Override
+        public void enqueue(Callback responseCallback) {
+            markExecuted();
+            mCallback = responseCallback;
+            if (mCanceled.get()) {
+                deliver();
+                return;
+            }
+            Flight joined = join(this);
+            leaveIfCanceled();
+            if (joined != null) {
+                return;
+            }
+            final Flight flight = mFlight;
+            try {
+                Call networkCall = mClient.newCall(flight.mNetworkRequest);
+                flight.start(networkCall);
+                networkCall.enqueue(new Callback() {
+                    @Override
+                    public void onFailure(Call call, IOException e) {
+                        flight.complete(null, null, null, e);
+                        deliver();
+                    }
+
+                    @Override
+                    public void onResponse(Call call, Response response) throws IOException {
+                        if (flight.share(response)) {
+                            deliver();
+                        } else if (mDelivered.compareAndSet(false, true)) {
+                            mCallback.onResponse(CoalescedCall.this, response.newBuilder().request(mRequest).build());
+                        } else {
+                            response.close();
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                flight.fail(e);
+                throw e;
+            }
+        }
+
+        /**
+         * Gives the response of the flight to the callback of this call, once
+         */
+        void deliver() {
+            final Callback callback = mCallback;
+            if (callback == null || !mDelivered.compareAndSet(false, true)) {
+                return;
+            }
+            Response response;
+            try {
+                checkNotCanceled();
+                response = mFlight.responseFor(mRequest);
+            } catch (IOException e) {
+                callback.onFailure(this, e);
+                return;
+            }
+            if (response == null) {
+                alone().enqueue(new Callback() {
+                    @Override
+                    public void onFailure(Call call, IOException e) {
+                        callback.onFailure(CoalescedCall.this, e);
+                    }
+
+                    @Override
+                    public void onResponse(Call call, Response response) throws IOException {
+                        callback.onResponse(CoalescedCall.this, response);
+                    }
+                });
+                return;
+            }
+            try {
+                callback.onResponse(this, response);
+            } catch (IOException e) {
+                callback.onFailure(this, e);
+            }
+        }
+
+        /**
+         * @return the own call of a waiter, canceled with it
+         */
+        private Call alone() {
+            Call call = mClient.newCall(mRequest);
+            mAlone = call;
+            if (mCanceled.get()) {
+                call.cancel();
+            }
+            return call;
+        }
+
+        /**
+         * The call leaves its flight: a synchronous waiter wakes up, an asynchronous one fails at once
+         */
+        @Override
+        public void cancel() {
+            if (mCanceled.compareAndSet(false, true)) {
+                leave();
+                Call alone = mAlone;
+                if (alone != null) {
+                    alone.cancel();
+                }
+            }
+        }
+
+        /**
+         * A call canceled while it was joining its flight leaves it now
+         */
+        private void leaveIfCanceled() {
+            if (mCanceled.get()) {
+                leave();
+            }
+        }
+
+        private void leave() {
+            Flight flight = mFlight;
+            if (flight == null || !mLeft.compareAndSet(false, true)) {
+                return;
+            }
+            flight.leave(this);
+            deliver();
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return mExecuted;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return mCanceled.get();
+        }
+
+        @SuppressWarnings("CloneDoesntCallSuperClone")
+        @Override
+        public Call clone() {
+            return new CoalescedCall(mClient, mRequest, mApiKey, mCallbacks);
+        }
+
+        private synchronized void markExecuted() {
+            if (mExecuted) {
+                throw new IllegalStateException("Already Executed");
+            }
+            mExecuted = true;
+        }
+
+        private void checkNotCanceled() throws IOException {
+            if (mCanceled.get()) {
+                throw new IOException("Canceled");
+            }
+        }
+    }
+}
@@ -0,0 +1,487 @@
+package com.android.jmaxime.factory.network;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Applies the {@link RetryPolicy} of a tag to the calls of its services: retries with backoff and
+ * hedged requests, limited by the retry budget of the tag. The calls which can not be retried nor
+ * hedged are not wrapped.
+ * <p>
+ * The backoff delays and the hedge timers run on one daemon thread, an asynchronous call never
+ * blocks a thread while it waits.
+ * </p>
+ */
+final class Resilience {
+    private static final long MILLI_TOKENS = 1000;
+    /**
+     * Latencies recorded before the first hedged request
+     */
+    private static final int MIN_SAMPLES = 20;
+    /**
+     * The hedge delay is computed again every REFRESH latencies
+     */
+    private static final int REFRESH = 16;
+    private static final ScheduledThreadPoolExecutor SCHEDULER = newScheduler();
+    private static final Random RANDOM = new Random();
+
+    private final String mTagApiName;
+    private final RetryPolicy mPolicy;
+    private final LatencyHistogram mLatencies = new LatencyHistogram();
+    private final AtomicLong mBudget;
+    private final long mMaxBudget;
+    private final long mDeposit;
+    private final AtomicLong mCalls = new AtomicLong();
+    private final AtomicLong mRetries = new AtomicLong();
+    private final AtomicLong mHedges = new AtomicLong();
+    private final AtomicLong mHedgesWon = new AtomicLong();
+    private final AtomicLong mBudgetExhausted = new AtomicLong();
+    private final AtomicLong mSamples = new AtomicLong();
+    private volatile long mHedgeDelayMillis = -1;
+
+    Resilience(String tagApiName, RetryPolicy policy) {
+        mTagApiName = tagApiName;
+        mPolicy = policy;
+        mMaxBudget = policy.mBudgetMinTokens * MILLI_TOKENS;
+        mBudget = new AtomicLong(mMaxBudget);
+        mDeposit = (long) (policy.mBudgetRatio * MILLI_TOKENS);
+    }
+
+    /**
+     * @param network factory of the attempts
+     * @return a factory wrapping the calls which can be retried or hedged
+     */
+    Call.Factory callFactory(final Call.Factory network) {
+        return new Call.Factory() {
+            @Override
+            public Call newCall(Request request) {
+                CallOptions options = CallOptions.of(request);
+                if (!isSafe(request.method()) && (options == null || !options.mIdempotent)) {
+                    return network.newCall(request);
+                }
+                int maxRetries = options == null || options.mMaxRetries == -1 ? mPolicy.mMaxRetries : options.mMaxRetries;
+                boolean hedge = mPolicy.hedges() && (options == null || options.mHedge);
+                if (maxRetries == 0 && !hedge) {
+                    return network.newCall(request);
+                }
+                return new ResilientCall(network, request, maxRetries, hedge);
+            }
+        };
+    }
+
+    RetryStats stats() {
+        return new RetryStats(mTagApiName, mCalls.get(), mRetries.get(), mHedges.get(), mHedgesWon.get(),
+                mBudgetExhausted.get(), mHedgeDelayMillis);
+    }
+
+    /**
+     * @return the delay before a hedged request, -1 while too few latencies are known
+     */
+    long hedgeDelayMillis() {
+        return mHedgeDelayMillis;
+    }
+
+    private static boolean isSafe(String method) {
+        return "GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method);
+    }
+
+    private void deposit() {
+        mCalls.incrementAndGet();
+        while (true) {
+            long budget = mBudget.get();
+            long next = Math.min(mMaxBudget, budget + mDeposit);
+            if (budget == next || mBudget.compareAndSet(budget, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return true if the budget allows one more retry or hedge
+     */
+    private boolean withdraw() {
+        while (true) {
+            long budget = mBudget.get();
+            if (budget < MILLI_TOKENS) {
+                mBudgetExhausted.incrementAndGet();
+                return false;
+            }
+            if (mBudget.compareAndSet(budget, budget - MILLI_TOKENS)) {
+                return true;
+            }
+        }
+    }
+
+    private void record(long durationNanos) {
+        mLatencies.record(durationNanos);
+        long samples = mSamples.incrementAndGet();
+        if (mPolicy.hedges() && samples >= MIN_SAMPLES && (samples % REFRESH == 0 || mHedgeDelayMillis < 0)) {
+            long percentile = TimeUnit.MICROSECONDS.toMillis(mLatencies.snapshot().getPercentile(mPolicy.mHedgePercentile));
+            mHedgeDelayMillis = Math.max(mPolicy.mHedgeMinDelayMillis, percentile);
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor newScheduler() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ApiFactory retry");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.setKeepAliveTime(30, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Call sending its request once or more: the first successful response is delivered, the other
+     * attempts in flight are canceled. The failure or the retryable response of the last attempt
+     * is delivered once no retry is left.
+     */
+    private final class ResilientCall implements Call {
+        private final Call.Factory mNetwork;
+        private final Request mRequest;
+        private final int mMaxRetries;
+        private final boolean mHedge;
+        private final List<Call> mAttempts = new ArrayList<>(2);
+        private int mRetryCount;
+        private boolean mDone;
+        private Call mHedgeCall;
+        private long mFirstAttemptNanos;
+        private ScheduledFuture<?> mHedgeTimer;
+        private volatile Callback mCallback;
+        private volatile boolean mExecuted;
+        private volatile boolean mCanceled;
+
+        ResilientCall(Call.Factory network, Request request, int maxRetries, boolean hedge) {
+            mNetwork = network;
+            mRequest = request;
+            mMaxRetries = maxRetries;
+            mHedge = hedge;
+        }
+
+        @Override
+        public Request request() {
+            return mRequest;
+        }
+
+        @Override
+        public Response execute() throws IOException {
+            markExecuted();
+            deposit();
+            if (mHedge) {
+                return executeHedged();
+            }
+            while (true) {
+                Call call = newAttempt();
+                long start = System.nanoTime();
+                Response response;
+                try {
+                    response = call.execute();
+                } catch (IOException e) {
+                    if (mCanceled || e instanceof CircuitBreakerOpenException || !retry()) {
+                        throw e;
+                    }
+                    sleep();
+                    continue;
+                }
+                if (!mPolicy.isRetryable(response.code())) {
+                    record(System.nanoTime() - start);
+                    return response;
+                }
+                if (mCanceled || !retry()) {
+                    return response;
+                }
+                response.close();
+                sleep();
+            }
+        }
+
+        private synchronized Call newAttempt() throws IOException {
+            if (mCanceled) {
+                throw new IOException("Canceled");
+            }
+            mAttempts.clear();
+            Call call = mNetwork.newCall(mRequest);
+            mAttempts.add(call);
+            return call;
+        }
+
+        private void sleep() throws IOException {
+            try {
+                Thread.sleep(mPolicy.delayMillis(mRetryCount - 1, RANDOM.nextDouble()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for a retry of " + mRequest.url());
+            }
+        }
+
+        /**
+         * Synchronous call with hedging: the attempts are asynchronous, the calling thread waits for the first answer
+         */
+        private Response executeHedged() throws IOException {
+            SyncCallback callback = new SyncCallback();
+            start(callback);
+            try {
+                callback.mLatch.await();
+            } catch (InterruptedException e) {
+                cancel();
+                callback.abandon();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for " + mRequest.url());
+            }
+            if (callback.mError != null) {
+                throw callback.mError;
+            }
+            return callback.mResponse;
+        }
+
+        @Override
+        public void enqueue(Callback responseCallback) {
+            markExecuted();
+            deposit();
+            start(responseCallback);
+        }
+
+        private void start(Callback callback) {
+            mCallback = callback;
+            attempt(false);
+            if (mHedge) {
+                long delay = hedgeDelayMillis();
+                if (delay >= 0) {
+                    ScheduledFuture<?> timer = SCHEDULER.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            hedge();
+                        }
+                    }, delay, TimeUnit.MILLISECONDS);
+                    synchronized (this) {
+                        mHedgeTimer = timer;
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return true if a retry is allowed, it is counted
+         */
+        private synchronized boolean retry() {
+            if (mRetryCount >= mMaxRetries || !withdraw()) {
+                return false;
+            }
+            mRetryCount++;
+            mRetries.incrementAndGet();
+            return true;
+        }
+
+        private void hedge() {
+            synchronized (this) {
+                if (mDone || mCanceled || mAttempts.size() != 1 || !withdraw()) {
+                    return;
+                }
+            }
+            mHedges.incrementAndGet();
+            attempt(true);
+        }
+
+        /**
+         * @param hedge true for the hedged request, its latency is measured from the start of the
+         *              attempt it doubles: the caller has been waiting since then
+         */
+        private void attempt(boolean hedge) {
+            final Call call;
+            final long start;
+            synchronized (this) {
+                if (mDone) {
+                    return;
+                }
+                call = mNetwork.newCall(mRequest);
+                mAttempts.add(call);
+                if (hedge) {
+                    mHedgeCall = call;
+                } else {
+                    mFirstAttemptNanos = System.nanoTime();
+                }
+                start = mFirstAttemptNanos;
+            }
+            call.enqueue(new Callback() {
+                @Override
+                public void onFailure(Call attempt, IOException e) {
+                    if (failed(call, null, !(e instanceof CircuitBreakerOpenException))) {
+                        mCallback.onFailure(ResilientCall.this, e);
+                    }
+                }
+
+                @Override
+                public void onResponse(Call attempt, Response response) throws IOException {
+                    if (!mPolicy.isRetryable(response.code())) {
+                        succeeded(call, start, response);
+                    } else if (failed(call, response, true)) {
+                        mCallback.onResponse(ResilientCall.this, response);
+                    }
+                }
+            });
+        }
+
+        private void succeeded(Call call, long start, Response response) throws IOException {
+            List<Call> others;
+            boolean hedgeWon;
+            synchronized (this) {
+                mAttempts.remove(call);
+                if (mDone) {
+                    response.close();
+                    return;
+                }
+                mDone = true;
+                hedgeWon = call == mHedgeCall;
+                others = new ArrayList<>(mAttempts);
+                cancelHedgeTimer();
+            }
+            for (Call other : others) {
+                other.cancel();
+            }
+            record(System.nanoTime() - start);
+            if (hedgeWon) {
+                mHedgesWon.incrementAndGet();
+            }
+            mCallback.onResponse(this, response);
+        }
+
+        /**
+         * Schedules a retry of a failed attempt, if allowed and if no other attempt is in flight
+         *
+         * @param response  retryable response of the attempt, null if it failed
+         * @param retryable false if the attempt failed at once because its circuit is open
+         * @return true if the failure or the response of this attempt must be delivered
+         */
+        private synchronized boolean failed(Call call, Response response, boolean retryable) {
+            mAttempts.remove(call);
+            if (mDone || !mAttempts.isEmpty() || (retryable && !mCanceled && retry())) {
+                if (response != null) {
+                    response.close();
+                }
+                if (!mDone && mAttempts.isEmpty()) {
+                    SCHEDULER.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            attempt(false);
+                        }
+                    }, mPolicy.delayMillis(mRetryCount - 1, RANDOM.nextDouble()), TimeUnit.MILLISECONDS);
+                }
+                return false;
+            }
+            mDone = true;
+            cancelHedgeTimer();
+            return true;
+        }
+
+        private void cancelHedgeTimer() {
+            if (mHedgeTimer != null) {
+                mHedgeTimer.cancel(false);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            List<Call> attempts;
+            boolean waitingRetry;
+            synchronized (this) {
+                mCanceled = true;
+                attempts = new ArrayList<>(mAttempts);
+                waitingRetry = !mDone && mAttempts.isEmpty() && mCallback != null;
+                if (waitingRetry) {
+                    mDone = true;
+                }
+                cancelHedgeTimer();
+            }
+            for (Call attempt : attempts) {
+                attempt.cancel();
+            }
+            if (waitingRetry) {
+                mCallback.onFailure(this, new IOException("Canceled"));
+            }
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return mExecuted;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return mCanceled;
+        }
+
+        @SuppressWarnings("CloneDoesntCallSuperClone")
+        @Override
+        public Call clone() {
+            return new ResilientCall(mNetwork, mRequest, mMaxRetries, mHedge);
+        }
+
+        private synchronized void markExecuted() {
+            if (mExecuted) {
+                throw new IllegalStateException("Already Executed");
+            }
+            mExecuted = true;
+        }
+    }
+
+    /**
+     * Answer of a hedged synchronous call, a response arriving after the caller gave up is closed
+     */
+    private static final class SyncCallback implements Callback {
+        private final CountDownLatch mLatch = new CountDownLatch(1);
+        private Response mResponse;
+        private IOException mError;
+        private boolean mAbandoned;
+
+        @Override
+        public synchronized void onFailure(Call call, IOException e) {
+            mError = e;
+            mLatch.countDown();
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) {
+            synchronized (this) {
+                if (!mAbandoned) {
+                    mResponse = response;
+                    mLatch.countDown();
+                    return;
+                }
+            }
+            response.close();
+        }
+
+        /**
+         * Called once the caller stopped waiting, closes the response already received
+         */
+        void abandon() {
+            Response response;
+            synchronized (this) {
+                mAbandoned = true;
+                response = mResponse;
+                mResponse = null;
+            }
+            if (response != null) {
+                response.close();
+            }
+        }
+    }
+}
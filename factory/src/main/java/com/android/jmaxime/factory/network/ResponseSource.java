@@ -0,0 +1,52 @@
+package com.android.jmaxime.factory.network;
+
+/**
+ * Where a response comes from, to compare the latencies of the cached and of the network responses
+ * <pre>
+ * long start = SystemClock.elapsedRealtime();
+ * Response&lt;List&lt;Store&gt;&gt; response = service.getStores().execute();
+ * Log.d("Stores", ResponseSource.of(response) + " in " + (SystemClock.elapsedRealtime() - start) + " ms");
+ * </pre>
+ *
+ * @see ApiKeyService#offlineFirst()
+ */
+public enum ResponseSource {
+    /**
+     * Sent by the server
+     */
+    NETWORK,
+    /**
+     * Fresh response of the memory or of the disk cache, no request was sent
+     */
+    CACHE,
+    /**
+     * Stale response of the cache, served while it is refreshed in background or because the network failed
+     */
+    STALE_CACHE,
+    /**
+     * Cached response validated by the server (304 to a conditional request)
+     */
+    REVALIDATED;
+
+    private static final String HEADER_WARNING = "Warning";
+    private static final String WARNING_STALE = "110";
+
+    public static ResponseSource of(retrofit2.Response<?> response) {
+        return of(response.raw());
+    }
+
+    public static ResponseSource of(okhttp3.Response response) {
+        if (response.cacheResponse() == null) {
+            return NETWORK;
+        }
+        if (response.networkResponse() != null) {
+            return REVALIDATED;
+        }
+        for (String warning : response.headers(HEADER_WARNING)) {
+            if (warning.startsWith(WARNING_STALE)) {
+                return STALE_CACHE;
+            }
+        }
+        return CACHE;
+    }
+}
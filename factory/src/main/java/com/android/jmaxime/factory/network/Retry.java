@@ -0,0 +1,34 @@
+package com.android.jmaxime.factory.network;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Overrides for one method the {@link RetryPolicy} of its tag.
+ * Only the safe methods (GET, HEAD, OPTIONS) are retried or hedged, unless {@link #idempotent()}.
+ * <pre>
+ * &#64;Retry(maxRetries = 3, idempotent = true)
+ * &#64;PUT("stores/{id}")
+ * Call&lt;Store&gt; putStore(&#64;Path("id") String id, &#64;Body Store store);
+ * </pre>
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Retry {
+    /**
+     * @return retries after the first attempt, 0 to disable them, -1 to keep the ones of the service or of the tag
+     */
+    int maxRetries() default -1;
+
+    /**
+     * @return true if the request can be sent several times whatever its http method
+     */
+    boolean idempotent() default false;
+
+    /**
+     * @return false to never send a hedged request for this method
+     */
+    boolean hedge() default true;
+}
@@ -0,0 +1,137 @@
+package com.android.jmaxime.factory.network;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retries and hedged requests of the calls of a tag.
+ * <ul>
+ * <li>a call failing with an {@link java.io.IOException} or a retryable status (502, 503, 504 by default)
+ * is sent again after a jittered exponential backoff, at most {@link Builder#maxRetries(int)} times</li>
+ * <li>the retries and the hedged requests of a tag are limited by a budget: each call gives
+ * {@link Builder#retryBudget(double, int)} tokens, each retry or hedge costs one</li>
+ * <li>a call without response after the given percentile of the latencies of the tag is sent
+ * a second time, the first response wins and the other call is canceled</li>
+ * </ul>
+ * Only the safe methods (GET, HEAD, OPTIONS) are retried or hedged, unless {@link Retry#idempotent()}.
+ *
+ * @see OkHttpConfiguration.Builder#retryPolicy(RetryPolicy, String)
+ * @see ApiKeyService#maxRetries()
+ * @see Retry
+ */
+public final class RetryPolicy {
+    static final RetryPolicy NONE = new Builder().maxRetries(0).build();
+
+    final int mMaxRetries;
+    final long mBaseDelayMillis;
+    final long mMaxDelayMillis;
+    final int[] mRetryableStatus;
+    final double mBudgetRatio;
+    final int mBudgetMinTokens;
+    final double mHedgePercentile;
+    final long mHedgeMinDelayMillis;
+
+    private RetryPolicy(Builder builder) {
+        mMaxRetries = builder.mMaxRetries;
+        mBaseDelayMillis = builder.mBaseDelayMillis;
+        mMaxDelayMillis = builder.mMaxDelayMillis;
+        mRetryableStatus = builder.mRetryableStatus;
+        mBudgetRatio = builder.mBudgetRatio;
+        mBudgetMinTokens = builder.mBudgetMinTokens;
+        mHedgePercentile = builder.mHedgePercentile;
+        mHedgeMinDelayMillis = builder.mHedgeMinDelayMillis;
+    }
+
+    boolean isRetryable(int status) {
+        return Arrays.binarySearch(mRetryableStatus, status) >= 0;
+    }
+
+    boolean hedges() {
+        return mHedgePercentile > 0;
+    }
+
+    /**
+     * Full jitter: a random delay between 0 and the exponential backoff of the attempt
+     *
+     * @param retry 0 for the first retry
+     * @param random between 0 and 1
+     */
+    long delayMillis(int retry, double random) {
+        long backoff = mBaseDelayMillis << Math.min(retry, 30);
+        return (long) (random * Math.min(mMaxDelayMillis, backoff < 0 ? mMaxDelayMillis : backoff));
+    }
+
+    public static final class Builder {
+        private int mMaxRetries = 2;
+        private long mBaseDelayMillis = 100;
+        private long mMaxDelayMillis = 2000;
+        private int[] mRetryableStatus = {502, 503, 504};
+        private double mBudgetRatio = 0.1;
+        private int mBudgetMinTokens = 10;
+        private double mHedgePercentile;
+        private long mHedgeMinDelayMillis;
+
+        /**
+         * @param maxRetries retries after the first attempt, 2 by default
+         */
+        public Builder maxRetries(int maxRetries) {
+            if (maxRetries < 0) {
+                throw new IllegalArgumentException("maxRetries < 0");
+            }
+            mMaxRetries = maxRetries;
+            return this;
+        }
+
+        /**
+         * @param baseDelay delay of the first retry before the jitter, doubled at each retry, 100 ms by default
+         * @param maxDelay  max delay of a retry, 2 s by default
+         */
+        public Builder backoff(long baseDelay, long maxDelay, TimeUnit unit) {
+            mBaseDelayMillis = Math.max(1, unit.toMillis(baseDelay));
+            mMaxDelayMillis = Math.max(mBaseDelayMillis, unit.toMillis(maxDelay));
+            return this;
+        }
+
+        /**
+         * @param status http status of the responses to retry, 502, 503 and 504 by default
+         */
+        public Builder retryOnStatus(int... status) {
+            mRetryableStatus = status.clone();
+            Arrays.sort(mRetryableStatus);
+            return this;
+        }
+
+        /**
+         * @param ratio     tokens given by each call, e.g. 0.1 allows 10% of retries and hedges, 0.1 by default
+         * @param minTokens tokens available at first and max tokens saved, 10 by default
+         */
+        public Builder retryBudget(double ratio, int minTokens) {
+            if (ratio < 0 || minTokens < 1) {
+                throw new IllegalArgumentException("ratio must be >= 0 and minTokens > 0");
+            }
+            mBudgetRatio = ratio;
+            mBudgetMinTokens = minTokens;
+            return this;
+        }
+
+        /**
+         * Sends a second request when the first one has no response after the given percentile
+         * of the latencies of the tag. Disabled by default.
+         *
+         * @param percentile e.g. 95, between 0 (excluded) and 100
+         * @param minDelay   min delay before a hedged request, whatever the latencies
+         */
+        public Builder hedge(double percentile, long minDelay, TimeUnit unit) {
+            if (percentile <= 0 || percentile > 100) {
+                throw new IllegalArgumentException("percentile must be in ]0, 100]");
+            }
+            mHedgePercentile = percentile;
+            mHedgeMinDelayMillis = unit.toMillis(minDelay);
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.android.jmaxime.factory.network;
+
+/**
+ * Retries and hedged requests of a tag at a given time
+ *
+ * @see OkHttpConfiguration#getRetryStats(String)
+ */
+public final class RetryStats {
+    private final String mTagApiName;
+    private final long mCalls;
+    private final long mRetries;
+    private final long mHedges;
+    private final long mHedgesWon;
+    private final long mBudgetExhausted;
+    private final long mHedgeDelayMillis;
+
+    RetryStats(String tagApiName, long calls, long retries, long hedges, long hedgesWon, long budgetExhausted, long hedgeDelayMillis) {
+        mTagApiName = tagApiName;
+        mCalls = calls;
+        mRetries = retries;
+        mHedges = hedges;
+        mHedgesWon = hedgesWon;
+        mBudgetExhausted = budgetExhausted;
+        mHedgeDelayMillis = hedgeDelayMillis;
+    }
+
+    public String getTagApiName() {
+        return mTagApiName;
+    }
+
+    /**
+     * @return calls which could be retried or hedged
+     */
+    public long getCalls() {
+        return mCalls;
+    }
+
+    public long getRetries() {
+        return mRetries;
+    }
+
+    public long getHedges() {
+        return mHedges;
+    }
+
+    /**
+     * @return hedged requests answering before the first request
+     */
+    public long getHedgesWon() {
+        return mHedgesWon;
+    }
+
+    /**
+     * @return retries and hedges not sent because the budget of the tag was empty
+     */
+    public long getBudgetExhausted() {
+        return mBudgetExhausted;
+    }
+
+    /**
+     * @return current delay before a hedged request, -1 if not hedging yet
+     */
+    public long getHedgeDelayMillis() {
+        return mHedgeDelayMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "RetryStats{" + mTagApiName
+                + ", calls=" + mCalls
+                + ", retries=" + mRetries
+                + ", hedges=" + mHedges
+                + ", hedgesWon=" + mHedgesWon
+                + ", budgetExhausted=" + mBudgetExhausted
+                + ", hedgeDelay=" + mHedgeDelayMillis + "ms}";
+    }
+}
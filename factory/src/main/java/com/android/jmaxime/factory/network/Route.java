@@ -0,0 +1,24 @@
+package com.android.jmaxime.factory.network;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Base url of one method of a service created with a {@link BaseUrlRouter#tag()} router,
+ * the other methods keep the base url of the service.
+ * <pre>
+ * &#64;Route("stores_us")
+ * &#64;GET("stores")
+ * Observable&lt;List&lt;Store&gt;&gt; getUsStores();
+ * </pre>
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Route {
+    /**
+     * @return name of the base url in the configuration, or a url started by http and ending by /
+     */
+    String value();
+}
@@ -0,0 +1,105 @@
+package com.android.jmaxime.factory.network;
+
+import okhttp3.Call;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+
+/**
+ * Call factory given to Retrofit: tags each request with the {@link CallOptions} of its method,
+ * or of the service if the method has no specific options, then moves it to its base url
+ * ({@link DynamicBaseUrl}). The network calls go through the {@link Resilience} and the {@link Bulkhead}
+ * of the tag, if any.
+ * <p>
+ * Retrofit creates the okhttp call synchronously in {@code execute()} and {@code enqueue()},
+ * the options of the method are given by a thread local set around these calls by
+ * {@link CallOptionsAdapterFactory}.
+ * </p>
+ */
+final class ServiceCallFactory implements Call.Factory {
+    private static final ThreadLocal<CallOptions> METHOD_OPTIONS = new ThreadLocal<>();
+
+    private final OkHttpClient mClient;
+    private final CallOptions mOptions;
+    private final RequestCoalescer mCoalescer;
+    private final DynamicBaseUrl mBaseUrl;
+    private final Call.Factory mNetwork;
+    /**
+     * Api key interceptor of the client, the requests are coalesced only with the ones sending the same key
+     */
+    private final HeaderInterceptor mHeaders;
+
+    /**
+     * @param coalescer null if the identical requests are not coalesced
+     * @param baseUrl   null if the base url of the service is fixed and not routed
+     * @param network   factory of the network calls of the client, see {@link OkHttpConfiguration#getNetworkCallFactory(String, OkHttpClient)}
+     */
+    ServiceCallFactory(OkHttpClient client, CallOptions options, RequestCoalescer coalescer, DynamicBaseUrl baseUrl, Call.Factory network) {
+        mClient = client;
+        mOptions = options;
+        mCoalescer = coalescer;
+        mBaseUrl = baseUrl;
+        mNetwork = network;
+        mHeaders = coalescer == null ? null : headers(client);
+    }
+
+    /**
+     * @param options options of the method calling
+     * @return the previous options, to give to {@link #exit(CallOptions)}
+     */
+    static CallOptions enter(CallOptions options) {
+        CallOptions previous = METHOD_OPTIONS.get();
+        METHOD_OPTIONS.set(options);
+        return previous;
+    }
+
+    static void exit(CallOptions previous) {
+        if (previous == null) {
+            METHOD_OPTIONS.remove();
+        } else {
+            METHOD_OPTIONS.set(previous);
+        }
+    }
+
+    OkHttpClient client() {
+        return mClient;
+    }
+
+    /**
+     * @return options of the service
+     */
+    CallOptions options() {
+        return mOptions;
+    }
+
+    @Override
+    public Call newCall(Request request) {
+        CallOptions options = METHOD_OPTIONS.get();
+        if (options == null) {
+            options = mOptions;
+        }
+        if (options != CallOptions.DEFAULT) {
+            request = request.newBuilder().tag(options).build();
+        }
+        if (mBaseUrl != null) {
+            request = mBaseUrl.apply(request);
+        }
+        if (mCoalescer != null) {
+            return mCoalescer.newCall(mNetwork, request, mHeaders == null ? null : mHeaders.apiKey(), mClient.dispatcher().executorService());
+        }
+        return mNetwork.newCall(request);
+    }
+
+    /**
+     * @return the last header interceptor of the client, the one of the service follows the ones of its template
+     */
+    private static HeaderInterceptor headers(OkHttpClient client) {
+        HeaderInterceptor headers = null;
+        for (Interceptor interceptor : client.interceptors()) {
+            if (interceptor instanceof HeaderInterceptor) {
+                headers = (HeaderInterceptor) interceptor;
+            }
+        }
+        return headers;
+    }
+}
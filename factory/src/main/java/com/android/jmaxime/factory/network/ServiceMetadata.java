@@ -0,0 +1,205 @@
+package com.android.jmaxime.factory.network;
+
+/**
+ * Values of the {@link ApiKeyService} annotation of a service, read once by reflection
+ * or given by a {@link ServiceRegistry}.
+ */
+public final class ServiceMetadata {
+    final String mBaseUrlName;
+    final String mApiKeyName;
+    final String mApiKeyHeader;
+    final String mTagApiName;
+    final int mTimeOut;
+    final boolean mAddCache;
+    final boolean mAllowCookies;
+    final int mCacheMaxAge;
+    final int mStaleWhileRevalidate;
+    final int mStaleIfError;
+    final boolean mForceNetwork;
+    final boolean mOfflineFirst;
+    final boolean mCoalesceRequests;
+    final int mMaxRetries;
+
+    private ServiceMetadata(Builder builder) {
+        mBaseUrlName = builder.mBaseUrlName;
+        mApiKeyName = builder.mApiKeyName;
+        mApiKeyHeader = builder.mApiKeyHeader;
+        mTagApiName = builder.mTagApiName;
+        mTimeOut = builder.mTimeOut;
+        mAddCache = builder.mAddCache;
+        mAllowCookies = builder.mAllowCookies;
+        mCacheMaxAge = builder.mCacheMaxAge;
+        mStaleWhileRevalidate = builder.mStaleWhileRevalidate;
+        mStaleIfError = builder.mStaleIfError;
+        mForceNetwork = builder.mForceNetwork;
+        mOfflineFirst = builder.mOfflineFirst;
+        mCoalesceRequests = builder.mCoalesceRequests;
+        mMaxRetries = builder.mMaxRetries;
+    }
+
+    static ServiceMetadata of(ApiKeyService service) {
+        return new Builder(service.baseUrlName())
+                .apiKeyName(service.apiKeyName())
+                .apiKeyHeader(service.apiKeyHeader())
+                .tagApiName(service.tagApiName())
+                .timeOut(service.timeOut())
+                .addCache(service.addCache())
+                .allowCookies(service.allowCookies())
+                .cacheMaxAge(service.cacheMaxAge())
+                .staleWhileRevalidate(service.staleWhileRevalidate())
+                .staleIfError(service.staleIfError())
+                .forceNetwork(service.forceNetwork())
+                .offlineFirst(service.offlineFirst())
+                .coalesceRequests(service.coalesceRequests())
+                .maxRetries(service.maxRetries())
+                .build();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ServiceMetadata)) {
+            return false;
+        }
+        ServiceMetadata metadata = (ServiceMetadata) o;
+        return mTimeOut == metadata.mTimeOut
+                && mAddCache == metadata.mAddCache
+                && mAllowCookies == metadata.mAllowCookies
+                && mCacheMaxAge == metadata.mCacheMaxAge
+                && mStaleWhileRevalidate == metadata.mStaleWhileRevalidate
+                && mStaleIfError == metadata.mStaleIfError
+                && mForceNetwork == metadata.mForceNetwork
+                && mOfflineFirst == metadata.mOfflineFirst
+                && mCoalesceRequests == metadata.mCoalesceRequests
+                && mMaxRetries == metadata.mMaxRetries
+                && mBaseUrlName.equals(metadata.mBaseUrlName)
+                && mApiKeyName.equals(metadata.mApiKeyName)
+                && mApiKeyHeader.equals(metadata.mApiKeyHeader)
+                && mTagApiName.equals(metadata.mTagApiName);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mBaseUrlName.hashCode();
+        result = 31 * result + mApiKeyName.hashCode();
+        result = 31 * result + mApiKeyHeader.hashCode();
+        result = 31 * result + mTagApiName.hashCode();
+        result = 31 * result + mTimeOut;
+        result = 31 * result + (mAddCache ? 1 : 0);
+        result = 31 * result + (mAllowCookies ? 1 : 0);
+        result = 31 * result + mCacheMaxAge;
+        result = 31 * result + mStaleWhileRevalidate;
+        result = 31 * result + mStaleIfError;
+        result = 31 * result + (mForceNetwork ? 1 : 0);
+        result = 31 * result + (mOfflineFirst ? 1 : 0);
+        result = 31 * result + (mCoalesceRequests ? 1 : 0);
+        result = 31 * result + mMaxRetries;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "ServiceMetadata{" + mBaseUrlName + ", apiKeyName=" + mApiKeyName + ", tagApiName=" + mTagApiName + '}';
+    }
+
+    /**
+     * The defaults are the ones of {@link ApiKeyService}
+     */
+    public static final class Builder {
+        private final String mBaseUrlName;
+        private String mApiKeyName = "";
+        private String mApiKeyHeader = "";
+        private String mTagApiName = "";
+        private int mTimeOut = -1;
+        private boolean mAddCache;
+        private boolean mAllowCookies;
+        private int mCacheMaxAge = -1;
+        private int mStaleWhileRevalidate = -1;
+        private int mStaleIfError = -1;
+        private boolean mForceNetwork;
+        private boolean mOfflineFirst;
+        private boolean mCoalesceRequests;
+        private int mMaxRetries = -1;
+
+        /**
+         * @param baseUrlName see {@link ApiKeyService#baseUrlName()}
+         */
+        public Builder(String baseUrlName) {
+            if (baseUrlName == null) {
+                throw new IllegalArgumentException("baseUrlName == null");
+            }
+            mBaseUrlName = baseUrlName;
+        }
+
+        public Builder apiKeyName(String apiKeyName) {
+            mApiKeyName = apiKeyName == null ? "" : apiKeyName;
+            return this;
+        }
+
+        public Builder apiKeyHeader(String apiKeyHeader) {
+            mApiKeyHeader = apiKeyHeader == null ? "" : apiKeyHeader;
+            return this;
+        }
+
+        public Builder tagApiName(String tagApiName) {
+            mTagApiName = tagApiName == null ? "" : tagApiName;
+            return this;
+        }
+
+        public Builder timeOut(int timeOut) {
+            mTimeOut = timeOut;
+            return this;
+        }
+
+        public Builder addCache(boolean addCache) {
+            mAddCache = addCache;
+            return this;
+        }
+
+        public Builder allowCookies(boolean allowCookies) {
+            mAllowCookies = allowCookies;
+            return this;
+        }
+
+        public Builder cacheMaxAge(int cacheMaxAge) {
+            mCacheMaxAge = cacheMaxAge;
+            return this;
+        }
+
+        public Builder staleWhileRevalidate(int staleWhileRevalidate) {
+            mStaleWhileRevalidate = staleWhileRevalidate;
+            return this;
+        }
+
+        public Builder staleIfError(int staleIfError) {
+            mStaleIfError = staleIfError;
+            return this;
+        }
+
+        public Builder forceNetwork(boolean forceNetwork) {
+            mForceNetwork = forceNetwork;
+            return this;
+        }
+
+        public Builder offlineFirst(boolean offlineFirst) {
+            mOfflineFirst = offlineFirst;
+            return this;
+        }
+
+        public Builder coalesceRequests(boolean coalesceRequests) {
+            mCoalesceRequests = coalesceRequests;
+            return this;
+        }
+
+        public Builder maxRetries(int maxRetries) {
+            mMaxRetries = maxRetries;
+            return this;
+        }
+
+        public ServiceMetadata build() {
+            return new ServiceMetadata(this);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.android.jmaxime.factory.network;
+
+/**
+ * Metadata of the services known without reflection, usually generated at compile time by the
+ * factory-compiler annotation processor (one ApiKeyServiceRegistry per package).
+ *
+ * @see OkHttpConfiguration.Builder#registerServices(ServiceRegistry)
+ */
+public interface ServiceRegistry {
+    /**
+     * @param service interface of the service
+     * @return the metadata of the service, null if unknown by this registry
+     */
+    ServiceMetadata get(Class<?> service);
+}
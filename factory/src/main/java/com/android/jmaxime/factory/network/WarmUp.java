@@ -0,0 +1,223 @@
+package com.android.jmaxime.factory.network;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Warm-up of a set of base urls or services, running in background: the clients are built, the hosts
+ * resolved and one connection per host is opened (TLS handshake and HTTP/2 negotiation included) with
+ * a HEAD request on the base url, then kept in the connection pool shared by all the clients.
+ * <p>
+ * The warm-ups run on {@value #THREADS} daemon threads, the caller is never blocked.
+ * </p>
+ *
+ * @see ApiFactory#warmUp(Class[])
+ * @see OkHttpConfiguration#warmUp(String...)
+ */
+public final class WarmUp {
+    private static final int THREADS = 2;
+    private static final ThreadPoolExecutor EXECUTOR = newExecutor();
+
+    private final Listener mListener;
+    private final CountDownLatch mLatch;
+    private final List<Result> mResults;
+
+    private WarmUp(int count, Listener listener) {
+        mListener = listener;
+        mLatch = new CountDownLatch(count);
+        mResults = new ArrayList<>(count);
+    }
+
+    /**
+     * @param targets  the targets to warm up, in order
+     * @param listener notified on the warm-up thread for each target, may be null
+     */
+    static WarmUp start(List<Target> targets, Listener listener) {
+        final WarmUp warmUp = new WarmUp(targets.size(), listener);
+        for (final Target target : targets) {
+            EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    warmUp.done(target.warmUp());
+                }
+            });
+        }
+        return warmUp;
+    }
+
+    /**
+     * @return true once all the targets are warmed up or failed
+     */
+    public boolean isDone() {
+        return mLatch.getCount() == 0;
+    }
+
+    /**
+     * @return true if all the targets are done before the timeout
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return mLatch.await(timeout, unit);
+    }
+
+    /**
+     * @return the results of the targets done, in order of completion
+     */
+    public List<Result> getResults() {
+        synchronized (mResults) {
+            return new ArrayList<>(mResults);
+        }
+    }
+
+    private void done(Result result) {
+        synchronized (mResults) {
+            mResults.add(result);
+        }
+        try {
+            if (mListener != null) {
+                mListener.onWarmedUp(result);
+            }
+        } finally {
+            mLatch.countDown();
+        }
+    }
+
+    private static ThreadPoolExecutor newExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ApiFactory warm-up");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    public interface Listener {
+        void onWarmedUp(Result result);
+    }
+
+    /**
+     * Base url or service to warm up
+     */
+    abstract static class Target {
+        private final String mName;
+
+        Target(String name) {
+            mName = name;
+        }
+
+        /**
+         * Called on the warm-up thread, after {@link #url()}
+         *
+         * @return the client of the target, built if needed
+         */
+        abstract OkHttpClient client();
+
+        /**
+         * Called on the warm-up thread
+         *
+         * @return the base url of the target, null if unknown
+         */
+        abstract String url();
+
+        Result warmUp() {
+            long start = System.nanoTime();
+            String url = null;
+            try {
+                url = url();
+                if (url == null) {
+                    throw new IllegalArgumentException("no base url for " + mName);
+                }
+                Call call = client().newCall(new Request.Builder().url(url).head().build());
+                Response response = call.execute();
+                response.close();
+                return new Result(mName, url, elapsed(start), response.protocol(), null);
+            } catch (IOException | RuntimeException e) {
+                return new Result(mName, url, elapsed(start), null, e);
+            }
+        }
+
+        private static long elapsed(long start) {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+    }
+
+    public static final class Result {
+        private final String mName;
+        private final String mUrl;
+        private final long mDurationMillis;
+        private final Protocol mProtocol;
+        private final Exception mError;
+
+        Result(String name, String url, long durationMillis, Protocol protocol, Exception error) {
+            mName = name;
+            mUrl = url;
+            mDurationMillis = durationMillis;
+            mProtocol = protocol;
+            mError = error;
+        }
+
+        /**
+         * @return the base url name or the simple name of the service
+         */
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * @return base url requested, null if it could not be resolved
+         */
+        public String getUrl() {
+            return mUrl;
+        }
+
+        /**
+         * @return true if a connection to the host is in the pool, whatever the status of the response
+         */
+        public boolean isSuccessful() {
+            return mError == null;
+        }
+
+        /**
+         * @return the cause of the failure, null if successful
+         */
+        public Exception getError() {
+            return mError;
+        }
+
+        /**
+         * @return duration of the warm-up: client creation, dns, connection and HEAD request
+         */
+        public long getDurationMillis() {
+            return mDurationMillis;
+        }
+
+        /**
+         * @return protocol negotiated with the host, null if failed
+         */
+        public Protocol getProtocol() {
+            return mProtocol;
+        }
+
+        @Override
+        public String toString() {
+            return "WarmUp{" + mName + ", " + mUrl + ", " + mDurationMillis + "ms, "
+                    + (mError == null ? mProtocol : "failed: " + mError) + '}';
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.android.jmaxime.factory.network;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ApiFactoryTest {
+
+    @ApiKeyService(baseUrlName = "stores", apiKeyName = "stores")
+    interface StoresService {
+        @GET("stores")
+        Call<ResponseBody> stores();
+    }
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "stores", addCache = true, cacheMaxAge = 600, staleIfError = 3600,
+            staleWhileRevalidate = 30, forceNetwork = true)
+    interface CachedStoresService {
+        @GET("stores")
+        Call<ResponseBody> stores();
+    }
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "stores\t\"v2\"\\", apiKeyName = "stores", apiKeyHeader = "X-Store-Key",
+            timeOut = 10, allowCookies = true, offlineFirst = true, coalesceRequests = true, maxRetries = 0)
+    interface ConfiguredStoresService {
+        @GET("stores")
+        Call<ResponseBody> stores();
+    }
+
+    private final AtomicInteger mClients = new AtomicInteger();
+    private volatile long mClientCreationMillis;
+    private ApiFactory mFactory;
+
+    @Before
+    public void setUp() {
+        OkHttpBuilder builder = new OkHttpBuilder();
+        builder.setOnClientCreatedListener(new OkHttpBuilder.OnClientCreatedListener() {
+            @Override
+            public void onClientCreated(OkHttpClient client) {
+                mClients.incrementAndGet();
+                try {
+                    Thread.sleep(mClientCreationMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        OkHttpConfiguration configuration = new OkHttpConfiguration.Builder(builder, GsonConverterFactory.create())
+                .addApiKey("stores", "key")
+                .addUrlConfiguration("stores", "http://localhost/")
+                .build();
+        mFactory = new ApiFactory(configuration);
+    }
+
+    @Test
+    public void sameConfigurationReturnsSameService() {
+        assertSame(mFactory.create(StoresService.class), mFactory.create(StoresService.class));
+        assertSame(mFactory.create(StoresService.class, "stores", "stores"), mFactory.create(StoresService.class, "stores", "stores"));
+        assertNotSame(mFactory.create(StoresService.class), mFactory.create(StoresService.class, "stores", "stores", "other", -1, false, false));
+    }
+
+    @Test
+    public void clearAndEvictRebuildTheService() {
+        StoresService service = mFactory.create(StoresService.class);
+        mFactory.evict(StoresService.class);
+        StoresService evicted = mFactory.create(StoresService.class);
+        assertNotSame(service, evicted);
+        mFactory.clear();
+        assertNotSame(evicted, mFactory.create(StoresService.class));
+    }
+
+    @Test
+    public void concurrentCreatesBuildOneClient() throws Exception {
+        mClientCreationMillis = 100;
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    mFactory.create(StoresService.class);
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(1, mClients.get());
+    }
+
+    @Test
+    public void generatedRegistryMatchesTheAnnotations() {
+        ApiKeyServiceRegistry registry = new ApiKeyServiceRegistry();
+        for (Class<?> service : new Class<?>[]{StoresService.class, CachedStoresService.class, ConfiguredStoresService.class}) {
+            assertEquals(ServiceMetadata.of(service.getAnnotation(ApiKeyService.class)), registry.get(service));
+        }
+        assertNull(registry.get(Runnable.class));
+    }
+
+    @Test
+    public void lazyServiceIsBuiltOnFirstCall() {
+        StoresService service = mFactory.createLazy(StoresService.class);
+        assertEquals(service, service);
+        service.toString();
+        assertEquals(0, mClients.get());
+
+        assertEquals("http://localhost/stores", service.stores().request().url().toString());
+        assertEquals(1, mClients.get());
+        service.stores();
+        mFactory.create(StoresService.class);
+        assertEquals(1, mClients.get());
+    }
+
+    @Test
+    public void lazyServiceFollowsClearAndEvict() {
+        StoresService service = mFactory.createLazy(StoresService.class);
+        service.stores();
+        assertEquals(1, mClients.get());
+
+        mFactory.clear();
+        service.stores();
+        assertEquals(2, mClients.get());
+        mFactory.evict(StoresService.class);
+        service.stores();
+        assertEquals(2, mClients.get());
+        mFactory.create(StoresService.class);
+        assertEquals(2, mClients.get());
+    }
+
+    @Test
+    public void lazyServiceIsBuiltOnce() throws Exception {
+        final StoresService service = mFactory.createLazy(StoresService.class, "stores", "stores", "lazy", -1, false, false);
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    service.stores();
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(1, mClients.get());
+    }
+}
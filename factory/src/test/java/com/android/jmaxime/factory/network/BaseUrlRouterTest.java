@@ -0,0 +1,133 @@
+package com.android.jmaxime.factory.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Call;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+import retrofit2.http.Header;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class BaseUrlRouterTest {
+    private static final String HEADER_REGION = "X-Region";
+
+    @ApiKeyService(baseUrlName = "eu", apiKeyName = "stores")
+    interface StoresService {
+        @GET("stores")
+        Call<ResponseBody> stores(@Header(HEADER_REGION) String region);
+
+        @Route("us")
+        @GET("stores")
+        Call<ResponseBody> usStores(@Header(HEADER_REGION) String region);
+    }
+
+    private final AtomicInteger mClients = new AtomicInteger();
+    private MockWebServer mEurope;
+    private MockWebServer mUnitedStates;
+    private OkHttpConfiguration mConfiguration;
+    private ApiFactory mFactory;
+
+    @Before
+    public void setUp() throws IOException {
+        mEurope = new MockWebServer();
+        mEurope.start();
+        mUnitedStates = new MockWebServer();
+        mUnitedStates.start();
+        OkHttpBuilder client = new OkHttpBuilder();
+        client.setOnClientCreatedListener(new OkHttpBuilder.OnClientCreatedListener() {
+            @Override
+            public void onClientCreated(OkHttpClient client) {
+                mClients.incrementAndGet();
+            }
+        });
+        mConfiguration = new OkHttpConfiguration.Builder(client, GsonConverterFactory.create())
+                .addApiKey("stores", "key")
+                .addUrlConfiguration("eu", mEurope.url("/eu/v1/").toString())
+                .addUrlConfiguration("us", mUnitedStates.url("/v2/").toString())
+                .build();
+        mFactory = new ApiFactory(mConfiguration);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mEurope.shutdown();
+        mUnitedStates.shutdown();
+    }
+
+    @Test
+    public void headerSelectsTheBaseUrl() throws Exception {
+        mEurope.enqueue(new MockResponse().setBody("eu"));
+        mUnitedStates.enqueue(new MockResponse().setBody("us"));
+        StoresService service = mFactory.create(StoresService.class, BaseUrlRouter.header(HEADER_REGION));
+
+        assertEquals("us", service.stores("us").execute().body().string());
+        assertEquals("eu", service.stores(null).execute().body().string());
+
+        RecordedRequest request = mUnitedStates.takeRequest();
+        assertEquals("/v2/stores", request.getPath());
+        assertNull(request.getHeader(HEADER_REGION));
+        assertEquals("key", request.getHeader("X-Api-Key"));
+        assertEquals("/eu/v1/stores", mEurope.takeRequest().getPath());
+        assertEquals(1, mClients.get());
+    }
+
+    @Test
+    public void routeAnnotationSelectsTheBaseUrl() throws Exception {
+        mEurope.enqueue(new MockResponse().setBody("eu"));
+        mUnitedStates.enqueue(new MockResponse().setBody("us"));
+        StoresService service = mFactory.create(StoresService.class, BaseUrlRouter.tag());
+
+        assertEquals("us", service.usStores(null).execute().body().string());
+        assertEquals("eu", service.stores(null).execute().body().string());
+        assertEquals(1, mClients.get());
+    }
+
+    @Test
+    public void firstRouterSelectingABaseUrlWins() throws Exception {
+        mEurope.enqueue(new MockResponse().setBody("eu"));
+        BaseUrlRouter router = BaseUrlRouter.first(BaseUrlRouter.header(HEADER_REGION), BaseUrlRouter.tag());
+        StoresService service = mFactory.create(StoresService.class, router);
+
+        assertEquals("eu", service.usStores("eu").execute().body().string());
+        assertNull(mEurope.takeRequest().getHeader(HEADER_REGION));
+    }
+
+    @Test
+    public void routedServicesAreMemoizedByRouter() {
+        BaseUrlRouter router = BaseUrlRouter.header(HEADER_REGION);
+        StoresService service = mFactory.create(StoresService.class, router);
+
+        assertSame(service, mFactory.create(StoresService.class, router));
+        assertNotSame(service, mFactory.create(StoresService.class));
+        assertNotSame(service, mFactory.create(StoresService.class, BaseUrlRouter.tag()));
+    }
+
+    @Test
+    public void routesFollowTheConfigurationUpdates() throws Exception {
+        mEurope.enqueue(new MockResponse().setBody("eu"));
+        StoresService service = mFactory.create(StoresService.class, BaseUrlRouter.header(HEADER_REGION));
+        mConfiguration.edit().putBaseUrl("us", mEurope.url("/us/").toString()).apply();
+
+        assertEquals("eu", service.stores("us").execute().body().string());
+        assertEquals("/us/stores", mEurope.takeRequest().getPath());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownBaseUrlNameFails() throws Exception {
+        mFactory.create(StoresService.class, BaseUrlRouter.header(HEADER_REGION)).stores("asia").execute();
+    }
+}
@@ -0,0 +1,291 @@
+package com.android.jmaxime.factory.network;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Call;
+import retrofit2.CallAdapter;
+import retrofit2.Callback;
+import retrofit2.Response;
+import retrofit2.adapter.rxjava.RxJavaCallAdapterFactory;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.Body;
+import retrofit2.http.Field;
+import retrofit2.http.FormUrlEncoded;
+import retrofit2.http.GET;
+import retrofit2.http.POST;
+import retrofit2.http.Path;
+import rx.Observable;
+import rx.functions.Func2;
+import rx.schedulers.Schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BatchCallAdapterTest {
+    private static final String TAG = "stores";
+
+    static final class Store {
+        String id;
+    }
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = TAG)
+    interface StoresService {
+        @Batch(value = "batch", delayMillis = 50)
+        @GET("stores/{id}")
+        Call<Store> store(@Path("id") String id);
+
+        @Batch(value = "batch", maxSize = 2, delayMillis = 10000)
+        @GET("stores/{id}")
+        Call<Store> storeInPairs(@Path("id") String id);
+
+        @GET("stores/{id}")
+        Call<Store> storeNotBatched(@Path("id") String id);
+
+        @Batch(value = "batch", delayMillis = 50)
+        @POST("stores/{id}")
+        Call<Store> upload(@Path("id") String id, @Body RequestBody picture);
+
+        @Batch("batch")
+        @FormUrlEncoded
+        @POST("stores")
+        Call<Store> rename(@Field("name") String name);
+    }
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = TAG)
+    interface RxStoresService {
+        @Batch(value = "batch", delayMillis = 50)
+        @GET("stores/{id}")
+        Observable<Store> store(@Path("id") String id);
+    }
+
+    private final List<String> mPaths = new CopyOnWriteArrayList<>();
+    private final List<JsonArray> mBatches = new CopyOnWriteArrayList<>();
+    private MockWebServer mServer;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                mPaths.add(request.getPath());
+                if (!request.getPath().equals("/batch")) {
+                    return new MockResponse().setBody(store(request.getPath().substring("/stores/".length())).toString());
+                }
+                JsonArray batch = new JsonParser().parse(request.getBody().readUtf8()).getAsJsonArray();
+                mBatches.add(batch);
+                JsonArray responses = new JsonArray();
+                for (JsonElement element : batch) {
+                    String id = element.getAsJsonObject().get("relative_url").getAsString().substring("stores/".length());
+                    if (id.equals("dropped")) {
+                        continue;
+                    }
+                    JsonObject response = new JsonObject();
+                    if (id.equals("missing")) {
+                        response.addProperty("code", 404);
+                        response.addProperty("body", "{\"error\":\"missing\"}");
+                    } else {
+                        response.addProperty("code", 200);
+                        response.add("body", store(id));
+                    }
+                    responses.add(response);
+                }
+                return new MockResponse().setBody(responses.toString());
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void callsWithinTheDelayAreSentInOneRequest() throws Exception {
+        StoresService service = service(BatchCallAdapterFactory.create()).create(StoresService.class);
+        ResultCallback callback = new ResultCallback();
+        service.store("1").enqueue(callback);
+        service.store("2").enqueue(callback);
+        service.store("3").enqueue(callback);
+
+        assertEquals("1", callback.take().body().id);
+        assertEquals("2", callback.take().body().id);
+        assertEquals("3", callback.take().body().id);
+
+        assertEquals(1, mServer.getRequestCount());
+        assertEquals("[/batch]", mPaths.toString());
+        JsonObject first = mBatches.get(0).get(0).getAsJsonObject();
+        assertEquals("GET", first.get("method").getAsString());
+        assertEquals("stores/1", first.get("relative_url").getAsString());
+    }
+
+    @Test
+    public void fullBatchIsSentAtOnce() throws Exception {
+        StoresService service = service(BatchCallAdapterFactory.create()).create(StoresService.class);
+        ResultCallback callback = new ResultCallback();
+        long start = System.nanoTime();
+        service.storeInPairs("1").enqueue(callback);
+        service.storeInPairs("2").enqueue(callback);
+
+        callback.take();
+        callback.take();
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+        assertEquals(2, mBatches.get(0).size());
+    }
+
+    @Test
+    public void eachCallerGetsItsOwnStatus() throws Exception {
+        StoresService service = service(BatchCallAdapterFactory.create()).create(StoresService.class);
+        ResultCallback callback = new ResultCallback();
+        service.store("missing").enqueue(callback);
+        service.store("1").enqueue(callback);
+
+        Response<Store> missing = callback.take();
+        assertFalse(missing.isSuccessful());
+        assertEquals(404, missing.code());
+        assertEquals("{\"error\":\"missing\"}", missing.errorBody().string());
+        assertEquals("1", callback.take().body().id);
+    }
+
+    @Test
+    public void callAloneIsSentAsIs() throws Exception {
+        StoresService service = service(BatchCallAdapterFactory.create()).create(StoresService.class);
+
+        assertEquals("1", service.store("1").execute().body().id);
+        assertEquals("2", service.storeNotBatched("2").execute().body().id);
+
+        assertEquals("[/stores/1, /stores/2]", mPaths.toString());
+    }
+
+    @Test
+    public void observablesAreBatched() throws Exception {
+        RxStoresService service = service(BatchCallAdapterFactory.create(RxJavaCallAdapterFactory.create())).create(RxStoresService.class);
+
+        String ids = Observable.zip(
+                service.store("1").subscribeOn(Schedulers.io()),
+                service.store("2").subscribeOn(Schedulers.io()),
+                new Func2<Store, Store, String>() {
+                    @Override
+                    public String call(Store first, Store second) {
+                        return first.id + second.id;
+                    }
+                }).toBlocking().single();
+
+        assertEquals("12", ids);
+        assertEquals("[/batch]", mPaths.toString());
+    }
+
+    @Test
+    public void canceledCallLeavesItsBatch() throws Exception {
+        StoresService service = service(BatchCallAdapterFactory.create()).create(StoresService.class);
+        ResultCallback callback = new ResultCallback();
+        Call<Store> canceled = service.store("1");
+        canceled.enqueue(callback);
+        service.store("2").enqueue(callback);
+        canceled.cancel();
+
+        assertTrue(callback.mResults.poll(5, TimeUnit.SECONDS) instanceof IOException);
+        assertEquals("2", callback.take().body().id);
+        assertEquals("[/stores/2]", mPaths.toString());
+    }
+
+    @Test
+    public void callWithBinaryBodyIsSentAlone() throws Exception {
+        StoresService service = service(BatchCallAdapterFactory.create()).create(StoresService.class);
+        ResultCallback callback = new ResultCallback();
+        service.upload("1", RequestBody.create(MediaType.parse("image/png"), new byte[]{(byte) 0x89, 'P', 'N', 'G'})).enqueue(callback);
+        service.store("2").enqueue(callback);
+        service.store("3").enqueue(callback);
+
+        for (int i = 0; i < 3; i++) {
+            callback.take();
+        }
+        assertTrue(mPaths.contains("/stores/1"));
+        assertEquals(2, mBatches.get(0).size());
+    }
+
+    @Test
+    public void formMethodsCannotBeBatched() {
+        StoresService service = service(BatchCallAdapterFactory.create()).create(StoresService.class);
+        try {
+            service.rename("Opera");
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getCause().getMessage().contains("json body"));
+        }
+    }
+
+    @Test
+    public void callsMissingFromTheBatchResponseFail() throws Exception {
+        StoresService service = service(BatchCallAdapterFactory.create()).create(StoresService.class);
+        ResultCallback callback = new ResultCallback();
+        service.store("1").enqueue(callback);
+        service.store("dropped").enqueue(callback);
+
+        assertEquals("1", callback.take().body().id);
+        Object missing = callback.mResults.poll(5, TimeUnit.SECONDS);
+        assertTrue(String.valueOf(missing), missing instanceof IOException);
+    }
+
+    private ApiFactory service(CallAdapter.Factory callAdapter) {
+        OkHttpConfiguration configuration = new OkHttpConfiguration.Builder(new OkHttpBuilder(), GsonConverterFactory.create())
+                .addUrlConfiguration("local", mServer.url("/").toString())
+                .registerCallAdapter(callAdapter, TAG)
+                .build();
+        return new ApiFactory(configuration);
+    }
+
+    private static JsonObject store(String id) {
+        JsonObject store = new JsonObject();
+        store.addProperty("id", id);
+        return store;
+    }
+
+    private static final class ResultCallback implements Callback<Store> {
+        private final BlockingQueue<Object> mResults = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onResponse(Call<Store> call, Response<Store> response) {
+            mResults.add(response);
+        }
+
+        @Override
+        public void onFailure(Call<Store> call, Throwable t) {
+            mResults.add(t);
+        }
+
+        Response<Store> take() throws InterruptedException {
+            Object result = mResults.poll(5, TimeUnit.SECONDS);
+            if (!(result instanceof Response)) {
+                throw new AssertionError(result);
+            }
+            @SuppressWarnings("unchecked")
+            Response<Store> response = (Response<Store>) result;
+            return response;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.android.jmaxime.factory.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+import retrofit2.http.Query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BulkheadTest {
+    private static final String BULK = "bulk";
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = BULK)
+    interface SyncService {
+        @GET("slow")
+        Call<ResponseBody> slow(@Query("i") int i);
+
+        @Priority(Priority.Level.BACKGROUND)
+        @GET("background")
+        Call<ResponseBody> background(@Query("i") int i);
+
+        @Priority(Priority.Level.INTERACTIVE)
+        @GET("interactive")
+        Call<ResponseBody> interactive();
+    }
+
+    @ApiKeyService(baseUrlName = "loopback", tagApiName = BULK)
+    interface LoopbackService {
+        @GET("stores")
+        Call<ResponseBody> stores();
+    }
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "customer")
+    interface CustomerService {
+        @GET("customer")
+        Call<ResponseBody> customer();
+    }
+
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+    private final List<String> mPaths = new CopyOnWriteArrayList<>();
+    private MockWebServer mServer;
+    private OkHttpConfiguration.Builder mBuilder;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                mPaths.add(request.getPath());
+                if (request.getPath().startsWith("/slow")) {
+                    mRelease.await(5, TimeUnit.SECONDS);
+                }
+                return new MockResponse().setBody("ok");
+            }
+        });
+        mServer.start();
+        mBuilder = new OkHttpConfiguration.Builder(new OkHttpBuilder(), GsonConverterFactory.create())
+                .addUrlConfiguration("local", mServer.url("/").toString())
+                .addUrlConfiguration("loopback", "http://127.0.0.1:" + mServer.getPort() + "/");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mRelease.countDown();
+        mServer.shutdown();
+    }
+
+    @Test
+    public void saturatedTagDoesNotDelayAnotherTag() throws Exception {
+        OkHttpConfiguration configuration = mBuilder.bulkhead(BULK, 2, 2, 20).build();
+        ApiFactory factory = new ApiFactory(configuration);
+        CountingCallback bulk = new CountingCallback(10);
+        for (int i = 0; i < 10; i++) {
+            factory.create(SyncService.class).slow(i).enqueue(bulk);
+        }
+        awaitRequests(2);
+
+        CountingCallback customer = new CountingCallback(1);
+        factory.create(CustomerService.class).customer().enqueue(customer);
+        assertTrue(customer.await());
+
+        Bulkhead.Snapshot snapshot = configuration.getBulkhead(BULK).snapshot();
+        assertEquals(2, snapshot.getRunningCalls());
+        assertEquals(8, snapshot.getQueuedCalls());
+        mRelease.countDown();
+        assertTrue(bulk.await());
+        snapshot = configuration.getBulkhead(BULK).snapshot();
+        assertEquals(8, snapshot.getMaxQueueDepth());
+        assertEquals(10, snapshot.getWaitTime().getCount());
+        assertEquals(10, bulk.mSuccesses.size());
+    }
+
+    @Test
+    public void interactiveCallsJumpAheadOfBackgroundOnes() throws Exception {
+        OkHttpConfiguration configuration = mBuilder.bulkhead(BULK, 1, 1, 20).build();
+        SyncService service = new ApiFactory(configuration).create(SyncService.class);
+        CountingCallback callback = new CountingCallback(4);
+        service.slow(0).enqueue(callback);
+        awaitRequests(1);
+        service.background(1).enqueue(callback);
+        service.background(2).enqueue(callback);
+        service.interactive().enqueue(callback);
+        assertEquals(3, configuration.getBulkhead(BULK).snapshot().getQueuedCalls());
+
+        mRelease.countDown();
+        assertTrue(callback.await());
+        assertEquals("/slow?i=0", mPaths.get(0));
+        assertEquals("/interactive", mPaths.get(1));
+        assertEquals("/background?i=1", mPaths.get(2));
+        assertEquals("/background?i=2", mPaths.get(3));
+    }
+
+    @Test
+    public void callsOfAFreeHostAreNotQueuedBehindASaturatedHost() throws Exception {
+        OkHttpConfiguration configuration = mBuilder.bulkhead(BULK, 2, 1, 20).build();
+        ApiFactory factory = new ApiFactory(configuration);
+        SyncService service = factory.create(SyncService.class);
+        CountingCallback callback = new CountingCallback(2);
+        service.slow(0).enqueue(callback);
+        awaitRequests(1);
+        service.slow(1).enqueue(callback);
+        assertEquals(1, configuration.getBulkhead(BULK).snapshot().getQueuedCalls());
+
+        assertEquals("ok", factory.create(LoopbackService.class).stores().execute().body().string());
+        assertEquals(1, configuration.getBulkhead(BULK).snapshot().getQueuedCalls());
+        mRelease.countDown();
+        assertTrue(callback.await());
+        assertEquals("/stores", mPaths.get(1));
+    }
+
+    @Test
+    public void callsBeyondTheQueueBoundAreRejected() throws Exception {
+        OkHttpConfiguration configuration = mBuilder.bulkhead(BULK, 1, 1, 1).build();
+        SyncService service = new ApiFactory(configuration).create(SyncService.class);
+        CountingCallback callback = new CountingCallback(3);
+        service.slow(0).enqueue(callback);
+        awaitRequests(1);
+        service.slow(1).enqueue(callback);
+        service.slow(2).enqueue(callback);
+
+        assertEquals(1, callback.mFailures.size());
+        assertEquals(1, configuration.getBulkhead(BULK).snapshot().getRejectedCalls());
+        mRelease.countDown();
+        assertTrue(callback.await());
+        assertEquals(2, callback.mSuccesses.size());
+    }
+
+    @Test
+    public void synchronousCallsWaitForASlot() throws Exception {
+        OkHttpConfiguration configuration = mBuilder.bulkhead(BULK, 1, 1, 20).build();
+        SyncService service = new ApiFactory(configuration).create(SyncService.class);
+        CountingCallback callback = new CountingCallback(1);
+        service.slow(0).enqueue(callback);
+        awaitRequests(1);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ignored) {
+                }
+                mRelease.countDown();
+            }
+        }).start();
+
+        assertEquals("ok", service.interactive().execute().body().string());
+        assertTrue(callback.await());
+        assertEquals("/interactive", mPaths.get(1));
+        assertTrue(configuration.getBulkhead(BULK).snapshot().getWaitTime().getMax() > 0);
+    }
+
+    private void awaitRequests(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (mPaths.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, mPaths.size());
+    }
+
+    private static final class CountingCallback implements Callback<ResponseBody> {
+        private final CountDownLatch mDone;
+        private final List<Response<ResponseBody>> mSuccesses = new CopyOnWriteArrayList<>();
+        private final List<Throwable> mFailures = new CopyOnWriteArrayList<>();
+
+        CountingCallback(int calls) {
+            mDone = new CountDownLatch(calls);
+        }
+
+        @Override
+        public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+            response.body().close();
+            mSuccesses.add(response);
+            mDone.countDown();
+        }
+
+        @Override
+        public void onFailure(Call<ResponseBody> call, Throwable t) {
+            mFailures.add(t);
+            mDone.countDown();
+        }
+
+        boolean await() throws InterruptedException {
+            return mDone.await(5, TimeUnit.SECONDS);
+        }
+    }
+}
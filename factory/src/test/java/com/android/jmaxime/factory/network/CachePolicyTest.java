@@ -0,0 +1,113 @@
+package com.android.jmaxime.factory.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import retrofit2.Call;
+import retrofit2.Response;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CachePolicyTest {
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "stores", addCache = true, cacheMaxAge = 600, staleIfError = 3600)
+    interface StoresService {
+        @GET("stores")
+        Call<ResponseBody> stores();
+
+        @CachePolicy(forceNetwork = true)
+        @GET("stock")
+        Call<ResponseBody> stock();
+
+        @CachePolicy(maxAge = 0)
+        @GET("prices")
+        Call<ResponseBody> prices();
+    }
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+    private MockWebServer mServer;
+    private StoresService mService;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockWebServer();
+        mServer.start();
+        OkHttpConfiguration configuration = new OkHttpConfiguration.Builder(new OkHttpBuilder(), GsonConverterFactory.create())
+                .cacheDirectory(mFolder.getRoot())
+                .addUrlConfiguration("local", mServer.url("/").toString())
+                .build();
+        mService = new ApiFactory(configuration).create(StoresService.class);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void serviceMaxAgeServesFromCache() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("stores").addHeader("Cache-Control", "no-cache"));
+
+        assertEquals("stores", mService.stores().execute().body().string());
+        Response<ResponseBody> cached = mService.stores().execute();
+
+        assertEquals("stores", cached.body().string());
+        assertNull(cached.raw().networkResponse());
+        assertEquals(1, mServer.getRequestCount());
+    }
+
+    @Test
+    public void methodForceNetworkOverridesTheService() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("1"));
+        mServer.enqueue(new MockResponse().setBody("2"));
+
+        assertEquals("1", mService.stock().execute().body().string());
+        assertEquals("2", mService.stock().execute().body().string());
+        assertEquals("no-cache", mServer.takeRequest().getHeader("Cache-Control"));
+    }
+
+    @Test
+    public void noStoreResponsesAreNotCached() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("1").addHeader("Cache-Control", "no-store"));
+        mServer.enqueue(new MockResponse().setBody("2"));
+
+        assertEquals("1", mService.stores().execute().body().string());
+        assertEquals("2", mService.stores().execute().body().string());
+    }
+
+    @Test
+    public void policiesApplyWithTheCacheOfTheTemplate() throws Exception {
+        OkHttpBuilder template = new OkHttpBuilder()
+                .useCache(mFolder.newFolder("template"), 1024 * 1024L, CachePolicyInterceptor.network(CacheRule.LEGACY));
+        StoresService service = new ApiFactory(new OkHttpConfiguration.Builder(template, GsonConverterFactory.create())
+                .addUrlConfiguration("local", mServer.url("/").toString())
+                .build()).create(StoresService.class);
+        mServer.enqueue(new MockResponse().setBody("stock"));
+
+        assertEquals("stock", service.stock().execute().body().string());
+        assertEquals("no-cache", mServer.takeRequest().getHeader("Cache-Control"));
+    }
+
+    @Test
+    public void staleResponseIsServedOnError() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("prices"));
+        mServer.enqueue(new MockResponse().setResponseCode(503));
+
+        assertEquals("prices", mService.prices().execute().body().string());
+        assertEquals("prices", mService.prices().execute().body().string());
+        mServer.shutdown();
+        assertEquals("prices", mService.prices().execute().body().string());
+    }
+}
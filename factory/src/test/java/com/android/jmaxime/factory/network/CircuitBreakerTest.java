@@ -0,0 +1,258 @@
+package com.android.jmaxime.factory.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Call;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CircuitBreakerTest {
+    private static final String TAG = "stores";
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = TAG)
+    interface StoresService {
+        @GET("stores")
+        Call<ResponseBody> stores();
+    }
+
+    @ApiKeyService(baseUrlName = "loopback", tagApiName = TAG)
+    interface LoopbackService {
+        @GET("stores")
+        Call<ResponseBody> stores();
+    }
+
+    private final List<String> mTransitions = new CopyOnWriteArrayList<>();
+    private MockWebServer mServer;
+    private OkHttpConfiguration.Builder mBuilder;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockWebServer();
+        mServer.start();
+        OkHttpClient client = new OkHttpClient.Builder().retryOnConnectionFailure(false).build();
+        mBuilder = new OkHttpConfiguration.Builder(client, GsonConverterFactory.create())
+                .addUrlConfiguration("local", mServer.url("/").toString())
+                .addUrlConfiguration("loopback", "http://127.0.0.1:" + mServer.getPort() + "/");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void circuitOpensOnFailureRateAndFailsFast() throws Exception {
+        OkHttpConfiguration configuration = mBuilder.circuitBreaker(policy().build(), TAG).build();
+        StoresService service = new ApiFactory(configuration).create(StoresService.class);
+        failures(4);
+
+        assertCodes(service, 503, 503, 503, 503);
+        assertOpen(service);
+
+        assertEquals(4, mServer.getRequestCount());
+        CircuitBreaker circuit = configuration.getCircuitBreakers(TAG).get(mServer.getHostName());
+        CircuitBreaker.Snapshot snapshot = circuit.snapshot();
+        assertEquals(CircuitBreaker.State.OPEN, snapshot.getState());
+        assertEquals(100, snapshot.getFailureRate(), 0);
+        assertEquals(1, snapshot.getNotPermittedCalls());
+        assertEquals("[CLOSED>OPEN]", mTransitions.toString());
+    }
+
+    @Test
+    public void successfulTrialsCloseTheCircuit() throws Exception {
+        OkHttpConfiguration configuration = mBuilder.circuitBreaker(policy().build(), TAG).build();
+        StoresService service = new ApiFactory(configuration).create(StoresService.class);
+        failures(4);
+        assertCodes(service, 503, 503, 503, 503);
+        Thread.sleep(250);
+        enqueue(200, 200, 200);
+
+        assertCodes(service, 200, 200, 200);
+
+        assertEquals("[CLOSED>OPEN, OPEN>HALF_OPEN, HALF_OPEN>CLOSED]", mTransitions.toString());
+        CircuitBreaker.Snapshot snapshot = configuration.getCircuitBreakers(TAG).get(mServer.getHostName()).snapshot();
+        assertEquals(1, snapshot.getCalls());
+    }
+
+    @Test
+    public void failedTrialOpensTheCircuitAgain() throws Exception {
+        OkHttpConfiguration configuration = mBuilder.circuitBreaker(policy().build(), TAG).build();
+        StoresService service = new ApiFactory(configuration).create(StoresService.class);
+        failures(5);
+        assertCodes(service, 503, 503, 503, 503);
+        Thread.sleep(250);
+
+        assertCodes(service, 503);
+        assertOpen(service);
+
+        assertEquals("[CLOSED>OPEN, OPEN>HALF_OPEN, HALF_OPEN>OPEN]", mTransitions.toString());
+        assertEquals(2, configuration.getCircuitBreakers(TAG).get(mServer.getHostName()).snapshot().getOpenedCount());
+    }
+
+    @Test
+    public void slowCallsOpenTheCircuit() throws Exception {
+        CircuitBreakerPolicy policy = policy().slowCalls(100, TimeUnit.MILLISECONDS, 50).build();
+        OkHttpConfiguration configuration = mBuilder.circuitBreaker(policy, TAG).build();
+        StoresService service = new ApiFactory(configuration).create(StoresService.class);
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                Thread.sleep(150);
+                return new MockResponse();
+            }
+        });
+
+        assertCodes(service, 200, 200, 200, 200);
+        assertOpen(service);
+
+        CircuitBreaker.Snapshot snapshot = configuration.getCircuitBreakers(TAG).get(mServer.getHostName()).snapshot();
+        assertEquals(100, snapshot.getSlowCallRate(), 0);
+        assertEquals(0, snapshot.getFailedCalls());
+    }
+
+    @Test
+    public void hostsHaveTheirOwnCircuit() throws Exception {
+        OkHttpConfiguration configuration = mBuilder.circuitBreaker(policy().build()).build();
+        ApiFactory factory = new ApiFactory(configuration);
+        StoresService local = factory.create(StoresService.class);
+        failures(4);
+        assertCodes(local, 503, 503, 503, 503);
+
+        assertOpen(local);
+        enqueue(200);
+        assertEquals(200, factory.create(LoopbackService.class).stores().execute().code());
+
+        assertEquals(CircuitBreaker.State.CLOSED, configuration.getCircuitBreakers(TAG).get("127.0.0.1").getState());
+    }
+
+    @Test
+    public void openCircuitIsNotRetried() throws Exception {
+        OkHttpConfiguration configuration = mBuilder.circuitBreaker(policy().build(), TAG)
+                .retryPolicy(new RetryPolicy.Builder().backoff(1, 10, TimeUnit.MILLISECONDS).maxRetries(5).build(), TAG)
+                .build();
+        StoresService service = new ApiFactory(configuration).create(StoresService.class);
+        failures(4);
+        try {
+            service.stores().execute();
+            fail("circuit should open during the retries");
+        } catch (CircuitBreakerOpenException expected) {
+        }
+        assertEquals(4, configuration.getRetryStats(TAG).getRetries());
+
+        assertOpen(service);
+
+        assertEquals(4, mServer.getRequestCount());
+        assertEquals(4, configuration.getRetryStats(TAG).getRetries());
+    }
+
+    @Test
+    public void concurrentCallsLeavingTheOpenStateGetTheTrialPermitsOnly() throws Exception {
+        final CircuitBreaker circuitBreaker = new CircuitBreaker(TAG, "local", policy().waitInOpenState(20, TimeUnit.MILLISECONDS).build());
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.onResult(false, 0);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        Thread.sleep(50);
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger permitted = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (circuitBreaker.tryAcquire()) {
+                        permitted.incrementAndGet();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+
+        assertEquals(2, permitted.get());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        assertEquals(Collections.singletonList("CLOSED>OPEN"), mTransitions.subList(0, 1));
+        assertEquals(1, Collections.frequency(mTransitions, "OPEN>HALF_OPEN"));
+        assertEquals(14, circuitBreaker.snapshot().getNotPermittedCalls());
+    }
+
+    private CircuitBreakerPolicy.Builder policy() {
+        return new CircuitBreakerPolicy.Builder()
+                .minimumCalls(4)
+                .failureRateThreshold(50)
+                .waitInOpenState(200, TimeUnit.MILLISECONDS)
+                .halfOpenCalls(2)
+                .listener(new CircuitBreaker.Listener() {
+                    @Override
+                    public void onStateChanged(CircuitBreaker circuitBreaker, CircuitBreaker.State from, CircuitBreaker.State to) {
+                        mTransitions.add(from + ">" + to);
+                    }
+                });
+    }
+
+    private void failures(int count) {
+        for (int i = 0; i < count; i++) {
+            mServer.enqueue(new MockResponse().setResponseCode(503));
+        }
+    }
+
+    private void enqueue(int... codes) {
+        for (int code : codes) {
+            mServer.enqueue(new MockResponse().setResponseCode(code));
+        }
+    }
+
+    private static void assertCodes(StoresService service, int... codes) throws IOException {
+        for (int code : codes) {
+            retrofit2.Response<ResponseBody> response = service.stores().execute();
+            assertEquals(code, response.code());
+            if (response.body() != null) {
+                response.body().close();
+            } else {
+                response.errorBody().close();
+            }
+        }
+    }
+
+    private static void assertOpen(StoresService service) throws IOException {
+        long start = System.nanoTime();
+        try {
+            service.stores().execute();
+            fail("circuit should be open");
+        } catch (CircuitBreakerOpenException e) {
+            assertEquals(TAG, e.getTagApiName());
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 100);
+    }
+}
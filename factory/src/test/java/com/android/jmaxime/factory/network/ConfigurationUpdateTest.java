@@ -0,0 +1,176 @@
+package com.android.jmaxime.factory.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.OkHttpClient;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Call;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ConfigurationUpdateTest {
+    private static final int UPDATERS = 4;
+    private static final int READERS = 4;
+    private static final int UPDATES = 2000;
+
+    @ApiKeyService(baseUrlName = "local", apiKeyName = "stores")
+    interface StoresService {
+        @GET("stores")
+        Call<ResponseBody> stores();
+    }
+
+    private final AtomicInteger mClients = new AtomicInteger();
+    private MockWebServer mServer;
+    private MockWebServer mOtherServer;
+    private OkHttpConfiguration.Builder mBuilder;
+    private OkHttpConfiguration mConfiguration;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockWebServer();
+        mServer.start();
+        mOtherServer = new MockWebServer();
+        mOtherServer.start();
+        OkHttpBuilder client = new OkHttpBuilder();
+        client.setOnClientCreatedListener(new OkHttpBuilder.OnClientCreatedListener() {
+            @Override
+            public void onClientCreated(OkHttpClient client) {
+                mClients.incrementAndGet();
+            }
+        });
+        mBuilder = new OkHttpConfiguration.Builder(client, GsonConverterFactory.create())
+                .addApiKey("stores", "key1")
+                .addUrlConfiguration("local", mServer.url("/v1/").toString());
+        mConfiguration = mBuilder.build();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+        mOtherServer.shutdown();
+    }
+
+    @Test
+    public void createdServicesUseTheNewKeyAndBaseUrl() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("stores"));
+        mOtherServer.enqueue(new MockResponse().setBody("other stores"));
+        ApiFactory factory = new ApiFactory(mConfiguration);
+        StoresService service = factory.create(StoresService.class);
+
+        assertEquals("stores", service.stores().execute().body().string());
+        assertEquals(1, mConfiguration.edit()
+                .putApiKey("stores", "key2")
+                .putBaseUrl("local", mOtherServer.url("/v2/").toString())
+                .apply());
+        assertEquals("other stores", service.stores().execute().body().string());
+
+        assertEquals("key1", mServer.takeRequest().getHeader("X-Api-Key"));
+        RecordedRequest request = mOtherServer.takeRequest();
+        assertEquals("/v2/stores", request.getPath());
+        assertEquals("key2", request.getHeader("X-Api-Key"));
+        assertSame(service, factory.create(StoresService.class));
+        assertEquals(1, mClients.get());
+    }
+
+    @Test
+    public void removedKeyIsNotSent() throws Exception {
+        mServer.enqueue(new MockResponse());
+        mConfiguration.edit().removeApiKey("stores").apply();
+
+        new ApiFactory(mConfiguration).create(StoresService.class).stores().execute();
+
+        assertNull(mServer.takeRequest().getHeader("X-Api-Key"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void baseUrlMustEndWithASlash() {
+        mConfiguration.edit().putBaseUrl("local", "http://localhost/v2");
+    }
+
+    @Test
+    public void builderChangesDoNotLeakIntoTheConfiguration() {
+        mBuilder.addUrlConfiguration("local", "http://localhost/other/").addApiKey("customer", "key");
+
+        assertEquals(mServer.url("/v1/").toString(), mConfiguration.getBaseUrl("local"));
+        assertNull(mConfiguration.getApiKey("customer"));
+        assertEquals("http://localhost/other/", mBuilder.build().getBaseUrl("local"));
+    }
+
+    @Test
+    public void concurrentUpdatesAreNeitherLostNorSeenOutOfOrder() throws Exception {
+        final AtomicReference<String> failure = new AtomicReference<>();
+        final AtomicInteger runningUpdaters = new AtomicInteger(UPDATERS);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int u = 0; u < UPDATERS; u++) {
+            final String name = "key" + u;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    await(start);
+                    for (int i = 1; i <= UPDATES; i++) {
+                        mConfiguration.edit().putApiKey(name, String.valueOf(i)).apply();
+                    }
+                    runningUpdaters.decrementAndGet();
+                }
+            }));
+        }
+        for (int r = 0; r < READERS; r++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    await(start);
+                    int[] last = new int[UPDATERS];
+                    while (runningUpdaters.get() > 0) {
+                        for (int u = 0; u < UPDATERS; u++) {
+                            String value = mConfiguration.getApiKey("key" + u);
+                            int current = value == null ? 0 : Integer.parseInt(value);
+                            if (current < last[u]) {
+                                failure.set("key" + u + " went back from " + last[u] + " to " + current);
+                            }
+                            last[u] = current;
+                        }
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(failure.get());
+        assertEquals(UPDATERS * UPDATES, mConfiguration.getVersion());
+        for (int u = 0; u < UPDATERS; u++) {
+            assertEquals(String.valueOf(UPDATES), mConfiguration.getApiKey("key" + u));
+        }
+        assertEquals("key1", mConfiguration.getApiKey("stores"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
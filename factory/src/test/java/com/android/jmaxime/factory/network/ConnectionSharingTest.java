@@ -0,0 +1,88 @@
+package com.android.jmaxime.factory.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import okhttp3.OkHttpClient;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import retrofit2.Call;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConnectionSharingTest {
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "stores")
+    interface StoresService {
+        @GET("stores")
+        Call<ResponseBody> stores();
+    }
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "customer", apiKeyName = "customer", timeOut = 10)
+    interface CustomerService {
+        @GET("customer")
+        Call<ResponseBody> customer();
+    }
+
+    @ApiKeyService(baseUrlName = "local")
+    interface DefaultService {
+        @GET("default")
+        Call<ResponseBody> ping();
+    }
+
+    private MockWebServer mServer;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockWebServer();
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void servicesOfSeveralTagsShareOneConnection() throws Exception {
+        OkHttpConfiguration configuration = new OkHttpConfiguration.Builder(new OkHttpBuilder(), GsonConverterFactory.create())
+                .registerClient(new OkHttpBuilder(), "stores")
+                .registerClient(new OkHttpBuilder().timeOut(10), "customer")
+                .addApiKey("customer", "customer-key")
+                .addUrlConfiguration("local", mServer.url("/").toString())
+                .build();
+        ApiFactory factory = new ApiFactory(configuration);
+
+        for (int i = 0; i < 3; i++) {
+            mServer.enqueue(new MockResponse().setBody("ok"));
+        }
+        factory.create(StoresService.class).stores().execute().body().close();
+        factory.create(CustomerService.class).customer().execute().body().close();
+        factory.create(DefaultService.class).ping().execute().body().close();
+
+        assertEquals(0, mServer.takeRequest().getSequenceNumber());
+        assertEquals(1, mServer.takeRequest().getSequenceNumber());
+        assertEquals(2, mServer.takeRequest().getSequenceNumber());
+        assertEquals(1, configuration.getClient("customer").rootClient().connectionPool().connectionCount());
+    }
+
+    @Test
+    public void registeredOkHttpClientKeepsItsSettingsButSharesThePool() {
+        OkHttpClient customClient = new OkHttpClient.Builder().followRedirects(false).build();
+        OkHttpConfiguration configuration = new OkHttpConfiguration.Builder(new OkHttpBuilder(), GsonConverterFactory.create())
+                .registerClient(customClient, "custom")
+                .build();
+
+        OkHttpClient root = configuration.getClient("unknown").rootClient();
+        OkHttpClient derived = configuration.getClient("custom").build();
+        assertEquals(false, derived.followRedirects());
+        assertEquals(root.connectionPool(), derived.connectionPool());
+        assertEquals(root.dispatcher(), derived.dispatcher());
+    }
+}
@@ -0,0 +1,169 @@
+package com.android.jmaxime.factory.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Cookie;
+import okhttp3.HttpUrl;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import retrofit2.Call;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CookieStoreTest {
+    private static final HttpUrl API = HttpUrl.parse("https://api.example.com/v1/stores");
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "session", allowCookies = true)
+    interface SessionService {
+        @GET("login")
+        Call<ResponseBody> login();
+    }
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "stores", allowCookies = true)
+    interface StoresService {
+        @GET("stores")
+        Call<ResponseBody> stores();
+    }
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "stores")
+    interface PublicService {
+        @GET("stores")
+        Call<ResponseBody> stores();
+    }
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+    private MockWebServer mServer;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockWebServer();
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void cookiesAreSharedByTheServicesAllowingThem() throws Exception {
+        ApiFactory factory = new ApiFactory(new OkHttpConfiguration.Builder(new OkHttpBuilder(), GsonConverterFactory.create())
+                .addUrlConfiguration("local", mServer.url("/").toString())
+                .build());
+        mServer.enqueue(new MockResponse().addHeader("Set-Cookie", "session=abc; Path=/"));
+        mServer.enqueue(new MockResponse());
+        mServer.enqueue(new MockResponse());
+
+        factory.create(SessionService.class).login().execute().body().close();
+        factory.create(StoresService.class).stores().execute().body().close();
+        factory.create(PublicService.class).stores().execute().body().close();
+
+        mServer.takeRequest();
+        assertEquals("session=abc", mServer.takeRequest().getHeader("Cookie"));
+        assertNull(mServer.takeRequest().getHeader("Cookie"));
+    }
+
+    @Test
+    public void cookiesAreMatchedOnDomainAndPath() {
+        CookieStore store = new CookieStore();
+        store.saveFromResponse(API, Arrays.asList(
+                Cookie.parse(API, "host=1; Path=/v1"),
+                Cookie.parse(API, "domain=2; Domain=example.com; Path=/"),
+                Cookie.parse(API, "other=3; Path=/v2")));
+
+        assertEquals(Arrays.asList("host", "domain"), names(store.loadForRequest(API)));
+        assertEquals(Collections.singletonList("domain"), names(store.loadForRequest(HttpUrl.parse("https://www.example.com/"))));
+        assertEquals(Collections.<String>emptyList(), names(store.loadForRequest(HttpUrl.parse("https://example.org/v1"))));
+    }
+
+    @Test
+    public void expiredCookiesAreRemoved() {
+        CookieStore store = new CookieStore();
+        store.saveFromResponse(API, Arrays.asList(Cookie.parse(API, "a=1"), Cookie.parse(API, "b=2")));
+        store.saveFromResponse(API, Collections.singletonList(Cookie.parse(API, "a=; Max-Age=0")));
+
+        assertEquals(Collections.singletonList("b"), names(store.loadForRequest(API)));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void persistentCookiesAreWrittenTogetherInBackground() throws Exception {
+        final File file = new File(mFolder.getRoot(), "cookies");
+        final AtomicInteger writes = new AtomicInteger();
+        final List<String> threads = new ArrayList<>();
+        CookieStore store = new CookieStore(new CookieStore.Persistor() {
+            private final FileCookiePersistor mFile = new FileCookiePersistor(file);
+
+            @Override
+            public List<Cookie> load() throws IOException {
+                return mFile.load();
+            }
+
+            @Override
+            public void save(List<Cookie> cookies) throws IOException {
+                writes.incrementAndGet();
+                threads.add(Thread.currentThread().getName());
+                mFile.save(cookies);
+            }
+        });
+        for (int i = 0; i < 100; i++) {
+            store.saveFromResponse(API, Collections.singletonList(Cookie.parse(API, "token" + i + "=" + i + "; Max-Age=3600; Secure; HttpOnly")));
+        }
+        store.saveFromResponse(API, Collections.singletonList(Cookie.parse(API, "session=abc")));
+        store.flush();
+
+        assertEquals(1, writes.get());
+        assertNotEquals(Thread.currentThread().getName(), threads.get(0));
+        CookieStore restored = new CookieStore(new FileCookiePersistor(file));
+        assertEquals(100, restored.size());
+        Cookie cookie = restored.loadForRequest(API).get(0);
+        assertEquals("token0", cookie.name());
+        assertTrue(cookie.secure() && cookie.httpOnly() && cookie.hostOnly() && cookie.persistent());
+    }
+
+    @Test
+    public void savedCookiesAreReadInBackgroundFromTheCreation() throws Exception {
+        final List<String> threads = new ArrayList<>();
+        CookieStore store = new CookieStore(new CookieStore.Persistor() {
+            @Override
+            public List<Cookie> load() {
+                threads.add(Thread.currentThread().getName());
+                return Collections.singletonList(Cookie.parse(API, "session=abc; Max-Age=3600"));
+            }
+
+            @Override
+            public void save(List<Cookie> cookies) {
+            }
+        });
+
+        assertEquals(Collections.singletonList("session"), names(store.loadForRequest(API)));
+        assertEquals(Collections.singletonList("ApiFactory cookies"), threads);
+    }
+
+    private static List<String> names(List<Cookie> cookies) {
+        List<String> names = new ArrayList<>();
+        for (Cookie cookie : cookies) {
+            names.add(cookie.name());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,213 @@
+package com.android.jmaxime.factory.network;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import retrofit2.Call;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.Body;
+import retrofit2.http.GET;
+import retrofit2.http.POST;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GeneratedTypeAdaptersTest {
+    private static final String TAG = "stores";
+    private static final String STORE = "{\"id\":12,\"name\":\"Lyon\",\"latitude\":45.76,\"rating\":4.5,\"open\":\"true\","
+            + "\"grade\":\"A\",\"stock\":null,\"drive\":false,\"section\":\"B\",\"unknown\":{\"a\":[1,2]},"
+            + "\"addresses\":[{\"city\":\"Lyon\"},null],\"hours\":{\"monday\":9},\"codes\":[1,2]}";
+
+    static class Store {
+        long id;
+        @SerializedName(value = "store_name", alternate = "name")
+        String name;
+        double latitude;
+        float rating;
+        boolean open;
+        char grade;
+        Integer stock = 3;
+        Boolean drive;
+        Character section;
+        List<Address> addresses;
+        Map<String, Integer> hours;
+        int[] codes;
+        transient String cache;
+    }
+
+    static class Address {
+        String city;
+    }
+
+    static class Order {
+        int quantity;
+        String storeId;
+    }
+
+    static class Hidden {
+        private String secret;
+    }
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = TAG)
+    interface StoresService {
+        @GET("stores")
+        Call<List<Store>> stores();
+
+        @GET("hidden")
+        Call<Hidden> hidden();
+
+        @POST("orders")
+        Call<ResponseBody> order(@Body Order order);
+    }
+
+    private final Gson mGson = new Gson();
+    private MockWebServer mServer;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockWebServer();
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void modelsOfTheServicesHaveGeneratedAdapters() {
+        assertGenerated(TypeToken.get(Store.class));
+        assertGenerated(TypeToken.get(Address.class));
+        assertGenerated(TypeToken.get(Order.class));
+        assertTrue(GeneratedTypeAdapters.factory().create(mGson, new TypeToken<List<Store>>() {}) != null);
+
+        assertNull(GeneratedTypeAdapters.factory().create(mGson, TypeToken.get(Hidden.class)));
+        assertNull(GeneratedTypeAdapters.factory().create(mGson, TypeToken.get(String.class)));
+    }
+
+    @Test
+    public void generatedAdaptersReadAndWriteLikeGson() throws IOException {
+        TypeAdapter<Store> adapter = GeneratedTypeAdapters.adapter(mGson, TypeToken.get(Store.class));
+
+        Store generated = adapter.fromJson(STORE);
+        Store reflective = mGson.fromJson(STORE, Store.class);
+
+        assertEquals(mGson.toJson(reflective), mGson.toJson(generated));
+        assertEquals(mGson.toJson(reflective), write(adapter, generated));
+        assertNull(generated.stock);
+        assertEquals('B', generated.section.charValue());
+        assertEquals(2, generated.addresses.size());
+        assertEquals("{\"id\":0,\"latitude\":0.0,\"rating\":0.0,\"open\":false,\"grade\":\"\\u0000\",\"stock\":3}",
+                write(adapter, new Store()));
+    }
+
+    @Test
+    public void converterOfAGsonRegisteringTheFactoryUsesTheGeneratedAdapters() throws Exception {
+        /*the naming policy is not applied by the generated adapters*/
+        Gson gson = new GsonBuilder()
+                .registerTypeAdapterFactory(GeneratedTypeAdapters.factory())
+                .setFieldNamingPolicy(FieldNamingPolicy.UPPER_CAMEL_CASE)
+                .create();
+        StoresService service = service(gson);
+        mServer.enqueue(new MockResponse().setBody("[" + STORE + "]"));
+        mServer.enqueue(new MockResponse());
+
+        List<Store> stores = service.stores().execute().body();
+        Order order = new Order();
+        order.quantity = 2;
+        order.storeId = "12";
+        service.order(order).execute().body().close();
+
+        assertEquals(12, stores.get(0).id);
+        assertEquals("Lyon", stores.get(0).addresses.get(0).city);
+        mServer.takeRequest();
+        assertEquals("{\"quantity\":2,\"storeId\":\"12\"}", mServer.takeRequest().getBody().readUtf8());
+    }
+
+    @Test
+    public void adaptersRegisteredAfterTheFactoryTakePrecedence() throws Exception {
+        Gson gson = new GsonBuilder()
+                .registerTypeAdapterFactory(GeneratedTypeAdapters.factory())
+                .registerTypeAdapter(Order.class, new TypeAdapter<Order>() {
+                    @Override
+                    public void write(JsonWriter out, Order order) throws IOException {
+                        out.value(order.quantity + "x" + order.storeId);
+                    }
+
+                    @Override
+                    public Order read(JsonReader in) {
+                        throw new UnsupportedOperationException();
+                    }
+                })
+                .create();
+        mServer.enqueue(new MockResponse());
+        Order order = new Order();
+        order.quantity = 2;
+        order.storeId = "12";
+
+        service(gson).order(order).execute().body().close();
+
+        assertEquals("\"2x12\"", mServer.takeRequest().getBody().readUtf8());
+    }
+
+    @Test
+    public void converterOfAGsonWithoutTheFactoryKeepsItsRules() throws Exception {
+        Gson gson = new GsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.UPPER_CAMEL_CASE).create();
+        mServer.enqueue(new MockResponse());
+        Order order = new Order();
+        order.quantity = 2;
+        order.storeId = "12";
+
+        service(gson).order(order).execute().body().close();
+
+        assertEquals("{\"Quantity\":2,\"StoreId\":\"12\"}", mServer.takeRequest().getBody().readUtf8());
+    }
+
+    @Test
+    public void otherTypesAreConvertedByGson() throws Exception {
+        StoresService service = service(mGson);
+        mServer.enqueue(new MockResponse().setBody("{\"secret\":\"42\"}"));
+
+        assertEquals("42", service.hidden().execute().body().secret);
+    }
+
+    private StoresService service(Gson gson) {
+        OkHttpConfiguration configuration = new OkHttpConfiguration.Builder(new OkHttpBuilder(), GsonConverterFactory.create())
+                .addUrlConfiguration("local", mServer.url("/").toString())
+                .registerConverter(gson, TAG)
+                .build();
+        return new ApiFactory(configuration).create(StoresService.class);
+    }
+
+    private <T> String write(TypeAdapter<T> adapter, T value) throws IOException {
+        StringWriter json = new StringWriter();
+        JsonWriter writer = mGson.newJsonWriter(json);
+        adapter.write(writer, value);
+        writer.close();
+        return json.toString();
+    }
+
+    private void assertGenerated(TypeToken<?> type) {
+        TypeAdapter<?> adapter = GeneratedTypeAdapters.factory().create(mGson, type);
+        assertTrue(String.valueOf(adapter), adapter != null && adapter.getClass().getName().contains("ApiKeyServiceTypeAdapters"));
+    }
+}
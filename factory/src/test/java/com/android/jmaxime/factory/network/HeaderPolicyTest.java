@@ -0,0 +1,136 @@
+package com.android.jmaxime.factory.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Call;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+import retrofit2.http.Header;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class HeaderPolicyTest {
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "stores", apiKeyName = "stores")
+    interface StoresService {
+        @GET("stores")
+        Call<ResponseBody> stores();
+
+        @GET("stores")
+        Call<ResponseBody> stores(@Header("Accept-Language") String language);
+    }
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "stores", apiKeyName = "stores", apiKeyHeader = "Ocp-Apim-Subscription-Key")
+    interface SubscriptionService {
+        @GET("subscriptions")
+        Call<ResponseBody> subscriptions();
+    }
+
+    private final AtomicInteger mLanguages = new AtomicInteger();
+    private MockWebServer mServer;
+    private ApiFactory mFactory;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockWebServer();
+        mServer.start();
+        HeaderPolicy policy = new HeaderPolicy.Builder()
+                .header("User-Agent", "stores-android/1.2")
+                .header("Accept-Language", new HeaderPolicy.Provider() {
+                    @Override
+                    public String value(Request request) {
+                        mLanguages.incrementAndGet();
+                        return "fr-FR";
+                    }
+                })
+                .apiKeyHeader("Authorization")
+                .build();
+        mFactory = new ApiFactory(new OkHttpConfiguration.Builder(new OkHttpBuilder(), GsonConverterFactory.create())
+                .addUrlConfiguration("local", mServer.url("/").toString())
+                .addApiKey("stores", "key")
+                .headers(policy, "stores")
+                .build());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void headersOfThePolicyAreAdded() throws Exception {
+        send(mFactory.create(StoresService.class).stores());
+
+        RecordedRequest request = mServer.takeRequest();
+        assertEquals("stores-android/1.2", request.getHeader("User-Agent"));
+        assertEquals("fr-FR", request.getHeader("Accept-Language"));
+        assertEquals("key", request.getHeader("Authorization"));
+        assertNull(request.getHeader("X-Api-Key"));
+    }
+
+    @Test
+    public void headersOfTheRequestWin() throws Exception {
+        send(mFactory.create(StoresService.class).stores("en-GB"));
+
+        assertEquals("en-GB", mServer.takeRequest().getHeader("Accept-Language"));
+        assertEquals(0, mLanguages.get());
+    }
+
+    @Test
+    public void apiKeyHeaderOfTheServiceWins() throws Exception {
+        send(mFactory.create(SubscriptionService.class).subscriptions());
+
+        RecordedRequest request = mServer.takeRequest();
+        assertEquals("key", request.getHeader("Ocp-Apim-Subscription-Key"));
+        assertNull(request.getHeader("Authorization"));
+        assertEquals("stores-android/1.2", request.getHeader("User-Agent"));
+    }
+
+    @Test
+    public void completeRequestsAreNotRebuilt() throws Exception {
+        final Request[] requests = new Request[2];
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(new Interceptor() {
+                    @Override
+                    public Response intercept(Chain chain) throws IOException {
+                        requests[0] = chain.request().newBuilder().header("X-Api-Key", "key").header("User-Agent", "tests").build();
+                        return chain.proceed(requests[0]);
+                    }
+                })
+                .addInterceptor(HeaderInterceptor.of(new HeaderPolicy.Builder().header("User-Agent", "stores-android/1.2").build(),
+                        null, "key", null, null))
+                .addInterceptor(new Interceptor() {
+                    @Override
+                    public Response intercept(Chain chain) throws IOException {
+                        requests[1] = chain.request();
+                        return chain.proceed(chain.request());
+                    }
+                })
+                .build();
+        mServer.enqueue(new MockResponse());
+
+        client.newCall(new Request.Builder().url(mServer.url("/")).build()).execute().body().close();
+
+        assertSame(requests[0], requests[1]);
+    }
+
+    private void send(Call<ResponseBody> call) throws IOException {
+        mServer.enqueue(new MockResponse());
+        call.execute().body().close();
+    }
+}
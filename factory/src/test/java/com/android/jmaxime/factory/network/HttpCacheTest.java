@@ -0,0 +1,81 @@
+package com.android.jmaxime.factory.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import okhttp3.OkHttpClient;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import retrofit2.Call;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class HttpCacheTest {
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "stores", addCache = true, cacheMaxAge = 60)
+    interface StoresService {
+        @GET("stores")
+        Call<ResponseBody> stores();
+    }
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "stores", addCache = true, cacheMaxAge = 60, timeOut = 5)
+    interface StoreDetailService {
+        @GET("stores")
+        Call<ResponseBody> stores();
+    }
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+    private MockWebServer mServer;
+    private OkHttpConfiguration mConfiguration;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockWebServer();
+        mServer.start();
+        mConfiguration = new OkHttpConfiguration.Builder(new OkHttpBuilder(), GsonConverterFactory.create())
+                .cacheDirectory(mFolder.getRoot())
+                .cacheSize(1024 * 1024, "stores")
+                .addUrlConfiguration("local", mServer.url("/").toString())
+                .build();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void servicesOfATagShareOneCache() throws Exception {
+        OkHttpClient client = mConfiguration.create("stores", null, -1, true, false);
+        OkHttpClient other = mConfiguration.create("stores", null, 5, true, false);
+        assertSame(client.cache(), other.cache());
+        assertEquals(1024 * 1024, client.cache().maxSize());
+        assertNull(mConfiguration.getCacheStats("customer"));
+    }
+
+    @Test
+    public void statsCountHitsAndNetwork() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("stores"));
+        ApiFactory factory = new ApiFactory(mConfiguration);
+
+        assertEquals("stores", factory.create(StoresService.class).stores().execute().body().string());
+        assertEquals("stores", factory.create(StoreDetailService.class).stores().execute().body().string());
+
+        CacheStats stats = mConfiguration.getCacheStats("stores");
+        assertEquals(2, stats.getRequestCount());
+        assertEquals(1, stats.getNetworkCount());
+        assertEquals(1, stats.getHitCount());
+        assertEquals(1, mServer.getRequestCount());
+    }
+}
@@ -0,0 +1,172 @@
+package com.android.jmaxime.factory.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Interceptor;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+import retrofit2.Call;
+import retrofit2.adapter.rxjava.HttpException;
+import retrofit2.adapter.rxjava.RxJavaCallAdapterFactory;
+import retrofit2.http.GET;
+import retrofit2.http.Streaming;
+import rx.Observable;
+import rx.observers.TestSubscriber;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JsonStreamTest {
+    private static final String TAG = "catalogue";
+    private static final int ITEMS = 20000;
+
+    static final class Product {
+        int id;
+    }
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = TAG)
+    interface CatalogueService {
+        @GET("products")
+        Call<JsonStream<Product>> products();
+
+        @Streaming
+        @GET("products")
+        Observable<Product> observeProducts();
+
+        @GET("products")
+        Observable<List<Product>> allProducts();
+    }
+
+    private final AtomicLong mBytesRead = new AtomicLong();
+    private final AtomicBoolean mBodyClosed = new AtomicBoolean();
+    private MockWebServer mServer;
+    private CatalogueService mService;
+    private long mBodySize;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockWebServer();
+        mServer.start();
+        OkHttpBuilder client = new OkHttpBuilder();
+        client.addInterceptor(new Interceptor() {
+            @Override
+            public okhttp3.Response intercept(Chain chain) throws IOException {
+                okhttp3.Response response = chain.proceed(chain.request());
+                ResponseBody body = response.body();
+                ResponseBody counted = ResponseBody.create(body.contentType(), body.contentLength(),
+                        Okio.buffer(new ForwardingSource(body.source()) {
+                            @Override
+                            public long read(Buffer sink, long byteCount) throws IOException {
+                                long read = super.read(sink, byteCount);
+                                mBytesRead.addAndGet(Math.max(0, read));
+                                return read;
+                            }
+
+                            @Override
+                            public void close() throws IOException {
+                                mBodyClosed.set(true);
+                                super.close();
+                            }
+                        }));
+                return response.newBuilder().body(counted).build();
+            }
+        });
+        OkHttpConfiguration configuration = new OkHttpConfiguration.Builder(client, JsonStreamConverterFactory.create())
+                .addUrlConfiguration("local", mServer.url("/").toString())
+                .registerConverter(JsonStreamConverterFactory.create(), TAG)
+                .registerCallAdapter(JsonStreamCallAdapterFactory.create(RxJavaCallAdapterFactory.create()), TAG)
+                .build();
+        mService = new ApiFactory(configuration).create(CatalogueService.class);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void itemsAreReadOneAtATime() throws Exception {
+        enqueueProducts();
+        JsonStream<Product> products = mService.products().execute().body();
+
+        assertTrue(products.hasNext());
+        assertEquals(0, products.next().id);
+        assertTrue(mBytesRead.get() < mBodySize / 4);
+
+        int count = 1;
+        while (products.hasNext()) {
+            assertEquals(count++, products.next().id);
+        }
+        assertEquals(ITEMS, count);
+        assertTrue(mBodyClosed.get());
+    }
+
+    @Test
+    public void observableEmitsTheItemsRequested() throws Exception {
+        enqueueProducts();
+        TestSubscriber<Product> subscriber = new TestSubscriber<>(0);
+        mService.observeProducts().subscribe(subscriber);
+
+        subscriber.requestMore(2);
+
+        assertEquals(2, subscriber.getOnNextEvents().size());
+        assertEquals(1, subscriber.getOnNextEvents().get(1).id);
+        subscriber.assertNoTerminalEvent();
+        assertTrue(mBytesRead.get() < mBodySize / 4);
+
+        subscriber.unsubscribe();
+        assertTrue(mBodyClosed.get());
+    }
+
+    @Test
+    public void observableCompletesAtTheEndOfTheArray() throws Exception {
+        enqueueProducts();
+        TestSubscriber<Product> subscriber = new TestSubscriber<>();
+
+        mService.observeProducts().subscribe(subscriber);
+
+        subscriber.assertCompleted();
+        assertEquals(ITEMS, subscriber.getOnNextEvents().size());
+        assertTrue(mBodyClosed.get());
+    }
+
+    @Test
+    public void errorStatusFailsTheObservable() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(500));
+        TestSubscriber<Product> subscriber = new TestSubscriber<>();
+
+        mService.observeProducts().subscribe(subscriber);
+
+        subscriber.assertError(HttpException.class);
+    }
+
+    @Test
+    public void otherMethodsAreAdaptedByTheDelegate() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("[{\"id\":1},{\"id\":2}]"));
+
+        List<Product> products = mService.allProducts().toBlocking().single();
+
+        assertEquals(2, products.size());
+    }
+
+    private void enqueueProducts() {
+        Buffer body = new Buffer().writeUtf8("[");
+        for (int i = 0; i < ITEMS; i++) {
+            body.writeUtf8(i == 0 ? "" : ",").writeUtf8("{\"id\":" + i + ",\"name\":\"product " + i + "\"}");
+        }
+        body.writeUtf8("]");
+        mBodySize = body.size();
+        mServer.enqueue(new MockResponse().setBody(body));
+    }
+}
@@ -0,0 +1,217 @@
+package com.android.jmaxime.factory.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okhttp3.logging.HttpLoggingInterceptor;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import retrofit2.Call;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.Body;
+import retrofit2.http.POST;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LoggingInterceptorTest {
+    private static final MediaType TEXT = MediaType.parse("text/plain; charset=utf-8");
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "stores", apiKeyName = "stores")
+    interface StoresService {
+        @POST("stores")
+        Call<ResponseBody> search(@Body RequestBody query);
+    }
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "stores", apiKeyName = "stores", apiKeyHeader = "X-Store-Key")
+    interface StoreKeyService {
+        @POST("stores")
+        Call<ResponseBody> search(@Body RequestBody query);
+    }
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "telemetry")
+    interface TelemetryService {
+        @POST("events")
+        Call<ResponseBody> send(@Body RequestBody events);
+    }
+
+    private MockWebServer mServer;
+    private Lines mLines;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockWebServer();
+        mServer.start();
+        mLines = new Lines();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void callsAreLoggedOnTheLoggingThread() throws Exception {
+        ApiFactory factory = new ApiFactory(new OkHttpConfiguration.Builder(new OkHttpBuilder(), GsonConverterFactory.create())
+                .addUrlConfiguration("local", mServer.url("/").toString())
+                .addApiKey("stores", "secret")
+                .logging(new LoggingPolicy.Builder().logger(mLines).build(), "stores")
+                .build());
+        mServer.enqueue(new MockResponse().setBody("Lyon"));
+        mServer.enqueue(new MockResponse());
+
+        assertEquals("Lyon", factory.create(StoresService.class).search(RequestBody.create(TEXT, "lyon")).execute().body().string());
+        factory.create(TelemetryService.class).send(RequestBody.create(TEXT, "event")).execute().body().close();
+
+        List<String> lines = mLines.await(1);
+        assertEquals("--> POST " + mServer.url("/stores"), lines.get(0));
+        assertTrue(lines.contains("X-Api-Key: ██"));
+        assertTrue(lines.contains("lyon"));
+        assertTrue(lines.contains("Lyon"));
+        assertEquals("<-- END HTTP", lines.get(lines.size() - 1));
+        assertFalse(lines.toString().contains("secret"));
+        assertEquals("ApiFactory logging", mLines.mThread);
+        assertFalse(lines.toString().contains("event"));
+    }
+
+    @Test
+    public void customApiKeyHeaderOfTheClientIsRedacted() throws Exception {
+        ApiFactory factory = new ApiFactory(new OkHttpConfiguration.Builder(new OkHttpBuilder(), GsonConverterFactory.create())
+                .addUrlConfiguration("local", mServer.url("/").toString())
+                .addApiKey("stores", "secret")
+                .logging(new LoggingPolicy.Builder().maxBodyBytes(0).logger(mLines).build(), "stores")
+                .build());
+        mServer.enqueue(new MockResponse());
+
+        factory.create(StoreKeyService.class).search(RequestBody.create(TEXT, "lyon")).execute().body().close();
+
+        assertEquals("secret", mServer.takeRequest().getHeader("X-Store-Key"));
+        List<String> lines = mLines.await(1);
+        assertTrue(lines.contains("X-Store-Key: ██"));
+        assertFalse(lines.toString().contains("secret"));
+    }
+
+    @Test
+    public void bodiesAreLoggedUpToTheirLimit() throws Exception {
+        OkHttpClient client = client(new LoggingPolicy.Builder().maxBodyBytes(10).logger(mLines).build());
+        String body = text(1000);
+        mServer.enqueue(new MockResponse().setBody(body));
+
+        String read = client.newCall(new Request.Builder().url(mServer.url("/")).post(RequestBody.create(TEXT, body)).build())
+                .execute().body().string();
+
+        assertEquals(body, read);
+        assertEquals(body, mServer.takeRequest().getBody().readUtf8());
+        List<String> lines = mLines.await(1);
+        assertEquals(2, count(lines, body.substring(0, 10)));
+        assertEquals(2, count(lines, "(1000-byte body truncated to 10 bytes)"));
+    }
+
+    @Test
+    public void callsAreSampledEvenly() throws Exception {
+        OkHttpClient client = client(new LoggingPolicy.Builder().sampleRate(0.25).maxBodyBytes(0).logger(mLines).build());
+
+        for (int i = 0; i < 8; i++) {
+            mServer.enqueue(new MockResponse());
+            client.newCall(new Request.Builder().url(mServer.url("/" + i)).build()).execute().body().close();
+        }
+
+        List<String> lines = mLines.await(2);
+        assertEquals(2, count(lines, "<-- END HTTP"));
+        assertTrue(lines.contains("--> GET " + mServer.url("/3")));
+        assertTrue(lines.contains("--> GET " + mServer.url("/7")));
+    }
+
+    @Test
+    public void entriesAreDroppedWhileTheQueueIsFull() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        LoggingInterceptor logging = new LoggingInterceptor(new LoggingPolicy.Builder().queueSize(1).logger(new HttpLoggingInterceptor.Logger() {
+            @Override
+            public void log(String message) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                mLines.log(message);
+            }
+        }).build());
+        OkHttpClient client = new OkHttpClient.Builder().addInterceptor(logging).build();
+
+        for (int i = 0; i < 5; i++) {
+            mServer.enqueue(new MockResponse());
+            client.newCall(new Request.Builder().url(mServer.url("/")).build()).execute().body().close();
+            blocked.await();
+        }
+        assertEquals(3, logging.droppedEntries());
+        release.countDown();
+        mServer.enqueue(new MockResponse());
+        Thread.sleep(100);
+        client.newCall(new Request.Builder().url(mServer.url("/")).build()).execute().body().close();
+
+        assertTrue(mLines.await(3).contains("--- 3 log entries dropped"));
+    }
+
+    private OkHttpClient client(LoggingPolicy policy) {
+        return new OkHttpClient.Builder().addInterceptor(new LoggingInterceptor(policy)).build();
+    }
+
+    private static String text(int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append((char) ('a' + i % 26));
+        }
+        return text.toString();
+    }
+
+    private static int count(List<String> lines, String line) {
+        int count = 0;
+        for (String l : lines) {
+            count += l.equals(line) ? 1 : 0;
+        }
+        return count;
+    }
+
+    /**
+     * Lines of the entries written
+     */
+    private static final class Lines implements HttpLoggingInterceptor.Logger {
+        private final List<String> mLines = new ArrayList<>();
+        private volatile String mThread;
+        private int mEntries;
+
+        @Override
+        public synchronized void log(String message) {
+            mThread = Thread.currentThread().getName();
+            mLines.add(message);
+            if (message.startsWith("<-- END HTTP")) {
+                mEntries++;
+                notifyAll();
+            }
+        }
+
+        synchronized List<String> await(int entries) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (mEntries < entries && System.nanoTime() < deadline) {
+                wait(100);
+            }
+            assertEquals(entries, mEntries);
+            return new ArrayList<>(mLines);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.android.jmaxime.factory.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import retrofit2.Call;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+import retrofit2.http.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MemoryCacheTest {
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "stores", addCache = true, cacheMaxAge = 600)
+    interface StoresService {
+        @GET("stores/{id}")
+        Call<ResponseBody> store(@Path("id") int id);
+
+        @CachePolicy(forceNetwork = true)
+        @GET("stores/{id}")
+        Call<ResponseBody> refreshStore(@Path("id") int id);
+    }
+
+    private MockWebServer mServer;
+    private OkHttpConfiguration mConfiguration;
+    private StoresService mService;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockWebServer();
+        mServer.start();
+        mConfiguration = new OkHttpConfiguration.Builder(new OkHttpBuilder(), GsonConverterFactory.create())
+                .registerMemoryCache(new MemoryCache(1000, 400), "stores")
+                .addUrlConfiguration("local", mServer.url("/").toString())
+                .build();
+        mService = new ApiFactory(mConfiguration).create(StoresService.class);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void freshResponseIsServedFromMemory() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("store 1"));
+        mServer.enqueue(new MockResponse().setBody("store 1 updated"));
+
+        assertEquals("store 1", mService.store(1).execute().body().string());
+        assertEquals("store 1", mService.store(1).execute().body().string());
+        assertEquals("store 1 updated", mService.refreshStore(1).execute().body().string());
+        assertEquals("store 1 updated", mService.store(1).execute().body().string());
+
+        MemoryCache cache = mConfiguration.getMemoryCache("stores");
+        assertEquals(2, mServer.getRequestCount());
+        assertEquals(2, cache.hitCount());
+        assertEquals(1, cache.missCount());
+    }
+
+    @Test
+    public void staleEntriesAreCountedAsMissesAndDropped() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("store 1").setHeader("Age", "3600"));
+        mServer.enqueue(new MockResponse().setResponseCode(503));
+
+        assertEquals("store 1", mService.store(1).execute().body().string());
+        assertEquals(503, mService.store(1).execute().code());
+
+        MemoryCache cache = mConfiguration.getMemoryCache("stores");
+        assertEquals(2, mServer.getRequestCount());
+        assertEquals(0, cache.hitCount());
+        assertEquals(2, cache.missCount());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedResponsesAreEvicted() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            mServer.enqueue(new MockResponse().setBody(new String(new char[200]).replace('\0', 'x')));
+            mService.store(i).execute().body().close();
+        }
+
+        MemoryCache cache = mConfiguration.getMemoryCache("stores");
+        assertTrue(cache.size() <= cache.maxSize());
+        assertTrue(cache.evictionCount() > 0);
+    }
+}
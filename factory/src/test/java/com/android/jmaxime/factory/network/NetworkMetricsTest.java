@@ -0,0 +1,73 @@
+package com.android.jmaxime.factory.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NetworkMetricsTest {
+
+    private MockWebServer mServer;
+    private OkHttpConfiguration mConfiguration;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockWebServer();
+        mServer.start();
+        mConfiguration = new OkHttpConfiguration.Builder(new OkHttpBuilder(), GsonConverterFactory.create())
+                .collectNetworkMetrics()
+                .addUrlConfiguration("local", mServer.url("/").toString())
+                .build();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void recordsTimingsAndConnectionReuse() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("stores").setBodyDelay(5, TimeUnit.MILLISECONDS));
+        mServer.enqueue(new MockResponse().setBody("stores"));
+        OkHttpClient client = mConfiguration.create("stores", null, -1, false, false);
+        okhttp3.Request request = new okhttp3.Request.Builder().url(mServer.url("/stores")).build();
+
+        assertEquals("stores", client.newCall(request).execute().body().string());
+        assertEquals("stores", client.newCall(request).execute().body().string());
+
+        NetworkMetrics.Snapshot metrics = mConfiguration.getNetworkMetrics("stores");
+        assertEquals(2, metrics.getCall().getCount());
+        assertEquals(2, metrics.getTimeToFirstByte().getCount());
+        assertEquals(2, metrics.getBodyRead().getCount());
+        assertEquals(1, metrics.getConnect().getCount());
+        assertEquals(1, metrics.getNewConnections());
+        assertEquals(1, metrics.getReusedConnections());
+        assertEquals(0, metrics.getFailedCalls());
+        assertTrue(metrics.getCall().getMax() >= TimeUnit.MILLISECONDS.toMicros(5));
+        assertNull(mConfiguration.getNetworkMetrics("customer"));
+    }
+
+    @Test
+    public void percentilesFollowTheRecordedValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100, snapshot.getCount());
+        long median = snapshot.getPercentile(50);
+        assertTrue(median >= 40_000 && median <= 65_000);
+        assertTrue(snapshot.getPercentile(100) <= snapshot.getMax());
+    }
+}
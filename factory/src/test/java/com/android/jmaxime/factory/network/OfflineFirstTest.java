@@ -0,0 +1,142 @@
+package com.android.jmaxime.factory.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Call;
+import retrofit2.Response;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class OfflineFirstTest {
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "stores", offlineFirst = true)
+    interface StoresService {
+        @GET("stores")
+        Call<ResponseBody> stores();
+    }
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "stores", addCache = true)
+    interface CatalogService {
+        @GET("products")
+        Call<ResponseBody> products();
+
+        @CachePolicy(offlineFirst = true)
+        @GET("categories")
+        Call<ResponseBody> categories();
+    }
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+    private final BlockingQueue<MockResponse> mResponses = new LinkedBlockingQueue<>();
+    private volatile CountDownLatch mRevalidations = new CountDownLatch(0);
+    private MockWebServer mServer;
+    private ApiFactory mFactory;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (request.getHeader("If-None-Match") != null) {
+                    mRevalidations.await();
+                }
+                MockResponse response = mResponses.poll(5, TimeUnit.SECONDS);
+                return response != null ? response : new MockResponse().setResponseCode(500);
+            }
+        });
+        mServer.start();
+        mFactory = new ApiFactory(new OkHttpConfiguration.Builder(new OkHttpBuilder(), GsonConverterFactory.create())
+                .cacheDirectory(mFolder.getRoot())
+                .addUrlConfiguration("local", mServer.url("/").toString())
+                .build());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mRevalidations.countDown();
+        mServer.shutdown();
+    }
+
+    @Test
+    public void staleResponsesAreServedAtOnceAndRevalidatedOnce() throws Exception {
+        StoresService service = mFactory.create(StoresService.class);
+        mResponses.add(stale("v1"));
+        assertEquals(ResponseSource.NETWORK, ResponseSource.of(read(service.stores(), "v1")));
+        mServer.takeRequest();
+
+        mRevalidations = new CountDownLatch(1);
+        mResponses.add(new MockResponse().setResponseCode(304).setHeader("Cache-Control", "max-age=600"));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(ResponseSource.STALE_CACHE, ResponseSource.of(read(service.stores(), "v1")));
+        }
+        assertEquals("\"v1\"", mServer.takeRequest(5, TimeUnit.SECONDS).getHeader("If-None-Match"));
+        mRevalidations.countDown();
+
+        assertEquals(ResponseSource.CACHE, awaitRevalidation(service));
+        assertNull(mServer.takeRequest(100, TimeUnit.MILLISECONDS));
+        assertEquals(2, mServer.getRequestCount());
+    }
+
+    @Test
+    public void staleResponsesAreServedOffline() throws Exception {
+        CatalogService service = mFactory.create(CatalogService.class);
+        mResponses.add(stale("v1"));
+        read(service.categories(), "v1");
+        mServer.shutdown();
+
+        assertEquals(ResponseSource.STALE_CACHE, ResponseSource.of(read(service.categories(), "v1")));
+        assertEquals(ResponseSource.STALE_CACHE, ResponseSource.of(read(service.categories(), "v1")));
+    }
+
+    @Test
+    public void conditionalResponsesAreRevalidated() throws Exception {
+        CatalogService service = mFactory.create(CatalogService.class);
+        mResponses.add(stale("v1"));
+        mResponses.add(new MockResponse().setResponseCode(304));
+        read(service.products(), "v1");
+
+        assertEquals(ResponseSource.REVALIDATED, ResponseSource.of(read(service.products(), "v1")));
+    }
+
+    private ResponseSource awaitRevalidation(StoresService service) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        ResponseSource source;
+        do {
+            Thread.sleep(10);
+            source = ResponseSource.of(read(service.stores(), "v1"));
+        } while (source == ResponseSource.STALE_CACHE && System.nanoTime() < deadline);
+        return source;
+    }
+
+    private static MockResponse stale(String etag) {
+        return new MockResponse()
+                .setBody(etag)
+                .setHeader("ETag", '"' + etag + '"')
+                .setHeader("Cache-Control", "max-age=0");
+    }
+
+    private static Response<ResponseBody> read(Call<ResponseBody> call, String body) throws IOException {
+        Response<ResponseBody> response = call.execute();
+        assertEquals(body, response.body().string());
+        return response;
+    }
+}
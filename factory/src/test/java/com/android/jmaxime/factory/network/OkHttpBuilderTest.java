@@ -0,0 +1,63 @@
+package com.android.jmaxime.factory.network;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+import static org.junit.Assert.assertEquals;
+
+public class OkHttpBuilderTest {
+
+    @Test
+    public void creatingServicesDoesNotGrowTheInterceptorChain() {
+        OkHttpConfiguration configuration = new OkHttpConfiguration.Builder(new OkHttpBuilder().loggingLevel(true), GsonConverterFactory.create())
+                .addApiKey("stores", "key")
+                .build();
+        OkHttpBuilder template = configuration.getClient("stores");
+        int interceptors = template.interceptors().size();
+        int networkInterceptors = template.networkInterceptors().size();
+
+        OkHttpClient client = null;
+        for (int i = 0; i < 100; i++) {
+            client = configuration.create("stores", "key", i % 2 == 0 ? -1 : 10, false, false);
+        }
+
+        assertEquals(interceptors, template.interceptors().size());
+        assertEquals(networkInterceptors, template.networkInterceptors().size());
+        assertEquals(interceptors + 1, client.interceptors().size());
+        assertEquals(networkInterceptors, client.networkInterceptors().size());
+    }
+
+    @Test
+    public void rootTimeOutsAreKeptUnlessTheServiceSetsOne() {
+        OkHttpClient root = new OkHttpClient.Builder()
+                .connectTimeout(500, TimeUnit.MILLISECONDS)
+                .readTimeout(2500, TimeUnit.MILLISECONDS)
+                .build();
+        OkHttpConfiguration configuration = new OkHttpConfiguration.Builder(root, GsonConverterFactory.create())
+                .registerClient(new OkHttpBuilder(root).timeOut(10), "customer")
+                .build();
+
+        OkHttpClient client = configuration.create("stores", null, -1, false, false);
+        assertEquals(500, client.connectTimeoutMillis());
+        assertEquals(2500, client.readTimeoutMillis());
+
+        client = configuration.create("stores", null, 5, false, false);
+        assertEquals(5000, client.connectTimeoutMillis());
+        assertEquals(5000, client.readTimeoutMillis());
+
+        client = configuration.create("customer", null, -1, false, false);
+        assertEquals(10000, client.connectTimeoutMillis());
+        assertEquals(10000, client.readTimeoutMillis());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void registeredTemplateCanNotBeModified() {
+        OkHttpConfiguration configuration = new OkHttpConfiguration.Builder(new OkHttpBuilder(), GsonConverterFactory.create())
+                .build();
+        configuration.getClient("stores").apiKey("key");
+    }
+}
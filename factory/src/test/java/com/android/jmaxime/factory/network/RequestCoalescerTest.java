@@ -0,0 +1,397 @@
+package com.android.jmaxime.factory.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Interceptor;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+import retrofit2.http.Streaming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RequestCoalescerTest {
+    private static final int CALLERS = 20;
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "stores", coalesceRequests = true)
+    interface StoresService {
+        @GET("stores")
+        Call<ResponseBody> stores();
+
+        @Retry(maxRetries = 0)
+        @GET("stores")
+        Call<ResponseBody> storesWithoutRetry();
+
+        @Streaming
+        @GET("stores")
+        Call<ResponseBody> streamedStores();
+    }
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "stores", apiKeyName = "first", coalesceRequests = true)
+    interface FirstKeyService {
+        @GET("stores")
+        Call<ResponseBody> stores();
+    }
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "stores", apiKeyName = "second", coalesceRequests = true)
+    interface SecondKeyService {
+        @GET("stores")
+        Call<ResponseBody> stores();
+    }
+
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+    /**
+     * Once set, the chain of the calls waits for it then throws
+     */
+    private volatile CountDownLatch mFailure;
+    private MockWebServer mServer;
+    private OkHttpConfiguration mConfiguration;
+    private StoresService mService;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockWebServer();
+        mServer.start();
+        OkHttpBuilder client = new OkHttpBuilder();
+        client.addInterceptor(new Interceptor() {
+            @Override
+            public okhttp3.Response intercept(Chain chain) throws IOException {
+                CountDownLatch failure = mFailure;
+                if (failure != null) {
+                    try {
+                        failure.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new IllegalStateException("boom");
+                }
+                return chain.proceed(chain.request());
+            }
+        });
+        mConfiguration = new OkHttpConfiguration.Builder(client, GsonConverterFactory.create())
+                .addUrlConfiguration("local", mServer.url("/").toString())
+                .addApiKey("first", "key-1")
+                .addApiKey("second", "key-2")
+                .build();
+        mService = new ApiFactory(mConfiguration).create(StoresService.class);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mRelease.countDown();
+        if (mFailure != null) {
+            mFailure.countDown();
+        }
+        mServer.shutdown();
+    }
+
+    @Test
+    public void concurrentAsyncCallersCauseOneServerHit() throws Exception {
+        final List<String> bodies = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch latch = new CountDownLatch(CALLERS);
+
+        for (int i = 0; i < CALLERS; i++) {
+            mService.stores().enqueue(new Callback<ResponseBody>() {
+                @Override
+                public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+                    try {
+                        bodies.add(response.body().string());
+                    } catch (IOException e) {
+                        bodies.add(e.getMessage());
+                    }
+                    latch.countDown();
+                }
+
+                @Override
+                public void onFailure(Call<ResponseBody> call, Throwable t) {
+                    bodies.add(t.getMessage());
+                    latch.countDown();
+                }
+            });
+        }
+        respondOnceJoined(CALLERS - 1);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.nCopies(CALLERS, "stores"), bodies);
+        assertEquals(1, mServer.getRequestCount());
+    }
+
+    @Test
+    public void concurrentSyncCallersCauseOneServerHit() throws Exception {
+        final List<String> bodies = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        bodies.add(mService.stores().execute().body().string());
+                    } catch (IOException | InterruptedException e) {
+                        bodies.add(e.getMessage());
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        respondOnceJoined(CALLERS - 1);
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+
+        assertEquals(Collections.nCopies(CALLERS, "stores"), bodies);
+        assertEquals(1, mServer.getRequestCount());
+    }
+
+    @Test
+    public void sequentialCallsAreNotCoalesced() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("1"));
+        mServer.enqueue(new MockResponse().setBody("2"));
+
+        assertEquals("1", mService.stores().execute().body().string());
+        assertEquals("2", mService.stores().execute().body().string());
+    }
+
+    @Test
+    public void callsWithOtherOptionsAreNotCoalesced() throws Exception {
+        blockResponses("stores");
+        Thread leader = execute(mService.stores(), new ArrayList<String>());
+        awaitRequests(1);
+
+        Thread other = execute(mService.storesWithoutRetry(), new ArrayList<String>());
+        awaitRequests(2);
+        mRelease.countDown();
+        leader.join(5000);
+        other.join(5000);
+
+        assertEquals(0, coalescer().coalescedCount());
+    }
+
+    @Test
+    public void canceledCallsWakeUpAndTheLastOneCancelsTheSharedCall() throws Exception {
+        blockResponses("stores");
+        List<String> results = Collections.synchronizedList(new ArrayList<String>());
+        Call<ResponseBody> leaderCall = mService.stores();
+        Thread leader = execute(leaderCall, results);
+        awaitRequests(1);
+        Call<ResponseBody> waiterCall = mService.stores();
+        Thread waiter = execute(waiterCall, results);
+        awaitJoined(1);
+
+        waiterCall.cancel();
+        waiter.join(5000);
+        assertFalse(waiter.isAlive());
+        assertTrue(leader.isAlive());
+
+        leaderCall.cancel();
+        leader.join(5000);
+        assertFalse(leader.isAlive());
+        assertEquals(2, results.size());
+        assertEquals(1, mServer.getRequestCount());
+    }
+
+    @Test
+    public void servicesSendingOtherApiKeysAreNotCoalesced() throws Exception {
+        blockResponses("stores");
+        ApiFactory factory = new ApiFactory(mConfiguration);
+        Thread first = execute(factory.create(FirstKeyService.class).stores(), new ArrayList<String>());
+        awaitRequests(1);
+
+        Thread second = execute(factory.create(SecondKeyService.class).stores(), new ArrayList<String>());
+        awaitRequests(2);
+        mRelease.countDown();
+        first.join(5000);
+        second.join(5000);
+
+        assertEquals(0, coalescer().coalescedCount());
+        assertEquals(new HashSet<>(Arrays.asList("key-1", "key-2")), new HashSet<>(Arrays.asList(
+                mServer.takeRequest().getHeader(HeaderPolicy.DEFAULT_API_KEY_HEADER),
+                mServer.takeRequest().getHeader(HeaderPolicy.DEFAULT_API_KEY_HEADER))));
+    }
+
+    @Test
+    public void streamedCallsAreNotCoalesced() throws Exception {
+        blockResponses("stores");
+        Thread leader = execute(mService.streamedStores(), new ArrayList<String>());
+        awaitRequests(1);
+
+        Thread other = execute(mService.streamedStores(), new ArrayList<String>());
+        awaitRequests(2);
+        mRelease.countDown();
+        leader.join(5000);
+        other.join(5000);
+
+        assertEquals(0, coalescer().coalescedCount());
+    }
+
+    @Test
+    public void largeBodiesAreNotSharedAndTheWaitersSendTheirOwnRequest() throws Exception {
+        char[] chars = new char[(int) RequestCoalescer.MAX_SHARED_BYTES + 1];
+        Arrays.fill(chars, 'a');
+        String body = new String(chars);
+        blockResponses(body);
+        List<String> results = Collections.synchronizedList(new ArrayList<String>());
+        Thread leader = execute(mService.stores(), results);
+        awaitRequests(1);
+        CountDownLatch waiter = enqueue(mService.stores(), results);
+        awaitJoined(1);
+
+        mRelease.countDown();
+        leader.join(5000);
+
+        assertTrue(waiter.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.nCopies(2, body), results);
+        assertEquals(2, mServer.getRequestCount());
+    }
+
+    @Test
+    public void runtimeExceptionOfAnAsyncLeaderFailsTheWaiters() throws Exception {
+        mFailure = new CountDownLatch(1);
+        List<String> results = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch leader = enqueue(mService.stores(), results);
+        CountDownLatch asyncWaiter = enqueue(mService.stores(), results);
+        Thread syncWaiter = execute(mService.stores(), results);
+        awaitJoined(2);
+
+        mFailure.countDown();
+
+        assertTrue(leader.await(5, TimeUnit.SECONDS));
+        assertTrue(asyncWaiter.await(5, TimeUnit.SECONDS));
+        syncWaiter.join(5000);
+        assertFalse(syncWaiter.isAlive());
+        assertFailed(results, 3);
+        assertLaterCallsAreSent();
+    }
+
+    @Test
+    public void runtimeExceptionOfASyncLeaderFailsTheWaiters() throws Exception {
+        mFailure = new CountDownLatch(1);
+        List<String> results = Collections.synchronizedList(new ArrayList<String>());
+        Thread leader = execute(mService.stores(), results);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (leader.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        CountDownLatch waiter = enqueue(mService.stores(), results);
+        awaitJoined(1);
+
+        mFailure.countDown();
+
+        leader.join(5000);
+        assertFalse(leader.isAlive());
+        assertTrue(waiter.await(5, TimeUnit.SECONDS));
+        assertFailed(results, 2);
+        assertLaterCallsAreSent();
+    }
+
+    private static void assertFailed(List<String> results, int calls) {
+        assertEquals(calls, results.size());
+        for (String result : results) {
+            assertTrue(result, result.contains("boom"));
+        }
+    }
+
+    private void assertLaterCallsAreSent() throws IOException {
+        mFailure = null;
+        mServer.enqueue(new MockResponse().setBody("stores"));
+        assertEquals("stores", mService.stores().execute().body().string());
+    }
+
+    private void respondOnceJoined(int waiters) throws InterruptedException {
+        awaitJoined(waiters);
+        mServer.enqueue(new MockResponse().setBody("stores"));
+    }
+
+    /**
+     * The server answers the requests once {@link #mRelease} is released
+     */
+    private void blockResponses(final String body) {
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                mRelease.await();
+                return new MockResponse().setBody(body);
+            }
+        });
+    }
+
+    private RequestCoalescer coalescer() {
+        return mConfiguration.getRequestCoalescer("stores", true);
+    }
+
+    private void awaitJoined(int waiters) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (coalescer().coalescedCount() < waiters && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(waiters, coalescer().coalescedCount());
+    }
+
+    private void awaitRequests(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (mServer.getRequestCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, mServer.getRequestCount());
+    }
+
+    private static Thread execute(final Call<ResponseBody> call, final List<String> results) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    results.add(call.execute().body().string());
+                } catch (IOException | RuntimeException e) {
+                    results.add(e.getMessage());
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static CountDownLatch enqueue(Call<ResponseBody> call, final List<String> results) {
+        final CountDownLatch done = new CountDownLatch(1);
+        call.enqueue(new Callback<ResponseBody>() {
+            @Override
+            public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+                try {
+                    results.add(response.body().string());
+                } catch (IOException e) {
+                    results.add(e.getMessage());
+                }
+                done.countDown();
+            }
+
+            @Override
+            public void onFailure(Call<ResponseBody> call, Throwable t) {
+                results.add(t.getMessage());
+                done.countDown();
+            }
+        });
+        return done;
+    }
+}
@@ -0,0 +1,132 @@
+package com.android.jmaxime.factory.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.GzipSource;
+import retrofit2.Call;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.Body;
+import retrofit2.http.Header;
+import retrofit2.http.POST;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RequestCompressionTest {
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "telemetry")
+    interface TelemetryService {
+        @POST("events")
+        Call<ResponseBody> send(@Body RequestBody events);
+
+        @POST("events")
+        Call<ResponseBody> send(@Body RequestBody events, @Header("Content-Encoding") String encoding);
+    }
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "orders")
+    interface OrdersService {
+        @POST("orders")
+        Call<ResponseBody> sync(@Body RequestBody orders);
+    }
+
+    private MockWebServer mServer;
+    private OkHttpConfiguration.Builder mBuilder;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockWebServer();
+        mServer.start();
+        mBuilder = new OkHttpConfiguration.Builder(new OkHttpBuilder(), GsonConverterFactory.create())
+                .addUrlConfiguration("local", mServer.url("/").toString());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void largeBodiesAreCompressed() throws Exception {
+        TelemetryService service = new ApiFactory(mBuilder.compressRequests(1024, "telemetry").build()).create(TelemetryService.class);
+        String events = events(1000);
+
+        send(service.send(RequestBody.create(JSON, events)));
+
+        RecordedRequest request = mServer.takeRequest();
+        assertEquals("gzip", request.getHeader("Content-Encoding"));
+        assertEquals("application/json; charset=utf-8", request.getHeader("Content-Type"));
+        assertTrue(request.getBodySize() < events.length() / 10);
+        assertEquals(events, gunzip(request.getBody()));
+    }
+
+    @Test
+    public void smallBodiesAreSentAsIs() throws Exception {
+        TelemetryService service = new ApiFactory(mBuilder.compressRequests(1024, "telemetry").build()).create(TelemetryService.class);
+
+        send(service.send(RequestBody.create(JSON, events(2))));
+
+        RecordedRequest request = mServer.takeRequest();
+        assertNull(request.getHeader("Content-Encoding"));
+        assertEquals(events(2), request.getBody().readUtf8());
+    }
+
+    @Test
+    public void encodedBodiesAreSentAsIs() throws Exception {
+        TelemetryService service = new ApiFactory(mBuilder.compressRequests(0, "telemetry").build()).create(TelemetryService.class);
+
+        send(service.send(RequestBody.create(JSON, events(1000)), "identity"));
+
+        RecordedRequest request = mServer.takeRequest();
+        assertEquals("identity", request.getHeader("Content-Encoding"));
+        assertEquals(events(1000), request.getBody().readUtf8());
+    }
+
+    @Test
+    public void compressionIsSetPerTag() throws Exception {
+        ApiFactory factory = new ApiFactory(mBuilder
+                .compressRequests(0)
+                .compressRequests(-1, "orders")
+                .build());
+
+        send(factory.create(TelemetryService.class).send(RequestBody.create(JSON, events(1))));
+        send(factory.create(OrdersService.class).sync(RequestBody.create(JSON, events(1000))));
+
+        assertEquals("gzip", mServer.takeRequest().getHeader("Content-Encoding"));
+        assertNull(mServer.takeRequest().getHeader("Content-Encoding"));
+    }
+
+    private void send(Call<ResponseBody> call) throws IOException {
+        mServer.enqueue(new MockResponse());
+        call.execute().body().close();
+    }
+
+    private static String events(int count) {
+        StringBuilder events = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            events.append(i == 0 ? "" : ",").append("{\"type\":\"screen_view\",\"screen\":\"stores\",\"index\":").append(i).append('}');
+        }
+        return events.append(']').toString();
+    }
+
+    private static String gunzip(Buffer body) throws IOException {
+        Buffer plain = new Buffer();
+        GzipSource source = new GzipSource(body);
+        while (source.read(plain, 8192) != -1) {
+            continue;
+        }
+        return plain.readUtf8();
+    }
+}
@@ -0,0 +1,217 @@
+package com.android.jmaxime.factory.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+import retrofit2.http.POST;
+import retrofit2.http.PUT;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+    private static final String TAG = "stores";
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = TAG)
+    interface StoresService {
+        @GET("stores")
+        Call<ResponseBody> stores();
+
+        @Retry(maxRetries = 0)
+        @GET("stores")
+        Call<ResponseBody> storesOnce();
+
+        @POST("stores")
+        Call<ResponseBody> post();
+
+        @Retry(idempotent = true)
+        @PUT("stores")
+        Call<ResponseBody> put();
+
+        @GET("hedged")
+        Call<ResponseBody> hedged();
+    }
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "retried", maxRetries = 1)
+    interface RetriedService {
+        @GET("stores")
+        Call<ResponseBody> stores();
+    }
+
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+    private final AtomicInteger mHedgedRequests = new AtomicInteger();
+    private final BlockingQueue<MockResponse> mResponses = new LinkedBlockingQueue<>();
+    private MockWebServer mServer;
+    private OkHttpConfiguration.Builder mBuilder;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (request.getPath().equals("/hedged") && mHedgedRequests.incrementAndGet() == 1) {
+                    mRelease.await(5, TimeUnit.SECONDS);
+                    return new MockResponse().setBody("slow");
+                }
+                MockResponse response = mResponses.poll();
+                return response == null ? new MockResponse().setBody("ok") : response;
+            }
+        });
+        mServer.start();
+        OkHttpClient client = new OkHttpClient.Builder().retryOnConnectionFailure(false).build();
+        mBuilder = new OkHttpConfiguration.Builder(client, GsonConverterFactory.create())
+                .addUrlConfiguration("local", mServer.url("/").toString());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mRelease.countDown();
+        mServer.shutdown();
+    }
+
+    @Test
+    public void failedCallsAreRetriedWithBackoff() throws Exception {
+        OkHttpConfiguration configuration = mBuilder.retryPolicy(fastRetries().build(), TAG).build();
+        StoresService service = new ApiFactory(configuration).create(StoresService.class);
+        mResponses.add(new MockResponse().setResponseCode(503));
+        mResponses.add(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+
+        Response<ResponseBody> response = service.stores().execute();
+
+        assertEquals("ok", response.body().string());
+        assertEquals(3, mServer.getRequestCount());
+        assertEquals(2, configuration.getRetryStats(TAG).getRetries());
+    }
+
+    @Test
+    public void asynchronousCallsAreRetried() throws Exception {
+        OkHttpConfiguration configuration = mBuilder.retryPolicy(fastRetries().build(), TAG).build();
+        StoresService service = new ApiFactory(configuration).create(StoresService.class);
+        mResponses.add(new MockResponse().setResponseCode(503));
+
+        assertEquals("ok", enqueue(service.stores()).body().string());
+        assertEquals(2, mServer.getRequestCount());
+    }
+
+    @Test
+    public void lastRetryableResponseIsDelivered() throws Exception {
+        OkHttpConfiguration configuration = mBuilder.retryPolicy(fastRetries().maxRetries(1).build(), TAG).build();
+        StoresService service = new ApiFactory(configuration).create(StoresService.class);
+        mResponses.add(new MockResponse().setResponseCode(503));
+        mResponses.add(new MockResponse().setResponseCode(503));
+
+        assertEquals(503, enqueue(service.stores()).code());
+        assertEquals(2, mServer.getRequestCount());
+    }
+
+    @Test
+    public void onlySafeOrIdempotentMethodsAreRetried() throws Exception {
+        OkHttpConfiguration configuration = mBuilder.retryPolicy(fastRetries().build(), TAG).build();
+        StoresService service = new ApiFactory(configuration).create(StoresService.class);
+        mResponses.add(new MockResponse().setResponseCode(503));
+        mResponses.add(new MockResponse().setResponseCode(503));
+        mResponses.add(new MockResponse().setResponseCode(503));
+
+        assertEquals(503, service.post().execute().code());
+        assertEquals(503, service.storesOnce().execute().code());
+        assertEquals(200, service.put().execute().code());
+        assertEquals(4, mServer.getRequestCount());
+    }
+
+    @Test
+    public void retriesAreLimitedByTheBudget() throws Exception {
+        RetryPolicy policy = fastRetries().retryBudget(0, 1).build();
+        OkHttpConfiguration configuration = mBuilder.retryPolicy(policy, TAG).build();
+        StoresService service = new ApiFactory(configuration).create(StoresService.class);
+        for (int i = 0; i < 4; i++) {
+            mResponses.add(new MockResponse().setResponseCode(503));
+        }
+
+        assertEquals(503, service.stores().execute().code());
+        assertEquals(503, service.stores().execute().code());
+
+        assertEquals(3, mServer.getRequestCount());
+        RetryStats stats = configuration.getRetryStats(TAG);
+        assertEquals(1, stats.getRetries());
+        assertEquals(2, stats.getBudgetExhausted());
+    }
+
+    @Test
+    public void serviceCanAskForRetriesWithoutPolicy() throws Exception {
+        RetriedService service = new ApiFactory(mBuilder.build()).create(RetriedService.class);
+        mResponses.add(new MockResponse().setResponseCode(503));
+
+        assertEquals(200, service.stores().execute().code());
+        assertEquals(2, mServer.getRequestCount());
+    }
+
+    @Test
+    public void slowCallsAreHedgedAfterThePercentileOfTheTag() throws Exception {
+        RetryPolicy policy = new RetryPolicy.Builder()
+                .maxRetries(0)
+                .hedge(90, 20, TimeUnit.MILLISECONDS)
+                .build();
+        OkHttpConfiguration configuration = mBuilder.retryPolicy(policy, TAG).build();
+        StoresService service = new ApiFactory(configuration).create(StoresService.class);
+        for (int i = 0; i < 20; i++) {
+            service.stores().execute().body().close();
+        }
+        assertTrue(configuration.getRetryStats(TAG).getHedgeDelayMillis() >= 20);
+
+        long start = System.nanoTime();
+        assertEquals("ok", service.hedged().execute().body().string());
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+        assertEquals(2, mHedgedRequests.get());
+        RetryStats stats = configuration.getRetryStats(TAG);
+        assertEquals(1, stats.getHedges());
+        assertEquals(1, stats.getHedgesWon());
+    }
+
+    private static RetryPolicy.Builder fastRetries() {
+        return new RetryPolicy.Builder().backoff(1, 10, TimeUnit.MILLISECONDS);
+    }
+
+    private static Response<ResponseBody> enqueue(Call<ResponseBody> call) throws Exception {
+        final BlockingQueue<Object> result = new LinkedBlockingQueue<>();
+        call.enqueue(new Callback<ResponseBody>() {
+            @Override
+            public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+                result.add(response);
+            }
+
+            @Override
+            public void onFailure(Call<ResponseBody> call, Throwable t) {
+                result.add(t);
+            }
+        });
+        Object value = result.poll(5, TimeUnit.SECONDS);
+        if (value instanceof Throwable) {
+            throw new AssertionError(value);
+        }
+        @SuppressWarnings("unchecked")
+        Response<ResponseBody> response = (Response<ResponseBody>) value;
+        return response;
+    }
+}
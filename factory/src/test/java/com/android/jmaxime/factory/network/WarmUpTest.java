@@ -0,0 +1,118 @@
+package com.android.jmaxime.factory.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.ResponseBody;
+import okhttp3.internal.tls.HeldCertificate;
+import okhttp3.internal.tls.SslClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Call;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WarmUpTest {
+
+    @ApiKeyService(baseUrlName = "local", tagApiName = "stores")
+    interface StoresService {
+        @GET("stores")
+        Call<ResponseBody> stores();
+    }
+
+    private MockWebServer mServer;
+    private OkHttpConfiguration mConfiguration;
+
+    @Before
+    public void setUp() throws IOException, GeneralSecurityException {
+        SslClient sslClient = localhost();
+        mServer = new MockWebServer();
+        mServer.useHttps(sslClient.socketFactory, false);
+        mServer.setProtocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        mServer.start();
+        OkHttpClient client = new OkHttpClient.Builder()
+                .sslSocketFactory(sslClient.socketFactory, sslClient.trustManager)
+                .build();
+        mConfiguration = new OkHttpConfiguration.Builder(client, GsonConverterFactory.create())
+                .addUrlConfiguration("local", mServer.url("/").toString())
+                .build();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void warmedConnectionIsReusedByTheService() throws Exception {
+        mServer.enqueue(new MockResponse());
+        mServer.enqueue(new MockResponse().setBody("stores"));
+        ApiFactory factory = new ApiFactory(mConfiguration);
+
+        WarmUp warmUp = factory.warmUp(StoresService.class);
+        assertTrue(warmUp.await(5, TimeUnit.SECONDS));
+        WarmUp.Result result = warmUp.getResults().get(0);
+        assertTrue(result.toString(), result.isSuccessful());
+        assertEquals("StoresService", result.getName());
+        assertEquals(Protocol.HTTP_2, result.getProtocol());
+
+        assertEquals("stores", factory.create(StoresService.class).stores().execute().body().string());
+        assertEquals("HEAD", mServer.takeRequest().getMethod());
+        RecordedRequest request = mServer.takeRequest();
+        assertEquals("/stores", request.getPath());
+        assertEquals(1, request.getSequenceNumber());
+    }
+
+    @Test
+    public void warmUpReportsEachBaseUrl() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(404));
+
+        WarmUp warmUp = mConfiguration.warmUp("local", "unknown");
+        assertTrue(warmUp.await(5, TimeUnit.SECONDS));
+        List<WarmUp.Result> results = warmUp.getResults();
+        assertEquals(2, results.size());
+        for (WarmUp.Result result : results) {
+            if ("local".equals(result.getName())) {
+                assertTrue(result.isSuccessful());
+            } else {
+                assertFalse(result.isSuccessful());
+                assertTrue(result.getError() instanceof IllegalArgumentException);
+            }
+        }
+    }
+
+    /**
+     * Certificate of localhost issued by a root trusted by the client
+     */
+    private static SslClient localhost() throws GeneralSecurityException {
+        HeldCertificate root = new HeldCertificate.Builder()
+                .serialNumber("1")
+                .ca(1)
+                .commonName("root")
+                .build();
+        HeldCertificate localhost = new HeldCertificate.Builder()
+                .serialNumber("2")
+                .issuedBy(root)
+                .commonName("localhost")
+                .subjectAlternativeName("localhost")
+                .build();
+        return new SslClient.Builder()
+                .certificateChain(localhost, root)
+                .addTrustedCertificate(root.certificate)
+                .build();
+    }
+}